@@ -1,6 +1,7 @@
 # library(tools)
 
-versions = as.data.frame(installed.packages()[, c("Package", "Version")])
+## don't use the cached package database of the session since this script may be evaluated by a long-lived worker
+versions = as.data.frame(installed.packages(noCache = TRUE)[, c("Package", "Version")])
 
 with(versions, cat(paste(Package, Version, sep = "\t"), sep = "\n"))
 
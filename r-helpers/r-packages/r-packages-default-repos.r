@@ -2,4 +2,4 @@ p <- file.path(Sys.getenv("HOME"), ".R", "repositories")
 if (!file.exists(p))
     p <- file.path(R.home("etc"), "repositories")
 a <- tools:::.read_repositories(p)
-a[,"URL"]
+print(a[,"URL"])
@@ -12,6 +12,9 @@ import com.intellij.util.ArrayUtil;
 import com.intellij.util.SmartList;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.Predicate;
+import com.r4intellij.controlflow.RControlFlow;
+import com.r4intellij.controlflow.RInstruction;
+import com.r4intellij.controlflow.RReachingDefinitions;
 import com.r4intellij.parsing.RElementTypes;
 import com.r4intellij.psi.api.*;
 import com.r4intellij.psi.stubs.RAssignmentNameIndex;
@@ -205,8 +208,7 @@ public class RPsiUtils {
         ArgumentsMatchResult matchResult;
 
         try {
-            List<RExpression> arguments = callExpression.getArgumentList().getExpressionList();
-            matchResult = new ArgumentMatcher(callExpression).matchArgs(arguments);
+            matchResult = ArgumentMatcher.matchCall(callExpression);
         } catch (MatchingException e) {
             return Collections.emptyMap();
         }
@@ -265,6 +267,21 @@ public class RPsiUtils {
             return false;
         }
 
+        // within the same control flow a read is a forward reference if no definition of the symbol reaches it. Dead
+        // code is not executed at all, so it does not refer to anything.
+        RControlFlow controlFlow = RControlFlow.getControlFlow(element);
+        RInstruction definition = controlFlow.getInstruction(resolvant);
+        RInstruction read = controlFlow.getInstruction(element);
+
+        if (definition != null && read != null && read.getKind() == RInstruction.Kind.READ) {
+            String name = RReachingDefinitions.getDefinedName(definition);
+
+            if (name != null) {
+                RReachingDefinitions reachingDefinitions = RReachingDefinitions.getInstance(controlFlow);
+                return reachingDefinitions.isReachable(read) && reachingDefinitions.getReachingDefinitions(read, name).isEmpty();
+            }
+        }
+
         boolean isSelfReference = (resolvant instanceof RAssignmentStatement) &&
                 ((RAssignmentStatement) resolvant).getAssignee().equals(element);
 
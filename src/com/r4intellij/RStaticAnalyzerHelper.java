@@ -1,511 +1,302 @@
 package com.r4intellij;
 
+import com.intellij.openapi.util.Key;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiFile;
-import com.intellij.psi.util.PsiTreeUtil;
+import com.r4intellij.controlflow.RControlFlow;
+import com.r4intellij.controlflow.RDataFlowSolver;
+import com.r4intellij.controlflow.RInstruction;
+import com.r4intellij.controlflow.RReachingDefinitions;
 import com.r4intellij.psi.api.*;
 import com.r4intellij.typing.RTypeProvider;
 import com.r4intellij.typing.types.RType;
 import com.r4intellij.typing.types.RUnionType;
 import com.r4intellij.typing.types.RUnknownType;
+import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
 
+/**
+ * Flow-sensitive analyses of function bodies and scripts, which are solved on their cached control flow graphs (see
+ * {@link RControlFlow}).
+ */
 public class RStaticAnalyzerHelper {
 
-    private interface StaticAnalysisResult {
-        StaticAnalysisResult applyRead(RReferenceExpression ref);
+    private static final Key<Set<String>> OPTIONAL_PARAMETERS = Key.create("R.optionalParameters");
 
 
-        StaticAnalysisResult applyAssign(RAssignmentStatement assignmentStatement);
-
+    /**
+     * Infers the type of a reference from the definitions of its symbol which may reach it.
+     */
+    public static RType getReferenceType(RReferenceExpression what) {
+        String name = what.getName();
+        if (name == null) return RUnknownType.INSTANCE;
 
-        StaticAnalysisResult applyAssignInFor(RExpression assignee, RExpression expression);
+        RControlFlow controlFlow = RControlFlow.getControlFlow(what);
+        RInstruction read = controlFlow.getInstruction(what);
+        if (read == null) return RUnknownType.INSTANCE;
 
+        return new DefinitionTypes(RReachingDefinitions.getInstance(controlFlow)).getSymbolType(read, name);
+    }
 
-        StaticAnalysisResult merge(StaticAnalysisResult other);
 
+    /**
+     * Returns the parameters without default value which may be unset when the function is left, because they are not
+     * read on all paths before being assigned or returning.
+     */
+    public static Set<String> optionalParameters(RFunctionExpression function) {
+        if (!RBlockExpression.class.isInstance(function.getExpression())) {
+            return new HashSet<String>();
+        }
 
-        void applyReturn();
+        RControlFlow controlFlow = RControlFlow.getInstance(function);
+        Set<String> optionals = controlFlow.getUserData(OPTIONAL_PARAMETERS);
 
+        if (optionals == null) {
+            optionals = controlFlow.putUserDataIfAbsent(OPTIONAL_PARAMETERS,
+                    Collections.unmodifiableSet(new OptionalParameters(function).solve(controlFlow)));
+        }
 
-        boolean isEnd();
+        return new HashSet<String>(optionals);
     }
 
 
-    private static class OptionalParameters implements StaticAnalysisResult {
+    /**
+     * Bitset states of <code>n</code> parameters: bit <code>i</code> is set if parameter <code>i</code> is read on all
+     * paths (joined by intersection), bit <code>n + i</code> if it may have been assigned before being read (joined
+     * by union).
+     */
+    private static class OptionalParameters implements RDataFlowSolver.Analysis {
 
-        private Set<String> myPossibleOptionals = new HashSet<String>();
-        private Set<String> myOptionals = new HashSet<String>();
-        private Set<String> myRead = new HashSet<String>();
+        private final List<String> possibleOptionals = new ArrayList<String>();
 
 
-        private OptionalParameters(List<RParameter> parameters) {
-            for (RParameter parameter : parameters) {
+        private OptionalParameters(RFunctionExpression function) {
+            for (RParameter parameter : function.getParameterList().getParameterList()) {
                 if (parameter.getName() != null && parameter.getExpression() == null) {
-                    myPossibleOptionals.add(parameter.getName());
+                    possibleOptionals.add(parameter.getName());
                 }
             }
         }
 
 
-        public OptionalParameters(OptionalParameters parameters) {
-            myPossibleOptionals = parameters.myPossibleOptionals;
-            myOptionals.addAll(parameters.myOptionals);
-            myRead.addAll(parameters.myRead);
-        }
+        Set<String> solve(RControlFlow controlFlow) {
+            Set<String> optionals = new HashSet<String>();
+            if (possibleOptionals.isEmpty()) return optionals;
 
+            BitSet exitState = RDataFlowSolver.solve(controlFlow, this).getIn(controlFlow.getExit());
+            if (exitState == null) return optionals;
 
-        @Override
-        public StaticAnalysisResult applyRead(RReferenceExpression ref) {
-            PsiElement parent = ref.getParent();
-            if (parent instanceof RArgumentList) {
-                parent = parent.getParent();
-                if (parent instanceof RCallExpression) {
-                    RCallExpression callExpression = (RCallExpression) parent;
-                    String functionName = callExpression.getExpression().getText();
-                    if ("missing".equals(functionName) || "is.null".equals(functionName)) {
-                        return this;
-                    }
+            int numParams = possibleOptionals.size();
+            for (int i = 0; i < numParams; i++) {
+                if (exitState.get(numParams + i) || !exitState.get(i)) {
+                    optionals.add(possibleOptionals.get(i));
                 }
             }
-            String name = ref.getName();
-            if (myPossibleOptionals.contains(name) && !myOptionals.contains(name)) {
-                OptionalParameters newParams = new OptionalParameters(this);
-                newParams.myRead.add(name);
-                return newParams;
-            }
-            return this;
-        }
-
 
-        private StaticAnalysisResult applyWrite(String name) {
-            if (myPossibleOptionals.contains(name) && !myRead.contains(name)) {
-                OptionalParameters newParams = new OptionalParameters(this);
-                newParams.myOptionals.add(name);
-                return newParams;
-            }
-            return this;
+            return optionals;
         }
 
 
+        @NotNull
         @Override
-        public StaticAnalysisResult applyAssign(RAssignmentStatement assignmentStatement) {
-            PsiElement assignee = assignmentStatement.getAssignee();
-            if (assignee == null) {
-                return this;
-            }
-            return applyWrite(assignee.getText());
+        public BitSet getInitialState() {
+            return new BitSet();
         }
 
 
         @Override
-        public StaticAnalysisResult applyAssignInFor(RExpression assignee, RExpression expression) {
-            return applyWrite(assignee.getText());
-        }
+        public void join(@NotNull BitSet state, @NotNull BitSet otherState) {
+            int numParams = possibleOptionals.size();
 
+            BitSet read = state.get(0, numParams);
+            read.and(otherState.get(0, numParams));
 
-        @Override
-        public StaticAnalysisResult merge(StaticAnalysisResult other) {
-            if (!(other instanceof OptionalParameters)) {
-                throw new IllegalArgumentException();
-            }
-            OptionalParameters otherParams = (OptionalParameters) other;
-            myOptionals.addAll(otherParams.myOptionals);
-            Set<String> mergeRead = new HashSet<String>();
-            for (String name : myRead) {
-                if (otherParams.myRead.contains(name)) {
-                    mergeRead.add(name);
-                }
-            }
-            myRead = mergeRead;
-            return this;
+            state.or(otherState);
+            state.clear(0, numParams);
+            state.or(read);
         }
 
 
+        @NotNull
         @Override
-        public void applyReturn() {
-            for (String name : myPossibleOptionals) {
-                if (!myRead.contains(name)) {
-                    myOptionals.add(name);
-                }
-            }
-        }
+        public BitSet transfer(@NotNull RInstruction instruction, @NotNull BitSet state) {
+            int numParams = possibleOptionals.size();
 
+            switch (instruction.getKind()) {
+                case READ:
+                    RReferenceExpression ref = (RReferenceExpression) instruction.getElement();
+                    int readIndex = possibleOptionals.indexOf(ref.getName());
 
-        @Override
-        public boolean isEnd() {
-            return false;
-        }
-
-
-        public Set<String> getOptionalParameters() {
-            return myOptionals;
-        }
-    }
-
+                    if (readIndex >= 0 && !isNullCheck(ref) && !state.get(numParams + readIndex)) {
+                        state.set(readIndex);
+                    }
+                    break;
 
-    private static class ReachTypes implements StaticAnalysisResult {
-        final Map<String, RType> myReachTypes = new HashMap<String, RType>();
-        final RReferenceExpression myWhat;
-        RType myResult = null;
+                case WRITE:
+                    PsiElement assignee = ((RAssignmentStatement) instruction.getElement()).getAssignee();
+                    if (assignee != null) applyWrite(assignee.getText(), state);
+                    break;
 
+                case LOOP_TARGET:
+                    applyWrite(((RForStatement) instruction.getElement()).getTarget().getText(), state);
+                    break;
+            }
 
-        public ReachTypes(RReferenceExpression what) {
-            myWhat = what;
+            return state;
         }
 
 
-        private ReachTypes(ReachTypes other) {
-            myReachTypes.putAll(other.myReachTypes);
-            myWhat = other.myWhat;
-            myResult = other.myResult;
-        }
-
+        private void applyWrite(String name, BitSet state) {
+            int writeIndex = possibleOptionals.indexOf(name);
 
-        public RType getResultType() {
-            if (myResult != null) {
-                return myResult;
+            if (writeIndex >= 0 && !state.get(writeIndex)) {
+                state.set(possibleOptionals.size() + writeIndex);
             }
-            return RUnknownType.INSTANCE;
         }
 
 
-        @Override
-        public StaticAnalysisResult applyRead(RReferenceExpression ref) {
-            String name = ref.getName();
-            RType refType = RUnknownType.INSTANCE;
-            if (myReachTypes.containsKey(name)) {
-                refType = myReachTypes.get(name);
-            }
-            //RTypeContext.putTypeInCache(ref, refType);
-            if (myResult == null && ref.equals(myWhat)) {
-                myResult = refType;
+        private static boolean isNullCheck(RReferenceExpression ref) {
+            PsiElement parent = ref.getParent();
+            if (!(parent instanceof RArgumentList) || !(parent.getParent() instanceof RCallExpression)) {
+                return false;
             }
-            return this;
+
+            String functionName = ((RCallExpression) parent.getParent()).getExpression().getText();
+            return "missing".equals(functionName) || "is.null".equals(functionName);
         }
+    }
 
 
-        @Override
-        public StaticAnalysisResult applyAssign(RAssignmentStatement assignmentStatement) {
-            PsiElement assignee = assignmentStatement.getAssignee();
-            RPsiElement assignedValue = assignmentStatement.getAssignedValue();
-            if (assignedValue == null) {
-                return this;
-            }
-            RType assignedValueType = RTypeProvider.getType(assignedValue);
-            ReachTypes result = this;
-            if (assignee instanceof RReferenceExpression) {
-                RReferenceExpression ref = (RReferenceExpression) assignee;
-                String name = ref.getName();
-                result = new ReachTypes(this);
-                result.myReachTypes.put(name, assignedValueType);
-            }
-            if (assignee instanceof RMemberExpression) {
-                RMemberExpression member = (RMemberExpression) assignee;
-                RExpression base = member.getExpression();
-                String tag = member.getTag();
-                if (base instanceof RReferenceExpression) { // check only x$y not f()$y
-                    RReferenceExpression ref = (RReferenceExpression) base;
-                    String name = ref.getName();
-                    RType baseType = myReachTypes.get(name);
-                    if (baseType == null) {
-                        baseType = RUnknownType.INSTANCE;
-                    }
-                    final Set<RType> beforeTypes;
-                    if (baseType instanceof RUnionType) {
-                        beforeTypes = ((RUnionType) baseType).getTypes();
-                    } else {
-                        beforeTypes = new HashSet<RType>();
-                        beforeTypes.add(baseType);
-                    }
-                    Set<RType> afterTypes = new HashSet<RType>();
-                    for (RType type : beforeTypes) {
-                        afterTypes.add(type.afterMemberType(tag, assignedValueType));
-                    }
-                    RType resultType = RUnionType.create(afterTypes);
-                    result = new ReachTypes(this);
-                    result.myReachTypes.put(name, resultType);
-                }
-            }
-            if (assignee instanceof RSubscriptionExpression) {
-                RSubscriptionExpression subscriptionExpression = (RSubscriptionExpression) assignee;
-                List<RExpression> expressionList = subscriptionExpression.getExpressionList();
-                RExpression base = expressionList.get(0);
-                List<RExpression> arguments = expressionList.subList(1, expressionList.size());
-                if (base instanceof RReferenceExpression) {
-                    String name = base.getName();
-                    RType baseType = myReachTypes.get(name);
-                    if (baseType == null) {
-                        baseType = RUnknownType.INSTANCE;
-                    }
-                    boolean isSingleBracket = subscriptionExpression.getLbracket() != null;
-                    RType resultType = baseType.afterSubscriptionType(arguments, assignedValueType, isSingleBracket);
-                    result = new ReachTypes(this);
-                    result.myReachTypes.put(name, resultType);
-                }
-            }
+    /**
+     * Types of the definitions of a control flow. Definitions which reach themselves through a loop are typed as
+     * unknown within their own definition.
+     */
+    private static class DefinitionTypes {
 
-            if (assignee instanceof RCallExpression) {
-                RCallExpression callExpression = (RCallExpression) assignee;
-                RExpression function = callExpression.getExpression();
-                if (function instanceof RReferenceExpression) {
-                    String functionName = function.getName();
-                    List<RExpression> arguments = callExpression.getArgumentList().getExpressionList();
-                    if ("class".equals(functionName) && arguments.size() == 1) { // add S3Class
-                        RExpression arg = arguments.get(0);
-                        if (arg instanceof RReferenceExpression) {
-                            String name = arg.getName();
-                            List<String> s3Classes = new ArrayList<String>();
-                            if (assignedValue instanceof RStringLiteralExpression) {
-                                String quoted = assignedValue.getText();
-                                String s3Class = quoted.substring(1, quoted.length() - 1);
-                                s3Classes.add(s3Class);
-                            }
-                            if (assignedValue instanceof RCallExpression) {
-                                RCallExpression assignedValueCall = (RCallExpression) assignedValue;
-                                if ("c".equals(assignedValueCall.getExpression().getName())) {
-                                    for (RExpression s3ClassExpr : assignedValueCall.getArgumentList().getExpressionList()) {
-                                        if (s3ClassExpr instanceof RStringLiteralExpression) {
-                                            String quoted = s3ClassExpr.getText();
-                                            String s3Class = quoted.substring(1, quoted.length() - 1);
-                                            s3Classes.add(s3Class);
-                                        }
-                                    }
-                                }
-                            }
-                            if (!s3Classes.isEmpty() && myReachTypes.containsKey(name)) {
-                                result = new ReachTypes(this);
-                                result.myReachTypes.put(name, myReachTypes.get(name).replaceS3Types(s3Classes));
-                            }
-                        }
-                    }
-                }
-            }
+        private final RReachingDefinitions reachingDefinitions;
 
-            return result;
-        }
+        private final Map<RInstruction, RType> definitionTypes = new HashMap<RInstruction, RType>();
+        private final Set<RInstruction> inProgress = new HashSet<RInstruction>();
 
 
-        @Override
-        public StaticAnalysisResult applyAssignInFor(RExpression assignee, RExpression expression) {
-            if (!RReferenceExpression.class.isInstance(assignee)) {
-                return this;
-            }
-            String name = assignee.getName();
-            ReachTypes result = new ReachTypes(this);
-            result.myReachTypes.put(name, RTypeProvider.getType(expression).getElementTypes());
-            return result;
+        DefinitionTypes(RReachingDefinitions reachingDefinitions) {
+            this.reachingDefinitions = reachingDefinitions;
         }
 
 
-        @Override
-        public StaticAnalysisResult merge(StaticAnalysisResult other) {
-            if (!ReachTypes.class.isInstance(other)) {
-                throw new IllegalArgumentException();
-            }
-            ReachTypes result = new ReachTypes((ReachTypes) other);
-            for (Map.Entry<String, RType> entry : myReachTypes.entrySet()) {
-                String name = entry.getKey();
-                RType type = entry.getValue();
-                if (result.myReachTypes.containsKey(name)) {
-                    Set<RType> typeSet = new HashSet<RType>();
-                    typeSet.add(type);
-                    typeSet.add(result.myReachTypes.get(name));
-                    type = RUnionType.create(typeSet);
-                }
-                result.myReachTypes.put(name, type);
-            }
-            if (result.myResult == null && myResult != null) {
-                result.myResult = myResult;
-            }
-            return result;
-        }
-
+        RType getSymbolType(RInstruction instruction, String name) {
+            Set<RType> types = new HashSet<RType>();
 
-        @Override
-        public void applyReturn() {
+            for (RInstruction definition : reachingDefinitions.getReachingDefinitions(instruction, name)) {
+                types.add(getDefinitionType(definition));
+            }
 
+            return RUnionType.create(types);
         }
 
 
-        @Override
-        public boolean isEnd() {
-            return false;
-        }
-    }
+        private RType getDefinitionType(RInstruction definition) {
+            RType type = definitionTypes.get(definition);
+            if (type != null) return type;
 
+            if (!inProgress.add(definition)) return RUnknownType.INSTANCE;
 
-    public static RType getReferenceType(RReferenceExpression what) {
-        ReachTypes resolveResult = new ReachTypes(what);
-        RFunctionExpression functionExpression = PsiTreeUtil.getParentOfType(what, RFunctionExpression.class);
-        if (functionExpression != null) {
-            resolveResult = (ReachTypes) analyze(functionExpression.getExpression(), resolveResult);
-        } else {
-            PsiFile file = what.getContainingFile();
-            RExpression[] expressions = PsiTreeUtil.getChildrenOfType(file, RExpression.class);
-            assert expressions != null;
-            resolveResult = (ReachTypes) analyzeSequence(Arrays.asList(expressions), resolveResult);
-        }
-        return resolveResult.getResultType();
-    }
+            type = buildDefinitionType(definition);
 
+            inProgress.remove(definition);
+            definitionTypes.put(definition, type);
 
-    public static Set<String> optionalParameters(RFunctionExpression function) {
-        RExpression functionExpression = function.getExpression();
-        if (!RBlockExpression.class.isInstance(functionExpression)) {
-            return new HashSet<String>();
+            return type;
         }
-        OptionalParameters parameters = new OptionalParameters(function.getParameterList().getParameterList());
-        parameters = (OptionalParameters) analyze(functionExpression, parameters);
-        parameters.applyReturn();
-        return parameters.getOptionalParameters();
-    }
 
 
-    private static StaticAnalysisResult analyze(RPsiElement where, StaticAnalysisResult parentResult) {
-        //TODO: find better way --- can we use just ==
-        if (where instanceof RReferenceExpression) {
-            return parentResult.applyRead((RReferenceExpression) where);
-        }
-
-        if (where instanceof RAssignmentStatement) {
-            RAssignmentStatement assignment = (RAssignmentStatement) where;
-            StaticAnalysisResult resolveResult = analyze(assignment.getAssignedValue(), parentResult);
-            if (resolveResult.isEnd()) {
-                return resolveResult;
+        private RType buildDefinitionType(RInstruction definition) {
+            if (definition.getKind() == RInstruction.Kind.LOOP_TARGET) {
+                RExpression range = ((RForStatement) definition.getElement()).getRange();
+                return range != null ? RTypeProvider.getType(range).getElementTypes() : RUnknownType.INSTANCE;
             }
-            resolveResult = resolveResult.applyAssign(assignment);
-            return resolveResult;
-        }
 
-        if (where instanceof RIfStatement) {
-            RIfStatement ifStatement = (RIfStatement) where;
-            List<RExpression> list = ifStatement.getExpressionList();
-            RExpression condition = list.get(0);
-            StaticAnalysisResult conditionResult = analyze(condition, parentResult);
-            if (conditionResult.isEnd()) {
-                return conditionResult;
-            }
-            StaticAnalysisResult thenResult = analyze(list.get(1), conditionResult);
-            if (thenResult.isEnd()) {
-                return thenResult;
+            RAssignmentStatement assignment = (RAssignmentStatement) definition.getElement();
+            PsiElement assignee = assignment.getAssignee();
+            RPsiElement assignedValue = assignment.getAssignedValue();
+            if (assignedValue == null) {
+                return RUnknownType.INSTANCE;
             }
-            StaticAnalysisResult elseResult = conditionResult;
-            if (list.size() == 3) {
-                elseResult = analyze(list.get(2), conditionResult);
-                if (elseResult.isEnd()) {
-                    return elseResult;
+
+            RType assignedValueType = RTypeProvider.getType(assignedValue);
+            String name = RReachingDefinitions.getDefinedName(definition);
+
+            if (assignee instanceof RMemberExpression) {
+                RType baseType = getSymbolType(definition, name);
+                String tag = ((RMemberExpression) assignee).getTag();
+
+                final Set<RType> beforeTypes;
+                if (baseType instanceof RUnionType) {
+                    beforeTypes = ((RUnionType) baseType).getTypes();
+                } else {
+                    beforeTypes = Collections.singleton(baseType);
                 }
-            }
-            return thenResult.merge(elseResult);
-        }
 
-        if (where instanceof ROperatorExpression) {
-            RExpression[] expressions = PsiTreeUtil.getChildrenOfType(where, RExpression.class);
-            if (expressions == null) {
-                return parentResult;
+                Set<RType> afterTypes = new HashSet<RType>();
+                for (RType type : beforeTypes) {
+                    afterTypes.add(type.afterMemberType(tag, assignedValueType));
+                }
+                return RUnionType.create(afterTypes);
             }
-            return analyzeSequence(Arrays.asList(expressions), parentResult);
-        }
 
-        if (where instanceof RBlockExpression) {
-            RBlockExpression block = (RBlockExpression) where;
-            return analyzeSequence(block.getExpressionList(), parentResult);
-        }
-
-        if (where instanceof RParenthesizedExpression) {
-            RParenthesizedExpression parenthesized = (RParenthesizedExpression) where;
-            return analyze(parenthesized.getExpression(), parentResult);
-        }
+            if (assignee instanceof RSubscriptionExpression) {
+                RSubscriptionExpression subscriptionExpression = (RSubscriptionExpression) assignee;
+                List<RExpression> expressionList = subscriptionExpression.getExpressionList();
+                List<RExpression> arguments = expressionList.subList(1, expressionList.size());
+                boolean isSingleBracket = subscriptionExpression.getLbracket() != null;
 
-        if (where instanceof RWhileStatement) {
-            RWhileStatement whileStatement = (RWhileStatement) where;
-            List<RExpression> list = whileStatement.getExpressionList();
-            StaticAnalysisResult conditionResult = analyze(list.get(0), parentResult);
-            if (conditionResult.isEnd()) {
-                return conditionResult;
-            }
-            StaticAnalysisResult bodyResult = analyze(list.get(1), conditionResult);
-            if (bodyResult.isEnd()) {
-                return bodyResult;
+                return getSymbolType(definition, name).afterSubscriptionType(arguments, assignedValueType, isSingleBracket);
             }
-            return bodyResult.merge(conditionResult);
-        }
 
-        if (where instanceof RRepeatStatement) {
-            RRepeatStatement repeatStatement = (RRepeatStatement) where;
-            StaticAnalysisResult resolveResult = analyze(repeatStatement.getExpression(), parentResult);
-            if (resolveResult.isEnd()) {
-                return resolveResult;
+            if (assignee instanceof RCallExpression) {
+                return getReplacementType(definition, name, (RCallExpression) assignee, assignedValue);
             }
-            return resolveResult.merge(parentResult);
-        }
 
-        if (where instanceof RCallExpression) {
-            RCallExpression callExpression = (RCallExpression) where;
-            List<RExpression> expressions = new ArrayList<RExpression>();
-            expressions.add(callExpression.getExpression());
-            for (RExpression argument : callExpression.getArgumentList().getExpressionList()) {
-                RExpression child = argument;
-                if (argument instanceof RAssignmentStatement) {
-                    child = (RExpression) ((RAssignmentStatement) argument).getAssignedValue();
-                }
-                expressions.add(child);
-            }
-            StaticAnalysisResult result = analyzeSequence(expressions, parentResult);
-            if (result.isEnd()) {
-                return result;
-            }
-            if ("return".equals(callExpression.getExpression().getText())) {
-                result.applyReturn();
-            }
-            return result;
+            return assignedValueType;
         }
 
-        if (where instanceof RSubscriptionExpression) {
-            RSubscriptionExpression subscriptionExpression = (RSubscriptionExpression) where;
-            return analyzeSequence(subscriptionExpression.getExpressionList(), parentResult);
-        }
 
-        if (where instanceof RMemberExpression) {
-            RMemberExpression memberExpression = (RMemberExpression) where;
-            return analyze(memberExpression.getExpression(), parentResult);
-        }
+        /**
+         * Replacement functions keep the type of the symbol, except for <code>class(x) <- ...</code> which sets
+         * its S3 classes.
+         */
+        private RType getReplacementType(RInstruction definition, String name, RCallExpression assignee, RPsiElement assignedValue) {
+            RType baseType = getSymbolType(definition, name);
 
-        if (where instanceof RForStatement) {
-            RForStatement forStatement = (RForStatement) where;
-            StaticAnalysisResult afterRange = analyze(forStatement.getRange(), parentResult);
-            if (afterRange.isEnd()) {
-                return afterRange;
+            if (!"class".equals(assignee.getExpression().getName()) || assignee.getArgumentList().getExpressionList().size() != 1) {
+                return baseType;
             }
-            StaticAnalysisResult withoutBody = afterRange.applyAssignInFor(forStatement.getTarget(), forStatement.getRange());
-            if (withoutBody.isEnd()) {
-                return withoutBody;
+
+            List<String> s3Classes = new ArrayList<String>();
+            if (assignedValue instanceof RStringLiteralExpression) {
+                s3Classes.add(unquote(assignedValue.getText()));
             }
-            StaticAnalysisResult withBody = analyze(forStatement.getBody(), withoutBody);
-            if (withBody.isEnd()) {
-                return withBody;
+            if (assignedValue instanceof RCallExpression) {
+                RCallExpression assignedValueCall = (RCallExpression) assignedValue;
+                if ("c".equals(assignedValueCall.getExpression().getName())) {
+                    for (RExpression s3ClassExpr : assignedValueCall.getArgumentList().getExpressionList()) {
+                        if (s3ClassExpr instanceof RStringLiteralExpression) {
+                            s3Classes.add(unquote(s3ClassExpr.getText()));
+                        }
+                    }
+                }
             }
-            return withoutBody.merge(withBody);
-        }
-        if (where instanceof RAtExpression) {
-            RAtExpression atExpression = (RAtExpression) where;
-            return analyze(atExpression.getExpression(), parentResult);
+
+            if (s3Classes.isEmpty() || reachingDefinitions.getReachingDefinitions(definition, name).isEmpty()) {
+                return baseType;
+            }
+
+            return baseType.replaceS3Types(s3Classes);
         }
-        //TODO: look at other expressions (for, call expression)
-        return parentResult;
-    }
 
 
-    private static StaticAnalysisResult analyzeSequence(List<RExpression> expressions, StaticAnalysisResult parentResult) {
-        StaticAnalysisResult resolveResult = parentResult;
-        for (RExpression expression : expressions) {
-            resolveResult = analyze(expression, resolveResult);
-            if (resolveResult.isEnd()) {
-                return resolveResult;
-            }
+        private static String unquote(String quoted) {
+            return quoted.substring(1, quoted.length() - 1);
         }
-        return resolveResult;
     }
 }
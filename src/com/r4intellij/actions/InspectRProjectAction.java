@@ -0,0 +1,69 @@
+package com.r4intellij.actions;
+
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.r4intellij.inspections.RBatchInspector;
+import com.r4intellij.inspections.RInspectionReport;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Runs the R inspections on all R files of the project in the background and writes the results to
+ * <code>r-inspections.xml</code> in the project directory.
+ */
+public class InspectRProjectAction extends AnAction {
+
+    private static final Logger LOG = Logger.getInstance(InspectRProjectAction.class);
+
+    public static final String REPORT_FILE_NAME = "r-inspections.xml";
+
+
+    @Override
+    public void actionPerformed(AnActionEvent event) {
+        final Project project = event.getProject();
+        assert project != null;
+
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Inspecting R Files", true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                RBatchInspector inspector = new RBatchInspector(project);
+                RInspectionReport report = inspector.inspect(inspector.findProjectFiles(), indicator);
+
+                File reportFile = new File(project.getBasePath(), REPORT_FILE_NAME);
+
+                try {
+                    report.write(reportFile);
+                } catch (IOException e) {
+                    LOG.warn("Failed to write inspection report", e);
+                    notify(project, "Failed to write " + reportFile + ": " + e.getMessage(), NotificationType.ERROR);
+                    return;
+                }
+
+                notify(project, String.format("Found %d problems in %d files in %.1fs, see %s",
+                        report.getProblemCount(), report.getFiles().size(), report.getDurationMs() / 1000.,
+                        reportFile), NotificationType.INFORMATION);
+            }
+        });
+    }
+
+
+    @Override
+    public void update(AnActionEvent e) {
+        e.getPresentation().setEnabledAndVisible(e.getProject() != null);
+    }
+
+
+    private static void notify(Project project, String message, NotificationType type) {
+        Notifications.Bus.notify(new Notification("R Language Support", "R Inspections", message, type), project);
+    }
+}
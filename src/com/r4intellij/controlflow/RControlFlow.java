@@ -0,0 +1,113 @@
+package com.r4intellij.controlflow;
+
+import com.intellij.openapi.util.UserDataHolderBase;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.r4intellij.psi.api.RFunctionExpression;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Intra-procedural control flow graph of a function body or of the top-level expressions of a file. Nested function
+ * expressions are not part of the graph of their enclosing scope but have graphs of their own.
+ * <p>
+ * Graphs are cached per owner until the next modification of its file. Analyses which are computed on top of a graph
+ * (see {@link RDataFlowSolver}) can be attached to it as user data so that they share its lifetime.
+ *
+ * @author Holger Brandl
+ */
+public class RControlFlow extends UserDataHolderBase {
+
+    private final PsiElement owner;
+    private final RInstruction[] instructions;
+    private final Map<PsiElement, RInstruction> elementInstructions;
+
+
+    RControlFlow(@NotNull PsiElement owner, @NotNull RInstruction[] instructions, @NotNull Map<PsiElement, RInstruction> elementInstructions) {
+        this.owner = owner;
+        this.instructions = instructions;
+        this.elementInstructions = elementInstructions;
+    }
+
+
+    /**
+     * Returns the control flow of the function or the file which contains the given element.
+     */
+    @NotNull
+    public static RControlFlow getControlFlow(@NotNull PsiElement element) {
+        RFunctionExpression function = PsiTreeUtil.getParentOfType(element, RFunctionExpression.class);
+        return getInstance(function != null ? function : element.getContainingFile());
+    }
+
+
+    /**
+     * Returns the control flow of a function expression or a file.
+     */
+    @NotNull
+    public static RControlFlow getInstance(@NotNull PsiElement owner) {
+        return CachedValuesManager.getCachedValue(owner, () ->
+                CachedValueProvider.Result.create(new RControlFlowBuilder().build(owner), owner.getContainingFile()));
+    }
+
+
+    @NotNull
+    public PsiElement getOwner() {
+        return owner;
+    }
+
+
+    @NotNull
+    public List<RInstruction> getInstructions() {
+        return Collections.unmodifiableList(Arrays.asList(instructions));
+    }
+
+
+    public int size() {
+        return instructions.length;
+    }
+
+
+    @NotNull
+    public RInstruction getEntry() {
+        return instructions[0];
+    }
+
+
+    @NotNull
+    public RInstruction getExit() {
+        return instructions[instructions.length - 1];
+    }
+
+
+    /**
+     * Returns the read instruction of a reference expression or the write instruction of an assignment, or
+     * <code>null</code> if the element is not part of this control flow.
+     */
+    @Nullable
+    public RInstruction getInstruction(@NotNull PsiElement element) {
+        return elementInstructions.get(element);
+    }
+
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        for (RInstruction instruction : instructions) {
+            sb.append(instruction).append(" ->");
+            for (RInstruction successor : instruction.getSuccessors()) {
+                sb.append(" ").append(successor.getIndex());
+            }
+            sb.append("\n");
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,268 @@
+package com.r4intellij.controlflow;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.r4intellij.psi.api.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Builds the control flow graph of a function body or a file in a single walk over its expressions. Expressions are
+ * evaluated in the order of R: operands from left to right, the callee before its arguments and the assigned value
+ * before the assignment itself.
+ * <p>
+ * Calls of <code>return</code> continue at the exit, <code>break</code> and <code>next</code> at the end and the head
+ * of the innermost loop. Arguments of calls are treated as if they were evaluated eagerly.
+ *
+ * @author Holger Brandl
+ */
+class RControlFlowBuilder {
+
+    private final List<RInstruction> instructions = new ArrayList<>();
+    private final Map<PsiElement, RInstruction> elementInstructions = new HashMap<>();
+
+    private final Deque<LoopContext> loops = new ArrayDeque<>();
+    private final List<RInstruction> returns = new ArrayList<>();
+
+    // the instruction which is executed last, or null if the current position is unreachable
+    @Nullable
+    private RInstruction current;
+
+
+    @NotNull
+    RControlFlow build(@NotNull PsiElement owner) {
+        current = addInstruction(RInstruction.Kind.ENTRY, owner);
+
+        if (owner instanceof RFunctionExpression) {
+            process(((RFunctionExpression) owner).getExpression());
+        } else {
+            processSequence(PsiTreeUtil.getChildrenOfType(owner, RExpression.class));
+        }
+
+        RInstruction exit = addInstruction(RInstruction.Kind.EXIT, owner);
+        returns.forEach(returnPoint -> returnPoint.addSuccessor(exit));
+
+        return new RControlFlow(owner, instructions.toArray(new RInstruction[instructions.size()]), elementInstructions);
+    }
+
+
+    private RInstruction addInstruction(RInstruction.Kind kind, @Nullable PsiElement element) {
+        RInstruction instruction = new RInstruction(instructions.size(), kind, element);
+        instructions.add(instruction);
+
+        if (current != null) current.addSuccessor(instruction);
+        current = instruction;
+
+        return instruction;
+    }
+
+
+    /**
+     * Adds a join point of the given instructions and continues with it. The current position becomes unreachable if
+     * none of them is reachable.
+     */
+    private RInstruction join(RInstruction... predecessors) {
+        return join(Arrays.asList(predecessors));
+    }
+
+
+    private RInstruction join(Collection<RInstruction> predecessors) {
+        current = null;
+        RInstruction node = addInstruction(RInstruction.Kind.NODE, null);
+
+        boolean reachable = false;
+        for (RInstruction predecessor : predecessors) {
+            if (predecessor == null) continue;
+
+            predecessor.addSuccessor(node);
+            reachable = true;
+        }
+
+        current = reachable ? node : null;
+        return node;
+    }
+
+
+    private void processSequence(@Nullable RExpression[] expressions) {
+        if (expressions != null) processSequence(Arrays.asList(expressions));
+    }
+
+
+    private void processSequence(@NotNull List<? extends RPsiElement> expressions) {
+        for (RPsiElement expression : expressions) {
+            process(expression);
+        }
+    }
+
+
+    private void process(@Nullable RPsiElement element) {
+        if (element == null) return;
+
+        if (element instanceof RReferenceExpression) {
+            elementInstructions.put(element, addInstruction(RInstruction.Kind.READ, element));
+
+        } else if (element instanceof RAssignmentStatement) {
+            RAssignmentStatement assignment = (RAssignmentStatement) element;
+            process(assignment.getAssignedValue());
+            elementInstructions.put(element, addInstruction(RInstruction.Kind.WRITE, element));
+
+        } else if (element instanceof RIfStatement) {
+            processIf((RIfStatement) element);
+
+        } else if (element instanceof RForStatement) {
+            processFor((RForStatement) element);
+
+        } else if (element instanceof RWhileStatement) {
+            processWhile((RWhileStatement) element);
+
+        } else if (element instanceof RRepeatStatement) {
+            processRepeat((RRepeatStatement) element);
+
+        } else if (element instanceof RBreakStatement) {
+            if (!loops.isEmpty() && current != null) loops.peek().breaks.add(current);
+            current = null;
+
+        } else if (element instanceof RNextStatement) {
+            if (!loops.isEmpty() && current != null) current.addSuccessor(loops.peek().head);
+            current = null;
+
+        } else if (element instanceof RCallExpression) {
+            processCall((RCallExpression) element);
+
+        } else if (element instanceof RBlockExpression) {
+            processSequence(((RBlockExpression) element).getExpressionList());
+
+        } else if (element instanceof ROperatorExpression) {
+            processSequence(PsiTreeUtil.getChildrenOfType(element, RExpression.class));
+
+        } else if (element instanceof RTildeExpression) {
+            // formulae are not evaluated right away, but their symbols are still read from the scope later on
+            processSequence(((RTildeExpression) element).getExpressionList());
+
+        } else if (element instanceof RUnaryTildeExpression) {
+            process(((RUnaryTildeExpression) element).getExpression());
+
+        } else if (element instanceof RHelpExpression) {
+            process(((RHelpExpression) element).getExpression());
+
+        } else if (element instanceof RParenthesizedExpression) {
+            process(((RParenthesizedExpression) element).getExpression());
+
+        } else if (element instanceof RSubscriptionExpression) {
+            processSequence(((RSubscriptionExpression) element).getExpressionList());
+
+        } else if (element instanceof RMemberExpression) {
+            process(((RMemberExpression) element).getExpression());
+
+        } else if (element instanceof RAtExpression) {
+            process(((RAtExpression) element).getExpression());
+        }
+
+        // function expressions and literals do not contribute to the control flow of their scope
+    }
+
+
+    private void processIf(RIfStatement ifStatement) {
+        List<RExpression> expressions = ifStatement.getExpressionList();
+        if (expressions.isEmpty()) return;
+
+        process(expressions.get(0));
+        RInstruction afterCondition = current;
+
+        if (expressions.size() > 1) process(expressions.get(1));
+        RInstruction afterThen = current;
+
+        current = afterCondition;
+        if (expressions.size() > 2) process(expressions.get(2));
+        RInstruction afterElse = current;
+
+        join(afterThen, afterElse);
+    }
+
+
+    private void processFor(RForStatement forStatement) {
+        process(forStatement.getRange());
+
+        RInstruction head = join(current);
+        addInstruction(RInstruction.Kind.LOOP_TARGET, forStatement);
+
+        LoopContext loop = processLoopBody(head, forStatement.getBody());
+
+        List<RInstruction> exits = new ArrayList<>(loop.breaks);
+        exits.add(head);
+        join(exits);
+    }
+
+
+    private void processWhile(RWhileStatement whileStatement) {
+        List<RExpression> expressions = whileStatement.getExpressionList();
+
+        RInstruction head = join(current);
+        if (!expressions.isEmpty()) process(expressions.get(0));
+        RInstruction afterCondition = current;
+
+        LoopContext loop = processLoopBody(head, expressions.size() > 1 ? expressions.get(1) : null);
+
+        List<RInstruction> exits = new ArrayList<>(loop.breaks);
+        exits.add(afterCondition);
+        join(exits);
+    }
+
+
+    private void processRepeat(RRepeatStatement repeatStatement) {
+        RInstruction head = join(current);
+
+        LoopContext loop = processLoopBody(head, repeatStatement.getExpression());
+
+        // a repeat without break is either left by a return or an error, or does not terminate at all. We still
+        // continue after the loop to analyze the remaining code.
+        join(loop.breaks.isEmpty() ? Collections.singletonList(head) : loop.breaks);
+    }
+
+
+    private LoopContext processLoopBody(RInstruction head, @Nullable RExpression body) {
+        LoopContext loop = new LoopContext(head);
+
+        loops.push(loop);
+        process(body);
+        loops.pop();
+
+        if (current != null) current.addSuccessor(head);
+        current = null;
+
+        return loop;
+    }
+
+
+    private void processCall(RCallExpression callExpression) {
+        process(callExpression.getExpression());
+
+        for (RExpression argument : callExpression.getArgumentList().getExpressionList()) {
+            // named arguments are not assignments within the scope of the call
+            if (argument instanceof RAssignmentStatement) {
+                process(((RAssignmentStatement) argument).getAssignedValue());
+            } else {
+                process(argument);
+            }
+        }
+
+        if ("return".equals(callExpression.getExpression().getText())) {
+            if (current != null) returns.add(current);
+            current = null;
+        }
+    }
+
+
+    private static class LoopContext {
+
+        final RInstruction head;
+        final List<RInstruction> breaks = new ArrayList<>();
+
+
+        LoopContext(RInstruction head) {
+            this.head = head;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.r4intellij.controlflow;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Forward worklist solver for data-flow analyses whose states are bitsets. Instructions are initially queued in their
+ * creation order, which follows the order of evaluation, so that acyclic code is solved with a single transfer per
+ * instruction and loops just require revisiting their bodies until the states are stable.
+ *
+ * @author Holger Brandl
+ */
+public class RDataFlowSolver {
+
+    private static final Logger LOG = Logger.getInstance("#" + RDataFlowSolver.class.getName());
+
+    // safety net for non-monotonic analyses, which would otherwise not terminate
+    private static final int MAX_VISITS_PER_INSTRUCTION = 100;
+
+
+    /**
+     * A forward data-flow problem over a bitset lattice.
+     */
+    public interface Analysis {
+
+        /**
+         * The state at the entry of the control flow.
+         */
+        @NotNull
+        BitSet getInitialState();
+
+
+        /**
+         * Merges the state of another predecessor into the given state of a join point.
+         */
+        void join(@NotNull BitSet state, @NotNull BitSet otherState);
+
+
+        /**
+         * Applies the effect of an instruction to its input state, which is a private copy and can be modified.
+         */
+        @NotNull
+        BitSet transfer(@NotNull RInstruction instruction, @NotNull BitSet state);
+    }
+
+
+    /**
+     * The solved states of a control flow. Unreachable instructions have no states.
+     */
+    public static class Result {
+
+        private final BitSet[] inStates;
+        private final BitSet[] outStates;
+
+
+        private Result(BitSet[] inStates, BitSet[] outStates) {
+            this.inStates = inStates;
+            this.outStates = outStates;
+        }
+
+
+        /**
+         * The state before the given instruction is executed, or <code>null</code> if it is unreachable.
+         */
+        @Nullable
+        public BitSet getIn(@NotNull RInstruction instruction) {
+            return inStates[instruction.getIndex()];
+        }
+
+
+        /**
+         * The state after the given instruction was executed, or <code>null</code> if it is unreachable.
+         */
+        @Nullable
+        public BitSet getOut(@NotNull RInstruction instruction) {
+            return outStates[instruction.getIndex()];
+        }
+    }
+
+
+    @NotNull
+    public static Result solve(@NotNull RControlFlow controlFlow, @NotNull Analysis analysis) {
+        List<RInstruction> instructions = controlFlow.getInstructions();
+
+        BitSet[] inStates = new BitSet[instructions.size()];
+        BitSet[] outStates = new BitSet[instructions.size()];
+        int[] visits = new int[instructions.size()];
+
+        Deque<RInstruction> worklist = new ArrayDeque<>(instructions);
+        BitSet queued = new BitSet(instructions.size());
+        queued.set(0, instructions.size());
+
+        RInstruction entry = controlFlow.getEntry();
+
+        while (!worklist.isEmpty()) {
+            RInstruction instruction = worklist.poll();
+            int index = instruction.getIndex();
+            queued.clear(index);
+
+            BitSet inState = instruction == entry ? analysis.getInitialState() : joinPredecessors(instruction, outStates, analysis);
+            if (inState == null) continue; // not reachable (yet)
+
+            if (++visits[index] > MAX_VISITS_PER_INSTRUCTION) {
+                LOG.warn("data-flow analysis did not converge in " + controlFlow.getOwner().getContainingFile());
+                break;
+            }
+
+            inStates[index] = inState;
+            BitSet outState = analysis.transfer(instruction, (BitSet) inState.clone());
+
+            if (outState.equals(outStates[index])) continue;
+            outStates[index] = outState;
+
+            for (RInstruction successor : instruction.getSuccessors()) {
+                if (!queued.get(successor.getIndex())) {
+                    queued.set(successor.getIndex());
+                    worklist.add(successor);
+                }
+            }
+        }
+
+        return new Result(inStates, outStates);
+    }
+
+
+    @Nullable
+    private static BitSet joinPredecessors(RInstruction instruction, BitSet[] outStates, Analysis analysis) {
+        BitSet joined = null;
+
+        for (RInstruction predecessor : instruction.getPredecessors()) {
+            BitSet predecessorState = outStates[predecessor.getIndex()];
+            if (predecessorState == null) continue;
+
+            if (joined == null) {
+                joined = (BitSet) predecessorState.clone();
+            } else {
+                analysis.join(joined, predecessorState);
+            }
+        }
+
+        return joined;
+    }
+}
@@ -0,0 +1,130 @@
+package com.r4intellij.controlflow;
+
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiRecursiveElementWalkingVisitor;
+import com.intellij.psi.tree.TokenSet;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.r4intellij.psi.api.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.r4intellij.parsing.RElementTypes.R_LEFT_COMPLEX_ASSIGN;
+import static com.r4intellij.parsing.RElementTypes.R_RIGHT_COMPLEX_ASSIGN;
+
+/**
+ * Def-use chains of a control flow on top of its {@link RReachingDefinitions}. A definition is used if it reaches a
+ * read of its symbol or a partial update like <code>x$a <- 1</code>, which reads the former value of the symbol.
+ * <p>
+ * Symbols which are read by nested functions or called as infix operators may be read whenever the function or the
+ * operator is evaluated, so all their definitions are considered as used. The same applies to definitions which are
+ * not local to the control flow, i.e. super-assignments with <code>&lt;&lt;-</code>.
+ *
+ * @author Holger Brandl
+ */
+public class RDefinitionUsages {
+
+    private static final Key<RDefinitionUsages> DEFINITION_USAGES = Key.create("R.definitionUsages");
+
+    private static final TokenSet SUPER_ASSIGNMENTS = TokenSet.create(R_LEFT_COMPLEX_ASSIGN, R_RIGHT_COMPLEX_ASSIGN);
+
+    private final BitSet used = new BitSet();
+
+
+    private RDefinitionUsages(@NotNull RControlFlow controlFlow) {
+        RReachingDefinitions reachingDefinitions = RReachingDefinitions.getInstance(controlFlow);
+        Set<String> escapingNames = getEscapingNames(controlFlow.getOwner());
+
+        for (RInstruction instruction : controlFlow.getInstructions()) {
+            switch (instruction.getKind()) {
+                case READ:
+                    String readName = ((RReferenceExpression) instruction.getElement()).getName();
+                    markUsed(reachingDefinitions.getReachingDefinitions(instruction, readName));
+                    break;
+
+                case WRITE:
+                    String name = RReachingDefinitions.getDefinedName(instruction);
+                    if (name == null) break;
+
+                    RAssignmentStatement assignment = (RAssignmentStatement) instruction.getElement();
+
+                    if (escapingNames.contains(name) || assignment.getNode().findChildByType(SUPER_ASSIGNMENTS) != null) {
+                        used.set(instruction.getIndex());
+                    }
+
+                    if (!(assignment.getAssignee() instanceof RReferenceExpression)) {
+                        markUsed(reachingDefinitions.getReachingDefinitions(instruction, name));
+                    }
+                    break;
+
+                case LOOP_TARGET:
+                    if (escapingNames.contains(RReachingDefinitions.getDefinedName(instruction))) {
+                        used.set(instruction.getIndex());
+                    }
+                    break;
+            }
+        }
+    }
+
+
+    @NotNull
+    public static RDefinitionUsages getInstance(@NotNull RControlFlow controlFlow) {
+        RDefinitionUsages definitionUsages = controlFlow.getUserData(DEFINITION_USAGES);
+
+        if (definitionUsages == null) {
+            definitionUsages = controlFlow.putUserDataIfAbsent(DEFINITION_USAGES, new RDefinitionUsages(controlFlow));
+        }
+
+        return definitionUsages;
+    }
+
+
+    /**
+     * Returns <code>true</code> if the given write or loop target instruction may be read afterwards.
+     */
+    public boolean isUsed(@NotNull RInstruction definition) {
+        return used.get(definition.getIndex());
+    }
+
+
+    private void markUsed(@NotNull List<RInstruction> definitions) {
+        for (RInstruction definition : definitions) {
+            used.set(definition.getIndex());
+        }
+    }
+
+
+    /**
+     * Collects the symbols of a control flow owner which are read outside of its own control flow.
+     */
+    private static Set<String> getEscapingNames(@NotNull PsiElement owner) {
+        Set<String> names = new HashSet<>();
+
+        owner.acceptChildren(new PsiRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitElement(PsiElement element) {
+                if (element instanceof ROperator) {
+                    names.add(element.getText());
+                }
+
+                if (element instanceof RReferenceExpression &&
+                        PsiTreeUtil.getParentOfType(element, RFunctionExpression.class) != getOwnerFunction(owner)) {
+                    names.add(((RReferenceExpression) element).getName());
+                }
+
+                super.visitElement(element);
+            }
+        });
+
+        return names;
+    }
+
+
+    private static RFunctionExpression getOwnerFunction(@NotNull PsiElement owner) {
+        return owner instanceof RFunctionExpression ? (RFunctionExpression) owner : null;
+    }
+}
@@ -0,0 +1,104 @@
+package com.r4intellij.controlflow;
+
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A node of the control flow graph of a function body or a script.
+ *
+ * @author Holger Brandl
+ */
+public class RInstruction {
+
+    public enum Kind {
+        ENTRY,
+        EXIT,
+        /**
+         * A read of a reference expression.
+         */
+        READ,
+        /**
+         * An assignment statement, which is executed after its assigned value.
+         */
+        WRITE,
+        /**
+         * The assignment of the loop variable of a for statement before each iteration.
+         */
+        LOOP_TARGET,
+        /**
+         * A join point without any effect like a loop head or the end of an if statement.
+         */
+        NODE
+    }
+
+
+    private final int index;
+    private final Kind kind;
+    private final PsiElement element;
+
+    private final List<RInstruction> successors = new ArrayList<>(2);
+    private final List<RInstruction> predecessors = new ArrayList<>(2);
+
+
+    RInstruction(int index, @NotNull Kind kind, @Nullable PsiElement element) {
+        this.index = index;
+        this.kind = kind;
+        this.element = element;
+    }
+
+
+    void addSuccessor(@NotNull RInstruction successor) {
+        if (successors.contains(successor)) return;
+
+        successors.add(successor);
+        successor.predecessors.add(this);
+    }
+
+
+    /**
+     * The position of the instruction within {@link RControlFlow#getInstructions()}, which can be used as index into
+     * per-instruction data-flow states.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+
+    @NotNull
+    public Kind getKind() {
+        return kind;
+    }
+
+
+    /**
+     * The reference expression of a read, the assignment statement of a write, the for statement of a loop target
+     * and the owner of the control flow for the entry and the exit.
+     */
+    @Nullable
+    public PsiElement getElement() {
+        return element;
+    }
+
+
+    @NotNull
+    public List<RInstruction> getSuccessors() {
+        return Collections.unmodifiableList(successors);
+    }
+
+
+    @NotNull
+    public List<RInstruction> getPredecessors() {
+        return Collections.unmodifiableList(predecessors);
+    }
+
+
+    @Override
+    public String toString() {
+        return index + ": " + kind + (element != null && kind != Kind.ENTRY && kind != Kind.EXIT ? " " + element.getText() : "");
+    }
+}
@@ -0,0 +1,160 @@
+package com.r4intellij.controlflow;
+
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.PsiElement;
+import com.r4intellij.psi.api.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Reaching definitions of a control flow. A definition is an assignment or a for loop target which (re)defines a
+ * symbol, including partial updates like <code>x$a <- 1</code>, <code>x[1] <- 1</code> or
+ * <code>class(x) <- "foo"</code>. Each definition kills all other definitions of the same symbol.
+ * <p>
+ * The definitions are solved once per control flow and are attached to it.
+ *
+ * @author Holger Brandl
+ */
+public class RReachingDefinitions {
+
+    private static final Key<RReachingDefinitions> REACHING_DEFINITIONS = Key.create("R.reachingDefinitions");
+
+    private final List<RInstruction> definitions = new ArrayList<>();
+    private final Map<String, BitSet> definitionsByName = new HashMap<>();
+    private final RDataFlowSolver.Result result;
+
+
+    private RReachingDefinitions(@NotNull RControlFlow controlFlow) {
+        int[] definitionIndices = new int[controlFlow.size()];
+        Arrays.fill(definitionIndices, -1);
+
+        List<String> definedNames = new ArrayList<>();
+
+        for (RInstruction instruction : controlFlow.getInstructions()) {
+            String name = getDefinedName(instruction);
+            if (name == null) continue;
+
+            definitionIndices[instruction.getIndex()] = definitions.size();
+            definitionsByName.computeIfAbsent(name, key -> new BitSet()).set(definitions.size());
+            definitions.add(instruction);
+            definedNames.add(name);
+        }
+
+        result = RDataFlowSolver.solve(controlFlow, new RDataFlowSolver.Analysis() {
+            @NotNull
+            @Override
+            public BitSet getInitialState() {
+                return new BitSet();
+            }
+
+
+            @Override
+            public void join(@NotNull BitSet state, @NotNull BitSet otherState) {
+                state.or(otherState);
+            }
+
+
+            @NotNull
+            @Override
+            public BitSet transfer(@NotNull RInstruction instruction, @NotNull BitSet state) {
+                int definitionIndex = definitionIndices[instruction.getIndex()];
+
+                if (definitionIndex >= 0) {
+                    state.andNot(definitionsByName.get(definedNames.get(definitionIndex)));
+                    state.set(definitionIndex);
+                }
+
+                return state;
+            }
+        });
+    }
+
+
+    @NotNull
+    public static RReachingDefinitions getInstance(@NotNull RControlFlow controlFlow) {
+        RReachingDefinitions reachingDefinitions = controlFlow.getUserData(REACHING_DEFINITIONS);
+
+        if (reachingDefinitions == null) {
+            reachingDefinitions = controlFlow.putUserDataIfAbsent(REACHING_DEFINITIONS, new RReachingDefinitions(controlFlow));
+        }
+
+        return reachingDefinitions;
+    }
+
+
+    /**
+     * Returns the definitions of a symbol which may reach the given instruction before it is executed. The result is
+     * empty if the instruction is unreachable or if the symbol is not defined within the control flow.
+     */
+    @NotNull
+    public List<RInstruction> getReachingDefinitions(@NotNull RInstruction instruction, @NotNull String name) {
+        BitSet inState = result.getIn(instruction);
+        BitSet nameDefinitions = definitionsByName.get(name);
+
+        if (inState == null || nameDefinitions == null) return Collections.emptyList();
+
+        BitSet reaching = (BitSet) nameDefinitions.clone();
+        reaching.and(inState);
+
+        List<RInstruction> reachingDefinitions = new ArrayList<>(reaching.cardinality());
+        for (int i = reaching.nextSetBit(0); i >= 0; i = reaching.nextSetBit(i + 1)) {
+            reachingDefinitions.add(definitions.get(i));
+        }
+
+        return reachingDefinitions;
+    }
+
+
+    /**
+     * Returns <code>false</code> if the given instruction can not be reached from the entry of the control flow.
+     */
+    public boolean isReachable(@NotNull RInstruction instruction) {
+        return result.getIn(instruction) != null;
+    }
+
+
+    /**
+     * Returns the name of the symbol which is (re)defined by a write or loop target instruction, or <code>null</code>
+     * if the instruction is not a definition.
+     */
+    @Nullable
+    public static String getDefinedName(@NotNull RInstruction instruction) {
+        PsiElement element = instruction.getElement();
+
+        if (instruction.getKind() == RInstruction.Kind.LOOP_TARGET) {
+            RExpression target = ((RForStatement) element).getTarget();
+            return target instanceof RReferenceExpression ? target.getName() : null;
+        }
+
+        if (instruction.getKind() != RInstruction.Kind.WRITE) return null;
+
+        PsiElement assignee = ((RAssignmentStatement) element).getAssignee();
+
+        if (assignee instanceof RReferenceExpression) {
+            return ((RReferenceExpression) assignee).getName();
+        }
+
+        // x$y but not f()$y
+        if (assignee instanceof RMemberExpression) {
+            RExpression base = ((RMemberExpression) assignee).getExpression();
+            return base instanceof RReferenceExpression ? base.getName() : null;
+        }
+
+        if (assignee instanceof RSubscriptionExpression) {
+            List<RExpression> expressions = ((RSubscriptionExpression) assignee).getExpressionList();
+            return !expressions.isEmpty() && expressions.get(0) instanceof RReferenceExpression ?
+                    expressions.get(0).getName() : null;
+        }
+
+        // replacement functions like class(x) <- "foo"
+        if (assignee instanceof RCallExpression) {
+            List<RExpression> arguments = ((RCallExpression) assignee).getArgumentList().getExpressionList();
+            return !arguments.isEmpty() && arguments.get(0) instanceof RReferenceExpression ?
+                    arguments.get(0).getName() : null;
+        }
+
+        return null;
+    }
+}
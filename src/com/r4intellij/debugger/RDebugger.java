@@ -1,6 +1,7 @@
 package com.r4intellij.debugger;
 
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.r4intellij.debugger.data.RLocation;
 import com.r4intellij.debugger.evaluator.RDebuggerEvaluatorFactory;
@@ -18,6 +19,7 @@ import com.r4intellij.debugger.function.RFunctionDebuggerHandler;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -25,6 +27,7 @@ import java.util.List;
 
 import static com.r4intellij.debugger.data.RCommands.SYS_NFRAME_COMMAND;
 import static com.r4intellij.debugger.data.RCommands.bodyCommand;
+import static com.r4intellij.debugger.data.RCommands.evalFileCommand;
 import static com.r4intellij.debugger.data.RFunctionConstants.MAIN_FUNCTION_NAME;
 import static com.r4intellij.debugger.executor.RExecutionResultType.*;
 import static com.r4intellij.debugger.executor.RExecutorUtils.execute;
@@ -35,6 +38,9 @@ public class RDebugger implements RFunctionDebuggerHandler {
     @NotNull
     private static final Logger LOGGER = Logger.getInstance(RDebugger.class);
 
+    // longer scripts are submitted as a file, so that startup doesn't take a round trip per line
+    private static final int MAX_LINE_BY_LINE_SCRIPT_LENGTH = 50;
+
     @NotNull
     private final RExecutor myExecutor;
 
@@ -232,19 +238,64 @@ public class RDebugger implements RFunctionDebuggerHandler {
 
 
     private void submitMainFunction() throws RDebuggerException {
+        final List<String> lines = readScript();
+
+        if (lines.size() > MAX_LINE_BY_LINE_SCRIPT_LENGTH) {
+            submitMainFunctionFromFile(lines);
+            return;
+        }
+
         execute(myExecutor, MAIN_FUNCTION_NAME + " <- function() {", PLUS, myOutputReceiver);
 
+        for (final String line : lines) {
+            execute(myExecutor, line, PLUS, myOutputReceiver);
+        }
+
+        execute(myExecutor, "}", EMPTY, myOutputReceiver);
+    }
+
+
+    /**
+     * Defines the main function with a single command instead of a round trip per line, the function body keeps the
+     * line numbers it would have when entered line by line.
+     */
+    private void submitMainFunctionFromFile(@NotNull final List<String> lines) throws RDebuggerException {
+        final File file;
+
+        try {
+            file = FileUtil.createTempFile("r4intellij-main", ".R", true);
+
+            FileUtil.writeToFile(
+                    file,
+                    MAIN_FUNCTION_NAME + " <- function() {\n" + StringUtil.join(lines, "\n") + "\n}\n"
+            );
+        } catch (final IOException e) {
+            throw new RDebuggerException(e);
+        }
+
         try {
-            String command;
+            execute(myExecutor, evalFileCommand(FileUtil.toSystemIndependentName(file.getPath())), EMPTY, myOutputReceiver);
+        } finally {
+            FileUtil.delete(file);
+        }
+    }
 
-            while ((command = myScriptReader.readLine()) != null) {
-                execute(myExecutor, command, PLUS, myOutputReceiver);
+
+    @NotNull
+    private List<String> readScript() throws RDebuggerException {
+        final List<String> result = new ArrayList<String>();
+
+        try {
+            String line;
+
+            while ((line = myScriptReader.readLine()) != null) {
+                result.add(line);
             }
         } catch (final IOException e) {
             throw new RDebuggerException(e);
         }
 
-        execute(myExecutor, "}", EMPTY, myOutputReceiver);
+        return result;
     }
 
 
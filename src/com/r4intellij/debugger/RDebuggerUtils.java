@@ -56,7 +56,7 @@ public final class RDebuggerUtils {
 
     @NotNull
     public static String calculateValueCommand(final int frameNumber, @NotNull final String var) {
-        final String globalVar = expressionOnFrameCommand(frameNumber, var);
+        final String globalVar = variableOnFrameCommand(frameNumber, var);
 
         final String isFunction = typeOfCommand(globalVar) + " == \"" + CLOSURE + "\"";
         final String isDebugged = isDebuggedCommand(globalVar);
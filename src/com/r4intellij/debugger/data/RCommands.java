@@ -2,6 +2,9 @@ package com.r4intellij.debugger.data;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collections;
+import java.util.Map;
+
 public final class RCommands {
 
     @NotNull
@@ -41,6 +44,177 @@ public final class RCommands {
     }
 
 
+    /**
+     * Prints all variables of a frame at once, see {@link #writeVarCommand} for the format.
+     *
+     * @param budget the number of preview characters after which just the headers of the remaining variables are
+     *               printed
+     */
+    @NotNull
+    public static String frameVarsCommand(final int frameNumber, final int maxLines, final int maxLineLength, final int budget) {
+        return frameVarsCommand(frameNumber, maxLines, maxLineLength, budget, Collections.<String, String>emptyMap());
+    }
+
+
+    /**
+     * Prints the variables of a frame like {@link #frameVarsCommand(int, int, int, int)}, but just writes a line
+     * <code>FRAME_CACHED_VAR_TAG name</code> for the variables whose digest is the same as the known one.
+     * <p>
+     * The digest is computed on the R side from the type, class and shape of a value and a hash of its serialized
+     * form, so it is cheap compared to printing the value. The hash is taken from <code>digest::digest</code> if the
+     * package is installed and from <code>tools::md5sum</code> otherwise. Values larger than 64 KB are only hashed by
+     * their head, which covers their preview, and their tail. Function digests leave out the enclosing environment.
+     *
+     * @param knownDigests digests of the variables which were loaded before, by name
+     */
+    @NotNull
+    public static String frameVarsCommand(final int frameNumber,
+                                          final int maxLines,
+                                          final int maxLineLength,
+                                          final int budget,
+                                          @NotNull final Map<String, String> knownDigests) {
+        final int maxElements = maxPreviewElements(maxLines);
+
+        return "invisible(local({" +
+                ".e <- " + sysFrameCommand(frameNumber) + "; " +
+                ".b <- 0; " +
+                ".kh <- " + characterVectorCommand(knownDigests) + "; " +
+                ".tf <- tempfile(); " +
+                ".dg <- if (requireNamespace(\"digest\", quietly = TRUE)) function(x) digest::digest(x) " +
+                "else function(x) { writeBin(serialize(x, NULL), .tf); unname(tools::md5sum(.tf)) }; " +
+                "for (.n in ls(.e)) {" +
+                ".v <- tryCatch(get(.n, envir = .e), error = function(e) e); " +
+                ".h <- tryCatch({" +
+                ".x <- if (is.function(.v)) list(formals(.v), body(.v), typeof(.v) == \"" + RLanguageConstants.CLOSURE + "\" && isdebugged(.v)) " +
+                "else if (is.environment(.v)) format(.v) " +
+                "else if (object.size(.v) > 65536) list(head(.v, " + maxElements + "), tail(.v, " + maxElements + ")) " +
+                "else .v; " +
+                "paste(typeof(.v), class(.v)[1], length(.v), paste(dim(.v), collapse = \"x\"), .dg(.x), sep = \":\")" +
+                "}, error = function(e) \"\"); " +
+                "if (nzchar(.h) && identical(unname(.kh[.n]), .h)) { " +
+                "writeLines(paste(\"" + RResponseConstants.FRAME_CACHED_VAR_TAG + "\", .n, sep = \"\\t\")); next } " +
+                writeVarCommand(maxLines, maxLineLength, budget) +
+                "}; " +
+                "unlink(.tf)}))";
+    }
+
+
+    /**
+     * Prints the rows of a matrix or data frame respectively the elements of a list or vector, starting at the
+     * zero-based <code>offset</code>. The format is the same as for {@link #frameVarsCommand}.
+     */
+    @NotNull
+    public static String elementsCommand(@NotNull final String expression,
+                                         final int offset,
+                                         final int count,
+                                         final int maxLines,
+                                         final int maxLineLength,
+                                         final int budget) {
+        return "invisible(local({" +
+                ".x <- " + expression + "; " +
+                ".b <- 0; " +
+                ".r <- length(dim(.x)) == 2; " +
+                ".m <- min(" + (offset + count) + ", if (.r) nrow(.x) else length(.x)); " +
+                "for (.i in seq_len(max(0, .m - " + offset + ")) + " + offset + ") {" +
+                "if (.r) { .n <- paste0(\"[\", .i, \",]\"); .v <- .x[.i, , drop = FALSE] } " +
+                "else if (is.list(.x)) { .nm <- names(.x)[.i]; " +
+                ".n <- if (length(.nm) == 1 && !is.na(.nm) && nzchar(.nm)) paste0(\"$\", .nm) else paste0(\"[[\", .i, \"]]\"); " +
+                ".v <- .x[[.i]] } " +
+                "else { .n <- paste0(\"[\", .i, \"]\"); .v <- .x[.i] }; " +
+                ".h <- \"\"; " +
+                writeVarCommand(maxLines, maxLineLength, budget) +
+                "}}))";
+    }
+
+
+    /**
+     * Writes the variable <code>.v</code> named <code>.n</code>. Each variable starts with a header line
+     * <code>FRAME_VAR_TAG name type class size pager lines truncated digest</code> (separated by tabs) which is
+     * followed by the preview lines. The size is the number of rows of matrices and data frames and the length
+     * otherwise. The pager tells whether the value can be expanded by <code>rows</code> or by <code>elements</code>.
+     * The digest is taken from <code>.h</code> and is empty if the value shouldn't be cached.
+     * <p>
+     * Previews are bounded: matrices and data frames just show their dimensions and first rows, lists their
+     * structure and vectors their first elements. The number of preview characters written so far is tracked in
+     * <code>.b</code>, and once it exceeds the budget just the headers are written.
+     */
+    @NotNull
+    private static String writeVarCommand(final int maxLines, final int maxLineLength, final int budget) {
+        final int maxElements = maxPreviewElements(maxLines);
+
+        return ".t <- typeof(.v); " +
+                "if (.t == \"" + RLanguageConstants.CLOSURE + "\" && isdebugged(.v)) .v <- attr(.v, \"original\"); " +
+                ".c <- class(.v)[1]; " +
+                ".d <- dim(.v); " +
+                ".s <- if (length(.d) == 2) .d[1] else length(.v); " +
+                ".p <- if (length(.d) == 2) { if (.d[1] > 1) \"rows\" else \"\" } " +
+                "else if (is.list(.v) || (is.atomic(.v) && length(.v) > 1)) \"elements\" else \"\"; " +
+                ".k <- .b > " + budget + "; " +
+                ".o <- if (.k) character(0) else tryCatch(capture.output(" +
+                "if (length(.d) == 2) { cat(.c, \" \", .d[1], \" x \", .d[2], \"\\n\", sep = \"\"); print(head(.v, " + maxLines + ")) } " +
+                "else if (is.list(.v)) str(.v, max.level = 1, list.len = " + maxLines + ", give.attr = FALSE) " +
+                "else if (is.atomic(.v)) print(head(.v, " + maxElements + ")) " +
+                "else print(.v)" +
+                "), error = function(e) conditionMessage(e)); " +
+                ".k <- .k || (length(.d) == 2 && .d[1] > " + maxLines + ") || (length(.d) != 2 && is.list(.v)) || " +
+                "(is.atomic(.v) && length(.v) > " + maxElements + ") || length(.o) > " + maxLines + " || any(nchar(.o, type = \"bytes\", allowNA = TRUE) > " + maxLineLength + "); " +
+                ".o <- substr(head(.o, " + maxLines + "), 1, " + maxLineLength + "); " +
+                ".b <- .b + sum(nchar(.o, type = \"bytes\", allowNA = TRUE)); " +
+                "writeLines(paste(\"" + RResponseConstants.FRAME_VAR_TAG + "\", .n, .t, .c, .s, .p, length(.o), .k, .h, sep = \"\\t\")); " +
+                "writeLines(.o)";
+    }
+
+
+    /**
+     * Number of elements shown in the preview of a vector.
+     */
+    private static int maxPreviewElements(final int maxLines) {
+        return 10 * maxLines;
+    }
+
+
+    /**
+     * Named character vector of the given values, e.g. <code>c("a" = "x", "b" = "y")</code>.
+     */
+    @NotNull
+    private static String characterVectorCommand(@NotNull final Map<String, String> values) {
+        if (values.isEmpty()) {
+            return "character(0)";
+        }
+
+        final StringBuilder sb = new StringBuilder("c(");
+
+        for (final Map.Entry<String, String> entry : values.entrySet()) {
+            if (sb.length() > 2) {
+                sb.append(", ");
+            }
+
+            sb.append(quote(entry.getKey())).append(" = ").append(quote(entry.getValue()));
+        }
+
+        return sb.append(")").toString();
+    }
+
+
+    @NotNull
+    private static String quote(@NotNull final String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+
+    /**
+     * Parses and evaluates the R file in the global environment like lines entered one by one, the source references
+     * have no file name and count lines from the beginning of the file.
+     */
+    @NotNull
+    public static String evalFileCommand(@NotNull final String path) {
+        return "invisible(local({" +
+                ".l <- readLines(" + quote(path) + ", encoding = \"UTF-8\"); " +
+                "eval(parse(text = .l, srcfile = srcfilecopy(\"\", .l)), envir = globalenv())" +
+                "}))";
+    }
+
+
     @NotNull
     public static String typeOfCommand(@NotNull final String identifier) {
         return String.format("%s(%s)", TYPEOF_FUNCTION, identifier);
@@ -71,6 +245,16 @@ public final class RCommands {
     }
 
 
+    /**
+     * Accesses a variable of a frame like {@link #expressionOnFrameCommand(int, String)}, but quotes its name so that
+     * non-syntactic names like <code>my var</code> work as well.
+     */
+    @NotNull
+    public static String variableOnFrameCommand(final int frameNumber, @NotNull final String name) {
+        return expressionOnFrameCommand(frameNumber, "`" + name.replace("\\", "\\\\").replace("`", "\\`") + "`");
+    }
+
+
     @NotNull
     public static String isDebuggedCommand(@NotNull final String function) {
         return String.format("isdebugged(%s)", function);
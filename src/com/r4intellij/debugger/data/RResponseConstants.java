@@ -33,4 +33,10 @@ public final class RResponseConstants {
 
     @NotNull
     public static final String ENVIRONMENT_PREFIX = "<environment: ";
+
+    @NotNull
+    public static final String FRAME_VAR_TAG = "jetbrains_ther_var";
+
+    @NotNull
+    public static final String FRAME_CACHED_VAR_TAG = "jetbrains_ther_cached_var";
 }
@@ -7,6 +7,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.regex.Pattern;
@@ -20,9 +21,6 @@ public class RExecutionResultCalculatorImpl implements RExecutionResultCalculato
     @NotNull
     private static final Pattern START_TRACE_PATTERN = Pattern.compile("^" + TRACING_PREFIX + ".* on entry( )*$");
 
-    @NotNull
-    private static final Pattern LINE_BREAK_PATTERN = Pattern.compile("(\r|\n|\r\n)");
-
 
     @Override
     public boolean isComplete(@NotNull final CharSequence output) {
@@ -33,8 +31,7 @@ public class RExecutionResultCalculatorImpl implements RExecutionResultCalculato
     @Override
     @NotNull
     public RExecutionResult calculate(@NotNull final CharSequence output, @NotNull final String error) {
-        final String[] lines =
-                LINE_BREAK_PATTERN.split(output); // Don't forget that first line is command and the last is invitation for the next one
+        final Lines lines = new Lines(output); // Don't forget that first line is command and the last is invitation for the next one
 
         return calculateResult(
                 lines,
@@ -68,42 +65,59 @@ public class RExecutionResultCalculatorImpl implements RExecutionResultCalculato
     }
 
 
+    /**
+     * Frames the output as the lines between the command and the invitation for the next one, joined by
+     * {@link com.r4intellij.debugger.data.RLanguageConstants#LINE_SEPARATOR}. If the output already uses it, the frame
+     * is copied out of the buffer at once.
+     */
     @NotNull
-    private static RExecutionResult calculateResult(@NotNull final String[] lines,
+    private static RExecutionResult calculateResult(@NotNull final Lines lines,
                                                     @NotNull final TypeAndResultLineBounds typeAndResultLineBounds,
                                                     @NotNull final String error) {
-        final StringBuilder sb = new StringBuilder();
+        final int last = lines.size() - 2; // last line of the output
+        final int[] positions = new int[Math.max(last + 1, 1)]; // positions of the output lines in the result
 
-        final TextRange preCalculatedRange =
-                (typeAndResultLineBounds.myResultEnd <= typeAndResultLineBounds.myResultBegin) ? TextRange.EMPTY_RANGE : null;
+        final String output;
 
-        int resultBegin = 0;
-        int resultEnd = 0;
+        if (last < 1) {
+            output = "";
+        } else if (LINE_SEPARATOR.equals("\n") && !lines.hasCarriageReturns()) {
+            for (int i = 1; i <= last; i++) {
+                positions[i] = lines.getStart(i) - lines.getStart(1);
+            }
 
-        for (int i = 1; i < lines.length - 1; i++) {
-            sb.append(lines[i]);
+            output = lines.getText().subSequence(lines.getStart(1), lines.getEnd(last)).toString();
+        } else {
+            final StringBuilder sb = new StringBuilder(lines.getEnd(last) - lines.getStart(1) + last * LINE_SEPARATOR.length());
 
-            if (i != lines.length - 2) {
-                sb.append(LINE_SEPARATOR);
-            }
+            for (int i = 1; i <= last; i++) {
+                positions[i] = sb.length();
+                sb.append(lines.getText(), lines.getStart(i), lines.getEnd(i));
 
-            if (preCalculatedRange == null) {
-                resultBegin += calculateResultBeginAddition(lines, typeAndResultLineBounds.myResultBegin, i);
-                resultEnd += calculateResultEndAddition(lines, typeAndResultLineBounds.myResultEnd, i);
+                if (i != last) {
+                    sb.append(LINE_SEPARATOR);
+                }
             }
+
+            output = sb.toString();
         }
 
-        return new RExecutionResult(
-                sb.toString(),
-                typeAndResultLineBounds.myType,
-                preCalculatedRange == null ? new TextRange(resultBegin, resultEnd) : preCalculatedRange,
-                error
-        );
+        if (typeAndResultLineBounds.myResultEnd <= typeAndResultLineBounds.myResultBegin) {
+            return new RExecutionResult(output, typeAndResultLineBounds.myType, TextRange.EMPTY_RANGE, error);
+        }
+
+        final int resultBeginLine = typeAndResultLineBounds.myResultBegin;
+        final int resultEndLine = Math.min(typeAndResultLineBounds.myResultEnd - 1, last); // last line of the result
+
+        final int resultBegin = resultBeginLine <= 1 ? 0 : resultBeginLine > last ? output.length() : positions[resultBeginLine];
+        final int resultEnd = resultEndLine < 1 ? 0 : positions[resultEndLine] + lines.getLength(resultEndLine);
+
+        return new RExecutionResult(output, typeAndResultLineBounds.myType, new TextRange(resultBegin, resultEnd), error);
     }
 
 
     @NotNull
-    private static TypeAndResultLineBounds calculateTypeAndResultLineBounds(@NotNull final String[] lines) {
+    private static TypeAndResultLineBounds calculateTypeAndResultLineBounds(@NotNull final Lines lines) {
         TypeAndResultLineBounds candidate = tryJustPlusAndSpace(lines);
 
         if (candidate != null) {
@@ -156,7 +170,7 @@ public class RExecutionResultCalculatorImpl implements RExecutionResultCalculato
             return candidate;
         }
 
-        return new TypeAndResultLineBounds(RESPONSE, 0, lines.length);
+        return new TypeAndResultLineBounds(RESPONSE, 0, lines.size());
     }
 
 
@@ -177,43 +191,9 @@ public class RExecutionResultCalculatorImpl implements RExecutionResultCalculato
     }
 
 
-    private static int calculateResultBeginAddition(@NotNull final String[] lines,
-                                                    final int resultLineBegin,
-                                                    final int i) {
-        int result = 0;
-
-        if (i < resultLineBegin) {
-            result += lines[i].length();
-
-            if (i != lines.length - 2) {
-                result += LINE_SEPARATOR.length();
-            }
-        }
-
-        return result;
-    }
-
-
-    private static int calculateResultEndAddition(@NotNull final String[] lines,
-                                                  final int resultLineEnd,
-                                                  final int i) {
-        int result = 0;
-
-        if (i < resultLineEnd) {
-            result += lines[i].length();
-
-            if (i != lines.length - 2 && i != resultLineEnd - 1) {
-                result += LINE_SEPARATOR.length();
-            }
-        }
-
-        return result;
-    }
-
-
     @Nullable
-    private static TypeAndResultLineBounds tryJustPlusAndSpace(@NotNull final String[] lines) {
-        if (lines.length == 2 && lines[1].equals(PLUS_AND_SPACE)) {
+    private static TypeAndResultLineBounds tryJustPlusAndSpace(@NotNull final Lines lines) {
+        if (lines.size() == 2 && lines.get(1).equals(PLUS_AND_SPACE)) {
             return new TypeAndResultLineBounds(PLUS, 1, 1);
         } else {
             return null;
@@ -222,8 +202,8 @@ public class RExecutionResultCalculatorImpl implements RExecutionResultCalculato
 
 
     @Nullable
-    private static TypeAndResultLineBounds tryJustBrowseAndSpace(@NotNull final String[] lines) {
-        if (lines.length == 2 && justBrowseAndSpace(lines[1])) {
+    private static TypeAndResultLineBounds tryJustBrowseAndSpace(@NotNull final Lines lines) {
+        if (lines.size() == 2 && justBrowseAndSpace(lines.get(1))) {
             return new TypeAndResultLineBounds(EMPTY, 1, 1);
         } else {
             return null;
@@ -231,14 +211,14 @@ public class RExecutionResultCalculatorImpl implements RExecutionResultCalculato
     }
 
 
-    private static boolean endsBrowseAndSpace(@NotNull final String[] lines) {
-        return lines.length > 1 && justBrowseAndSpace(lines[lines.length - 1]);
+    private static boolean endsBrowseAndSpace(@NotNull final Lines lines) {
+        return lines.size() > 1 && justBrowseAndSpace(lines.get(lines.size() - 1));
     }
 
 
     @Nullable
-    private static TypeAndResultLineBounds tryDebugging(@NotNull final String[] lines) {
-        if (lines.length > 1 && lines[1].startsWith(DEBUGGING_IN_PREFIX)) {
+    private static TypeAndResultLineBounds tryDebugging(@NotNull final Lines lines) {
+        if (lines.size() > 1 && lines.startsWith(1, DEBUGGING_IN_PREFIX)) {
             return new TypeAndResultLineBounds(RExecutionResultType.DEBUGGING_IN, 1, 1);
         } else {
             return null;
@@ -247,13 +227,13 @@ public class RExecutionResultCalculatorImpl implements RExecutionResultCalculato
 
 
     @Nullable
-    private static TypeAndResultLineBounds tryContinueTrace(@NotNull final String[] lines) {
+    private static TypeAndResultLineBounds tryContinueTrace(@NotNull final Lines lines) {
         final int endOffset = -2; // "debugging in..." line and "debug: {..." line
 
-        for (int i = 1; i < lines.length + endOffset - 1; i++) {
-            if (lines[i].startsWith(EXITING_FROM_PREFIX)) {
-                for (int j = i + 1; j < lines.length; j++) {
-                    if (lines[j].startsWith(DEBUGGING_IN_PREFIX)) {
+        for (int i = 1; i < lines.size() + endOffset - 1; i++) {
+            if (lines.startsWith(i, EXITING_FROM_PREFIX)) {
+                for (int j = i + 1; j < lines.size(); j++) {
+                    if (lines.startsWith(j, DEBUGGING_IN_PREFIX)) {
                         if (i == 1) {
                             // result could be located inside trace information between "exiting from ..." and "debugging in..." lines
                             return new TypeAndResultLineBounds(CONTINUE_TRACE, i + 1, j);
@@ -273,11 +253,11 @@ public class RExecutionResultCalculatorImpl implements RExecutionResultCalculato
 
 
     @Nullable
-    private static TypeAndResultLineBounds tryExitingFrom(@NotNull final String[] lines) {
+    private static TypeAndResultLineBounds tryExitingFrom(@NotNull final Lines lines) {
         final List<Integer> exitingFromIndices = new ArrayList<Integer>();
 
-        for (int i = 1; i < lines.length - 1; i++) {
-            if (lines[i].startsWith(EXITING_FROM_PREFIX)) {
+        for (int i = 1; i < lines.size() - 1; i++) {
+            if (lines.startsWith(i, EXITING_FROM_PREFIX)) {
                 exitingFromIndices.add(i);
             }
         }
@@ -314,10 +294,10 @@ public class RExecutionResultCalculatorImpl implements RExecutionResultCalculato
 
 
     @Nullable
-    private static TypeAndResultLineBounds tryDebugAt(@NotNull final String[] lines) {
-        if (lines.length > 2) {
+    private static TypeAndResultLineBounds tryDebugAt(@NotNull final Lines lines) {
+        if (lines.size() > 2) {
             final int debugAtLine = findDebugAt(lines, 0);
-            final boolean debugAtExists = debugAtLine < lines.length - 1;
+            final boolean debugAtExists = debugAtLine < lines.size() - 1;
 
             if (debugAtExists) {
                 return new TypeAndResultLineBounds(RExecutionResultType.DEBUG_AT, 1, debugAtLine);
@@ -331,15 +311,15 @@ public class RExecutionResultCalculatorImpl implements RExecutionResultCalculato
 
 
     @Nullable
-    private static TypeAndResultLineBounds tryStartTrace(@NotNull final String[] lines) {
-        if (START_TRACE_PATTERN.matcher(lines[1]).find()) {
+    private static TypeAndResultLineBounds tryStartTrace(@NotNull final Lines lines) {
+        if (lines.startsWith(1, TRACING_PREFIX) && START_TRACE_PATTERN.matcher(lines.get(1)).find()) {
             final int unbraceFunctionStartTraceLength = 1 // previous command
                     + 1 // "Tracing on ... entry"
                     + 1 // "[1] \"...\""
                     + 1 // "debug: ..,"
                     + 1; // invitation for the next command
 
-            if (lines.length == unbraceFunctionStartTraceLength) {
+            if (lines.size() == unbraceFunctionStartTraceLength) {
                 return new TypeAndResultLineBounds(START_TRACE_UNBRACE, 1, 1);
             } else {
                 return new TypeAndResultLineBounds(START_TRACE_BRACE, 1, 1);
@@ -351,9 +331,9 @@ public class RExecutionResultCalculatorImpl implements RExecutionResultCalculato
 
 
     @Nullable
-    private static TypeAndResultLineBounds tryUnbraceDebugAt(@NotNull final String[] lines) {
-        if (lines.length > 2 && lines[lines.length - 2].startsWith(DEBUG_AT_PREFIX)) {
-            return new TypeAndResultLineBounds(RExecutionResultType.DEBUG_AT, 1, lines.length - 2);
+    private static TypeAndResultLineBounds tryUnbraceDebugAt(@NotNull final Lines lines) {
+        if (lines.size() > 2 && lines.startsWith(lines.size() - 2, DEBUG_AT_PREFIX)) {
+            return new TypeAndResultLineBounds(RExecutionResultType.DEBUG_AT, 1, lines.size() - 2);
         } else {
             return null;
         }
@@ -400,10 +380,10 @@ public class RExecutionResultCalculatorImpl implements RExecutionResultCalculato
     }
 
 
-    private static int findDebugAt(@NotNull final String[] lines, final int index) {
+    private static int findDebugAt(@NotNull final Lines lines, final int index) {
         int result = index;
 
-        while (result < lines.length - 1 && !lines[result].startsWith(DEBUG_AT_LINE_PREFIX)) {
+        while (result < lines.size() - 1 && !lines.startsWith(result, DEBUG_AT_LINE_PREFIX)) {
             result++;
         }
 
@@ -419,6 +399,112 @@ public class RExecutionResultCalculatorImpl implements RExecutionResultCalculato
     }
 
 
+    /**
+     * Bounds of the lines of the output, found in a single pass instead of copying every line out of it. Every
+     * <code>\r</code> and <code>\n</code> ends a line and trailing empty lines are dropped.
+     */
+    private static class Lines {
+
+        @NotNull
+        private final CharSequence myText;
+
+        @NotNull
+        private int[] myStarts;
+
+        @NotNull
+        private int[] myEnds;
+
+        private int mySize;
+
+        private boolean myHasCarriageReturns;
+
+
+        public Lines(@NotNull final CharSequence text) {
+            myText = text;
+            myStarts = new int[16];
+            myEnds = new int[16];
+            mySize = 0;
+            myHasCarriageReturns = false;
+
+            final int length = text.length();
+            int start = 0;
+
+            for (int i = 0; i < length; i++) {
+                final char c = text.charAt(i);
+
+                if (c == '\n' || c == '\r') {
+                    add(start, i);
+                    start = i + 1;
+
+                    myHasCarriageReturns |= c == '\r';
+                }
+            }
+
+            add(start, length);
+
+            if (mySize > 1) {
+                while (mySize > 0 && myStarts[mySize - 1] == myEnds[mySize - 1]) {
+                    mySize--;
+                }
+            }
+        }
+
+
+        @NotNull
+        public CharSequence getText() {
+            return myText;
+        }
+
+
+        public int size() {
+            return mySize;
+        }
+
+
+        public int getStart(final int index) {
+            return myStarts[index];
+        }
+
+
+        public int getEnd(final int index) {
+            return myEnds[index];
+        }
+
+
+        public int getLength(final int index) {
+            return myEnds[index] - myStarts[index];
+        }
+
+
+        public boolean hasCarriageReturns() {
+            return myHasCarriageReturns;
+        }
+
+
+        @NotNull
+        public String get(final int index) {
+            return myText.subSequence(myStarts[index], myEnds[index]).toString();
+        }
+
+
+        public boolean startsWith(final int index, @NotNull final String prefix) {
+            return getLength(index) >= prefix.length() && isSubsequence(prefix, myText, myStarts[index]);
+        }
+
+
+        private void add(final int start, final int end) {
+            if (mySize == myStarts.length) {
+                myStarts = Arrays.copyOf(myStarts, mySize * 2);
+                myEnds = Arrays.copyOf(myEnds, mySize * 2);
+            }
+
+            myStarts[mySize] = start;
+            myEnds[mySize] = end;
+            mySize++;
+        }
+    }
+
+
     private static class TypeAndResultLineBounds {
 
         @NotNull
@@ -0,0 +1,394 @@
+package com.r4intellij.debugger.frame;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.r4intellij.debugger.RDebuggerUtils;
+import com.r4intellij.debugger.ROutputReceiver;
+import com.r4intellij.debugger.exception.RDebuggerException;
+import com.r4intellij.debugger.exception.RUnexpectedExecutionResultTypeException;
+import com.r4intellij.debugger.executor.RExecutionResult;
+import com.r4intellij.debugger.executor.RExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.r4intellij.debugger.RDebuggerUtils.calculateRepresentation;
+import static com.r4intellij.debugger.data.RCommands.*;
+import static com.r4intellij.debugger.data.RLanguageConstants.FUNCTION_TYPE;
+import static com.r4intellij.debugger.data.RResponseConstants.FRAME_CACHED_VAR_TAG;
+import static com.r4intellij.debugger.data.RResponseConstants.FRAME_VAR_TAG;
+import static com.r4intellij.debugger.executor.RExecutionResultType.DEBUG_AT;
+import static com.r4intellij.debugger.executor.RExecutionResultType.RESPONSE;
+import static com.r4intellij.debugger.executor.RExecutorUtils.execute;
+
+/**
+ * Loads names, types and bounded previews of all variables of a frame with a single command instead of two commands
+ * per variable. Complete values of variables with truncated previews are loaded on demand, and so are the rows or
+ * elements of expandable values, page by page. If the command fails or its response can't be parsed, the variables are
+ * loaded one by one by {@link RVarsLoaderImpl}.
+ * <p>
+ * The loaded variables are cached together with digests computed on the R side, so the next load of the same frame,
+ * e.g. after a step, just transfers the variables which were changed or added since. Variables of outer frames which
+ * weren't touched by the step are served from the cache.
+ */
+class RBulkVarsLoaderImpl implements RVarsLoader {
+
+    static final int MAX_PREVIEW_LINES = 20;
+    static final int MAX_PREVIEW_LINE_LENGTH = 1000;
+
+    static final int DEFAULT_VALUE_BUDGET = 64 * 1024;
+
+    private static final String ROWS_PAGER = "rows";
+    private static final String ELEMENTS_PAGER = "elements";
+
+    @NotNull
+    private final RExecutor myExecutor;
+
+    @NotNull
+    private final ROutputReceiver myReceiver;
+
+    @NotNull
+    private final RValueModifier myModifier;
+
+    private final int myFrameNumber;
+
+    private final int myValueBudget;
+
+    @NotNull
+    private final RVarsLoaderImpl mySingleVarsLoader;
+
+    // accessed by the debugger executor only
+    @NotNull
+    private final Map<String, CachedVar> myCache;
+
+
+    public RBulkVarsLoaderImpl(@NotNull final RExecutor executor,
+                               @NotNull final ROutputReceiver receiver,
+                               @NotNull final RValueModifier modifier,
+                               final int frameNumber) {
+        this(executor, receiver, modifier, frameNumber, DEFAULT_VALUE_BUDGET);
+    }
+
+
+    /**
+     * @param valueBudget the number of preview characters to load per frame refresh and page, previews of further
+     *                    variables are loaded on demand
+     */
+    public RBulkVarsLoaderImpl(@NotNull final RExecutor executor,
+                               @NotNull final ROutputReceiver receiver,
+                               @NotNull final RValueModifier modifier,
+                               final int frameNumber,
+                               final int valueBudget) {
+        myExecutor = executor;
+        myReceiver = receiver;
+        myModifier = modifier;
+        myFrameNumber = frameNumber;
+        myValueBudget = valueBudget;
+        mySingleVarsLoader = new RVarsLoaderImpl(executor, receiver, modifier, frameNumber);
+        myCache = new HashMap<String, CachedVar>();
+    }
+
+
+    @NotNull
+    @Override
+    public List<RVar> load() throws RDebuggerException {
+        final Map<String, String> knownDigests = new HashMap<String, String>();
+
+        for (final Map.Entry<String, CachedVar> entry : myCache.entrySet()) {
+            knownDigests.put(entry.getKey(), entry.getValue().myDigest);
+        }
+
+        final String output;
+
+        try {
+            output = executeAndStepOver(
+                    frameVarsCommand(myFrameNumber, MAX_PREVIEW_LINES, MAX_PREVIEW_LINE_LENGTH, myValueBudget, knownDigests)
+            );
+        } catch (final RUnexpectedExecutionResultTypeException e) {
+            // the bulk command failed on the R side, e.g. because of a value which can't be printed
+            myCache.clear();
+
+            return mySingleVarsLoader.load();
+        }
+
+        final Map<String, CachedVar> nextCache = new HashMap<String, CachedVar>();
+
+        final List<RVar> vars = parseVars(output, nextCache, new ExpressionCalculator() {
+            @NotNull
+            @Override
+            public String calculate(@NotNull final String name, final int index) {
+                return variableOnFrameCommand(myFrameNumber, name);
+            }
+        });
+
+        // variables which were removed from the frame are dropped from the cache as well
+        myCache.clear();
+
+        if (vars == null) {
+            return mySingleVarsLoader.load();
+        }
+
+        myCache.putAll(nextCache);
+
+        return vars;
+    }
+
+
+    /**
+     * Executes the command and steps over a debugged function if a promise entered one while evaluating it.
+     */
+    @NotNull
+    private String executeAndStepOver(@NotNull final String command) throws RDebuggerException {
+        final RExecutionResult result = execute(myExecutor, command, myReceiver);
+
+        switch (result.getType()) {
+            case RESPONSE:
+                return result.getOutput();
+            case DEBUG_AT:
+                return execute(myExecutor, EXECUTE_AND_STEP_COMMAND, RESPONSE, myReceiver);
+            default:
+                throw new RUnexpectedExecutionResultTypeException(
+                        "Actual type is not the same as expected: " +
+                                "[" +
+                                "actual: " + result.getType() + ", " +
+                                "expected: " +
+                                "[" + RESPONSE + ", " + DEBUG_AT + "]" +
+                                "]"
+                );
+        }
+    }
+
+
+    /**
+     * @param nextCache the cache to fill with the parsed variables of a frame, <code>null</code> for rows or elements
+     */
+    @Nullable
+    private List<RVar> parseVars(@NotNull final String output,
+                                 @Nullable final Map<String, CachedVar> nextCache,
+                                 @NotNull final ExpressionCalculator expressionCalculator) {
+        final boolean isFrame = nextCache != null;
+        final List<String> lines = Arrays.asList(StringUtil.splitByLines(output, false));
+        final List<RVar> vars = new ArrayList<RVar>();
+
+        int index = 0;
+        int varIndex = 0;
+
+        // skip anything printed before the first variable, e.g. warnings
+        while (index < lines.size() && !isHeader(lines.get(index))) index++;
+
+        while (index < lines.size()) {
+            final String line = lines.get(index++);
+            if (line.isEmpty()) continue;
+
+            final String[] header = line.split("\t", -1);
+
+            if (isFrame && header.length == 2 && header[0].equals(FRAME_CACHED_VAR_TAG)) {
+                final CachedVar cached = myCache.get(header[1]);
+
+                if (cached == null) {
+                    return null;
+                }
+
+                nextCache.put(header[1], cached);
+                varIndex++;
+
+                if (cached.myVar != null) {
+                    vars.add(cached.myVar);
+                }
+
+                continue;
+            }
+
+            if (header.length != 9 || !header[0].equals(FRAME_VAR_TAG)) {
+                return null;
+            }
+
+            final int size;
+            final int numLines;
+            try {
+                size = Integer.parseInt(header[4]);
+                numLines = Integer.parseInt(header[6]);
+            } catch (final NumberFormatException e) {
+                return null;
+            }
+
+            if (index + numLines > lines.size()) {
+                return null;
+            }
+
+            final String name = header[1];
+            final String type = "[1] \"" + header[2] + "\"";
+            final String pager = header[5];
+            final boolean isTruncated = Boolean.parseBoolean(header[7].toLowerCase());
+
+            final String preview = numLines == 0 && isTruncated
+                    ? calculateSummary(header[3], pager, size) // the budget was exceeded before this variable
+                    : StringUtil.join(lines.subList(index, index + numLines), "\n");
+            index += numLines;
+            varIndex++;
+
+            final String digest = header[8];
+
+            if (type.equals(FUNCTION_TYPE) && RDebuggerUtils.isServiceName(name)) {
+                if (isFrame && !digest.isEmpty()) {
+                    nextCache.put(name, new CachedVar(digest, null));
+                }
+
+                continue;
+            }
+
+            final String expression = expressionCalculator.calculate(name, varIndex);
+
+            final RVar var = new RVar(
+                    name,
+                    type,
+                    calculateRepresentation(type, preview),
+                    isFrame ? myModifier : RReadOnlyValueModifier.INSTANCE,
+                    isTruncated ? createFullValueLoader(name, type, expression, isFrame) : null,
+                    pager.isEmpty() || size == 0 ? null : new ElementsLoader(expression, pager, header[2], size)
+            );
+
+            if (isFrame && !digest.isEmpty()) {
+                nextCache.put(name, new CachedVar(digest, var));
+            }
+
+            vars.add(var);
+        }
+
+        return vars;
+    }
+
+
+    @NotNull
+    private RVar.FullValueLoader createFullValueLoader(@NotNull final String name,
+                                                       @NotNull final String type,
+                                                       @NotNull final String expression,
+                                                       final boolean isFrame) {
+        // variables of the frame itself may be debugged functions, which need to be unwrapped
+        if (isFrame) {
+            return new RVar.FullValueLoader() {
+                @NotNull
+                @Override
+                public String load() throws RDebuggerException {
+                    return mySingleVarsLoader.loadValue(name, type);
+                }
+            };
+        }
+
+        return new RVar.FullValueLoader() {
+            @NotNull
+            @Override
+            public String load() throws RDebuggerException {
+                return calculateRepresentation(type, executeAndStepOver(expression));
+            }
+        };
+    }
+
+
+    @NotNull
+    private static String calculateSummary(@NotNull final String rClass, @NotNull final String pager, final int size) {
+        if (pager.equals(ROWS_PAGER)) {
+            return rClass + " with " + size + " rows";
+        } else if (pager.equals(ELEMENTS_PAGER)) {
+            return rClass + " of length " + size;
+        } else {
+            return rClass;
+        }
+    }
+
+
+    private static boolean isHeader(@NotNull final String line) {
+        return line.startsWith(FRAME_VAR_TAG + "\t") || line.startsWith(FRAME_CACHED_VAR_TAG + "\t");
+    }
+
+
+    private static class CachedVar {
+
+        @NotNull
+        private final String myDigest;
+
+        // service functions are cached without a variable since they are not shown
+        @Nullable
+        private final RVar myVar;
+
+
+        public CachedVar(@NotNull final String digest, @Nullable final RVar var) {
+            myDigest = digest;
+            myVar = var;
+        }
+    }
+
+
+    private interface ExpressionCalculator {
+
+        @NotNull
+        String calculate(@NotNull final String name, final int index);
+    }
+
+
+    private class ElementsLoader implements RVar.Children {
+
+        @NotNull
+        private final String myExpression;
+
+        @NotNull
+        private final String myPager;
+
+        @NotNull
+        private final String myType;
+
+        private final int myCount;
+
+
+        public ElementsLoader(@NotNull final String expression,
+                              @NotNull final String pager,
+                              @NotNull final String type,
+                              final int count) {
+            myExpression = expression;
+            myPager = pager;
+            myType = type;
+            myCount = count;
+        }
+
+
+        @Override
+        public int getCount() {
+            return myCount;
+        }
+
+
+        @NotNull
+        @Override
+        public List<RVar> load(final int offset, final int count) throws RDebuggerException {
+            final String output = executeAndStepOver(
+                    elementsCommand(myExpression, offset, count, MAX_PREVIEW_LINES, MAX_PREVIEW_LINE_LENGTH, myValueBudget)
+            );
+
+            final List<RVar> elements = parseVars(output, null, new ExpressionCalculator() {
+                @NotNull
+                @Override
+                public String calculate(@NotNull final String name, final int index) {
+                    final int position = offset + index;
+
+                    if (myPager.equals(ROWS_PAGER)) {
+                        return myExpression + "[" + position + ", , drop = FALSE]";
+                    } else if (myPager.equals(ELEMENTS_PAGER) && myType.equals("list")) {
+                        return myExpression + "[[" + position + "]]";
+                    } else {
+                        return myExpression + "[" + position + "]";
+                    }
+                }
+            });
+
+            if (elements == null) {
+                throw new RDebuggerException("Failed to load " + myPager + " of " + myExpression);
+            }
+
+            return elements;
+        }
+    }
+}
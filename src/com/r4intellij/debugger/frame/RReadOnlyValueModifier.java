@@ -0,0 +1,24 @@
+package com.r4intellij.debugger.frame;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Modifier of values which can't be assigned by name, e.g. the rows or elements of a variable.
+ */
+class RReadOnlyValueModifier implements RValueModifier {
+
+    @NotNull
+    public static final RReadOnlyValueModifier INSTANCE = new RReadOnlyValueModifier();
+
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+
+    @Override
+    public void setValue(@NotNull final String name, @NotNull final String value, @NotNull final Listener listener) {
+        throw new IllegalStateException("SetValue could be called only if isEnabled returns true");
+    }
+}
@@ -1,6 +1,10 @@
 package com.r4intellij.debugger.frame;
 
+import com.r4intellij.debugger.exception.RDebuggerException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
 
 public class RVar {
 
@@ -16,15 +20,37 @@ public class RVar {
     @NotNull
     private final RValueModifier myModifier;
 
+    @Nullable
+    private final FullValueLoader myFullValueLoader;
+
+    @Nullable
+    private final Children myChildren;
+
 
     public RVar(@NotNull final String name,
                 @NotNull final String type,
                 @NotNull final String value,
                 @NotNull final RValueModifier modifier) {
+        this(name, type, value, modifier, null, null);
+    }
+
+
+    /**
+     * @param fullValueLoader loads the complete value if <code>value</code> is just a truncated preview of it
+     * @param children        the rows or elements of the value if it can be expanded
+     */
+    public RVar(@NotNull final String name,
+                @NotNull final String type,
+                @NotNull final String value,
+                @NotNull final RValueModifier modifier,
+                @Nullable final FullValueLoader fullValueLoader,
+                @Nullable final Children children) {
         myName = name;
         myType = type;
         myValue = value;
         myModifier = modifier;
+        myFullValueLoader = fullValueLoader;
+        myChildren = children;
     }
 
 
@@ -50,4 +76,44 @@ public class RVar {
     public RValueModifier getModifier() {
         return myModifier;
     }
+
+
+    public boolean isTruncated() {
+        return myFullValueLoader != null;
+    }
+
+
+    /**
+     * Returns the complete value, which needs a round trip to R if the value is truncated.
+     */
+    @NotNull
+    public String loadFullValue() throws RDebuggerException {
+        return myFullValueLoader != null ? myFullValueLoader.load() : myValue;
+    }
+
+
+    @Nullable
+    public Children getChildren() {
+        return myChildren;
+    }
+
+
+    public interface FullValueLoader {
+
+        @NotNull
+        String load() throws RDebuggerException;
+    }
+
+
+    /**
+     * The rows or elements of a value, which are loaded page by page.
+     */
+    public interface Children {
+
+        int getCount();
+
+
+        @NotNull
+        List<RVar> load(final int offset, final int count) throws RDebuggerException;
+    }
 }
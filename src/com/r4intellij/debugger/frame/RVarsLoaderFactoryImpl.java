@@ -12,10 +12,21 @@ public class RVarsLoaderFactoryImpl implements RVarsLoaderFactory {
     @NotNull
     private final ROutputReceiver myReceiver;
 
+    private final int myValueBudget;
+
 
     public RVarsLoaderFactoryImpl(@NotNull final RExecutor executor, @NotNull final ROutputReceiver receiver) {
+        this(executor, receiver, RBulkVarsLoaderImpl.DEFAULT_VALUE_BUDGET);
+    }
+
+
+    /**
+     * @param valueBudget the number of characters of value previews to load per frame refresh
+     */
+    public RVarsLoaderFactoryImpl(@NotNull final RExecutor executor, @NotNull final ROutputReceiver receiver, final int valueBudget) {
         myExecutor = executor;
         myReceiver = receiver;
+        myValueBudget = valueBudget;
     }
 
 
@@ -23,6 +34,6 @@ public class RVarsLoaderFactoryImpl implements RVarsLoaderFactory {
     @Override
     public RVarsLoader getLoader(@NotNull final RValueModifier modifier,
                                  final int frameNumber) {
-        return new RVarsLoaderImpl(myExecutor, myReceiver, modifier, frameNumber);
+        return new RBulkVarsLoaderImpl(myExecutor, myReceiver, modifier, frameNumber, myValueBudget);
     }
 }
@@ -94,7 +94,7 @@ class RVarsLoaderImpl implements RVarsLoader {
     private RVar loadVar(@NotNull final String var) throws RDebuggerException {
         final String type = execute(
                 myExecutor,
-                typeOfCommand(expressionOnFrameCommand(myFrameNumber, var)),
+                typeOfCommand(variableOnFrameCommand(myFrameNumber, var)),
                 RESPONSE,
                 myReceiver
         );
@@ -125,7 +125,7 @@ class RVarsLoaderImpl implements RVarsLoader {
 
 
     @NotNull
-    private String loadValue(@NotNull final String var,
+    String loadValue(@NotNull final String var,
                              @NotNull final String type) throws RDebuggerException {
         final RExecutionResult result = execute(myExecutor, calculateValueCommand(myFrameNumber, var), myReceiver);
 
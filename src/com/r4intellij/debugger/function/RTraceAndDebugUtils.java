@@ -59,9 +59,21 @@ public final class RTraceAndDebugUtils {
             return;
         }
 
-        execute(executor, enterFunction(functionName), EMPTY, receiver);
-        execute(executor, traceCommand(functionName, enterFunctionName(functionName)), RESPONSE);
-        execute(executor, debugCommand(functionName), EMPTY, receiver);
+        execute(executor, traceAndDebugCommand(functionName), EMPTY, receiver);
+    }
+
+
+    /**
+     * Defines the enter function, traces and debugs the function in one round trip. The block doesn't print the name
+     * returned by <code>trace</code>, and its messages are suppressed as they were ignored when it ran on its own.
+     */
+    @NotNull
+    private static String traceAndDebugCommand(@NotNull final String functionName) {
+        return "{ " +
+                enterFunction(functionName) + "; " +
+                "suppressMessages(" + traceCommand(functionName, enterFunctionName(functionName)) + "); " +
+                debugCommand(functionName) +
+                " }";
     }
 
 
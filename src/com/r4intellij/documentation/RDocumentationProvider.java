@@ -2,16 +2,25 @@ package com.r4intellij.documentation;
 
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Strings;
+import com.google.common.collect.Ordering;
+import com.intellij.codeInsight.lookup.Lookup;
+import com.intellij.codeInsight.lookup.LookupElement;
+import com.intellij.codeInsight.lookup.LookupManager;
 import com.intellij.execution.configurations.GeneralCommandLine;
 import com.intellij.execution.process.CapturingProcessHandler;
 import com.intellij.execution.process.ProcessOutput;
 import com.intellij.lang.documentation.AbstractDocumentationProvider;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.Project;
 import com.intellij.patterns.PsiElementPattern;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.r4intellij.RFileType;
+import com.r4intellij.packages.RIndexCache;
+import com.r4intellij.packages.RPackage;
+import com.r4intellij.packages.RSkeletonGenerator;
 import com.r4intellij.psi.RAssignmentStatementImpl;
 import com.r4intellij.psi.RElementFactory;
 import com.r4intellij.psi.RReferenceExpressionImpl;
@@ -23,15 +32,19 @@ import kotlin.text.StringsKt;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLEncoder;
+import java.net.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import static com.intellij.patterns.PlatformPatterns.psiElement;
 import static com.r4intellij.packages.RHelperUtil.LOG;
@@ -43,7 +56,19 @@ import static com.r4intellij.packages.RSkeletonGenerator.SKELETON_DIR_NAME;
  */
 public class RDocumentationProvider extends AbstractDocumentationProvider {
 
-    private static Integer HELP_SERVER_PORT;
+    private static volatile Integer HELP_SERVER_PORT;
+
+    private static final Pattern LIBRARY_PATH = Pattern.compile("library/([^/]+)/(.+)");
+
+    // links of bundled help pages are resolved against the popup link handler right away
+    private static final String BUNDLE_ROOT = "psi_element://";
+
+    private static final int LIVENESS_CHECK_TIMEOUT = 300;
+
+    // number of upcoming completion items whose help is fetched in advance
+    private static final int PREFETCHED_LOOKUP_ITEMS = 10;
+
+    private static final AtomicBoolean PREFETCH_RUNNING = new AtomicBoolean(false);
 
 
     @Nullable
@@ -74,6 +99,8 @@ public class RDocumentationProvider extends AbstractDocumentationProvider {
     @Override
     public PsiElement getDocumentationElementForLookupItem(PsiManager psiManager, Object object, PsiElement element) {
         if (object instanceof RReferenceImpl.RefLookupElement) {
+            prefetchLookupHelp(psiManager.getProject(), object);
+
             return ((RReferenceImpl.RefLookupElement) object).getRefExpression();
         }
 
@@ -81,8 +108,53 @@ public class RDocumentationProvider extends AbstractDocumentationProvider {
     }
 
 
+    /**
+     * Fetches the help of the completion items following the current one in the background, so that quick-doc is
+     * served from the cache while scrolling through the completion list.
+     */
+    private static void prefetchLookupHelp(Project project, Object currentItem) {
+        if (!RSettings.hasInterpreter()) return;
+
+        Lookup lookup = LookupManager.getInstance(project).getActiveLookup();
+        if (lookup == null) return;
+
+        List<LookupElement> items = lookup.getItems();
+
+        int currentIndex = 0;
+        while (currentIndex < items.size() && items.get(currentIndex).getObject() != currentItem) currentIndex++;
+
+        List<String> helpPaths = new ArrayList<>();
+        for (LookupElement item : items.subList(Math.min(currentIndex + 1, items.size()), Math.min(currentIndex + 1 + PREFETCHED_LOOKUP_ITEMS, items.size()))) {
+            if (!(item.getObject() instanceof RReferenceImpl.RefLookupElement)) continue;
+
+            String refText = ((RReferenceImpl.RefLookupElement) item.getObject()).getRefText();
+            int nsIndex = refText.indexOf("::");
+            if (nsIndex > 0) {
+                helpPaths.add(buildHelpPath(refText.substring(0, nsIndex), refText.substring(nsIndex + 2)));
+            }
+        }
+
+        // don't pile up prefetches if the user scrolls faster than the help server responds
+        if (helpPaths.isEmpty() || !PREFETCH_RUNNING.compareAndSet(false, true)) return;
+
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            try {
+                helpPaths.forEach(RDocumentationProvider::getHelp);
+            } finally {
+                PREFETCH_RUNNING.set(false);
+            }
+        });
+    }
+
+
     @Override
     public List<String> getUrlFor(PsiElement element, PsiElement originalElement) {
+        // the help server is just started for pages which are neither cached nor bundled, so as long as all help was
+        // served without it we rather link to the cached page or to the package on CRAN
+        if (HELP_SERVER_PORT == null) {
+            return getOfflineUrls(element, originalElement);
+        }
+
         URL restoredURL = restoreInterceptedLink(element);
         if (restoredURL != null) {
             return Arrays.asList(restoredURL.toString());
@@ -97,13 +169,8 @@ public class RDocumentationProvider extends AbstractDocumentationProvider {
             return new ArrayList<>();
         }
 
-        String symbol;
-        if (originalElement != null) {
-            symbol = originalElement.getText();
-        } else if (element instanceof RAssignmentStatement) { // this applies just when help links are clicked
-//            symbol = element.getText();
-            symbol = ((RAssignmentStatementImpl) element).getName();
-        } else {
+        String symbol = getUrlSymbol(element, originalElement);
+        if (symbol == null) {
             return new ArrayList<>();
         }
 
@@ -114,6 +181,46 @@ public class RDocumentationProvider extends AbstractDocumentationProvider {
     }
 
 
+    private List<String> getOfflineUrls(PsiElement element, PsiElement originalElement) {
+        String helpPath = restoreInterceptedLinkPath(element);
+
+        if (helpPath == null) {
+            element = unwrapCompletionLookup(element);
+
+            String elPackage = detectPackage(element);
+            String symbol = getUrlSymbol(element, originalElement);
+            if (elPackage == null || symbol == null) return new ArrayList<>();
+
+            helpPath = buildHelpPath(elPackage, symbol);
+        }
+
+        Matcher matcher = LIBRARY_PATH.matcher(helpPath);
+        if (!matcher.matches() || matcher.group(1).equals("NULL")) return new ArrayList<>();
+
+        String packageName = matcher.group(1);
+
+        File pageFile = RHelpCache.getInstance().getPageFile(packageName, getPackageVersion(packageName), matcher.group(2));
+        if (pageFile != null) {
+            return Arrays.asList(pageFile.toURI().toString());
+        }
+
+        return Arrays.asList("https://cran.r-project.org/package=" + packageName);
+    }
+
+
+    @Nullable
+    private static String getUrlSymbol(PsiElement element, PsiElement originalElement) {
+        if (originalElement != null) {
+            return originalElement.getText();
+        } else if (element instanceof RAssignmentStatement) { // this applies just when help links are clicked
+//            symbol = element.getText();
+            return ((RAssignmentStatementImpl) element).getName();
+        }
+
+        return null;
+    }
+
+
     private PsiElement unwrapCompletionLookup(PsiElement element) {
         if (element instanceof RReferenceImpl.RefLookupElement) {
             element = ((RReferenceImpl.RefLookupElement) element).getRefExpression();
@@ -122,14 +229,10 @@ public class RDocumentationProvider extends AbstractDocumentationProvider {
     }
 
 
-    private static void ensureHelpServerAlive() {
+    private static synchronized void ensureHelpServerAlive() {
         // check if help server is alive and restart it if necessary
-        try {
-            new Scanner(new URL("http://127.0.0.1:" + HELP_SERVER_PORT)
-                    .openStream(), "UTF-8").useDelimiter("\\A").next();
-        } catch (IOException e) {
+        if (!isHelpServerAlive()) {
             // if server is down or unresponsive, restart it under a different port
-//            e.printStackTrace();
             HELP_SERVER_PORT = null;
             startHelpServer(null);
         }
@@ -160,14 +263,11 @@ public class RDocumentationProvider extends AbstractDocumentationProvider {
             return "Could not lookup documentaiton because R interpreter is not set";
         }
 
-        // wait until help server is ready (do it here since we need the port to build the URL)
-        ensureHelpServerAlive();
-
 
         // check if doc of internally rerouted doc-popup click
-        URL restoredURL = restoreInterceptedLink(reference);
-        if (restoredURL != null) {
-            return getHelpFromLocalHelpServer(restoredURL);
+        String linkPath = restoreInterceptedLinkPath(reference);
+        if (linkPath != null) {
+            return getHelp(linkPath);
         }
 
         if (reference instanceof RStringLiteralExpression) return null;
@@ -197,19 +297,111 @@ public class RDocumentationProvider extends AbstractDocumentationProvider {
 
         String packageName = detectPackage(reference);
 
+//        return getHelpForFunction(elementText, packageName);
+        return getHelp(buildHelpPath(packageName != null ? packageName : "NULL", elementText));
+    }
+
+
+    private static String buildHelpPath(String packageName, String symbol) {
+        return "library/" + packageName + "/help/" + encodeURL(symbol);
+    }
+
+
+    /**
+     * Returns the help of a path of the help server like <code>library/base/help/print</code>. Pages are served from
+     * the {@link RHelpCache} if possible, so that the help server is just contacted for uncached pages.
+     */
+    @Nullable
+    private static String getHelp(String helpPath) {
+        String packageName = null;
+        String topic = null;
 
-        URL localHelpURL;
+        Matcher matcher = LIBRARY_PATH.matcher(helpPath);
+        if (matcher.matches()) {
+            packageName = matcher.group(1);
+            topic = matcher.group(2);
+        }
 
-        assert HELP_SERVER_PORT != null;
+        RHelpCache helpCache = RHelpCache.getInstance();
+        String packageVersion = getPackageVersion(packageName);
 
         if (packageName != null) {
-            localHelpURL = makeURL("http://127.0.0.1:" + HELP_SERVER_PORT + "/library/" + packageName + "/help/" + encodeURL(elementText));
-        } else {
-            localHelpURL = makeURL("http://127.0.0.1:" + HELP_SERVER_PORT + "/library/NULL/help/" + encodeURL(elementText));
+            String cachedHelp = helpCache.get(packageName, packageVersion, topic);
+            if (cachedHelp != null) return cachedHelp;
+
+            String bundledHelp = getBundledHelp(packageName, topic);
+            if (bundledHelp != null) {
+                String help = rewriteHelpHtml(bundledHelp, BUNDLE_ROOT + helpPath, BUNDLE_ROOT);
+                helpCache.put(packageName, packageVersion, topic, help);
+
+                return help;
+            }
         }
 
-//        return getHelpForFunction(elementText, packageName);
-        return getHelpFromLocalHelpServer(localHelpURL);
+        // wait until help server is ready (do it here since we need the port to build the URL)
+        ensureHelpServerAlive();
+        if (HELP_SERVER_PORT == null) return null;
+
+        String help = getHelpFromLocalHelpServer(makeURL("http://127.0.0.1:" + HELP_SERVER_PORT + "/" + helpPath));
+
+        if (help != null && packageName != null) {
+            helpCache.put(packageName, packageVersion, topic, help);
+        }
+
+        return help;
+    }
+
+
+    /**
+     * Looks up a help page in the help bundles which were rendered along with the skeletons. Help requests without
+     * package are looked up in the packages which provide the symbol.
+     */
+    @Nullable
+    private static String getBundledHelp(String packageName, String topic) {
+        File skeletonsDir = new File(RSkeletonGenerator.getSkeletonsPath());
+
+        List<String> packageNames = Collections.singletonList(packageName);
+
+        if (packageName.equals("NULL") && topic.startsWith("help/")) {
+            String symbol = decodeURL(topic.substring("help/".length()));
+
+            packageNames = RIndexCache.getInstance().getPackagesWithFunction(symbol).stream()
+                    .map(RPackage::getName)
+                    .sorted(Ordering.natural().reverse().onResultOf(RSkeletonGenerator::getIndexPriority))
+                    .collect(Collectors.toList());
+        }
+
+        for (String bundledPackage : packageNames) {
+            String help = RHelpBundle.findHelp(RSkeletonGenerator.getHelpBundleFile(skeletonsDir, bundledPackage), topic);
+            if (help != null) return help;
+        }
+
+        return null;
+    }
+
+
+    @Nullable
+    private static String getPackageVersion(@Nullable String packageName) {
+        if (packageName == null || packageName.equals("NULL")) return null;
+
+        RPackage rPackage = RIndexCache.getInstance().getByName(packageName);
+        return rPackage != null ? rPackage.getVersion() : null;
+    }
+
+
+    /**
+     * Cheap liveness check which just connects to the help server instead of fetching a page.
+     */
+    private static boolean isHelpServerAlive() {
+        Integer port = HELP_SERVER_PORT;
+        if (port == null) return false;
+
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", port), LIVENESS_CHECK_TIMEOUT);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
     }
 
 
@@ -228,6 +420,16 @@ public class RDocumentationProvider extends AbstractDocumentationProvider {
     }
 
 
+    @NotNull
+    private static String decodeURL(String encoded) {
+        try {
+            return URLDecoder.decode(encoded, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
     /**
      * Intercepts clicks in documentation popup if link starts with psi_element://
      * <p>
@@ -251,52 +453,72 @@ public class RDocumentationProvider extends AbstractDocumentationProvider {
 
 
     @Nullable
-    private String getHelpFromLocalHelpServer(URL localHelpURL) {
+    private static String getHelpFromLocalHelpServer(URL localHelpURL) {
         try {
-
             String htmlRaw = new Scanner(localHelpURL.openStream(), "UTF-8").useDelimiter("\\A").next();
-            htmlRaw.indexOf("</head><body>");
 
-            String htmlTrimmed = htmlRaw.substring(htmlRaw.indexOf("</head><body>") + 13, htmlRaw.length()).trim();
+            return rewriteHelpHtml(htmlRaw, localHelpURL.toString(), "http://127.0.0.1:" + HELP_SERVER_PORT + "/");
+        } catch (IOException e) {
+            // server timed out??
+//            if(e.getMessage().contains("response code: 500 "))
+            e.printStackTrace();
+        }
+        return null;
+    }
+
 
-            // fix relative URLs
+    /**
+     * Strips the header of a help page and rewrites its links so that they are handled by the documentation popup.
+     *
+     * @param pageURL    the url of the page itself
+     * @param serverRoot the url of the help server root to which the links are relative
+     */
+    static String rewriteHelpHtml(String htmlRaw, String pageURL, String serverRoot) {
+        int bodyStart = htmlRaw.indexOf("</head><body>");
+        String htmlTrimmed = bodyStart >= 0 ? htmlRaw.substring(bodyStart + 13, htmlRaw.length()).trim() : htmlRaw.trim();
+
+        // fix relative URLs
 //            htmlTrimmed = htmlTrimmed.replace("href=\"../../", "href=\"http://127.0.0.1:" + HELP_SERVER_PORT + "/library/");
-            htmlTrimmed = htmlTrimmed.replace("../../", "http://127.0.0.1:" + HELP_SERVER_PORT + "/library/");
+        htmlTrimmed = htmlTrimmed.replace("../../", serverRoot + "library/");
 
-            // fix package relative 00Index.html
-            String stringifiedURL = localHelpURL.toString();
-            int helpIndex = stringifiedURL.indexOf("/help/");
-            if (helpIndex > 0) {
-                String parentPath = stringifiedURL.substring(0, helpIndex);
-                htmlTrimmed = htmlTrimmed.replace("00Index.html", parentPath + "/html/00Index.html");
+        // fix package relative 00Index.html
+        int helpIndex = pageURL.indexOf("/help/");
+        if (helpIndex > 0) {
+            String parentPath = pageURL.substring(0, helpIndex);
+            htmlTrimmed = htmlTrimmed.replace("00Index.html", parentPath + "/html/00Index.html");
 
-            }
+        }
 
-            if (stringifiedURL.endsWith("00Index.html")) {
-                String parentPath = stringifiedURL.substring(0, stringifiedURL.indexOf("/html/"));
+        if (pageURL.endsWith("00Index.html")) {
+            String parentPath = pageURL.substring(0, pageURL.indexOf("/html/"));
 
-                htmlTrimmed = htmlTrimmed.replace("href=\"", "href=\"" + parentPath + "/html/");
-                // todo  DESCRIPTION, NEWS and code demos links (are correct but not feteched) and alphabetical listing links are broken
-            }
+            htmlTrimmed = htmlTrimmed.replace("href=\"", "href=\"" + parentPath + "/html/");
+            // todo  DESCRIPTION, NEWS and code demos links (are correct but not feteched) and alphabetical listing links are broken
+        }
 
 
-            // Replace links with internal ones that are correctly handled by
-            // com.intellij.codeInsight.documentation.DocumentationManager.navigateByLink()
-            // See https://intellij-support.jetbrains.com/hc/en-us/community/posts/115000095710-Intercept-clicks-in-documentation-popup-
+        // Replace links with internal ones that are correctly handled by
+        // com.intellij.codeInsight.documentation.DocumentationManager.navigateByLink()
+        // See https://intellij-support.jetbrains.com/hc/en-us/community/posts/115000095710-Intercept-clicks-in-documentation-popup-
 //            htmlTrimmed = transformLinks(htmlTrimmed);
-            htmlTrimmed = htmlTrimmed.replace("http://127.0.0.1:" + HELP_SERVER_PORT + "/", "psi_element://");
+        htmlTrimmed = htmlTrimmed.replace(serverRoot, "psi_element://");
 //            http://127.0.0.1:25593/library/base/html/file.info.html
-            return htmlTrimmed;
-        } catch (IOException e) {
-            // server timed out??
-//            if(e.getMessage().contains("response code: 500 "))
-            e.printStackTrace();
-        }
-        return null;
+        return htmlTrimmed;
     }
 
 
     private static URL restoreInterceptedLink(PsiElement reference) {
+        String linkPath = restoreInterceptedLinkPath(reference);
+        if (linkPath == null) {
+            return null;
+        }
+
+        return makeURL("http://127.0.0.1:" + HELP_SERVER_PORT + "/" + linkPath);
+    }
+
+
+    @Nullable
+    private static String restoreInterceptedLinkPath(PsiElement reference) {
         PsiElementPattern.Capture<RCallExpression> localLinkPattern
                 = psiElement(RCallExpression.class).withChild(psiElement(RReferenceExpression.class).withText("help_url"));
 
@@ -305,9 +527,7 @@ public class RDocumentationProvider extends AbstractDocumentationProvider {
         }
 
         String linkPath = ((RCallExpression) reference).getArgumentList().getExpressionList().get(0).getText();
-        linkPath = CharMatcher.anyOf("\"").trimFrom(linkPath);
-
-        return makeURL("http://127.0.0.1:" + HELP_SERVER_PORT + "/" + linkPath);
+        return CharMatcher.anyOf("\"").trimFrom(linkPath);
     }
 
 
@@ -0,0 +1,108 @@
+package com.r4intellij.documentation;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reader of the offline help of a package. The help pages are rendered to html while building the skeleton of a
+ * package (see <code>r-helpers/skeletonize_package.R</code>) and are stored as a gzip-compressed bundle next to it,
+ * so that help can be shown without running a help server.
+ * <p>
+ * A bundle starts with the aliases of all topics, followed by the html lines of each topic. Lookups just stream
+ * through the bundle, since their results are kept in the {@link RHelpCache}.
+ *
+ * @author Holger Brandl
+ */
+public class RHelpBundle {
+
+    private static final Logger LOG = Logger.getInstance("#" + RHelpBundle.class.getName());
+
+    // note: just change in sync with ./r-helpers/skeletonize_package.R
+    private static final String ALIAS_TAG = ".help_alias";
+    private static final String TOPIC_TAG = ".help_topic";
+
+
+    /**
+     * Returns the unprocessed html of a help page or <code>null</code> if it is not part of the bundle.
+     *
+     * @param topic the path of the page relative to the package as used by the help server, which is either
+     *              <code>help/&lt;alias&gt;</code> or <code>html/&lt;topic&gt;.html</code>
+     */
+    @Nullable
+    public static String findHelp(@NotNull File bundleFile, @NotNull String topic) {
+        if (!bundleFile.isFile()) return null;
+
+        String alias = null;
+        String topicName = null;
+
+        try {
+            if (topic.startsWith("help/")) {
+                alias = URLDecoder.decode(topic.substring("help/".length()), "UTF-8");
+            } else if (topic.startsWith("html/") && topic.endsWith(".html")) {
+                topicName = topic.substring("html/".length(), topic.length() - ".html".length());
+            } else {
+                return null;
+            }
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new FileInputStream(bundleFile)), StandardCharsets.UTF_8))) {
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] splitLine = line.split("\t");
+                    if (splitLine.length != 3) continue;
+
+                    if (splitLine[0].equals(ALIAS_TAG)) {
+                        if (topicName == null && splitLine[1].equals(alias)) topicName = splitLine[2];
+                        continue;
+                    }
+
+                    if (!splitLine[0].equals(TOPIC_TAG)) continue;
+
+                    // like the help server we also accept topic names if there is no such alias
+                    if (topicName == null) topicName = alias;
+
+                    int numLines = Integer.parseInt(splitLine[2]);
+
+                    if (splitLine[1].equals(topicName)) {
+                        return readLines(reader, numLines);
+                    }
+
+                    skipLines(reader, numLines);
+                }
+            }
+
+        } catch (IOException | NumberFormatException e) {
+            LOG.info("Failed to read help bundle " + bundleFile, e);
+        }
+
+        return null;
+    }
+
+
+    private static String readLines(BufferedReader reader, int numLines) throws IOException {
+        StringBuilder html = new StringBuilder();
+
+        for (int i = 0; i < numLines; i++) {
+            String line = reader.readLine();
+            if (line == null) throw new EOFException("truncated help bundle");
+
+            html.append(line).append("\n");
+        }
+
+        return html.toString();
+    }
+
+
+    private static void skipLines(BufferedReader reader, int numLines) throws IOException {
+        for (int i = 0; i < numLines; i++) {
+            if (reader.readLine() == null) throw new EOFException("truncated help bundle");
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.r4intellij.documentation;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.r4intellij.settings.RSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Cache of rendered help pages, keyed by package, package version and topic. Recently used pages are kept in memory,
+ * and pages of versioned packages are also stored on disk so that they survive restarts. A new package version
+ * simply maps to a different cache entry, and the pages of versions which are no longer installed are purged by
+ * {@link #cleanUp(Map)}, which also trims the disk cache to the least recently used pages.
+ * <p>
+ * File names carry a hash of the original name, so that topics like <code>T</code> and <code>t</code> don't collide
+ * on case-insensitive file systems.
+ * <p>
+ * The cached html is independent of the port of the help server since all links are rewritten before caching. It
+ * depends on the interpreter though, which is looked up again for each page so that a changed interpreter does not
+ * see the pages of the former one.
+ *
+ * @author Holger Brandl
+ */
+public class RHelpCache {
+
+    private static final Logger LOG = Logger.getInstance("#" + RHelpCache.class.getName());
+
+    private static final int MAX_PAGES_IN_MEMORY = 200;
+
+    private static final long MAX_DISK_CACHE_SIZE = 50 * 1024 * 1024;
+
+    private static RHelpCache INSTANCE;
+
+    private final Cache<String, String> pages = CacheBuilder.newBuilder()
+            .maximumSize(MAX_PAGES_IN_MEMORY)
+            .build();
+
+    // provides the cache directory of the current interpreter
+    private final Supplier<File> cacheDirProvider;
+
+
+    RHelpCache(@NotNull Supplier<File> cacheDirProvider) {
+        this.cacheDirProvider = cacheDirProvider;
+    }
+
+
+    public synchronized static RHelpCache getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new RHelpCache(RHelpCache::getCacheDirectory);
+        }
+
+        return INSTANCE;
+    }
+
+
+    /**
+     * The help of different interpreters is cached separately, just like their skeletons.
+     */
+    @Nullable
+    private static File getCacheDirectory() {
+        String interpreterPath = RSettings.getInstance().getInterpreterPath();
+        if (interpreterPath == null) return null;
+
+        int interpreterHash = FileUtil.toSystemIndependentName(interpreterPath).hashCode();
+        return new File(PathManager.getSystemPath(), "r_help_cache" + File.separator + Math.abs(interpreterHash));
+    }
+
+
+    /**
+     * Returns the cached html of a help topic or <code>null</code> if it has not been cached yet.
+     *
+     * @param packageVersion the installed version of the package or <code>null</code> if unknown, in which case the
+     *                       page is just looked up in memory
+     * @param topic          the path of the topic relative to the package, e.g. <code>help/filter</code>
+     */
+    @Nullable
+    public String get(@NotNull String packageName, @Nullable String packageVersion, @NotNull String topic) {
+        File cacheDir = cacheDirProvider.get();
+        String key = createKey(cacheDir, packageName, packageVersion, topic);
+
+        String html = pages.getIfPresent(key);
+        if (html != null) return html;
+
+        File pageFile = getPageFile(cacheDir, packageName, packageVersion, topic);
+        if (pageFile == null || !pageFile.isFile()) return null;
+
+        try {
+            html = new String(Files.readAllBytes(pageFile.toPath()), StandardCharsets.UTF_8);
+
+            // the modification time tells which pages were used least recently when the cache is trimmed
+            //noinspection ResultOfMethodCallIgnored
+            pageFile.setLastModified(System.currentTimeMillis());
+        } catch (IOException e) {
+            LOG.info("Failed to read cached help page " + pageFile, e);
+            return null;
+        }
+
+        pages.put(key, html);
+        return html;
+    }
+
+
+    public void put(@NotNull String packageName, @Nullable String packageVersion, @NotNull String topic, @NotNull String html) {
+        File cacheDir = cacheDirProvider.get();
+        pages.put(createKey(cacheDir, packageName, packageVersion, topic), html);
+
+        File pageFile = getPageFile(cacheDir, packageName, packageVersion, topic);
+        if (pageFile == null) return;
+
+        try {
+            FileUtil.createParentDirs(pageFile);
+            Files.write(pageFile.toPath(), html.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOG.info("Failed to cache help page " + pageFile, e);
+        }
+    }
+
+
+    @TestOnly
+    void clearMemoryCache() {
+        pages.invalidateAll();
+    }
+
+
+    /**
+     * Removes the pages of packages and package versions which are no longer installed, and afterwards the least
+     * recently used pages until the disk cache fits its size limit.
+     *
+     * @param installedVersions the versions of the installed packages, by package name
+     */
+    public void cleanUp(@NotNull Map<String, String> installedVersions) {
+        cleanUp(installedVersions, MAX_DISK_CACHE_SIZE);
+    }
+
+
+    void cleanUp(@NotNull Map<String, String> installedVersions, long maxDiskCacheSize) {
+        File cacheDir = cacheDirProvider.get();
+        if (cacheDir == null || !cacheDir.isDirectory()) return;
+
+        Set<File> installedVersionDirs = installedVersions.entrySet().stream()
+                .map(entry -> getVersionDir(cacheDir, entry.getKey(), entry.getValue()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
+        List<File> pageFiles = new ArrayList<>();
+
+        for (File packageDir : listFiles(cacheDir)) {
+            for (File versionDir : listFiles(packageDir)) {
+                if (installedVersionDirs.contains(versionDir)) {
+                    pageFiles.addAll(listFiles(versionDir));
+                } else {
+                    FileUtil.delete(versionDir);
+                }
+            }
+
+            if (listFiles(packageDir).isEmpty()) FileUtil.delete(packageDir);
+        }
+
+        long cacheSize = pageFiles.stream().mapToLong(File::length).sum();
+        if (cacheSize <= maxDiskCacheSize) return;
+
+        pageFiles.sort(Comparator.comparingLong(File::lastModified));
+
+        for (File pageFile : pageFiles) {
+            if (cacheSize <= maxDiskCacheSize) break;
+
+            cacheSize -= pageFile.length();
+            FileUtil.delete(pageFile);
+        }
+
+        LOG.info("Trimmed help cache " + cacheDir + " to " + cacheSize + " bytes");
+    }
+
+
+    /**
+     * Returns the file of a page in the disk cache or <code>null</code> if it has not been cached there.
+     */
+    @Nullable
+    public File getPageFile(@NotNull String packageName, @Nullable String packageVersion, @NotNull String topic) {
+        File pageFile = getPageFile(cacheDirProvider.get(), packageName, packageVersion, topic);
+        return pageFile != null && pageFile.isFile() ? pageFile : null;
+    }
+
+
+    @Nullable
+    private static File getPageFile(@Nullable File cacheDir, String packageName, @Nullable String packageVersion, String topic) {
+        File versionDir = getVersionDir(cacheDir, packageName, packageVersion);
+        if (versionDir == null) return null;
+
+        return new File(versionDir, toFileName(topic) + ".html");
+    }
+
+
+    @Nullable
+    private static File getVersionDir(@Nullable File cacheDir, String packageName, @Nullable String packageVersion) {
+        if (cacheDir == null || packageVersion == null || packageVersion.isEmpty()) return null;
+
+        return new File(cacheDir, toFileName(packageName) + File.separator + toFileName(packageVersion));
+    }
+
+
+    private static List<File> listFiles(File dir) {
+        File[] files = dir.listFiles();
+        return files != null ? Arrays.asList(files) : Collections.emptyList();
+    }
+
+
+    private static String createKey(@Nullable File cacheDir, String packageName, @Nullable String packageVersion, String topic) {
+        return cacheDir + "\t" + packageName + "\t" + packageVersion + "\t" + topic;
+    }
+
+
+    private static String toFileName(String pathElement) {
+        try {
+            return URLEncoder.encode(pathElement, "UTF-8") + "_" + Integer.toHexString(pathElement.hashCode());
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -3,29 +3,57 @@
 package com.r4intellij.editor;
 
 import com.google.common.collect.Lists;
-import com.intellij.codeInsight.completion.CompletionContributor;
-import com.intellij.codeInsight.completion.CompletionParameters;
-import com.intellij.codeInsight.completion.CompletionResultSet;
-import com.intellij.codeInsight.completion.CompletionUtil;
+import com.intellij.codeInsight.completion.*;
 import com.intellij.codeInsight.lookup.LookupElementBuilder;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.patterns.ElementPattern;
+import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.impl.cache.impl.id.IdTableBuilding;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.stubs.StubIndex;
 import com.intellij.psi.util.PsiTreeUtil;
-import com.r4intellij.psi.api.RCallExpression;
+import com.intellij.util.ProcessingContext;
+import com.r4intellij.packages.RIndexCache;
+import com.r4intellij.packages.RPackage;
+import com.r4intellij.packages.RSymbolTrie;
+import com.r4intellij.psi.api.*;
+import com.r4intellij.psi.stubs.RAssignmentNameIndex;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
+import static com.intellij.patterns.PlatformPatterns.psiElement;
+import static com.intellij.patterns.StandardPatterns.not;
+import static com.r4intellij.parsing.RElementTypes.R_IDENTIFIER;
+import static com.r4intellij.psi.references.RReferenceImpl.createPackageSymbolLookup;
+
 
 /**
- * This would be our hook into any special handling for code completion.
+ * Completes package names in <code>library</code> calls and otherwise the symbols of the imported packages, the
+ * symbols defined elsewhere in the project and the words of the current document. Package and project symbols are just
+ * offered for identifiers of reference expressions, so comments, strings and the tags of <code>$</code> and
+ * <code>@</code> expressions are completed with the words of the document only.
+ * <p>
+ * The symbols of packages and document words are looked up by the first character of the prefix (ignoring its case),
+ * which narrows them down to the symbols with the same initial. The prefix matcher of the result set does the rest,
+ * so that camel-hump matching keeps working.
  */
 public class RCompletionContributor extends CompletionContributor {
 
     public static ArrayList<String> PACKAGE_IMPORT_METHODS = Lists.newArrayList("require", "library", "load_pack");
 
+    // local symbols are more likely to be meant than the ones of the imported packages
+    private static final double LOCAL_SYMBOL_PRIORITY = 1;
+
+    private static final ElementPattern<PsiElement> REFERENCE_IDENTIFIER =
+            psiElement(R_IDENTIFIER).withParent(RReferenceExpression.class);
+
 
     public RCompletionContributor() {
         // also allow for within string completion
@@ -33,69 +61,186 @@ public class RCompletionContributor extends CompletionContributor {
 
         // see https://intellij-support.jetbrains.com/hc/en-us/community/posts/206756005-Is-There-A-Standard-CompletionContributor-Which-Provides-Path-File-Completion
 //        extend(PlatformPatterns.psiElement().inside(PsiJavaPatterns.literalExpression()));
-    }
 
-    //    public static final String test = new File("");
+        extend(CompletionType.BASIC, REFERENCE_IDENTIFIER, new CompletionProvider<CompletionParameters>() {
+            @Override
+            protected void addCompletions(@NotNull CompletionParameters parameters, ProcessingContext context, @NotNull CompletionResultSet result) {
+                if (isPackageContext(parameters.getPosition())) {
+                    addPackageNames(result);
+                    return;
+                }
 
+                Set<String> symbols = new HashSet<>();
 
-    @Override
-    public void fillCompletionVariants(@NotNull final CompletionParameters parameters, @NotNull final CompletionResultSet result) {
-//        if (parameters.getCompletionType() == CompletionType.BASIC && shouldPerformWordCompletion(parameters)) {
+                addImportedSymbols(parameters, result, symbols);
+                addProjectSymbols(parameters, result, symbols);
+                addWordsFromDocument(parameters, result, symbols);
+            }
+        });
 
-        if (!isPackageContext(parameters.getPosition())) {
-            addWordFromDocument(result, parameters, Collections.<String>emptySet());
-        }
+        extend(CompletionType.BASIC, not(REFERENCE_IDENTIFIER), new CompletionProvider<CompletionParameters>() {
+            @Override
+            protected void addCompletions(@NotNull CompletionParameters parameters, ProcessingContext context, @NotNull CompletionResultSet result) {
+                if (isPackageContext(parameters.getPosition())) return;
+
+                addWordsFromDocument(parameters, result, Collections.emptySet());
+            }
+        });
     }
 
 
+    /**
+     * Returns <code>true</code> if the element is (part of) an argument of a <code>library</code> call, but not of a
+     * call nested into it.
+     */
     public static boolean isPackageContext(PsiElement psiElement) {
-        RCallExpression pp = PsiTreeUtil.getContextOfType(psiElement, RCallExpression.class);
+        RArgumentList argumentList = PsiTreeUtil.getParentOfType(psiElement, RArgumentList.class, true, RCallExpression.class);
+        if (argumentList == null || !(argumentList.getParent() instanceof RCallExpression)) return false;
 
-        return pp != null && PACKAGE_IMPORT_METHODS.contains(pp.getExpression().getText());
+        RCallExpression callExpression = (RCallExpression) argumentList.getParent();
+        return PACKAGE_IMPORT_METHODS.contains(callExpression.getExpression().getText());
     }
 
 
-    private static void addWordFromDocument(CompletionResultSet result, CompletionParameters parameters, Set<String> excludes) {
-        Set<String> realExcludes = new HashSet<String>(excludes);
-        for (String exclude : excludes) {
-            String[] words = exclude.split("[ \\.-]");
-            if (words.length > 0 && StringUtil.isNotEmpty(words[0])) {
-                realExcludes.add(words[0]);
+    private static void addPackageNames(CompletionResultSet result) {
+        RIndexCache indexCache = RIndexCache.getInstance();
+
+        // TODO add completion for not-yet-installed packages
+        for (String packageName : findByPrefix(indexCache.getPackageNameTrie(), result)) {
+            RPackage rPackage = indexCache.getByName(packageName);
+            if (rPackage == null) continue;
+
+            result.addElement(LookupElementBuilder.create(packageName).withTypeText(rPackage.getTitle()));
+        }
+    }
+
+
+    /**
+     * Adds the functions and data sets of the imported packages. Since packages attached later mask the ones
+     * attached before, the symbols of later imports are ranked first.
+     */
+    private static void addImportedSymbols(CompletionParameters parameters, CompletionResultSet result, Set<String> symbols) {
+        PsiElement position = parameters.getPosition();
+        PsiFile containingFile = position.getContainingFile();
+        if (!(containingFile instanceof RFile)) return;
+
+        List<String> importedPackages = ((RFile) containingFile).getImportedPackages(position);
+        PsiManager manager = position.getManager();
+
+        for (int i = 0; i < importedPackages.size(); i++) {
+            String pckg = importedPackages.get(i);
+            RPackage rPackage = RIndexCache.getInstance().getByName(pckg);
+            if (rPackage == null) continue;
+
+            double priority = i - importedPackages.size();
+
+            for (String funName : findByPrefix(rPackage.getFunctionTrie(), result)) {
+                if (funName.contains(".__")) continue;
+
+                result.addElement(PrioritizedLookupElement.withPriority(
+                        createPackageSymbolLookup(manager, pckg, funName, true), priority));
+                symbols.add(funName);
+            }
+
+            // Also provide dedicated completion for data
+            for (String dataSet : findByPrefix(rPackage.getDataSetTrie(), result)) {
+                if (dataSet.contains(".__")) continue;
+
+                result.addElement(PrioritizedLookupElement.withPriority(
+                        createPackageSymbolLookup(manager, pckg, dataSet, false), priority));
+                symbols.add(dataSet);
             }
         }
+    }
+
+
+    /**
+     * Adds the symbols assigned in other files of the project. Symbols of the current file are already covered by
+     * its words.
+     */
+    private static void addProjectSymbols(CompletionParameters parameters, CompletionResultSet result, Set<String> symbols) {
+        PrefixMatcher matcher = result.getPrefixMatcher();
+
+        // without a prefix we would need to visit all assignments of the project
+        if (matcher.getPrefix().isEmpty()) return;
+
+        Project project = parameters.getPosition().getProject();
+        GlobalSearchScope projectScope = GlobalSearchScope.projectScope(project);
+        VirtualFile currentFile = parameters.getOriginalFile().getVirtualFile();
+
+        List<String> matchingKeys = new ArrayList<>();
+        StubIndex.getInstance().processAllKeys(RAssignmentNameIndex.KEY, key -> {
+            if (!symbols.contains(key) && matcher.prefixMatches(key)) matchingKeys.add(key);
+            return true;
+        }, projectScope, null);
+
+        for (String key : matchingKeys) {
+            // the keys may also stem from other scopes, so we need to check for a definition in the project
+            RAssignmentStatement definition = findDefinition(key, project, projectScope, currentFile);
+            if (definition == null) continue;
+
+            result.addElement(PrioritizedLookupElement.withPriority(LookupElementBuilder.create(key)
+                    .withTypeText(definition.getContainingFile().getName()), LOCAL_SYMBOL_PRIORITY));
+            symbols.add(key);
+        }
+    }
+
+
+    @Nullable
+    private static RAssignmentStatement findDefinition(String name, Project project, GlobalSearchScope scope, VirtualFile excludedFile) {
+        RAssignmentStatement[] definition = new RAssignmentStatement[1];
 
-        int startOffset = parameters.getOffset();
-        PsiElement insertedElement = parameters.getPosition();
+        StubIndex.getInstance().processElements(RAssignmentNameIndex.KEY, name, project, scope, RAssignmentStatement.class, assignment -> {
+            if (Objects.equals(assignment.getContainingFile().getVirtualFile(), excludedFile)) return true;
+
+            definition[0] = assignment;
+            return false;
+        });
+
+        return definition[0];
+    }
 
-//        RCallExpression pp = PsiTreeUtil.getContextOfType(insertedElement, RCallExpression.class);
 
+    private static void addWordsFromDocument(CompletionParameters parameters, CompletionResultSet result, Set<String> excludes) {
+        Document document = PsiDocumentManager.getInstance(parameters.getPosition().getProject())
+                .getDocument(parameters.getOriginalFile());
+        if (document == null) return;
+
+        // words do not contain dots, so they need to be matched against the alphanumeric prefix
         final CompletionResultSet plainResultSet = result.
                 withPrefixMatcher(CompletionUtil.findAlphanumericPrefix(parameters));
 
-        for (final String word : new HashSet<>(getAllWords(insertedElement, startOffset))) {
-            if (!realExcludes.contains(word)) {
-                plainResultSet.addElement(LookupElementBuilder.create(word));
-            }
+        String prefix = plainResultSet.getPrefixMatcher().getPrefix();
+        if (StringUtil.isEmpty(prefix)) return;
+
+        RDocumentWords documentWords = RDocumentWords.getInstance(document);
+
+        // the word being completed is part of the document as well, so we skip it unless it also occurs elsewhere
+        String caretWord = getWordAt(document.getImmutableCharSequence(), parameters.getOffset());
+
+        for (String word : documentWords.findByPrefix(prefix.substring(0, 1))) {
+            if (excludes.contains(word)) continue;
+            if (word.equals(caretWord) && documentWords.count(word) < 2) continue;
+
+            plainResultSet.addElement(PrioritizedLookupElement.withPriority(LookupElementBuilder.create(word), LOCAL_SYMBOL_PRIORITY));
         }
     }
 
 
-    private static Set<String> getAllWords(final PsiElement context, final int offset) {
-        final Set<String> words = new LinkedHashSet<String>();
-        if (StringUtil.isEmpty(CompletionUtil.findJavaIdentifierPrefix(context, offset))) {
-            return words;
-        }
+    private static String getWordAt(CharSequence text, int offset) {
+        int start = Math.min(offset, text.length());
+        int end = start;
 
-        final CharSequence chars = context.getContainingFile().getViewProvider().getContents(); // ??
-        IdTableBuilding.scanWords(new IdTableBuilding.ScanWordProcessor() {
-            public void run(final CharSequence chars, @Nullable char[] charsArray, final int start, final int end) {
-                if (start > offset || offset > end) {
-                    words.add(chars.subSequence(start, end).toString());
-                }
-            }
-        }, chars, 0, chars.length());
-        return words;
+        while (start > 0 && Character.isJavaIdentifierPart(text.charAt(start - 1))) start--;
+        while (end < text.length() && Character.isJavaIdentifierPart(text.charAt(end))) end++;
+
+        return text.subSequence(start, end).toString();
     }
 
 
+    private static List<String> findByPrefix(RSymbolTrie trie, CompletionResultSet result) {
+        String prefix = result.getPrefixMatcher().getPrefix();
+
+        return trie.findByPrefix(prefix.isEmpty() ? "" : prefix.substring(0, 1), true);
+    }
 }
@@ -0,0 +1,85 @@
+package com.r4intellij.editor;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.impl.cache.impl.id.IdTableBuilding;
+import com.r4intellij.packages.RSymbolTrie;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The words of a document for completion. Instead of rescanning the whole document for each completion, just the
+ * lines touched by a change are rescanned: their words are removed before and added again after the change.
+ *
+ * @author Holger Brandl
+ */
+class RDocumentWords implements DocumentListener {
+
+    private static final Key<RDocumentWords> DOCUMENT_WORDS = Key.create("R.documentWords");
+
+    private final RSymbolTrie words = new RSymbolTrie();
+
+
+    private RDocumentWords(Document document) {
+        scanWords(document.getImmutableCharSequence(), 0, document.getTextLength(), words::add);
+    }
+
+
+    @NotNull
+    static synchronized RDocumentWords getInstance(@NotNull Document document) {
+        RDocumentWords documentWords = document.getUserData(DOCUMENT_WORDS);
+
+        if (documentWords == null) {
+            documentWords = new RDocumentWords(document);
+            document.addDocumentListener(documentWords);
+            document.putUserData(DOCUMENT_WORDS, documentWords);
+        }
+
+        return documentWords;
+    }
+
+
+    @NotNull
+    List<String> findByPrefix(@NotNull String prefix) {
+        return words.findByPrefix(prefix, true);
+    }
+
+
+    /**
+     * The number of occurrences of a word in the document.
+     */
+    int count(@NotNull String word) {
+        return words.count(word);
+    }
+
+
+    @Override
+    public void beforeDocumentChange(DocumentEvent event) {
+        processChangedLines(event.getDocument(), event.getOffset(), event.getOffset() + event.getOldLength(), words::remove);
+    }
+
+
+    @Override
+    public void documentChanged(DocumentEvent event) {
+        processChangedLines(event.getDocument(), event.getOffset(), event.getOffset() + event.getNewLength(), words::add);
+    }
+
+
+    private static void processChangedLines(Document document, int startOffset, int endOffset, Consumer<String> processor) {
+        // expand to full lines so that words at the boundaries of the change are processed as a whole
+        int lineStart = document.getLineStartOffset(document.getLineNumber(startOffset));
+        int lineEnd = document.getLineEndOffset(document.getLineNumber(endOffset));
+
+        scanWords(document.getImmutableCharSequence(), lineStart, lineEnd, processor);
+    }
+
+
+    private static void scanWords(CharSequence text, int startOffset, int endOffset, Consumer<String> processor) {
+        IdTableBuilding.scanWords((chars, charsArray, start, end) ->
+                processor.accept(chars.subSequence(start, end).toString()), text, startOffset, endOffset);
+    }
+}
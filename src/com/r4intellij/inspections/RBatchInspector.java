@@ -0,0 +1,245 @@
+package com.r4intellij.inspections;
+
+import com.intellij.codeInsight.daemon.HighlightDisplayKey;
+import com.intellij.codeInspection.*;
+import com.intellij.codeInspection.ex.InspectionProfileImpl;
+import com.intellij.codeInspection.ex.InspectionToolWrapper;
+import com.intellij.codeInspection.ex.LocalInspectionToolWrapper;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.search.FileTypeIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
+import com.r4intellij.RFileType;
+import com.r4intellij.RLanguage;
+import com.r4intellij.inspections.RInspectionReport.FileResult;
+import com.r4intellij.inspections.RInspectionReport.Problem;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the R inspections on many files at once, e.g. to check all scripts of a project in a build. Files are
+ * processed in parallel, each of them in its own read action. The package index and the resolve caches are shared
+ * across files since they are global respectively per project.
+ * <p>
+ * By default the R inspections which are enabled in the inspection profile of the project are run, and their problems
+ * are reported by the short names of the <code>plugin.xml</code>.
+ *
+ * @author Holger Brandl
+ */
+public class RBatchInspector {
+
+    private static final Logger LOG = Logger.getInstance("#" + RBatchInspector.class.getName());
+
+    private final Project project;
+    // the inspections by the short names they are registered with
+    private final Map<String, LocalInspectionTool> tools;
+    private final int parallelism;
+
+
+    /**
+     * Runs the R inspections which are enabled in the inspection profile of the project.
+     */
+    public RBatchInspector(@NotNull Project project) {
+        this(project, getEnabledInspections(project), Runtime.getRuntime().availableProcessors());
+    }
+
+
+    public RBatchInspector(@NotNull Project project, @NotNull List<LocalInspectionTool> tools, int parallelism) {
+        this(project, tools.stream().collect(Collectors.toMap(RBatchInspector::getShortName, tool -> tool,
+                (first, second) -> first, LinkedHashMap::new)), parallelism);
+    }
+
+
+    private RBatchInspector(@NotNull Project project, @NotNull Map<String, LocalInspectionTool> tools, int parallelism) {
+        this.project = project;
+        this.tools = tools;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+
+    /**
+     * The R inspections which are enabled in the current inspection profile of the project, by their short names.
+     */
+    @NotNull
+    private static Map<String, LocalInspectionTool> getEnabledInspections(@NotNull Project project) {
+        InspectionProfileImpl profile = InspectionProjectProfileManager.getInstance(project).getCurrentProfile();
+        Map<String, LocalInspectionTool> tools = new LinkedHashMap<>();
+
+        for (InspectionToolWrapper wrapper : profile.getInspectionTools(null)) {
+            if (!(wrapper instanceof LocalInspectionToolWrapper)) continue;
+
+            // the language is unknown for tools which were added to the profile directly, e.g. in tests
+            String language = wrapper.getLanguage();
+            if (language != null && !language.equals(RLanguage.getInstance().getID())) continue;
+
+            if (!profile.isToolEnabled(HighlightDisplayKey.find(wrapper.getShortName()))) continue;
+
+            LocalInspectionTool tool = ((LocalInspectionToolWrapper) wrapper).getTool();
+            LocalInspectionEP registration = findRegistration(tool);
+            if (registration == null || !RLanguage.getInstance().getID().equals(registration.language)) continue;
+
+            tools.put(registration.getShortName(), tool);
+        }
+
+        return tools;
+    }
+
+
+    /**
+     * Tools which are created directly don't know the short name of their <code>plugin.xml</code> registration, so
+     * it is looked up by the implementation class.
+     */
+    @NotNull
+    private static String getShortName(@NotNull LocalInspectionTool tool) {
+        LocalInspectionEP registration = findRegistration(tool);
+        return registration != null ? registration.getShortName() : tool.getShortName();
+    }
+
+
+    @Nullable
+    private static LocalInspectionEP findRegistration(@NotNull LocalInspectionTool tool) {
+        for (LocalInspectionEP inspectionEP : LocalInspectionEP.LOCAL_INSPECTION.getExtensions()) {
+            if (tool.getClass().getName().equals(inspectionEP.implementationClass)) return inspectionEP;
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Returns the R files of the project, which excludes the skeletons of the R packages.
+     */
+    @NotNull
+    public List<VirtualFile> findProjectFiles() {
+        Collection<VirtualFile> files = DumbService.getInstance(project).runReadActionInSmartMode(() ->
+                FileTypeIndex.getFiles(RFileType.INSTANCE, GlobalSearchScope.projectScope(project)));
+
+        return files.stream().sorted(Comparator.comparing(VirtualFile::getPath)).collect(Collectors.toList());
+    }
+
+
+    @NotNull
+    public RInspectionReport inspect(@NotNull List<VirtualFile> files, @NotNull ProgressIndicator indicator) {
+        long startTime = System.currentTimeMillis();
+        AtomicInteger numProcessed = new AtomicInteger();
+
+        indicator.setIndeterminate(false);
+
+        // a dedicated pool so that the common pool stays available to the inspections themselves
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        List<FileResult> results;
+        try {
+            results = pool.submit(() -> files.parallelStream()
+                    .map(file -> {
+                        if (indicator.isCanceled()) return null;
+
+                        FileResult result = inspectFile(file);
+
+                        indicator.setFraction((double) numProcessed.incrementAndGet() / files.size());
+                        indicator.setText2(file.getPresentableUrl());
+
+                        return result;
+                    })
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList())
+            ).get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException(e);
+
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ProcessCanceledException) throw (ProcessCanceledException) e.getCause();
+            throw new RuntimeException("Failed to inspect R files", e.getCause());
+
+        } finally {
+            pool.shutdown();
+        }
+
+        indicator.checkCanceled();
+
+        return new RInspectionReport(results, System.currentTimeMillis() - startTime);
+    }
+
+
+    @NotNull
+    FileResult inspectFile(@NotNull VirtualFile file) {
+        long startTime = System.currentTimeMillis();
+
+        List<Problem> problems = DumbService.getInstance(project).runReadActionInSmartMode(() -> {
+            if (!file.isValid()) return Collections.<Problem>emptyList();
+
+            PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+            if (psiFile == null) return Collections.<Problem>emptyList();
+
+            return inspectPsiFile(psiFile);
+        });
+
+        return new FileResult(file.getPath(), System.currentTimeMillis() - startTime, problems);
+    }
+
+
+    private List<Problem> inspectPsiFile(PsiFile psiFile) {
+        InspectionManager inspectionManager = InspectionManager.getInstance(project);
+        LocalInspectionToolSession session = new LocalInspectionToolSession(psiFile, 0, psiFile.getTextLength());
+
+        Map<String, ProblemsHolder> holders = new LinkedHashMap<>();
+        List<PsiElementVisitor> visitors = new ArrayList<>();
+
+        tools.forEach((shortName, tool) -> {
+            ProblemsHolder holder = new ProblemsHolder(inspectionManager, psiFile, false);
+            holders.put(shortName, holder);
+
+            tool.inspectionStarted(session, false);
+            visitors.add(tool.buildVisitor(holder, false, session));
+        });
+
+        // a single traversal of the tree for all inspections
+        psiFile.accept(new PsiRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitElement(PsiElement element) {
+                for (PsiElementVisitor visitor : visitors) {
+                    element.accept(visitor);
+                }
+
+                super.visitElement(element);
+            }
+        });
+
+        List<Problem> problems = new ArrayList<>();
+
+        holders.forEach((shortName, holder) -> {
+            tools.get(shortName).inspectionFinished(session, holder);
+
+            for (ProblemDescriptor descriptor : holder.getResults()) {
+                PsiElement element = descriptor.getPsiElement();
+
+                try {
+                    problems.add(new Problem(shortName, descriptor.getHighlightType().name(),
+                            descriptor.getLineNumber() + 1,
+                            ProblemDescriptorUtil.renderDescriptionMessage(descriptor, element)));
+                } catch (RuntimeException e) {
+                    LOG.warn("Failed to render problem of " + shortName + " in " + psiFile.getName(), e);
+                }
+            }
+        });
+
+        problems.sort(Comparator.comparingInt(Problem::getLine));
+
+        return problems;
+    }
+}
@@ -0,0 +1,153 @@
+package com.r4intellij.inspections;
+
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The results of a {@link RBatchInspector} run, which can be written as xml to be picked up by a build.
+ * <pre>
+ * &lt;r-inspections files="2" problems="1" duration_ms="431"&gt;
+ *   &lt;file path="/project/analysis.R" duration_ms="212"&gt;
+ *     &lt;problem line="3" inspection="UnresolvedReference" severity="GENERIC_ERROR"&gt;Unresolved reference&lt;/problem&gt;
+ *   &lt;/file&gt;
+ * &lt;/r-inspections&gt;
+ * </pre>
+ *
+ * @author Holger Brandl
+ */
+public class RInspectionReport {
+
+    private final List<FileResult> files;
+    private final long durationMs;
+
+
+    public RInspectionReport(@NotNull List<FileResult> files, long durationMs) {
+        this.files = Collections.unmodifiableList(files);
+        this.durationMs = durationMs;
+    }
+
+
+    public List<FileResult> getFiles() {
+        return files;
+    }
+
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+
+    public int getProblemCount() {
+        return files.stream().mapToInt(file -> file.getProblems().size()).sum();
+    }
+
+
+    @NotNull
+    public Element toXml() {
+        Element root = new Element("r-inspections");
+        root.setAttribute("files", String.valueOf(files.size()));
+        root.setAttribute("problems", String.valueOf(getProblemCount()));
+        root.setAttribute("duration_ms", String.valueOf(durationMs));
+
+        for (FileResult file : files) {
+            Element fileElement = new Element("file");
+            fileElement.setAttribute("path", file.getPath());
+            fileElement.setAttribute("duration_ms", String.valueOf(file.getDurationMs()));
+
+            for (Problem problem : file.getProblems()) {
+                Element problemElement = new Element("problem");
+                problemElement.setAttribute("line", String.valueOf(problem.getLine()));
+                problemElement.setAttribute("inspection", problem.getInspection());
+                problemElement.setAttribute("severity", problem.getSeverity());
+                problemElement.setText(problem.getMessage());
+
+                fileElement.addContent(problemElement);
+            }
+
+            root.addContent(fileElement);
+        }
+
+        return root;
+    }
+
+
+    public void write(@NotNull File reportFile) throws IOException {
+        FileUtil.createParentDirs(reportFile);
+        JDOMUtil.writeDocument(new Document(toXml()), reportFile, "\n");
+    }
+
+
+    public static class FileResult {
+
+        private final String path;
+        private final long durationMs;
+        private final List<Problem> problems;
+
+
+        public FileResult(@NotNull String path, long durationMs, @NotNull List<Problem> problems) {
+            this.path = path;
+            this.durationMs = durationMs;
+            this.problems = problems;
+        }
+
+
+        public String getPath() {
+            return path;
+        }
+
+
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+
+        public List<Problem> getProblems() {
+            return problems;
+        }
+    }
+
+
+    public static class Problem {
+
+        private final String inspection;
+        private final String severity;
+        private final int line;
+        private final String message;
+
+
+        public Problem(@NotNull String inspection, @NotNull String severity, int line, @NotNull String message) {
+            this.inspection = inspection;
+            this.severity = severity;
+            this.line = line;
+            this.message = message;
+        }
+
+
+        public String getInspection() {
+            return inspection;
+        }
+
+
+        public String getSeverity() {
+            return severity;
+        }
+
+
+        public int getLine() {
+            return line;
+        }
+
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
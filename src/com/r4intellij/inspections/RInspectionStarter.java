@@ -0,0 +1,87 @@
+package com.r4intellij.inspections;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ApplicationStarter;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ex.ProjectManagerEx;
+import com.intellij.openapi.util.io.FileUtil;
+
+import java.io.File;
+
+/**
+ * Headless entry point of the {@link RBatchInspector} to check R code in builds:
+ * <pre>
+ * idea r-inspect &lt;project dir&gt; &lt;report file&gt;
+ * </pre>
+ * The exit code is 0 if no problems were found, 1 if there were problems and 2 if the inspection failed, so that
+ * merges can be gated on it.
+ *
+ * @author Holger Brandl
+ */
+public class RInspectionStarter implements ApplicationStarter {
+
+    private static final int EXIT_PROBLEMS = 1;
+    private static final int EXIT_FAILURE = 2;
+
+
+    @Override
+    public String getCommandName() {
+        return "r-inspect";
+    }
+
+
+    @Override
+    public void premain(String[] args) {
+        if (args.length != 3) {
+            System.err.println("usage: r-inspect <project dir> <report file>");
+            System.exit(EXIT_FAILURE);
+        }
+    }
+
+
+    @Override
+    public void main(String[] args) {
+        String projectPath = FileUtil.toSystemIndependentName(new File(args[1]).getAbsolutePath());
+        File reportFile = new File(args[2]).getAbsoluteFile();
+
+        Project project;
+        try {
+            project = ProjectManagerEx.getInstanceEx().loadAndOpenProject(projectPath);
+        } catch (Exception e) {
+            e.printStackTrace();
+            project = null;
+        }
+
+        if (project == null) {
+            System.err.println("Failed to open project " + projectPath);
+            System.exit(EXIT_FAILURE);
+            return;
+        }
+
+        Project openedProject = project;
+
+        // the inspections need the stub indices, so we wait for indexing to finish before running them
+        DumbService.getInstance(project).smartInvokeLater(() -> ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            int exitCode;
+
+            try {
+                RBatchInspector inspector = new RBatchInspector(openedProject);
+                RInspectionReport report = inspector.inspect(inspector.findProjectFiles(), new EmptyProgressIndicator());
+                report.write(reportFile);
+
+                System.out.printf("Found %d problems in %d R files in %dms, see %s%n",
+                        report.getProblemCount(), report.getFiles().size(), report.getDurationMs(), reportFile);
+
+                exitCode = report.getProblemCount() > 0 ? EXIT_PROBLEMS : 0;
+
+            } catch (Throwable e) {
+                e.printStackTrace();
+                exitCode = EXIT_FAILURE;
+            }
+
+            System.exit(exitCode);
+        }));
+    }
+}
@@ -4,7 +4,6 @@ import com.intellij.codeInspection.LocalInspectionToolSession;
 import com.intellij.codeInspection.ProblemHighlightType;
 import com.intellij.codeInspection.ProblemsHolder;
 import com.intellij.psi.PsiElementVisitor;
-import com.intellij.psi.PsiReference;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.r4intellij.psi.api.*;
 import com.r4intellij.typing.*;
@@ -44,13 +43,11 @@ public class TypeCheckerInspection extends RInspection {
         @Override
         public void visitCallExpression(@NotNull RCallExpression callExpression) {
             try {
-                ArgumentMatcher argumentMatcher = new ArgumentMatcher(callExpression);
-
                 // white-list dplyr utilities that are handled on c++ level
                 // see comments on https://github.com/tidyverse/dplyr/issues/2218#issuecomment-294879298
 
 
-                argumentMatcher.matchArgs(callExpression.getArgumentList());
+                ArgumentMatcher.matchCall(callExpression);
             } catch (MatchingException e) {
                 myProblemHolder.registerProblem(callExpression, e.getMessage(), ProblemHighlightType.GENERIC_ERROR_OR_WARNING);
             } catch (UnknownTypeException e) {
@@ -79,10 +76,8 @@ public class TypeCheckerInspection extends RInspection {
             // ignore binary ops (for now). E.g. `-` is not resolved to an unary function and it's not clear why
             if (!operatorExpression.isBinary()) return;
 
-            PsiReference referenceToFunction = operator.getReference();
-
             try {
-                new ArgumentMatcher(referenceToFunction).matchArgs(operatorExpression);
+                ArgumentMatcher.matchOperator(operatorExpression);
             } catch (MatchingException e) {
                 myProblemHolder.registerProblem(operatorExpression, e.getMessage(), ProblemHighlightType.GENERIC_ERROR_OR_WARNING);
             } catch (UnknownTypeException e) {
@@ -118,6 +113,9 @@ public class TypeCheckerInspection extends RInspection {
     public void inspectionFinished(@NotNull LocalInspectionToolSession session, @NotNull ProblemsHolder problemsHolder) {
         Map<RPsiElement, RErrorType> errors = RTypeContext.getExpressionsWithError(problemsHolder.getProject());
         for (Map.Entry<RPsiElement, RErrorType> error : errors.entrySet()) {
+            // the type context is shared by all files of the project
+            if (!problemsHolder.getFile().equals(error.getKey().getContainingFile())) continue;
+
             problemsHolder.registerProblem(error.getKey(), error.getValue().getErrorMessage(), ProblemHighlightType.GENERIC_ERROR);
         }
     }
@@ -51,13 +51,29 @@ public class UnquotedArgsRule implements Serializable {
     }
 
 
+    /**
+     * The <code>package::method</code> key of the rule, see {@link #createKey(RFunctionExpression)}.
+     */
+    public String getKey() {
+        return packageName + "::" + methodName;
+    }
+
+
+    /**
+     * Creates the key of a function definition which allows to look up the rules for this function.
+     */
+    public static String createKey(RFunctionExpression functionExpression) {
+        return RPsiImplUtil.getNamespace(functionExpression) + "::" + RPsiImplUtil.getName(functionExpression);
+    }
+
+
     public boolean matches(RParameter rParameter) {
         RFunctionExpression functionExpression = PsiTreeUtil.getParentOfType(rParameter, RFunctionExpression.class);
 
         if (functionExpression == null) return false;
         if (!isMatchingMethod(functionExpression)) return false;
 
-        return unquotedArgs.contains("*") || unquotedArgs.contains(rParameter.getName());
+        return matchesArgument(rParameter.getName());
     }
 
 
@@ -65,7 +81,15 @@ public class UnquotedArgsRule implements Serializable {
         if (functionExpression == null) return false;
         if (!isMatchingMethod(functionExpression)) return false;
 
-        return unquotedArgs.contains("*") || unquotedArgs.contains("...");
+        return matchesArgument("...");
+    }
+
+
+    /**
+     * Tests the argument without checking the method, which is expected to be done by the caller via {@link #getKey()}.
+     */
+    public boolean matchesArgument(String argName) {
+        return unquotedArgs.contains("*") || unquotedArgs.contains(argName);
     }
 
 
@@ -20,6 +20,7 @@ import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -181,7 +182,7 @@ public class UnresolvedReferenceInspection extends RInspection {
         ArgumentsMatchResult matchResult;
 
         try {
-            matchResult = new ArgumentMatcher(callExpression).matchArgs(callExpression.getArgumentList());
+            matchResult = ArgumentMatcher.matchCall(callExpression);
 
         } catch (MatchingException | UnknownTypeException e) {
             // we failed to match the args, so we can not apply white-listing rules
@@ -194,7 +195,10 @@ public class UnresolvedReferenceInspection extends RInspection {
             return true;
         }
 
-        List<UnquotedArgsRule> wlRules = RCodeInsightSettings.getInstance().getWhitelistModel();
+        // just the rules of the called function are relevant
+        RFunctionExpression functionExpression = matchResult.getFunctionType().getFunctionExpression();
+        List<UnquotedArgsRule> wlRules = functionExpression == null ? Collections.emptyList() :
+                RCodeInsightSettings.getInstance().getWhitelistRules(UnquotedArgsRule.createKey(functionExpression));
 
         // find parameter of given `element`
         RParameter rParameter = matchResult.matchedParams.entrySet().stream().filter(pair -> {
@@ -205,16 +209,13 @@ public class UnresolvedReferenceInspection extends RInspection {
 
         if (rParameter != null) { // is it white-listed?
             // see com.r4intellij.parser.UnquotedVariablesTest.testCascadedCallAsNamedArg()
-            boolean isWhiteListedArg = wlRules.stream().anyMatch(rule -> rule.matches(rParameter));
+            boolean isWhiteListedArg = wlRules.stream().anyMatch(rule -> rule.matchesArgument(rParameter.getName()));
 
             return isWhiteListedArg || isInUnquotedContext(callExpression);
         }
 
         // if it's not a named parameter, is must be a triple dot match
-        ArgumentsMatchResult finalMatchResult = matchResult;
-        boolean isWhiteListedTD = wlRules.stream().anyMatch(rule ->
-                rule.matchesTripleDot(finalMatchResult.getFunctionType().getFunctionExpression())
-        );
+        boolean isWhiteListedTD = wlRules.stream().anyMatch(rule -> rule.matchesArgument("..."));
 
         return isWhiteListedTD || isInUnquotedContext(callExpression);
     }
@@ -4,11 +4,9 @@ import com.intellij.codeInspection.LocalInspectionToolSession;
 import com.intellij.codeInspection.ProblemHighlightType;
 import com.intellij.codeInspection.ProblemsHolder;
 import com.intellij.psi.PsiElementVisitor;
-import com.intellij.psi.PsiReference;
-import com.intellij.psi.search.searches.ReferencesSearch;
-import com.intellij.util.Query;
 import com.r4intellij.psi.api.RParameter;
 import com.r4intellij.psi.api.RVisitor;
+import com.r4intellij.psi.references.RUsageAnalysis;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
 
@@ -42,9 +40,7 @@ public class UnusedParameterInspection extends RInspection {
 
         @Override
         public void visitParameter(@NotNull RParameter o) {
-            Query<PsiReference> search = ReferencesSearch.search(o);
-            PsiReference first = search.findFirst();
-            if (first == null) {
+            if (!RUsageAnalysis.getInstance(o.getContainingFile()).isUsed(o)) {
                 myProblemHolder.registerProblem(o, "Unused parameter " + o.getText(), ProblemHighlightType.LIKE_UNUSED_SYMBOL);
             }
         }
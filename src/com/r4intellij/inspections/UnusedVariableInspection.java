@@ -6,12 +6,14 @@ import com.intellij.codeInspection.ProblemsHolder;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiReference;
-import com.intellij.psi.search.LocalSearchScope;
-import com.intellij.psi.search.searches.ReferencesSearch;
-import com.intellij.util.Query;
 import com.r4intellij.RPsiUtils;
+import com.r4intellij.controlflow.RControlFlow;
+import com.r4intellij.controlflow.RDefinitionUsages;
+import com.r4intellij.controlflow.RInstruction;
+import com.r4intellij.controlflow.RReachingDefinitions;
 import com.r4intellij.psi.RElementFactory;
 import com.r4intellij.psi.api.*;
+import com.r4intellij.psi.references.RUsageAnalysis;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
 
@@ -70,12 +72,7 @@ public class UnusedVariableInspection extends RInspection {
             if (isInplaceAssignment(assignee)) return;
 
 
-            // todo use function or loop barrier here
-            Query<PsiReference> search = ReferencesSearch.search(element, new LocalSearchScope(element.getContainingFile()));
-            PsiReference first = search.findFirst();
-
-
-            if (first == null) {
+            if (!isUsed(element)) {
                 myProblemHolder.registerProblem(assignee,
                         "Variable '" + assignee.getText() + "' is never used",
                         ProblemHighlightType.LIKE_UNUSED_SYMBOL);
@@ -83,6 +80,23 @@ public class UnusedVariableInspection extends RInspection {
         }
 
 
+        /**
+         * Definitions are checked for reads on all paths of their control flow, so that overridden assignments are
+         * flagged as well. Assignments which are not part of a control flow like named arguments with
+         * <code>&lt;-</code> fall back to the references which resolve to them.
+         */
+        private boolean isUsed(RAssignmentStatement element) {
+            RControlFlow controlFlow = RControlFlow.getControlFlow(element);
+            RInstruction definition = controlFlow.getInstruction(element);
+
+            if (definition == null || RReachingDefinitions.getDefinedName(definition) == null) {
+                return RUsageAnalysis.getInstance(element.getContainingFile()).isUsed(element);
+            }
+
+            return RDefinitionUsages.getInstance(controlFlow).isUsed(definition);
+        }
+
+
         private boolean isInplaceAssignment(PsiElement assignee) {
             if (assignee instanceof RSubscriptionExpression) return true;
 
@@ -272,7 +272,7 @@ class TypedFunctionVisitor extends RVisitor {
         @Override
         public void visitCallExpression(@NotNull RCallExpression callExpression) {
             try {
-                new ArgumentMatcher(callExpression).matchArgs(callExpression.getArgumentList());
+                ArgumentMatcher.matchCall(callExpression);
             } catch (MatchingException e) {
                 hasErrors = true;
             }
@@ -72,6 +72,8 @@ fun rebuildIndex(project: Project) {
         cachePckg == null || !isSamePckgVersion(File(it.containingFile.virtualFile.canonicalPath), cachePckg.version)
     })
 
+    RSkeletonManifest.saveAll()
+
 
     if (updateTitles.isEmpty()) {
         // refresh cache as well here to also clear deleted packages
@@ -1,12 +1,18 @@
 package com.r4intellij.packages;
 
 import com.google.common.collect.Lists;
+import com.intellij.concurrency.JobScheduler;
 import com.intellij.execution.ExecutionException;
 import com.intellij.execution.configurations.GeneralCommandLine;
 import com.intellij.execution.process.CapturingProcessHandler;
+import com.intellij.execution.process.ProcessAdapter;
+import com.intellij.execution.process.ProcessEvent;
 import com.intellij.execution.process.ProcessOutput;
+import com.intellij.execution.process.ProcessOutputTypes;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.PathUtil;
 import com.r4intellij.RPsiUtils;
@@ -19,7 +25,12 @@ import java.io.File;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class RHelperUtil {
 
@@ -27,12 +38,22 @@ public class RHelperUtil {
 
   public static final Logger LOG = Logger.getInstance(RHelperUtil.class.getName());
 
+  // how often running helpers are checked for timeouts
+  private static final int WATCHDOG_INTERVAL = 1000;
+
   @Nullable
   public static ProcessOutput getProcessOutput(@NotNull final String scriptText) {
     if (!RSettings.hasInterpreter()) {
       return null;
     }
 
+    RHelperWorkerPool workerPool = RHelperWorkerPool.getInstance();
+    if (workerPool != null) {
+      ProcessOutput output = workerPool.evaluate(Collections.singletonList(scriptText), Collections.emptyList(), 5 * RPsiUtils.MINUTE);
+      if (output != null) return output;
+    }
+
+    // fall back to a separate process if no worker accepted the request
     String interpreter = RSettings.getInstance().getInterpreterPath();
     String[] getPckgsCmd = new String[]{interpreter, "--vanilla", "--quiet", "--slave", "-e", scriptText};
 
@@ -63,13 +84,78 @@ public class RHelperUtil {
 
   @Nullable
   public static String getHelperOutput(PluginResourceFile helper, String... args) {
-    RRunResult rRunResult = runHelperWithArgs(helper, args);
+    RRunResult rRunResult = runHelperInWorker(helper, args);
     return rRunResult != null ? rRunResult.getStdOut() : null;
   }
 
 
+  /**
+   * Runs a helper script in a pooled R worker instead of a new R process. This should be used for quick queries but
+   * not for operations which change the R installation like package installs.
+   */
+  @Nullable
+  public static RRunResult runHelperInWorker(@NotNull final PluginResourceFile helper, @NotNull final String... args) {
+    RHelperWorkerPool workerPool = RHelperWorkerPool.getInstance();
+    if (workerPool == null) {
+      LOG.info("Path to interpreter didn't set");
+      return null;
+    }
+
+    ProcessOutput output = workerPool.evaluateScript(helper.getFile(), Arrays.asList(args), 5 * RPsiUtils.MINUTE);
+
+    // fall back to a separate process if no worker accepted the request. Requests which failed or timed out in a
+    // worker are not repeated
+    if (output == null) return runHelperWithArgs(helper, args);
+
+    if (output.getExitCode() != 0) {
+      LOG.warn("Failed to run script. Exit code: " + output.getExitCode());
+      LOG.warn(output.getStderr());
+    }
+
+    return new RRunResult(helper.getFile().getName() + " " + StringUtil.join(args, " "), output);
+  }
+
+
   @Nullable
   public static RRunResult runHelperWithArgs(@NotNull final PluginResourceFile helper, @NotNull final String... args) {
+    return runHelperWithArgs(helper, null, 5 * RPsiUtils.MINUTE, args);
+  }
+
+
+  /**
+   * Runs the helper and kills it if it does not complete within the given timeout or if the indicator (if provided)
+   * is cancelled.
+   */
+  @Nullable
+  public static RRunResult runHelperWithArgs(@NotNull final PluginResourceFile helper,
+                                             @Nullable final ProgressIndicator indicator,
+                                             final int timeoutMillis,
+                                             @NotNull final String... args) {
+    return runHelper(helper, indicator, timeoutMillis, null, args);
+  }
+
+
+  /**
+   * Runs a helper which processes several items like {@link #runHelperWithArgs(PluginResourceFile, ProgressIndicator, int, String...)},
+   * but the timeout applies to each item instead of the whole run. The helper reports each completed item by a line
+   * on stdout which starts with the given progress tag.
+   */
+  @Nullable
+  public static RRunResult runHelperWithProgressTimeout(@NotNull final PluginResourceFile helper,
+                                                        @NotNull final ProgressIndicator indicator,
+                                                        final int timeoutMillis,
+                                                        @NotNull final String progressTag,
+                                                        @NotNull final String... args) {
+    return runHelper(helper, indicator, timeoutMillis, progressTag, args);
+  }
+
+
+  @Nullable
+  private static RRunResult runHelper(@NotNull final PluginResourceFile helper,
+                                      @Nullable final ProgressIndicator indicator,
+                                      final int timeoutMillis,
+                                      @Nullable final String progressTag,
+                                      @NotNull final String... args) {
 
     if (!RSettings.hasInterpreter()) {
       LOG.info("Path to interpreter didn't set");
@@ -88,7 +174,36 @@ public class RHelperUtil {
 
     try {
       CapturingProcessHandler processHandler = new CapturingProcessHandler(new GeneralCommandLine(command));
-      final ProcessOutput output = processHandler.runProcess(5 * RPsiUtils.MINUTE);
+      final ProcessOutput output;
+
+      if (indicator == null) {
+        output = processHandler.runProcess(timeoutMillis);
+      } else {
+        AtomicBoolean timedOut = new AtomicBoolean(false);
+        AtomicLong lastProgress = new AtomicLong(System.currentTimeMillis());
+
+        if (progressTag != null) {
+          processHandler.addProcessListener(new ProcessAdapter() {
+            @Override
+            public void onTextAvailable(ProcessEvent event, Key outputType) {
+              if (outputType == ProcessOutputTypes.STDOUT && event.getText().contains(progressTag)) {
+                lastProgress.set(System.currentTimeMillis());
+              }
+            }
+          });
+        }
+
+        ScheduledFuture<?> watchdog = JobScheduler.getScheduler().scheduleWithFixedDelay(() -> {
+          if (System.currentTimeMillis() - lastProgress.get() > timeoutMillis && !timedOut.getAndSet(true)) {
+            processHandler.destroyProcess();
+          }
+        }, WATCHDOG_INTERVAL, WATCHDOG_INTERVAL, TimeUnit.MILLISECONDS);
+
+        output = processHandler.runProcessWithProgressIndicator(indicator);
+        watchdog.cancel(false);
+
+        if (timedOut.get()) output.setTimeout();
+      }
 
       if (output.getExitCode() != 0) {
         LOG.warn("Failed to run script. Exit code: " + output.getExitCode());
@@ -149,10 +264,14 @@ public class RHelperUtil {
     private final String myStdOut;
     private final String myStdErr;
     private int myExitCode;
+    private final boolean myTimeout;
+    private final boolean myCancelled;
 
     public RRunResult(@NotNull String command, @NotNull ProcessOutput output) {
       this.myCommand = command;
       this.myExitCode = output.getExitCode();
+      this.myTimeout = output.isTimeout();
+      this.myCancelled = output.isCancelled();
       this.myStdOut = output.getStdout();
       this.myStdErr = output.getStderr();
     }
@@ -175,5 +294,13 @@ public class RHelperUtil {
     public int getExitCode() {
       return myExitCode;
     }
+
+    public boolean isTimeout() {
+      return myTimeout;
+    }
+
+    public boolean isCancelled() {
+      return myCancelled;
+    }
   }
 }
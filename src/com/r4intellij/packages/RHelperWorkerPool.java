@@ -0,0 +1,431 @@
+package com.r4intellij.packages;
+
+import com.google.common.collect.Lists;
+import com.intellij.concurrency.JobScheduler;
+import com.intellij.execution.process.ProcessOutput;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.project.ProjectManagerAdapter;
+import com.intellij.openapi.util.ShutDownTracker;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.messages.MessageBusConnection;
+import com.r4intellij.settings.RSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small pool of warm R processes which evaluate helper requests, so that quick queries like package versions or
+ * repository listings do not pay the R startup costs for each invocation. Workers communicate via framed requests
+ * and responses over stdin and stdout (see <code>r-helpers/helper_worker.R</code>), are checked for liveness before
+ * being reused, and are restarted if they crash or time out. The workers restore their search path and options after
+ * each request, and are recycled via {@link #recycleWorkers()} once the R installation was changed. Workers which
+ * were not used for a while or once the last project was closed are shut down, so that idle R processes don't keep
+ * their memory.
+ * <p>
+ * If all workers are busy for longer than the timeout of a request, no worker accepts it and the caller should fall
+ * back to a separate process.
+ * <p>
+ * Long running or state-changing operations like skeleton generation or package installation should still use a
+ * separate process via {@link RHelperUtil#runHelperWithArgs(RHelperUtil.PluginResourceFile, String...)}.
+ *
+ * @author Holger Brandl
+ */
+public class RHelperWorkerPool {
+
+    private static final Logger LOG = Logger.getInstance(RHelperWorkerPool.class.getName());
+
+    // note: just change in sync with ./r-helpers/helper_worker.R
+    private static final String REQUEST_TAG = "<<R4I-REQUEST>>";
+    private static final String ACCEPTED_TAG = "<<R4I-ACCEPTED>>";
+    private static final String RESPONSE_TAG = "<<R4I-RESPONSE>>";
+
+    private static final String SCRIPT_REQUEST = "script";
+    private static final String CODE_REQUEST = "code";
+
+    private static final RHelperUtil.PluginResourceFile RHELPER_WORKER = new RHelperUtil.PluginResourceFile("helper_worker.R");
+
+    private static final int POOL_SIZE = 2;
+
+    // ping workers which were not used for a while before handing them out
+    private static final long HEALTH_CHECK_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    private static final int HEALTH_CHECK_TIMEOUT = 2000;
+
+    private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    private static RHelperWorkerPool INSTANCE;
+
+    private final String interpreterPath;
+    private final BlockingQueue<RWorker> idleWorkers = new LinkedBlockingQueue<>();
+    private final Semaphore availableWorkers = new Semaphore(POOL_SIZE);
+
+    // workers started before the last recycling are not reused
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final ScheduledFuture<?> idleCheck;
+    private final MessageBusConnection connection;
+
+
+    private RHelperWorkerPool(String interpreterPath) {
+        this.interpreterPath = interpreterPath;
+
+        idleCheck = JobScheduler.getScheduler().scheduleWithFixedDelay(() -> shutdownIdleWorkers(IDLE_TIMEOUT),
+                IDLE_TIMEOUT, IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+
+        // the workers are only needed as long as a project is open
+        connection = ApplicationManager.getApplication().getMessageBus().connect();
+        connection.subscribe(ProjectManager.TOPIC, new ProjectManagerAdapter() {
+            @Override
+            public void projectClosed(Project project) {
+                if (ProjectManager.getInstance().getOpenProjects().length == 0) shutdownIdleWorkers(0);
+            }
+        });
+    }
+
+
+    /**
+     * Returns the pool of the currently configured interpreter or <code>null</code> if no interpreter is set.
+     */
+    @Nullable
+    public synchronized static RHelperWorkerPool getInstance() {
+        if (!RSettings.hasInterpreter()) return null;
+
+        String interpreterPath = RSettings.getInstance().getInterpreterPath();
+
+        if (INSTANCE == null || !Objects.equals(INSTANCE.interpreterPath, interpreterPath)) {
+            if (INSTANCE != null) INSTANCE.shutdown();
+
+            INSTANCE = new RHelperWorkerPool(interpreterPath);
+            ShutDownTracker.getInstance().registerShutdownTask(INSTANCE::shutdown);
+        }
+
+        return INSTANCE;
+    }
+
+
+    /**
+     * Replaces the workers of the current pool, since they may have cached the state of the R installation (like
+     * the installed packages or the library paths). To be called after packages were installed or removed.
+     */
+    public synchronized static void recycleWorkers() {
+        if (INSTANCE != null) INSTANCE.recycle();
+    }
+
+
+    /**
+     * Evaluates the given R code in a pooled worker and prints visible results like <code>R -e</code>. The arguments
+     * are accessible via <code>commandArgs(TRUE)</code>.
+     *
+     * @return the captured output, or <code>null</code> if no worker accepted the request
+     */
+    @Nullable
+    public ProcessOutput evaluate(@NotNull List<String> code, @NotNull List<String> args, int timeoutMillis) {
+        return evaluate(CODE_REQUEST, code, args, timeoutMillis);
+    }
+
+
+    /**
+     * Sources the given R script into a private environment of a pooled worker. The arguments are accessible via
+     * <code>commandArgs(TRUE)</code>.
+     *
+     * @return the captured output, or <code>null</code> if no worker accepted the request
+     */
+    @Nullable
+    public ProcessOutput evaluateScript(@NotNull File script, @NotNull List<String> args, int timeoutMillis) {
+        return evaluate(SCRIPT_REQUEST, Collections.singletonList(script.getAbsolutePath()), args, timeoutMillis);
+    }
+
+
+    @Nullable
+    private ProcessOutput evaluate(String requestType, List<String> lines, List<String> args, int timeoutMillis) {
+        try {
+            if (!availableWorkers.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                LOG.info("all R helper workers are busy, request is not accepted");
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        RWorker worker = null;
+
+        try {
+            worker = borrowWorker();
+            if (worker == null) return null;
+
+            ProcessOutput output = worker.evaluate(requestType, lines, args, timeoutMillis);
+
+            // retry once with a fresh worker if the worker died before it accepted the request. Requests which were
+            // accepted are never repeated, since they may have been processed already
+            if (output == null) {
+                worker.destroy();
+
+                worker = startWorker();
+                if (worker == null) return null;
+
+                output = worker.evaluate(requestType, lines, args, timeoutMillis);
+            }
+
+            return output;
+
+        } finally {
+            if (worker != null && worker.isAlive() && worker.generation == generation.get()) {
+                idleWorkers.offer(worker);
+            } else if (worker != null) {
+                worker.destroy();
+            }
+
+            availableWorkers.release();
+        }
+    }
+
+
+    @Nullable
+    private RWorker borrowWorker() {
+        RWorker worker;
+
+        while ((worker = idleWorkers.poll()) != null) {
+            if (worker.isHealthy()) return worker;
+
+            LOG.info("restarting unresponsive R helper worker");
+            worker.destroy();
+        }
+
+        return startWorker();
+    }
+
+
+    @Nullable
+    private RWorker startWorker() {
+        List<String> command = Lists.newArrayList(interpreterPath, "--vanilla", "--slave",
+                "-f", RHELPER_WORKER.getFile().getAbsolutePath());
+
+        try {
+            return new RWorker(new ProcessBuilder(command).start(), generation.get());
+        } catch (IOException e) {
+            LOG.warn("Failed to start R helper worker with " + StringUtil.join(command, " "), e);
+            return null;
+        }
+    }
+
+
+    public synchronized void shutdown() {
+        idleCheck.cancel(false);
+        connection.disconnect();
+        destroyIdleWorkers();
+    }
+
+
+    private synchronized void recycle() {
+        // busy workers are destroyed when they are returned
+        generation.incrementAndGet();
+        destroyIdleWorkers();
+    }
+
+
+    private void destroyIdleWorkers() {
+        RWorker worker;
+        while ((worker = idleWorkers.poll()) != null) {
+            worker.destroy();
+        }
+    }
+
+
+    /**
+     * Destroys the idle workers which were not used within the given time.
+     */
+    void shutdownIdleWorkers(long idleTimeoutMillis) {
+        long now = System.currentTimeMillis();
+
+        idleWorkers.removeIf(worker -> {
+            if (now - worker.lastUsed < idleTimeoutMillis) return false;
+
+            worker.destroy();
+            return true;
+        });
+    }
+
+
+    @TestOnly
+    int getNumIdleWorkers() {
+        return idleWorkers.size();
+    }
+
+
+    private static class RWorker {
+
+        private final Process process;
+        private final int generation;
+        private final BufferedWriter requestWriter;
+        private final BufferedReader responseReader;
+
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile boolean destroyed = false;
+        private volatile boolean accepted = false;
+
+
+        RWorker(Process process, int generation) {
+            this.process = process;
+            this.generation = generation;
+
+            requestWriter = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            responseReader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+
+            // drain stderr to prevent the worker from blocking on a full pipe
+            ApplicationManager.getApplication().executeOnPooledThread(() -> {
+                try (BufferedReader errReader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+                    String line;
+                    while ((line = errReader.readLine()) != null) {
+                        LOG.debug("R helper worker: " + line);
+                    }
+                } catch (IOException ignored) {
+                }
+            });
+        }
+
+
+        boolean isAlive() {
+            return !destroyed && process.isAlive();
+        }
+
+
+        boolean isHealthy() {
+            if (!isAlive()) return false;
+            if (System.currentTimeMillis() - lastUsed < HEALTH_CHECK_INTERVAL) return true;
+
+            ProcessOutput ping = evaluate(CODE_REQUEST, Lists.newArrayList("invisible(NULL)"), new ArrayList<>(), HEALTH_CHECK_TIMEOUT);
+            return ping != null && !ping.isTimeout() && ping.getExitCode() == 0;
+        }
+
+
+        /**
+         * @return the output of the request or <code>null</code> if the worker died before it accepted the request
+         */
+        @Nullable
+        ProcessOutput evaluate(String requestType, List<String> lines, List<String> args, int timeoutMillis) {
+            lastUsed = System.currentTimeMillis();
+            accepted = false;
+
+            try {
+                requestWriter.write(REQUEST_TAG + "\t" + requestType + "\t" + args.size() + "\t" + lines.size() + "\n");
+                for (String line : args) {
+                    requestWriter.write(line + "\n");
+                }
+                for (String line : lines) {
+                    requestWriter.write(line + "\n");
+                }
+                requestWriter.flush();
+            } catch (IOException e) {
+                return null;
+            }
+
+            Future<ProcessOutput> response = ApplicationManager.getApplication().executeOnPooledThread(this::readResponse);
+
+            try {
+                return response.get(timeoutMillis, TimeUnit.MILLISECONDS);
+
+            } catch (TimeoutException e) {
+                // the worker is in an unknown state, so we rather replace it
+                destroy();
+
+                ProcessOutput output = new ProcessOutput();
+                output.setTimeout();
+                return output;
+
+            } catch (InterruptedException | ExecutionException e) {
+                if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+
+                destroy();
+                return accepted ? diedOutput() : null;
+            }
+        }
+
+
+        @Nullable
+        private ProcessOutput readResponse() throws IOException {
+            if (readUntil(ACCEPTED_TAG) == null) return null;
+
+            accepted = true;
+
+            String header = readUntil(RESPONSE_TAG);
+            if (header == null) return diedOutput();
+
+            String[] splitHeader = header.split("\t");
+            int exitCode = Integer.parseInt(splitHeader[1].trim());
+            int numStdoutLines = Integer.parseInt(splitHeader[2].trim());
+            int numStderrLines = Integer.parseInt(splitHeader[3].trim());
+
+            ProcessOutput output = new ProcessOutput();
+            output.appendStdout(readLines(numStdoutLines));
+            output.appendStderr(readLines(numStderrLines));
+            output.setExitCode(exitCode);
+
+            return output;
+        }
+
+
+        /**
+         * Skips any output which is not part of the protocol (e.g. from package startup messages).
+         *
+         * @return the line starting with the tag or <code>null</code> if the worker terminated
+         */
+        @Nullable
+        private String readUntil(String tag) throws IOException {
+            String line;
+
+            do {
+                line = responseReader.readLine();
+                if (line == null) return null;
+            } while (!line.startsWith(tag));
+
+            return line;
+        }
+
+
+        @NotNull
+        private static ProcessOutput diedOutput() {
+            ProcessOutput output = new ProcessOutput();
+            output.appendStderr("R helper worker terminated unexpectedly\n");
+            output.setExitCode(-1);
+            return output;
+        }
+
+
+        private String readLines(int numLines) throws IOException {
+            StringBuilder lines = new StringBuilder();
+
+            for (int i = 0; i < numLines; i++) {
+                String line = responseReader.readLine();
+                if (line == null) throw new EOFException("R helper worker terminated unexpectedly");
+
+                lines.append(line).append("\n");
+            }
+
+            return lines.toString();
+        }
+
+
+        void destroy() {
+            destroyed = true;
+
+            try {
+                requestWriter.close();
+            } catch (IOException ignored) {
+            }
+
+            process.destroy();
+        }
+    }
+}
@@ -7,27 +7,34 @@
 
 package com.r4intellij.packages;
 
-import com.google.common.collect.Lists;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.OrderRootType;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
 import com.intellij.spellchecker.SpellCheckerManager;
 import com.intellij.spellchecker.dictionary.EditableDictionary;
+import com.intellij.util.Alarm;
 import com.r4intellij.RFileType;
 import com.r4intellij.psi.api.RFile;
 import com.r4intellij.psi.references.RResolver;
 import com.r4intellij.settings.RSettings;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
-import java.io.*;
+import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * @author Holger Brandl
@@ -38,14 +45,48 @@ public class RIndexCache {
     // see http://www.jetbrains.org/intellij/sdk/docs/basics/persisting_state_of_components.html
     // making it non-static is causing the loss of all content after loadSkeletonCache was run
 //    @Transient
-    private Set<RPackage> allPackages; // = Sets.newConcurrentHashSet();
+    private Map<String, RPackage> allPackages; // = Sets.newConcurrentHashSet();
 //    private transient static Set<RPackage> allPackages; // = Sets.newConcurrentHashSet();
 //    public Set<RPackage> packages = ContainerUtil.newConcurrentSet();
 
+    // inverted symbol indices to avoid scanning all packages when looking up the providers of a symbol
+    private final Map<String, Set<RPackage>> functionIndex = new ConcurrentHashMap<>();
+    private final Map<String, Set<RPackage>> dataSetIndex = new ConcurrentHashMap<>();
+
+    // transitive dependency closures per package and per ordered list of imports
+    private final Map<String, List<RPackage>> dependencyClosureCache = new ConcurrentHashMap<>();
+    private final Map<List<String>, List<RPackage>> importsClosureCache = new ConcurrentHashMap<>();
+
+    private static final int MAX_CACHED_IMPORT_LISTS = 1000;
+
+    private volatile RSymbolTrie packageNameTrie;
+
+    // symbols of reindexed packages per project which are not yet added to its spell-checker dictionary
+    private final Map<Project, Set<String>> pendingDictionaryWords = new ConcurrentHashMap<>();
+    private Alarm dictionaryUpdateAlarm;
+
+    private static final int DICTIONARY_UPDATE_DELAY = 1000;
+
+    // the index file of the current skeletons directory
+    private RPackageIndexFile indexFile;
+    private String indexFileSkeletonsPath;
+
+    private static final List<String> TIDYVERSE_ATTACHMENTS = Arrays.asList("magrittr", "stringr", "dplyr", "purrr", "readr", "tidyr", "tibble", "ggplot2");
+
 
     private static RIndexCache INSTANCE;
 
 
+    private RIndexCache() {
+    }
+
+
+    @TestOnly
+    RIndexCache(Collection<RPackage> packages) {
+        setPackages(packages);
+    }
+
+
     public synchronized static RIndexCache getInstance() {
         if (INSTANCE == null) {
             INSTANCE = new RIndexCache();
@@ -62,21 +103,21 @@ public class RIndexCache {
         }
 
 
-        //noinspection unchecked
+        Collection<RPackage> cachedPackages = null;
+
         if (RSettings.hasInterpreter()) {
-            allPackages = (Set<RPackage>) loadObject(getLibIndexFile());
+            cachedPackages = getIndexFile().load();
         }
 
         //        http://stackoverflow.com/questions/6992608/why-there-is-no-concurrenthashset-against-concurrenthashmap
-        if (allPackages == null) {
-//            allPackages = Sets.newConcurrentHashSet();
-            allPackages = Collections.emptySet();
+        if (cachedPackages == null) {
+            cachedPackages = Collections.emptySet();
         }
 
         // this would presevere the content also for a non-static
 //        allPackages = Collections.unmodifiableSet(allPackages);
         //        allPackages = new HashSet<>(allPackages);
-        allPackages = Sets.newConcurrentHashSet(allPackages);
+        setPackages(cachedPackages);
 
         // update index (no fancy sync anymore because it's superfast anyway)
         // disabled because trigger after skeleton-refresh now
@@ -84,37 +125,54 @@ public class RIndexCache {
     }
 
 
-    static Object loadObject(File f) {
-        // /Users/brandl/.gradle/caches/modules-2/files-2.1/com.jetbrains.intellij.idea/ideaIC/2017.1/e6f4c74ac091e55d0ac4e2ad26d91c12a4f23592/ideaIC-2017.1/system/r_skeletons/1481726564/.libindex.dat
-        try {
-            FileInputStream fin = new FileInputStream(f);
-            ObjectInputStream ois = new ObjectInputStream(fin);
-            Object o = ois.readObject();
-            ois.close();
-
-            return o;
-        } catch (Throwable e) {
-            System.err.println("could not load R package index cache, error was:\n" + e);
-        }
+    private void setPackages(Collection<RPackage> packages) {
+        allPackages = new ConcurrentHashMap<>();
+        functionIndex.clear();
+        dataSetIndex.clear();
+        invalidateDependencyCaches();
 
-        return null;
+        packages.forEach(this::addPackage);
     }
 
 
-    static void saveObject(Object o, File f) {
-        try {
-            FileOutputStream fout = new FileOutputStream(f);
-            ObjectOutputStream oos = new ObjectOutputStream(fout);
-            oos.writeObject(o);
-            oos.close();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+    private void addPackage(RPackage rPackage) {
+        RPackage replaced = allPackages.put(rPackage.getName(), rPackage);
+        if (replaced != null) removeFromSymbolIndex(replaced);
+        invalidateDependencyCaches();
+
+        rPackage.getFunctionNames().forEach(funName -> addToSymbolIndex(functionIndex, funName, rPackage));
+        rPackage.getDataSetNames().forEach(dataSet -> addToSymbolIndex(dataSetIndex, dataSet, rPackage));
+    }
+
+
+    private void removePackage(RPackage rPackage) {
+        RPackage removed = allPackages.remove(rPackage.getName());
+        if (removed != null) removeFromSymbolIndex(removed);
+        invalidateDependencyCaches();
     }
 
 
-    public Set<RPackage> getPackages() {
-        return Collections.unmodifiableSet(allPackages);
+    private static void addToSymbolIndex(Map<String, Set<RPackage>> index, String symbol, RPackage rPackage) {
+        index.computeIfAbsent(symbol, key -> Sets.newConcurrentHashSet()).add(rPackage);
+    }
+
+
+    private void removeFromSymbolIndex(RPackage rPackage) {
+        rPackage.getFunctionNames().forEach(funName -> removeFromSymbolIndex(functionIndex, funName, rPackage));
+        rPackage.getDataSetNames().forEach(dataSet -> removeFromSymbolIndex(dataSetIndex, dataSet, rPackage));
+    }
+
+
+    private static void removeFromSymbolIndex(Map<String, Set<RPackage>> index, String symbol, RPackage rPackage) {
+        index.computeIfPresent(symbol, (key, providers) -> {
+            providers.remove(rPackage);
+            return providers.isEmpty() ? null : providers;
+        });
+    }
+
+
+    public Collection<RPackage> getPackages() {
+        return Collections.unmodifiableCollection(allPackages.values());
     }
 
 
@@ -125,45 +183,105 @@ public class RIndexCache {
                 .filter(Objects::nonNull)
                 .collect(Collectors.toList());
 
-        allPackages.removeAll(removed);
+        removed.forEach(this::removePackage);
     }
 
 
     public void replaceAndCleanup(@NotNull List<RPackage> reindexed, Project project) {
-        allPackages.removeAll(reindexed);
-        allPackages.addAll(reindexed);
+        reindexed.forEach(this::addPackage);
 
-        boolean changed = !reindexed.isEmpty() || cleanup(project);
+        List<RPackage> removed = cleanup(project);
 
-        if (changed) saveCache(project);
+        boolean changed = !reindexed.isEmpty() || !removed.isEmpty();
+        if (!changed) return;
+
+        saveCache(project, reindexed, removed);
+
+        // references may resolve into the new packages now, or no longer into the removed ones
+        if (!project.isDisposed()) PsiManager.getInstance(project).dropResolveCaches();
     }
 
 
-    private void saveCache(Project project) {
-        saveObject(new HashSet<>(allPackages), getLibIndexFile());
-        //        ApplicationManager.getApplication().invokeLater(new Runnable() {
+    private void saveCache(Project project, List<RPackage> reindexed, List<RPackage> removed) {
+        List<String> removedNames = removed.stream().map(RPackage::getName).collect(Collectors.toList());
+        getIndexFile().update(reindexed, removedNames, getPackages());
 
-//        if (ApplicationManager.getApplication() != null) {
-//            Project[] projects = ProjectManager.getInstance().getOpenProjects();
-//            for (Project project : projects) {
         if (project.isInitialized() && project.isOpen() && !project.isDefault()) {
-            SpellCheckerManager spellCheckerManager = SpellCheckerManager.getInstance(project);
-            EditableDictionary dictionary = spellCheckerManager.getUserDictionary();
+            scheduleDictionaryUpdate(project, reindexed);
+        }
+    }
+
+
+    /**
+     * Queues the symbols of the reindexed packages for the spell-checker dictionary of the project. Consecutive
+     * updates (e.g. while refreshing several skeletons) are coalesced into a single batch.
+     */
+    private void scheduleDictionaryUpdate(Project project, List<RPackage> reindexed) {
+        Set<String> words = getDictionaryWords(reindexed);
+        if (words.isEmpty()) return;
+
+        pendingDictionaryWords.computeIfAbsent(project, key -> Sets.newConcurrentHashSet()).addAll(words);
+
+        synchronized (this) {
+            if (dictionaryUpdateAlarm == null) {
+                dictionaryUpdateAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, ApplicationManager.getApplication());
+            }
+
+            dictionaryUpdateAlarm.cancelAllRequests();
+            dictionaryUpdateAlarm.addRequest(this::flushDictionaryUpdates, DICTIONARY_UPDATE_DELAY);
+        }
+    }
+
+
+    private void flushDictionaryUpdates() {
+        for (Project project : new ArrayList<>(pendingDictionaryWords.keySet())) {
+            Set<String> words = pendingDictionaryWords.remove(project);
+            if (words == null || project.isDisposed()) continue;
+
+            EditableDictionary dictionary = SpellCheckerManager.getInstance(project).getUserDictionary();
+            dictionary.addToDictionary(words);
 
-            for (RPackage rPackage : getPackages()) {
-                dictionary.addToDictionary(rPackage.getName());
-                dictionary.addToDictionary(rPackage.getFunctionNames());
-                dictionary.addToDictionary(rPackage.getDataSetNames());
+            restartDaemonForOpenFiles(project);
+        }
+    }
+
+
+    /**
+     * Rehighlight just the open R files since just they are affected by the new symbols.
+     */
+    private static void restartDaemonForOpenFiles(Project project) {
+        ApplicationManager.getApplication().runReadAction(() -> {
+            if (project.isDisposed()) return;
+
+            PsiManager psiManager = PsiManager.getInstance(project);
+            DaemonCodeAnalyzer daemonCodeAnalyzer = DaemonCodeAnalyzer.getInstance(project);
+
+            for (VirtualFile openFile : FileEditorManager.getInstance(project).getOpenFiles()) {
+                if (openFile.getFileType() != RFileType.INSTANCE) continue;
+
+                PsiFile psiFile = psiManager.findFile(openFile);
+                if (psiFile != null) daemonCodeAnalyzer.restart(psiFile);
             }
+        });
+    }
+
 
-            DaemonCodeAnalyzer.getInstance(project).restart();
+    @NotNull
+    static Set<String> getDictionaryWords(Collection<RPackage> packages) {
+        Set<String> words = new HashSet<>();
+
+        for (RPackage rPackage : packages) {
+            words.add(rPackage.getName());
+            words.addAll(rPackage.getFunctionNames());
+            words.addAll(rPackage.getDataSetNames());
         }
-//            });
 
+        return words;
     }
 
 
-    boolean cleanup(Project project) {
+    @NotNull
+    List<RPackage> cleanup(Project project) {
 //         val libraryTable = LibraryTablesRegistrar.getInstance().getLibraryTable(project)
 //         val library = libraryTable.getLibraryByName(LibraryUtil.R_SKELETONS)
 //
@@ -189,14 +307,14 @@ public class RIndexCache {
         File skeletonsDir = new File(toURL(skeletonsDirURL).getFile());
 //        String skeletonsDir = RSkeletonGenerator.getSkeletonsPath();
 
-        List<RPackage> removed = allPackages.stream().filter(rPackage -> {
+        List<RPackage> removed = allPackages.values().stream().filter(rPackage -> {
             File skelFile = new File(skeletonsDir, rPackage.getName() + RFileType.DOT_R_EXTENSION);
             return !skelFile.exists();
         }).collect(Collectors.toList());
 
-        allPackages.removeAll(removed);
+        removed.forEach(this::removePackage);
 
-        return !removed.isEmpty();
+        return removed;
     }
 
 
@@ -213,29 +331,39 @@ public class RIndexCache {
     @Deprecated
     public static void getTestInstance() {
         RIndexCache indexCache = getInstance();
-        File indexFile = indexCache.getLibIndexFile();
+        RPackageIndexFile indexFile = indexCache.getIndexFile();
 
-        if (indexFile.exists()) {
-            indexCache.allPackages = (Set<RPackage>) loadObject(indexFile);
-        }
+        List<RPackage> cachedPackages = indexFile.load();
 
-        if (indexCache.allPackages == null) {
+        if (cachedPackages != null) {
+            indexCache.setPackages(cachedPackages);
+        } else {
             System.err.print("building package index for testing... ");
-            indexCache.allPackages = Sets.newConcurrentHashSet();
+            indexCache.setPackages(Collections.emptySet());
 //            indexCache.refreshIndexCache();
-            saveObject(new HashSet<>(indexCache.allPackages), indexFile);
+            indexFile.save(Collections.emptySet());
             System.err.println("Done");
         }
     }
 
 
-    private File getLibIndexFile() {
+    private synchronized RPackageIndexFile getIndexFile() {
         String skeletonsPath = RSkeletonGenerator.getSkeletonsPath();
-        if (!new File(skeletonsPath).exists()) {
-            new File(skeletonsPath).mkdirs();
+
+        if (indexFile == null || !skeletonsPath.equals(indexFileSkeletonsPath)) {
+            if (!new File(skeletonsPath).exists()) {
+                new File(skeletonsPath).mkdirs();
+            }
+
+            // remove index of java-serialization based plugin versions, once per skeletons directory
+            File legacyIndexFile = new File(skeletonsPath, ".libindex.dat");
+            if (legacyIndexFile.exists()) legacyIndexFile.delete();
+
+            indexFile = new RPackageIndexFile(new File(skeletonsPath, ".libindex.bin"));
+            indexFileSkeletonsPath = skeletonsPath;
         }
 
-        return new File(skeletonsPath, ".libindex.dat");
+        return indexFile;
     }
 
 
@@ -251,44 +379,114 @@ public class RIndexCache {
     }
 
 
+    /**
+     * Resolves the given package names including their transitive dependencies. The result preserves the import
+     * order with each package being listed just at its first occurrence.
+     */
     public List<RPackage> resolveDependencies(Collection<String> packageNames) {
-        Iterable<RPackage> packages = packageNames.stream().
-                map(this::getByName).
-                filter(Objects::nonNull).
-                collect(Collectors.toList());
+        // keep the cache bounded since there's an entry per distinct import prefix of all analyzed files
+        if (importsClosureCache.size() > MAX_CACHED_IMPORT_LISTS) importsClosureCache.clear();
+
+        // the caller may reuse the collection so we need to copy the key unless it is immutable anyway
+        List<String> key = packageNames instanceof ImmutableList ?
+                (ImmutableList<String>) packageNames : new ArrayList<>(packageNames);
+
+        return importsClosureCache.computeIfAbsent(key, this::buildImportsClosure);
+    }
+
+
+    private List<RPackage> buildImportsClosure(List<String> packageNames) {
+        Set<RPackage> dependencies = new LinkedHashSet<>();
+
+        for (String packageName : packageNames) {
+            for (RPackage rPackage : getDependencyClosure(packageName)) {
+                dependencies.add(rPackage);
+
+                // workaround for https://github.com/tidyverse/tidyverse/issues/40
+                if (rPackage.getName().equals("tidyverse")) {
+                    TIDYVERSE_ATTACHMENTS.stream()
+                            .map(this::getByName)
+                            .filter(Objects::nonNull)
+                            .forEach(dependencies::add);
+                }
+            }
+        }
+
+        return Collections.unmodifiableList(new ArrayList<>(dependencies));
+    }
+
+
+    /**
+     * Returns the package and all its transitive dependencies in depth-first order. Cyclic or diamond dependencies
+     * are expanded just once.
+     */
+    @NotNull
+    private List<RPackage> getDependencyClosure(String packageName) {
+        RPackage rPackage = getByName(packageName);
+        if (rPackage == null) return Collections.emptyList();
+
+        return dependencyClosureCache.computeIfAbsent(packageName, name -> {
+            Set<RPackage> closure = new LinkedHashSet<>();
+            collectDependencies(rPackage, closure);
+            return Collections.unmodifiableList(new ArrayList<>(closure));
+        });
+    }
+
+
+    private void collectDependencies(RPackage rPackage, Set<RPackage> visited) {
+        if (!visited.add(rPackage)) return;
+
+        for (String dependency : rPackage.getDependencies()) {
+            RPackage depPackage = getByName(dependency);
+            if (depPackage != null) collectDependencies(depPackage, visited);
+        }
+    }
 
-        List<RPackage> dependencies = Lists.newArrayList(packages).stream().
-                flatMap(f -> {
-                    List<RPackage> resolvedImports = resolveDependencies(f.getDependencies());
-                    resolvedImports.add(0, f);
-                    return resolvedImports.stream();
-                }).collect(Collectors.toList());
 
-        // workaround for https://github.com/tidyverse/tidyverse/issues/40
+    private void invalidateDependencyCaches() {
+        dependencyClosureCache.clear();
+        importsClosureCache.clear();
+        packageNameTrie = null;
+    }
 
 
-        if (dependencies.stream().anyMatch(rpg -> rpg.getName().equals("tidyverse"))) {
-            List<RPackage> tidyverseAttachments = Stream.of("magrittr", "stringr", "dplyr", "purrr", "readr", "tidyr", "tibble", "ggplot2").
-                    map(this::getByName).
-                    filter(Objects::nonNull).collect(Collectors.toList());
+    /**
+     * Prefix tree of the names of all indexed packages, which is used to complete <code>library</code> calls.
+     */
+    @NotNull
+    public RSymbolTrie getPackageNameTrie() {
+        RSymbolTrie trie = packageNameTrie;
 
-            int tidyverse = dependencies.stream().map(RPackage::getName).collect(Collectors.toList()).indexOf("tidyverse");
-            dependencies.addAll(tidyverse + 1, tidyverseAttachments);
+        if (trie == null) {
+            trie = new RSymbolTrie(allPackages.keySet());
+            packageNameTrie = trie;
         }
 
-        return dependencies;
+        return trie;
     }
 
 
     @Nullable
     public RPackage getByName(String packageName) {
-        for (RPackage aPackage : RIndexCache.getInstance().getPackages()) {
-            if (aPackage.getName().equals(packageName)) {
-                return aPackage;
-            }
-        }
+        return packageName != null ? allPackages.get(packageName) : null;
+    }
 
-        return null;
+
+    /**
+     * Returns all packages which export a function with the given name.
+     */
+    @NotNull
+    public Set<RPackage> getPackagesWithFunction(@NotNull String funName) {
+        return Collections.unmodifiableSet(functionIndex.getOrDefault(funName, Collections.emptySet()));
+    }
+
+
+    /**
+     * Returns all packages which include a data set with the given name.
+     */
+    @NotNull
+    public Set<RPackage> getPackagesWithDataSet(@NotNull String dataSetName) {
+        return Collections.unmodifiableSet(dataSetIndex.getOrDefault(dataSetName, Collections.emptySet()));
     }
 
 }
@@ -27,6 +27,12 @@ public class RPackage implements Serializable {
 
     private String repoUrl;
 
+    // derived from the functions and data sets, so they are rebuilt lazily after deserialization
+    private transient List<String> functionNames;
+    private transient List<String> dataSetNames;
+    private transient RSymbolTrie functionTrie;
+    private transient RSymbolTrie dataSetTrie;
+
 
     public RPackage(String packageName, String packageVersion, String title,
                     Set<String> dependencies, Set<String> imports) {
@@ -40,23 +46,59 @@ public class RPackage implements Serializable {
 
     public void setFunctions(List<PckgFunction> functions) {
         this.functions = new ArrayList<>(functions); // rewrap because provided list may not be serializable
+        this.functionNames = null;
+        this.functionTrie = null;
     }
 
 
     public void setDatSets(List<PckgDataSet> dataSets) {
         this.dataSets = new ArrayList<>(dataSets); // rewrap because provided list may not be serializable
+        this.dataSetNames = null;
+        this.dataSetTrie = null;
     }
 
 
     public List<String> getFunctionNames() {
         if (functions == null) return Collections.emptyList();
-        return functions.stream().map(PckgFunction::getName).collect(Collectors.toList());
+
+        if (functionNames == null) {
+            functionNames = Collections.unmodifiableList(functions.stream().map(PckgFunction::getName).collect(Collectors.toList()));
+        }
+
+        return functionNames;
     }
 
 
     public List<String> getDataSetNames() {
         if (dataSets == null) return Collections.emptyList();
-        return dataSets.stream().map(PckgDataSet::getName).collect(Collectors.toList());
+
+        if (dataSetNames == null) {
+            dataSetNames = Collections.unmodifiableList(dataSets.stream().map(PckgDataSet::getName).collect(Collectors.toList()));
+        }
+
+        return dataSetNames;
+    }
+
+
+    /**
+     * Prefix tree of the function names for completion. It is built on first use since most packages are never
+     * imported in a session.
+     */
+    public RSymbolTrie getFunctionTrie() {
+        if (functionTrie == null) {
+            functionTrie = new RSymbolTrie(getFunctionNames());
+        }
+
+        return functionTrie;
+    }
+
+
+    public RSymbolTrie getDataSetTrie() {
+        if (dataSetTrie == null) {
+            dataSetTrie = new RSymbolTrie(getDataSetNames());
+        }
+
+        return dataSetTrie;
     }
 
 
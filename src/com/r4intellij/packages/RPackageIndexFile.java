@@ -0,0 +1,397 @@
+/*
+ * Copyright 2011 Holger Brandl
+ *
+ * This code is licensed under BSD. For details see
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+
+package com.r4intellij.packages;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Binary on-disk storage of the package index which replaces the java-serialized package set.
+ * <p>
+ * The file starts with a magic number and a format version followed by an append-only sequence of package records.
+ * Each record is prefixed by its length and a status byte, and contains a string table with all package, function
+ * and dataset names of the package followed by the package structure which refers to the string table by index.
+ * Updating a package marks its previous record as removed in place and appends a new record, so that a refresh of
+ * a few packages does not rewrite the whole file. Once removed records take up more space than live ones, the file
+ * is compacted.
+ * <p>
+ * Reading copies the file into a heap buffer and decodes it without any reflection. The file is not memory mapped,
+ * since a live mapping would keep it locked on Windows when {@link #save} replaces it. Files with an unknown format
+ * version are simply ignored so that the index is rebuilt from the skeletons.
+ *
+ * @author Holger Brandl
+ */
+class RPackageIndexFile {
+
+    private static final int MAGIC = 0x52494458; // RIDX
+    static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte STATUS_LIVE = 1;
+    private static final byte STATUS_REMOVED = 0;
+
+    private static final int NO_STRING = -1;
+
+    private final File indexFile;
+
+
+    RPackageIndexFile(@NotNull File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+
+    /**
+     * Reads all live packages or returns <code>null</code> if the file is missing, corrupt or has an outdated format.
+     * Corrupt files are deleted, so that the next update writes a fresh file.
+     */
+    @Nullable
+    List<RPackage> load() {
+        if (!indexFile.exists()) return null;
+
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(channel.size()));
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) ;
+            buffer.flip();
+
+            if (!hasValidHeader(buffer)) return null;
+
+            List<RPackage> packages = new ArrayList<>();
+
+            while (buffer.remaining() > 0) {
+                int recordLength = buffer.getInt();
+                int recordEnd = buffer.position() + recordLength;
+
+                if (buffer.get() == STATUS_LIVE) {
+                    packages.add(readPackage(buffer));
+                }
+
+                buffer.position(recordEnd);
+            }
+
+            return packages;
+
+        } catch (Throwable e) {
+            System.err.println("could not load R package index cache, error was:\n" + e);
+        }
+
+        // the channel is closed by now, so the file can be deleted on Windows as well
+        //noinspection ResultOfMethodCallIgnored
+        indexFile.delete();
+
+        return null;
+    }
+
+
+    /**
+     * Writes all given packages into a fresh index file.
+     */
+    void save(@NotNull Collection<RPackage> packages) {
+        File tmpFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            writeFully(channel, createHeader());
+            for (RPackage rPackage : packages) {
+                writeFully(channel, encodeRecord(rPackage));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        try {
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    /**
+     * Replaces the records of the updated packages and removes those of the deleted packages. Falls back to a full
+     * rewrite if the existing file can not be updated in place, e.g. because it is truncated or corrupt.
+     *
+     * @param allPackages the complete package set after the update, used if the file needs to be rewritten
+     */
+    void update(@NotNull Collection<RPackage> updated, @NotNull Collection<String> removed,
+                @NotNull Collection<RPackage> allPackages) {
+        if (!indexFile.exists()) {
+            save(allPackages);
+            return;
+        }
+
+        boolean rewrite;
+
+        // the channel needs to be closed before the file is replaced
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            rewrite = !updateInPlace(channel, updated, removed);
+
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            System.err.println("R package index cache is corrupt and will be rewritten, error was:\n" + e);
+            rewrite = true;
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (rewrite) save(allPackages);
+    }
+
+
+    /**
+     * @return <code>false</code> if the file has an unknown format or should be compacted
+     */
+    private static boolean updateInPlace(FileChannel channel, Collection<RPackage> updated, Collection<String> removed) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+
+        if (!hasValidHeader(header)) return false;
+
+        Map<String, Long> liveRecords = new HashMap<>();
+        Map<String, Integer> liveRecordLengths = new HashMap<>();
+
+        // scan record headers and names only
+        long position = HEADER_SIZE;
+        long fileSize = channel.size();
+        ByteBuffer recordHeader = ByteBuffer.allocate(5);
+
+        while (position < fileSize) {
+            recordHeader.clear();
+            channel.read(recordHeader, position);
+            recordHeader.flip();
+
+            int recordLength = recordHeader.getInt();
+            if (recordLength < 1 || position + 4 + recordLength > fileSize) {
+                throw new IllegalArgumentException("invalid record length " + recordLength + " at " + position);
+            }
+
+            if (recordHeader.get() == STATUS_LIVE) {
+                String packageName = readRecordName(channel, position + 5);
+                liveRecords.put(packageName, position);
+                liveRecordLengths.put(packageName, recordLength);
+            }
+
+            position += 4 + recordLength;
+        }
+
+        Set<String> invalidated = new HashSet<>(removed);
+        updated.forEach(rPackage -> invalidated.add(rPackage.getName()));
+
+        for (String packageName : invalidated) {
+            Long recordOffset = liveRecords.get(packageName);
+            if (recordOffset == null) continue;
+
+            channel.write(ByteBuffer.wrap(new byte[]{STATUS_REMOVED}), recordOffset + 4);
+            liveRecordLengths.remove(packageName);
+        }
+
+        long liveBytes = liveRecordLengths.values().stream().mapToLong(Integer::longValue).sum();
+
+        position = fileSize;
+        for (RPackage rPackage : updated) {
+            ByteBuffer record = encodeRecord(rPackage);
+            liveBytes += record.remaining() - 4;
+
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+        }
+
+        long removedBytes = position - HEADER_SIZE - liveBytes;
+        return removedBytes <= liveBytes;
+    }
+
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+
+    private static boolean hasValidHeader(ByteBuffer buffer) {
+        return buffer.remaining() >= HEADER_SIZE && buffer.getInt() == MAGIC && buffer.getInt() == FORMAT_VERSION;
+    }
+
+
+    private static ByteBuffer createHeader() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION);
+        header.flip();
+        return header;
+    }
+
+
+    private static String readRecordName(FileChannel channel, long stringTableOffset) throws IOException {
+        // by convention the package name is the first entry in the string table
+        ByteBuffer lengths = ByteBuffer.allocate(8);
+        channel.read(lengths, stringTableOffset);
+        lengths.flip();
+
+        lengths.getInt(); // number of strings
+        int nameLength = lengths.getInt();
+
+        ByteBuffer name = ByteBuffer.allocate(nameLength);
+        channel.read(name, stringTableOffset + 8);
+
+        return new String(name.array(), StandardCharsets.UTF_8);
+    }
+
+
+    private static ByteBuffer encodeRecord(RPackage rPackage) throws IOException {
+        StringTable strings = new StringTable();
+
+        // the package name needs to come first, see readRecordName
+        int name = strings.add(rPackage.getName());
+
+        ByteArrayOutputStream structureBytes = new ByteArrayOutputStream();
+        DataOutputStream structure = new DataOutputStream(structureBytes);
+
+        structure.writeInt(name);
+        structure.writeInt(strings.add(rPackage.getVersion()));
+        structure.writeInt(strings.add(rPackage.getTitle()));
+        structure.writeInt(strings.add(rPackage.getRepoUrl()));
+
+        writeStrings(structure, strings, rPackage.getDependencies());
+        writeStrings(structure, strings, rPackage.getImports());
+
+        Collection<PckgFunction> functions = rPackage.getFunctions();
+        structure.writeInt(functions.size());
+        for (PckgFunction function : functions) {
+            structure.writeInt(strings.add(function.getName()));
+            structure.writeInt(strings.add(function.getShortDesc()));
+        }
+
+        writeStrings(structure, strings, rPackage.getDataSetNames());
+
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(recordBytes);
+
+        record.writeInt(0); // placeholder for the record length
+        record.writeByte(STATUS_LIVE);
+        strings.write(record);
+        structure.flush();
+        structureBytes.writeTo(record);
+        record.flush();
+
+        ByteBuffer buffer = ByteBuffer.wrap(recordBytes.toByteArray());
+        buffer.putInt(0, buffer.limit() - 4);
+
+        return buffer;
+    }
+
+
+    private static void writeStrings(DataOutputStream out, StringTable strings, @Nullable Collection<String> values) throws IOException {
+        if (values == null) {
+            out.writeInt(0);
+            return;
+        }
+
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeInt(strings.add(value));
+        }
+    }
+
+
+    private static RPackage readPackage(ByteBuffer buffer) {
+        String[] strings = new String[buffer.getInt()];
+
+        for (int i = 0; i < strings.length; i++) {
+            byte[] stringBytes = new byte[buffer.getInt()];
+            buffer.get(stringBytes);
+            strings[i] = new String(stringBytes, StandardCharsets.UTF_8);
+        }
+
+        String name = readString(buffer, strings);
+        String version = readString(buffer, strings);
+        String title = readString(buffer, strings);
+        String repoUrl = readString(buffer, strings);
+
+        Set<String> dependencies = new LinkedHashSet<>(readStrings(buffer, strings));
+        Set<String> imports = new LinkedHashSet<>(readStrings(buffer, strings));
+
+        RPackage rPackage = new RPackage(name, version, title, dependencies, imports);
+        rPackage.setRepoUrl(repoUrl);
+
+        int numFunctions = buffer.getInt();
+        List<PckgFunction> functions = new ArrayList<>(numFunctions);
+        for (int i = 0; i < numFunctions; i++) {
+            PckgFunction function = new PckgFunction(readString(buffer, strings));
+            function.setShortDesc(readString(buffer, strings));
+            functions.add(function);
+        }
+        rPackage.setFunctions(functions);
+
+        List<PckgDataSet> dataSets = new ArrayList<>();
+        for (String dataSet : readStrings(buffer, strings)) {
+            dataSets.add(new PckgDataSet(dataSet));
+        }
+        rPackage.setDatSets(dataSets);
+
+        return rPackage;
+    }
+
+
+    @Nullable
+    private static String readString(ByteBuffer buffer, String[] strings) {
+        int index = buffer.getInt();
+        return index == NO_STRING ? null : strings[index];
+    }
+
+
+    private static List<String> readStrings(ByteBuffer buffer, String[] strings) {
+        int numStrings = buffer.getInt();
+
+        List<String> values = new ArrayList<>(numStrings);
+        for (int i = 0; i < numStrings; i++) {
+            values.add(readString(buffer, strings));
+        }
+
+        return values;
+    }
+
+
+    /**
+     * Deduplicating string table of a single package record.
+     */
+    private static class StringTable {
+
+        private final Map<String, Integer> indices = new LinkedHashMap<>();
+
+
+        int add(@Nullable String value) {
+            if (value == null) return NO_STRING;
+
+            return indices.computeIfAbsent(value, key -> indices.size());
+        }
+
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(indices.size());
+
+            for (String value : indices.keySet()) {
+                byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(valueBytes.length);
+                out.write(valueBytes);
+            }
+        }
+    }
+}
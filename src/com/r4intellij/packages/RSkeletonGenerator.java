@@ -7,7 +7,7 @@
 
 package com.r4intellij.packages;
 
-import com.google.common.base.CharMatcher;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import com.intellij.openapi.application.Application;
@@ -29,19 +29,24 @@ import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.util.DocumentUtil;
 import com.r4intellij.RFileType;
+import com.r4intellij.RPsiUtils;
+import com.r4intellij.documentation.RHelpCache;
 import com.r4intellij.interpreter.SimpleFunctionVisitor;
 import com.r4intellij.settings.RSettings;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static com.r4intellij.RFileType.DOT_R_EXTENSION;
@@ -62,7 +67,7 @@ public class RSkeletonGenerator {
 
 
     // note: just change in sync with ./r-helpers/skeletonize_package.R
-    public static final int CUR_SKELETONIZE_VERSION = 5;
+    public static final int CUR_SKELETONIZE_VERSION = 6;
 
 
     public static final Set<String> DEFAULT_PACKAGES = Sets.newHashSet("stats", "graphics", "grDevices", "utils", "datasets", "grid", "methods", "base");
@@ -74,6 +79,21 @@ public class RSkeletonGenerator {
     public static final String SKELETON_DIR_NAME = "r_skeletons";
     private static final String FAILED_SUFFIX = ".failed";
 
+    // note: just change in sync with ./r-helpers/skeletonize_package.R
+    private static final String HELP_BUNDLE_SUFFIX = ".help.gz";
+
+    private static final int SKELETON_TIMEOUT = 10 * RPsiUtils.MINUTE;
+    private static final int MAX_SKELETON_ATTEMPTS = 2;
+    private static final int SKELETON_BATCH_SIZE = 10;
+
+    // note: just change in sync with ./r-helpers/skeletonize_package.R
+    private static final String SKELETON_FAILED_TAG = ".skeleton_failed";
+    private static final String SKELETON_TIME_TAG = ".skeleton_time";
+
+    // rough memory footprint of an R process with a loaded package
+    private static final long SKELETON_PROCESS_MEMORY = 300L * 1024 * 1024;
+    private static final int MAX_SKELETON_THREADS = 8;
+
 
     // entry point for configurable interface and action
     public static void updateSkeletons(@NotNull final Project project, boolean forceFailed) {
@@ -101,7 +121,7 @@ public class RSkeletonGenerator {
         // http://stackoverflow.com/questions/18725340/create-a-background-task-in-intellij-plugin
         // http://www.jetbrains.org/intellij/sdk/docs/basics/architectural_overview/general_threading_rules.html
 
-        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Updating Skeletons", false) {
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Updating Skeletons", true) {
             @Override
             public void run(@NotNull ProgressIndicator indicator) {
                 updateSkeletons(indicator, forceFailed);
@@ -161,8 +181,9 @@ public class RSkeletonGenerator {
 
         cleanUpUninstalledPackages(packageVersions);
         cleanUpFailedTags(packageVersions);
+        RHelpCache.getInstance().cleanUp(packageVersions);
 
-        List<String> updated = new ArrayList<>();
+        List<String> updated = Collections.synchronizedList(new ArrayList<>());
 
         // resort them so that the most popular ones are indexed first
         List<String> packageNames = new ArrayList<>(packageVersions.keySet());
@@ -171,13 +192,9 @@ public class RSkeletonGenerator {
                 .sortedCopy(packageNames);
 
 
-        // additional threading here kills the computer
-        ExecutorService es = Executors.newFixedThreadPool(4);
-        int processed = 0;
+        List<String> outdated = new ArrayList<>();
 
         for (String packageName : packageNames) {
-            processed++;
-
             //noinspection ArraysAsListWithZeroOrOneArgument
             if (Arrays.asList("translations").contains(packageName)) continue;
 
@@ -198,7 +215,7 @@ public class RSkeletonGenerator {
 //            boolean isCorrectCacheVersion = rPackage != null && Objects.equals(rPackage.getVersion(), installedVersion);
 
             // skip failed index operations unless we run force refresh mode
-            File failedSkelTag = new File(skeletonsDir, "." + packageName + FAILED_SUFFIX);
+            File failedSkelTag = getFailedTag(skeletonsDir, packageName);
             if (failedSkelTag.isFile()) {
                 if (forceFailed) {
                     failedSkelTag.delete();
@@ -216,65 +233,303 @@ public class RSkeletonGenerator {
                 LOG.error("Can't create skeleton directory " + String.valueOf(skeletonsPath));
             }
 
-            int finalProcessed = processed;
+            outdated.add(packageName);
+        }
+
+        if (outdated.isEmpty()) {
+            RSkeletonManifest.saveAll();
+            return updated;
+        }
+
+        // each worker runs a separate R process, so too many of them would kill the computer
+        int poolSize = getSkeletonPoolSize();
+        LOG.info("building " + outdated.size() + " skeletons using " + poolSize + " threads");
+
+        // since the pool processes its queue in order, the priority packages will be indexed first. To save the
+        // interpreter startup and package loading costs, each worker processes a batch of packages in a single R process
+        ExecutorService es = Executors.newFixedThreadPool(poolSize);
+        AtomicInteger processed = new AtomicInteger();
+        Map<String, Long> buildTimes = new ConcurrentHashMap<>();
+
+        for (List<String> batch : Lists.partition(outdated, SKELETON_BATCH_SIZE)) {
             es.submit(() -> {
-                try {
-                    LOG.info("building skeleton for package '" + packageName + "'");
+                if (indicator.isCanceled()) return;
+
+                indicator.setText("Indexing '" + String.join("', '", batch) + "'");
+
+                updated.addAll(buildSkeletons(batch, indicator, buildTimes));
+
+                indicator.setFraction((double) processed.addAndGet(batch.size()) / outdated.size());
+            });
+        }
+
+        // wait until all skeletons are built or the user cancelled the update
+        try {
+            es.shutdown();
+
+            while (!es.awaitTermination(500, TimeUnit.MILLISECONDS)) {
+                if (indicator.isCanceled()) {
+                    es.shutdownNow();
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        logBuildTimes(buildTimes);
+        RSkeletonManifest.saveAll();
+
+//        http://www.jetbrains.org/intellij/sdk/docs/basics/architectural_overview/virtual_file.html
+//        VirtualFile.refresh()
+        return updated;
+    }
+
+
+    /**
+     * Builds the skeletons of a batch of packages in a single R process. Packages for which R reported a failure are
+     * tagged as failed right away. Only packages which were not processed because the R process crashed or a single
+     * package exceeded the timeout are rebuilt individually.
+     *
+     * @return the packages for which a valid skeleton was written into the skeleton library
+     */
+    private static List<String> buildSkeletons(List<String> batch, ProgressIndicator indicator, Map<String, Long> buildTimes) {
+        File skeletonsDir = new File(getSkeletonsPath());
+        List<String> built = new ArrayList<>();
+
+        Map<String, File> tempSkeletons = new LinkedHashMap<>();
+        List<String> args = new ArrayList<>();
+
+        try {
+            for (String packageName : batch) {
+                // build the skeletons in tmp and move them once done so avoid incomplete file index failures
+                File tempSkeleton = Files.createTempFile("r4j_skel_" + packageName + "_", DOT_R_EXTENSION).toFile();
+                tempSkeleton.deleteOnExit();
+
+                tempSkeletons.put(packageName, tempSkeleton);
+                args.add(packageName);
+                args.add(tempSkeleton.getAbsolutePath());
+            }
+
+            LOG.info("building skeletons for packages " + batch);
+
+            // the helper reports the build time of each package once done, so the timeout applies per package
+            RRunResult output = RHelperUtil.runHelperWithProgressTimeout(RHELPER_SKELETONIZE_PACKAGE, indicator,
+                    SKELETON_TIMEOUT, SKELETON_TIME_TAG, args.toArray(new String[args.size()]));
+
+            if (indicator.isCanceled() || (output != null && output.isCancelled())) return built;
+
+            Map<String, String> failures = new HashMap<>();
+
+            if (output != null) {
+                for (String line : output.getStdOut().split("\n")) {
+                    String[] splitLine = line.trim().split("\t");
+
+                    if (splitLine.length >= 2 && splitLine[0].equals(SKELETON_FAILED_TAG)) {
+                        failures.put(splitLine[1], splitLine.length > 2 ? splitLine[2] : "");
+                    } else if (splitLine.length == 3 && splitLine[0].equals(SKELETON_TIME_TAG)) {
+                        buildTimes.put(splitLine[1], Long.valueOf(splitLine[2]));
+                    }
+                }
+            }
+
+            // packages are processed in order, so the first one without a build time is the one which timed out
+            String timedOutPackage = output != null && output.isTimeout() ?
+                    batch.stream().filter(pkg -> !buildTimes.containsKey(pkg)).findFirst().orElse(null) : null;
+
+            for (String packageName : batch) {
+                File tempSkeleton = tempSkeletons.get(packageName);
+
+                if (isValidSkeleton(tempSkeleton)) {
+                    // we used the more correct Files.move() here initially, but it caused issues on Windows
+                    // (see https://github.com/holgerbrandl/r4intellij/issues/86). Most likely the R process did not
+                    // correctly release the file handle
+                    Files.copy(tempSkeleton.toPath(), new File(skeletonsDir, packageName + DOT_R_EXTENSION).toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                    copyHelpBundle(tempSkeleton, skeletonsDir, packageName);
+
+                    built.add(packageName);
+
+                } else if (failures.containsKey(packageName) || buildTimes.containsKey(packageName) ||
+                        packageName.equals(timedOutPackage)) {
+                    // R did process the package, so a separate run would most likely fail in the same way
+                    deleteTempHelpBundle(tempSkeleton);
+
+                    //noinspection ResultOfMethodCallIgnored
+                    getFailedTag(skeletonsDir, packageName).createNewFile();
+
+                    String reason = packageName.equals(timedOutPackage) ?
+                            "timed out after " + SKELETON_TIMEOUT + "ms" : failures.getOrDefault(packageName, "invalid skeleton");
+                    LOG.warn("Failed to generate skeleton for '" + packageName + "' in batch: " + reason);
+
+                } else {
+                    // the batch died before reaching the package, so we rather retry it in isolation
+                    deleteTempHelpBundle(tempSkeleton);
+                    long startTime = System.currentTimeMillis();
+
+                    if (buildSkeleton(packageName, indicator)) {
+                        built.add(packageName);
+                    }
+
+                    buildTimes.put(packageName, System.currentTimeMillis() - startTime);
+                }
+            }
+
+        } catch (IOException e) {
+            LOG.error("Failed to generate skeletons for '" + batch + "'. The reason was:", e);
+        }
+
+        return built;
+    }
+
+
+    /**
+     * Builds the skeleton of a single package and retries if the R process failed or timed out.
+     *
+     * @return <code>true</code> if a valid skeleton was written into the skeleton library
+     */
+    private static boolean buildSkeleton(String packageName, ProgressIndicator indicator) {
+        File skeletonsDir = new File(getSkeletonsPath());
+        File skeletonFile = new File(skeletonsDir, packageName + DOT_R_EXTENSION);
+        File failedSkelTag = getFailedTag(skeletonsDir, packageName);
 
-                    indicator.setFraction((double) finalProcessed / (packageVersions.size()));
-                    indicator.setText("Indexing '" + packageName + "'");
+        try {
+            for (int attempt = 1; attempt <= MAX_SKELETON_ATTEMPTS; attempt++) {
+                LOG.info("building skeleton for package '" + packageName + "' (attempt " + attempt + ")");
+
+                // build the skeletons in tmp and move them once done so avoid incomplete file index failures
+                File tempSkeleton = Files.createTempFile("r4j_skel_" + packageName + "_", DOT_R_EXTENSION).toFile();
+                tempSkeleton.deleteOnExit();
+
+                RRunResult output = RHelperUtil.runHelperWithArgs(RHELPER_SKELETONIZE_PACKAGE, indicator,
+                        SKELETON_TIMEOUT, packageName, tempSkeleton.getAbsolutePath());
+
+                // don't tag the package as failed if the user just stopped the update
+                if (indicator.isCanceled() || (output != null && output.isCancelled())) return false;
+
+                boolean lastAttempt = attempt == MAX_SKELETON_ATTEMPTS;
 
-                    // build the skeletons in tmp and move them once done so avoid incomplete file index failures
-                    File tempSkeleton = Files.createTempFile("r4j_skel_" + packageName + "_", DOT_R_EXTENSION).toFile();
-                    tempSkeleton.deleteOnExit();
+                if (output != null && output.isTimeout()) {
+                    LOG.warn("Skeleton generation for '" + packageName + "' timed out after " + SKELETON_TIMEOUT + "ms");
 
-                    RRunResult output = RHelperUtil.runHelperWithArgs(RHELPER_SKELETONIZE_PACKAGE, packageName, tempSkeleton.getAbsolutePath());
+                    if (lastAttempt) {
+                        //noinspection ResultOfMethodCallIgnored
+                        failedSkelTag.createNewFile();
+                    }
 
-                    if (output != null && output.getExitCode() != 0) {
+                } else if (output != null && output.getExitCode() != 0) {
+                    if (lastAttempt) {
                         //noinspection ResultOfMethodCallIgnored
                         failedSkelTag.createNewFile();
                         LOG.error("Failed to generate skeleton for '" + packageName + "'. The error was:\n\n" +
                                 output.getStdErr() +
                                 "\n\nIf you think this issue with plugin and not your R installation, please file a ticket under https://github.com/holgerbrandl/r4intellij/issues\n\n");
-                    } else if (isValidSkeleton(tempSkeleton)) {
-                        // we used the more correct Files.move() here initially, but it caused issues on Windows
-                        // (see https://github.com/holgerbrandl/r4intellij/issues/86). Most likely the R process did not
-                        // correctly release the file handle
-                        Files.copy(tempSkeleton.toPath(), skeletonFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-
-                        updated.add(packageName);
-                    } else {
-                        //noinspection ResultOfMethodCallIgnored
-                        failedSkelTag.createNewFile();
+                    }
 
-                        String skelInfo = "helperOutputNull=" + (output == null) +
-                                "\nskeletonFile_exists=" + skeletonFile.exists() +
-                                "\nisComplete=" + isComplete(skeletonFile) +
-                                "\nisCurrentSkelVersion=" + isCurrentSkelVersion(skeletonFile) +
-                                "\nOS=" + SystemInfo.getOsNameAndVersion();
+                } else if (isValidSkeleton(tempSkeleton)) {
+                    // we used the more correct Files.move() here initially, but it caused issues on Windows
+                    // (see https://github.com/holgerbrandl/r4intellij/issues/86). Most likely the R process did not
+                    // correctly release the file handle
+                    Files.copy(tempSkeleton.toPath(), skeletonFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    copyHelpBundle(tempSkeleton, skeletonsDir, packageName);
 
-                        LOG.error("Failed to generate a valid skeleton for '" + packageName + "'." + skelInfo + "\n Please file a ticket under https://github.com/holgerbrandl/r4intellij/issues");
+                    return true;
 
+                } else if (lastAttempt) {
+                    //noinspection ResultOfMethodCallIgnored
+                    failedSkelTag.createNewFile();
 
-                    }
+                    String skelInfo = "helperOutputNull=" + (output == null) +
+                            "\nskeletonFile_exists=" + skeletonFile.exists() +
+                            "\nisComplete=" + isComplete(skeletonFile) +
+                            "\nisCurrentSkelVersion=" + isCurrentSkelVersion(skeletonFile) +
+                            "\nOS=" + SystemInfo.getOsNameAndVersion();
 
-                } catch (IOException e) {
-                    LOG.error("Failed to generate skeleton for '" + packageName + "'. The reason was:", e);
+                    LOG.error("Failed to generate a valid skeleton for '" + packageName + "'." + skelInfo + "\n Please file a ticket under https://github.com/holgerbrandl/r4intellij/issues");
                 }
-            });
+
+                // the help may have been rendered before the skeletonization failed or timed out
+                deleteTempHelpBundle(tempSkeleton);
+            }
+
+        } catch (IOException e) {
+            LOG.error("Failed to generate skeleton for '" + packageName + "'. The reason was:", e);
         }
 
-        // wait until all skeletons are built
-        try {
-            es.shutdown();
-            es.awaitTermination(1, TimeUnit.HOURS);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        return false;
+    }
+
+
+    /**
+     * Moves the help bundle which was rendered next to a temporary skeleton into the skeleton directory. An outdated
+     * bundle is removed if the help could not be rendered.
+     */
+    private static void copyHelpBundle(File tempSkeleton, File skeletonsDir, String packageName) throws IOException {
+        File tempBundle = new File(tempSkeleton.getPath() + HELP_BUNDLE_SUFFIX);
+        File helpBundle = getHelpBundleFile(skeletonsDir, packageName);
+
+        if (tempBundle.isFile()) {
+            Files.copy(tempBundle.toPath(), helpBundle.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            //noinspection ResultOfMethodCallIgnored
+            tempBundle.delete();
+        } else {
+            //noinspection ResultOfMethodCallIgnored
+            helpBundle.delete();
         }
+    }
 
-//        http://www.jetbrains.org/intellij/sdk/docs/basics/architectural_overview/virtual_file.html
-//        VirtualFile.refresh()
-        return updated;
+
+    private static void deleteTempHelpBundle(File tempSkeleton) {
+        //noinspection ResultOfMethodCallIgnored
+        new File(tempSkeleton.getPath() + HELP_BUNDLE_SUFFIX).delete();
+    }
+
+
+    /**
+     * The pre-rendered help of a package (see {@link com.r4intellij.documentation.RHelpBundle}). Like the failed tags
+     * the bundles are hidden files, so that they are not mistaken for skeletons.
+     */
+    @NotNull
+    public static File getHelpBundleFile(File skeletonsDir, String packageName) {
+        return new File(skeletonsDir, "." + packageName + HELP_BUNDLE_SUFFIX);
+    }
+
+
+    /**
+     * Sizes the skeleton worker pool by the number of cores (leaving one for the IDE) and the free physical memory,
+     * since each worker runs its own R process.
+     */
+    static int getSkeletonPoolSize() {
+        int poolSize = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+        if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+            long freeMemory = ((com.sun.management.OperatingSystemMXBean) osBean).getFreePhysicalMemorySize();
+            poolSize = (int) Math.min(poolSize, freeMemory / SKELETON_PROCESS_MEMORY);
+        }
+
+        return Math.max(1, Math.min(poolSize, MAX_SKELETON_THREADS));
+    }
+
+
+    private static void logBuildTimes(Map<String, Long> buildTimes) {
+        if (buildTimes.isEmpty()) return;
+
+        long totalTime = buildTimes.values().stream().mapToLong(Long::longValue).sum();
+
+        String slowest = buildTimes.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(10)
+                .map(entry -> entry.getKey() + "=" + entry.getValue() + "ms")
+                .collect(Collectors.joining(", "));
+
+        LOG.info("built " + buildTimes.size() + " skeletons (cumulative time " + totalTime + "ms), slowest were: " + slowest);
+    }
+
+
+    @NotNull
+    private static File getFailedTag(File skeletonsDir, String packageName) {
+        return new File(skeletonsDir, "." + packageName + FAILED_SUFFIX);
     }
 
 
@@ -295,6 +550,9 @@ public class RSkeletonGenerator {
         // remove skeletons of no longer installed from index cache
         ApplicationManager.getApplication().invokeLater(() -> ApplicationManager.getApplication().runWriteAction(() -> {
             noLongerInstalled.forEach(File::delete);
+
+            noLongerInstalled.forEach(skelFile -> getHelpBundleFile(skelFile.getParentFile(),
+                    skelFile.getName().replace(RFileType.DOT_R_EXTENSION, "")).delete());
         }));
 
 
@@ -331,65 +589,28 @@ public class RSkeletonGenerator {
 
 
     public static boolean isValidSkeleton(File skeletonFile) {
-        return skeletonFile.exists() && isComplete(skeletonFile) && isCurrentSkelVersion(skeletonFile);
+        return isComplete(skeletonFile) && isCurrentSkelVersion(skeletonFile);
     }
 
 
     /**
-     * Scan for final EOF tag in skeleton file.
+     * Check for final EOF tag in skeleton file.
      */
     private static boolean isComplete(File skeletonFile) {
-        boolean hasEOF = false;
-        try {
-            Scanner scanner = new Scanner(skeletonFile);
-
-            while (scanner.hasNextLine()) {
-                String curLine = scanner.nextLine().trim();
-                if (!curLine.isEmpty()) hasEOF = curLine.equals("## EOF");
-            }
-        } catch (FileNotFoundException e) {
-            return false;
-        }
-
-        return hasEOF;
+        RSkeletonManifest.SkeletonInfo skeletonInfo = RSkeletonManifest.getSkeletonInfo(skeletonFile);
+        return skeletonInfo != null && skeletonInfo.isComplete();
     }
 
 
     public static boolean isSamePckgVersion(File skeletonFile, String installedVersion) {
-        Map<String, String> skelProps = getSkeletonProperties(skeletonFile);
-        String skelPckgVersion = CharMatcher.anyOf("\"").trimFrom(skelProps.getOrDefault(SKELETON_PCKG_VERSION, ""));
-
-        return Objects.equals(skelPckgVersion, installedVersion);
+        RSkeletonManifest.SkeletonInfo skeletonInfo = RSkeletonManifest.getSkeletonInfo(skeletonFile);
+        return skeletonInfo != null && Objects.equals(skeletonInfo.getPackageVersion(), installedVersion);
     }
 
 
     private static boolean isCurrentSkelVersion(File skeletonFile) {
-        Map<String, String> skelProps = getSkeletonProperties(skeletonFile);
-        Integer skelVersion = Integer.valueOf(skelProps.getOrDefault(SKELETON_SKEL_VERSION, "-1"));
-
-        return skelVersion == CUR_SKELETONIZE_VERSION;
-    }
-
-
-    private static Map<String, String> getSkeletonProperties(File skeletonFile) {
-
-        Map<String, String> skelProps = new HashMap<>();
-
-        // use basic file search because psi-read access is not allowed from here (and it's also faster)
-        Integer fileVersion = -1;
-        try {
-            Scanner scanner = new Scanner(skeletonFile);
-            while (scanner.hasNextLine()) {
-                String curLine = scanner.nextLine();
-                if (curLine.startsWith(".skeleton_")) {
-                    String[] splitLine = curLine.split(" = ");
-                    skelProps.put(splitLine[0], splitLine[1]);
-                }
-            }
-        } catch (FileNotFoundException | ArrayIndexOutOfBoundsException ignored) {
-        }
-
-        return skelProps;
+        RSkeletonManifest.SkeletonInfo skeletonInfo = RSkeletonManifest.getSkeletonInfo(skeletonFile);
+        return skeletonInfo != null && skeletonInfo.getSkeletonVersion() == CUR_SKELETONIZE_VERSION;
     }
 
 
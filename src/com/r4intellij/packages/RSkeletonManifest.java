@@ -0,0 +1,234 @@
+/*
+ * Copyright 2011 Holger Brandl
+ *
+ * This code is licensed under BSD. For details see
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+
+package com.r4intellij.packages;
+
+import com.google.common.base.CharMatcher;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.r4intellij.packages.RSkeletonGenerator.*;
+
+/**
+ * Validation metadata of skeleton files. The package properties and the EOF tag are written at the very end of each
+ * skeleton, so they are extracted with a single positioned read of the file tail. The results are kept in a manifest
+ * within the skeleton directory which is keyed by file name, modification time and size, so that an unchanged library
+ * can be validated without reading any skeleton at all.
+ *
+ * @author Holger Brandl
+ */
+class RSkeletonManifest {
+
+    private static final Logger LOG = Logger.getInstance("#" + RSkeletonManifest.class.getName());
+
+    private static final String MANIFEST_FILE_NAME = ".skeleton_manifest";
+
+    // large enough to include the package info section of the skeletons
+    private static final int TAIL_SIZE = 8 * 1024;
+
+    private static final Map<File, RSkeletonManifest> MANIFESTS = new ConcurrentHashMap<>();
+
+    private final File manifestFile;
+    private final Map<String, SkeletonInfo> entries = new ConcurrentHashMap<>();
+    private volatile boolean modified = false;
+
+
+    private RSkeletonManifest(File skeletonsDir) {
+        manifestFile = new File(skeletonsDir, MANIFEST_FILE_NAME);
+        load();
+    }
+
+
+    /**
+     * Returns the validation info of a skeleton file or <code>null</code> if it does not exist.
+     */
+    @Nullable
+    static SkeletonInfo getSkeletonInfo(@NotNull File skeletonFile) {
+        if (!skeletonFile.isFile()) return null;
+
+        File skeletonsDir = skeletonFile.getAbsoluteFile().getParentFile();
+
+        // just manage the skeleton library itself but not temporary or test skeletons
+        if (!skeletonsDir.equals(new File(getSkeletonsPath()).getAbsoluteFile())) {
+            return readSkeletonInfo(skeletonFile);
+        }
+
+        return MANIFESTS.computeIfAbsent(skeletonsDir, RSkeletonManifest::new).getInfo(skeletonFile);
+    }
+
+
+    /**
+     * Persist all manifests which have changed since they were loaded.
+     */
+    static void saveAll() {
+        MANIFESTS.values().forEach(RSkeletonManifest::save);
+    }
+
+
+    private SkeletonInfo getInfo(File skeletonFile) {
+        SkeletonInfo info = entries.get(skeletonFile.getName());
+
+        if (info == null || !info.isUpToDate(skeletonFile)) {
+            info = readSkeletonInfo(skeletonFile);
+
+            entries.put(skeletonFile.getName(), info);
+            modified = true;
+        }
+
+        return info;
+    }
+
+
+    private void load() {
+        if (!manifestFile.isFile()) return;
+
+        try {
+            for (String line : Files.readAllLines(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+                String[] splitLine = line.split("\t", -1);
+                if (splitLine.length != 6) continue;
+
+                entries.put(splitLine[0], new SkeletonInfo(Long.parseLong(splitLine[1]), Long.parseLong(splitLine[2]),
+                        Boolean.parseBoolean(splitLine[3]), Integer.parseInt(splitLine[4]), splitLine[5]));
+            }
+        } catch (IOException | NumberFormatException e) {
+            LOG.warn("Failed to load skeleton manifest, skeletons will be revalidated", e);
+            entries.clear();
+        }
+    }
+
+
+    private synchronized void save() {
+        if (!modified) return;
+
+        // drop entries of deleted skeletons
+        File skeletonsDir = manifestFile.getParentFile();
+        entries.keySet().removeIf(fileName -> !new File(skeletonsDir, fileName).isFile());
+
+        List<String> lines = new ArrayList<>();
+        entries.forEach((fileName, info) -> lines.add(fileName + "\t" + info.lastModified + "\t" + info.length +
+                "\t" + info.complete + "\t" + info.skeletonVersion + "\t" + info.packageVersion));
+
+        try {
+            Files.write(manifestFile.toPath(), lines, StandardCharsets.UTF_8);
+            modified = false;
+        } catch (IOException e) {
+            LOG.warn("Failed to write skeleton manifest", e);
+        }
+    }
+
+
+    @NotNull
+    static SkeletonInfo readSkeletonInfo(File skeletonFile) {
+        long lastModified = skeletonFile.lastModified();
+        long length = skeletonFile.length();
+
+        List<String> tailLines;
+
+        try (RandomAccessFile raf = new RandomAccessFile(skeletonFile, "r")) {
+            long tailStart = Math.max(0, length - TAIL_SIZE);
+            byte[] tail = new byte[(int) (length - tailStart)];
+
+            raf.seek(tailStart);
+            raf.readFully(tail);
+
+            tailLines = new ArrayList<>(Arrays.asList(new String(tail, StandardCharsets.UTF_8).split("\n")));
+
+            // the first line may have been cut
+            if (tailStart > 0 && !tailLines.isEmpty()) tailLines.remove(0);
+
+        } catch (IOException e) {
+            return new SkeletonInfo(lastModified, length, false, -1, "");
+        }
+
+        Map<String, String> skelProps = parseSkeletonProperties(tailLines);
+
+        // fall back to a full scan if the package info section did not fit into the tail
+        if (!skelProps.containsKey(SKELETON_TITLE) && length > TAIL_SIZE) {
+            try {
+                skelProps = parseSkeletonProperties(Files.readAllLines(skeletonFile.toPath(), StandardCharsets.UTF_8));
+            } catch (IOException ignored) {
+            }
+        }
+
+        String lastLine = tailLines.stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty())
+                .reduce((first, second) -> second).orElse("");
+
+        int skeletonVersion;
+        try {
+            skeletonVersion = Integer.parseInt(skelProps.getOrDefault(SKELETON_SKEL_VERSION, "-1").trim());
+        } catch (NumberFormatException e) {
+            skeletonVersion = -1;
+        }
+
+        String packageVersion = CharMatcher.anyOf("\"").trimFrom(skelProps.getOrDefault(SKELETON_PCKG_VERSION, ""));
+
+        return new SkeletonInfo(lastModified, length, lastLine.equals("## EOF"), skeletonVersion, packageVersion);
+    }
+
+
+    private static Map<String, String> parseSkeletonProperties(List<String> lines) {
+        Map<String, String> skelProps = new HashMap<>();
+
+        for (String curLine : lines) {
+            if (curLine.startsWith(".skeleton_")) {
+                String[] splitLine = curLine.split(" = ");
+                if (splitLine.length > 1) skelProps.put(splitLine[0], splitLine[1]);
+            }
+        }
+
+        return skelProps;
+    }
+
+
+    static class SkeletonInfo {
+
+        private final long lastModified;
+        private final long length;
+
+        private final boolean complete;
+        private final int skeletonVersion;
+        private final String packageVersion;
+
+
+        SkeletonInfo(long lastModified, long length, boolean complete, int skeletonVersion, String packageVersion) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.complete = complete;
+            this.skeletonVersion = skeletonVersion;
+            this.packageVersion = packageVersion;
+        }
+
+
+        boolean isUpToDate(File skeletonFile) {
+            return skeletonFile.lastModified() == lastModified && skeletonFile.length() == length;
+        }
+
+
+        boolean isComplete() {
+            return complete;
+        }
+
+
+        int getSkeletonVersion() {
+            return skeletonVersion;
+        }
+
+
+        String getPackageVersion() {
+            return packageVersion;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.r4intellij.packages;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.TestOnly;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Prefix tree of symbol names, so that completion just visits the symbols which start like the typed prefix instead
+ * of filtering all symbols of the imported packages. Symbols are counted, so that they can be removed again once all
+ * their occurrences are gone.
+ *
+ * @author Holger Brandl
+ */
+public class RSymbolTrie {
+
+    private final Node root = new Node();
+    private int size = 0;
+
+
+    public RSymbolTrie() {
+    }
+
+
+    public RSymbolTrie(@NotNull Collection<String> symbols) {
+        symbols.forEach(this::add);
+    }
+
+
+    public synchronized void add(@NotNull String symbol) {
+        Node node = root;
+
+        for (int i = 0; i < symbol.length(); i++) {
+            node = node.getOrCreateChild(symbol.charAt(i));
+        }
+
+        if (node.count++ == 0) size++;
+    }
+
+
+    /**
+     * Removes a single occurrence of a symbol. Once its last occurrence is gone, the nodes which do not lead to any
+     * other symbol are pruned as well.
+     *
+     * @return <code>true</code> if the symbol was contained
+     */
+    public synchronized boolean remove(@NotNull String symbol) {
+        Node[] path = new Node[symbol.length() + 1];
+        path[0] = root;
+
+        for (int i = 0; i < symbol.length(); i++) {
+            path[i + 1] = path[i].getChild(symbol.charAt(i));
+            if (path[i + 1] == null) return false;
+        }
+
+        Node node = path[symbol.length()];
+        if (node.count == 0) return false;
+
+        if (--node.count > 0) return true;
+        size--;
+
+        for (int i = symbol.length(); i > 0 && path[i].count == 0 && path[i].numChildren == 0; i--) {
+            path[i - 1].removeChild(symbol.charAt(i - 1));
+        }
+
+        return true;
+    }
+
+
+    public synchronized int count(@NotNull String symbol) {
+        Node node = findNode(symbol);
+        return node != null ? node.count : 0;
+    }
+
+
+    /**
+     * The number of distinct symbols.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+
+    /**
+     * Returns all symbols which start with the given prefix.
+     */
+    @NotNull
+    public synchronized List<String> findByPrefix(@NotNull String prefix, boolean ignoreCase) {
+        List<String> symbols = new ArrayList<>();
+        collectByPrefix(root, prefix, ignoreCase, new StringBuilder(), symbols);
+
+        return symbols;
+    }
+
+
+    /**
+     * The number of nodes of the tree including the root.
+     */
+    @TestOnly
+    synchronized int countNodes() {
+        return countNodes(root);
+    }
+
+
+    private static int countNodes(Node node) {
+        int count = 1;
+
+        for (int i = 0; i < node.numChildren; i++) {
+            count += countNodes(node.children[i]);
+        }
+
+        return count;
+    }
+
+
+    private Node findNode(String symbol) {
+        Node node = root;
+
+        for (int i = 0; i < symbol.length() && node != null; i++) {
+            node = node.getChild(symbol.charAt(i));
+        }
+
+        return node;
+    }
+
+
+    private static void collectByPrefix(Node node, String prefix, boolean ignoreCase, StringBuilder path, List<String> symbols) {
+        int depth = path.length();
+
+        if (depth == prefix.length()) {
+            collectAll(node, path, symbols);
+            return;
+        }
+
+        char prefixChar = prefix.charAt(depth);
+
+        for (int i = 0; i < node.numChildren; i++) {
+            char key = node.keys[i];
+
+            boolean matches = key == prefixChar ||
+                    ignoreCase && Character.toLowerCase(key) == Character.toLowerCase(prefixChar);
+
+            if (matches) {
+                path.append(key);
+                collectByPrefix(node.children[i], prefix, ignoreCase, path, symbols);
+                path.setLength(depth);
+            }
+        }
+    }
+
+
+    private static void collectAll(Node node, StringBuilder path, List<String> symbols) {
+        if (node.count > 0) symbols.add(path.toString());
+
+        int depth = path.length();
+
+        for (int i = 0; i < node.numChildren; i++) {
+            path.append(node.keys[i]);
+            collectAll(node.children[i], path, symbols);
+            path.setLength(depth);
+        }
+    }
+
+
+    private static class Node {
+
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        // most nodes have just a single child, so plain arrays are more compact than maps
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private int numChildren = 0;
+
+        private int count = 0;
+
+
+        Node getChild(char key) {
+            for (int i = 0; i < numChildren; i++) {
+                if (keys[i] == key) return children[i];
+            }
+
+            return null;
+        }
+
+
+        void removeChild(char key) {
+            for (int i = 0; i < numChildren; i++) {
+                if (keys[i] != key) continue;
+
+                numChildren--;
+                keys[i] = keys[numChildren];
+                children[i] = children[numChildren];
+                children[numChildren] = null;
+                return;
+            }
+        }
+
+
+        Node getOrCreateChild(char key) {
+            Node child = getChild(key);
+            if (child != null) return child;
+
+            if (numChildren == keys.length) {
+                int capacity = Math.max(2, 2 * keys.length);
+                keys = Arrays.copyOf(keys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+
+            child = new Node();
+            keys[numChildren] = key;
+            children[numChildren] = child;
+            numChildren++;
+
+            return child;
+        }
+    }
+}
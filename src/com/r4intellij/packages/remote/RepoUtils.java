@@ -14,6 +14,7 @@ import com.intellij.webcore.packaging.RepoPackage;
 import com.r4intellij.RPsiUtils;
 import com.r4intellij.packages.RHelperUtil;
 import com.r4intellij.packages.RHelperUtil.PluginResourceFile;
+import com.r4intellij.packages.RHelperWorkerPool;
 import com.r4intellij.packages.RPackageService;
 import com.r4intellij.settings.RSettings;
 import org.jetbrains.annotations.NonNls;
@@ -100,7 +101,7 @@ public class RepoUtils {
     static List<RepoPackage> loadAvailablePackages() {
         final List<String> args = getHelperRepositoryArguments();
 
-        final RHelperUtil.RRunResult result = RHelperUtil.runHelperWithArgs(R_ALL_PACKAGES, args.toArray(new String[args.size()]));
+        final RHelperUtil.RRunResult result = RHelperUtil.runHelperInWorker(R_ALL_PACKAGES, args.toArray(new String[args.size()]));
 
         if (result == null || result.getExitCode() != 0) {
             return Lists.newArrayList();
@@ -216,6 +217,9 @@ public class RepoUtils {
 
         final RHelperUtil.RRunResult result = RHelperUtil.runHelperWithArgs(updateHelper, args.toArray(new String[args.size()]));
 
+        // the pooled workers would still report the previously installed packages
+        RHelperWorkerPool.recycleWorkers();
+
         if (result == null) {
             throw new ExecutionException("Please, specify path to the R executable.");
         }
@@ -248,6 +252,9 @@ public class RepoUtils {
 
         final CapturingProcessHandler processHandler = new CapturingProcessHandler(new GeneralCommandLine(arguments));
         final ProcessOutput output = processHandler.runProcess(5 * RPsiUtils.MINUTE);
+
+        RHelperWorkerPool.recycleWorkers();
+
         if (output.getExitCode() != 0) {
             throw new RExecutionException("Can't remove package", StringUtil.join(arguments, " "), output.getStdout(),
                     output.getStderr(), output.getExitCode());
@@ -297,7 +304,7 @@ public class RepoUtils {
         final List<String> args = getHelperRepositoryArguments();
         args.add(0, packageName);
 
-        final RHelperUtil.RRunResult result = RHelperUtil.runHelperWithArgs(R_PACKAGES_DETAILS, args.toArray(new String[args.size()]));
+        final RHelperUtil.RRunResult result = RHelperUtil.runHelperInWorker(R_PACKAGES_DETAILS, args.toArray(new String[args.size()]));
         if (result != null && result.getExitCode() == 0) {
             return result.getStdOut();
         } else {
@@ -1,7 +1,9 @@
 package com.r4intellij.psi;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
 import com.intellij.extapi.psi.PsiFileBase;
 import com.intellij.lang.parser.GeneratedParserUtilBase;
 import com.intellij.openapi.fileTypes.FileType;
@@ -11,18 +13,16 @@ import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.util.CachedValue;
 import com.intellij.psi.util.CachedValueProvider;
 import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.Processor;
 import com.r4intellij.RFileType;
-import com.r4intellij.RPsiUtils;
 import com.r4intellij.psi.api.RCallExpression;
 import com.r4intellij.psi.api.RExpression;
 import com.r4intellij.psi.api.RFile;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
-import java.util.function.Predicate;
+import java.util.*;
 import java.util.stream.Collectors;
 
 import static com.r4intellij.editor.RCompletionContributor.PACKAGE_IMPORT_METHODS;
@@ -56,24 +56,26 @@ public class RFileImpl extends PsiFileBase implements RFile {
     }
 
 
-    private CachedValue<List<RCallExpression>> myImports;
+    private CachedValue<ImportIndex> myImports;
 
 
-    @Override
-    public List<RCallExpression> getImportExpressions(PsiElement queryElement) {
+    private ImportIndex getImportIndex() {
         if (myImports == null) {
-            myImports = CachedValuesManager.getManager(getProject()).createCachedValue(new CachedValueProvider<List<RCallExpression>>() {
+            myImports = CachedValuesManager.getManager(getProject()).createCachedValue(new CachedValueProvider<ImportIndex>() {
                 @Override
-                public Result<List<RCallExpression>> compute() {
-                    return Result.create(findImports(), RFileImpl.this);
+                public Result<ImportIndex> compute() {
+                    return Result.create(new ImportIndex(findImports()), RFileImpl.this);
                 }
             }, false);
         }
 
-        List<RCallExpression> allImports = myImports.getValue();
+        return myImports.getValue();
+    }
+
 
-        Predicate<RCallExpression> beforeQueryPredicate = is -> RPsiUtils.isForwardReference(queryElement, is);
-        return allImports.stream().filter(beforeQueryPredicate).collect(Collectors.toList());
+    @Override
+    public List<RCallExpression> getImportExpressions(PsiElement queryElement) {
+        return getImportIndex().getImportsBefore(queryElement);
     }
 
 
@@ -98,22 +100,118 @@ public class RFileImpl extends PsiFileBase implements RFile {
 
     @Override
     public List<String> getImportedPackages(PsiElement element) {
-        // use cache to get list of imported package names
-        List<String> imports = getImportExpressions(element).stream().map(rCall -> {
-            List<RExpression> args = rCall.getArgumentList().getExpressionList();
+        return getImportIndex().getPackagesBefore(element);
+    }
 
-            if (!args.isEmpty())
-                return args.get(0).getText();
-            else
-                return null;
 
-        }).filter(Objects::nonNull).collect(Collectors.toList());
+    /**
+     * The import calls of a file sorted by offset along with the extracted package names. The imports which are visible
+     * at a given offset are thus just a prefix of both lists, which can be shared between all queries.
+     */
+    private static class ImportIndex {
 
-        // prefix with default libraries
-        return Lists.newArrayList(Iterables.concat(DEFAULT_PACKAGES, imports));
-    }
+        private final ImmutableList<RCallExpression> imports;
+        private final int[] importOffsets;
+
+        // prefixed with the default packages
+        private final ImmutableList<String> packages;
+        // number of package names up to and including the import at the same index
+        private final int[] packagesEnd;
+
+
+        ImportIndex(List<RCallExpression> importCalls) {
+            imports = Ordering.from(Comparator.comparingInt(PsiElement::getTextOffset)).immutableSortedCopy(importCalls);
+            importOffsets = new int[imports.size()];
+            packagesEnd = new int[imports.size()];
+
+            ImmutableList.Builder<String> packageNames = ImmutableList.<String>builder().addAll(DEFAULT_PACKAGES);
+            int numPackages = DEFAULT_PACKAGES.size();
+
+            for (int i = 0; i < imports.size(); i++) {
+                importOffsets[i] = imports.get(i).getTextOffset();
+
+                String packageName = getPackageName(imports.get(i));
+                if (packageName != null) {
+                    packageNames.add(packageName);
+                    numPackages++;
+                }
+
+                packagesEnd[i] = numPackages;
+            }
+
+            packages = packageNames.build();
+        }
+
+
+        @Nullable
+        private static String getPackageName(RCallExpression importCall) {
+            List<RExpression> args = importCall.getArgumentList().getExpressionList();
+            return args.isEmpty() ? null : args.get(0).getText();
+        }
+
+
+        List<RCallExpression> getImportsBefore(PsiElement queryElement) {
+            if (!isSameFile(queryElement)) return Collections.emptyList();
+
+            int numVisible = countImportsBefore(queryElement.getTextOffset());
+            List<RCallExpression> nested = getNestedImports(queryElement, numVisible);
 
+            if (nested.isEmpty()) return imports.subList(0, numVisible);
 
+            return Lists.newArrayList(Iterables.concat(imports.subList(0, numVisible), nested));
+        }
+
+
+        List<String> getPackagesBefore(PsiElement queryElement) {
+            if (!isSameFile(queryElement)) return packages.subList(0, DEFAULT_PACKAGES.size());
+
+            int numVisible = countImportsBefore(queryElement.getTextOffset());
+            List<RCallExpression> nested = getNestedImports(queryElement, numVisible);
+
+            List<String> visiblePackages = packages.subList(0,
+                    numVisible == 0 ? DEFAULT_PACKAGES.size() : packagesEnd[numVisible - 1]);
+
+            if (nested.isEmpty()) return visiblePackages;
+
+            List<String> nestedPackages = nested.stream()
+                    .map(ImportIndex::getPackageName)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+
+            return Lists.newArrayList(Iterables.concat(visiblePackages, nestedPackages));
+        }
+
+
+        private boolean isSameFile(PsiElement queryElement) {
+            return imports.isEmpty() || imports.get(0).getContainingFile().equals(queryElement.getContainingFile());
+        }
+
+
+        /** Number of imports which start before the given offset. */
+        private int countImportsBefore(int offset) {
+            int index = Arrays.binarySearch(importOffsets, offset);
+            if (index < 0) return -index - 1;
+
+            // go to the first import at the offset
+            while (index > 0 && importOffsets[index - 1] == offset) index--;
+            return index;
+        }
+
+
+        /** Imports within the query element, which are visible to it as well (see RPsiUtils.isForwardReference). */
+        private List<RCallExpression> getNestedImports(PsiElement queryElement, int fromIndex) {
+            int queryEnd = queryElement.getTextRange().getEndOffset();
+
+            List<RCallExpression> nested = new ArrayList<>();
+            for (int i = fromIndex; i < importOffsets.length && importOffsets[i] < queryEnd; i++) {
+                if (PsiTreeUtil.isAncestor(queryElement, imports.get(i), true)) {
+                    nested.add(imports.get(i));
+                }
+            }
+
+            return nested;
+        }
+    }
 
 
     private static boolean isImportStatement(PsiElement psiElement) {
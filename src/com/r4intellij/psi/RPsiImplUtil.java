@@ -7,6 +7,9 @@ import com.intellij.lang.ASTNode;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.*;
 import com.intellij.psi.tree.TokenSet;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.r4intellij.RElementGenerator;
 import com.r4intellij.psi.api.*;
@@ -192,7 +195,18 @@ public class RPsiImplUtil {
     }
 
 
+    /**
+     * The reference is kept on the element until the next psi change, since the resolve cache only holds its results
+     * as long as the reference is reachable.
+     */
     public static RReferenceImpl getReference(RReferenceExpression referenceExpression) {
+        return CachedValuesManager.getCachedValue(referenceExpression, () ->
+                CachedValueProvider.Result.create(createReference(referenceExpression), PsiModificationTracker.MODIFICATION_COUNT));
+    }
+
+
+    @Nullable
+    private static RReferenceImpl createReference(RReferenceExpression referenceExpression) {
         final PsiElement nextElement = PsiTreeUtil.skipSiblingsForward(referenceExpression, PsiWhiteSpace.class);
         if (nextElement != null && LEFT_ASSIGNMENTS.contains(nextElement.getNode().getElementType())) return null;
 
@@ -6,8 +6,11 @@ import com.intellij.psi.PsiElementResolveResult
 import com.intellij.psi.PsiWhiteSpace
 import com.intellij.psi.ResolveResult
 import com.intellij.psi.impl.source.tree.LeafPsiElement
+import com.intellij.psi.util.CachedValueProvider
+import com.intellij.psi.util.CachedValuesManager
 import com.intellij.psi.util.PsiTreeUtil
 import com.r4intellij.psi.api.*
+import java.util.*
 
 /**
  * @author Holger Brandl
@@ -26,37 +29,8 @@ class FileContextResolver() {
         if (resolveScope == null) return emptyList()
 
 
-        // list all elements before (or after when running forward mode) and process them
-
-        val results = emptyResults()
-
-        // normal lookup: start as local as possible
-        val scopeChildren = resolveScope.children.filterNot { it is LeafPsiElement || it is PsiWhiteSpace }
-
-        // note: when searching forward refs we include the barrier expressoin containing the symbol to be resolved
-        val candidates = if (forwardRefs) {
-            scopeChildren.dropWhile { !PsiTreeUtil.isAncestor(it, element, true) && element != it }.reversed()
-        } else {
-            scopeChildren.takeWhile { !PsiTreeUtil.isAncestor(it, element, true) && element != it }
-        }
-
-
-        val iterator = candidates.reversed().iterator()
-        while (iterator.hasNext() && (findAll || results.isEmpty())) {
-            val candidate = iterator.next()
-
-            // resolve until we hit the already processed element
-            when (candidate) {
-                is RAssignmentStatement -> {
-                    resolveFromAssignment(candidate, element, elementName, results)
-                }
-                else -> {
-                    resolveInContextByBlockRecursion(candidate, element, elementName)
-                }
-            }
-
-            results.addAll(resolveInContextByBlockRecursion(candidate, element, elementName));
-        }
+        // look up all symbols defined before (or after when running forward mode) the element
+        val results = ScopeSymbolTable.getInstance(resolveScope).resolve(element, elementName, forwardRefs, findAll)
 
         // since the children were processed, now process the context parameters (is any)
         // visitor pattern might work as well here
@@ -85,73 +59,179 @@ class FileContextResolver() {
 
         return results
     }
+}
 
-    private fun resolveInContextByBlockRecursion(context: PsiElement, element: PsiElement, elementName: String): List<ResolveResult> {
-        val result = emptyResults()
 
-        //    RResolver.resolveFromAssignmentInContext(element, elementName, result, context)
+/**
+ * The symbols which are defined by the children of a resolve scope, ordered by the child which defines them. This
+ * includes assignments nested into blocks and if-else branches of a child. Tables are cached per scope until the next
+ * modification of the file, so that local resolves are just a binary search by offset.
+ */
+internal class ScopeSymbolTable private constructor(scope: PsiElement) {
 
-        // also recurse into blocks, if and elses of current context
-        context.acceptChildren(object : RVisitor() {
-            override fun visitBlockExpression(blockExpression: RBlockExpression) {
-                result.addAll(resolveInContextByBlockRecursion(blockExpression, element, elementName))
-                blockExpression.acceptChildren(this)
-            }
+    private val children: List<PsiElement> = scope.children.filterNot { it is LeafPsiElement || it is PsiWhiteSpace }
+
+    private val childOffsets = children.map { it.textRange.startOffset }.toIntArray()
+
+    private val symbols = HashMap<String, MutableList<SymbolDefinition>>()
 
-            override fun visitAssignmentStatement(statement: RAssignmentStatement) {
-                resolveFromAssignment(statement, element, elementName, result)
-                statement.acceptChildren(this)
+
+    init {
+        children.forEachIndexed { childIndex, child ->
+            val nested = mutableListOf<RAssignmentStatement>()
+            collectNestedAssignments(child, nested)
+
+            // local first thus reverse
+            val definitions = if (child is RAssignmentStatement) listOf(child) + nested.reversed() else nested.reversed()
+
+            for (statement in definitions) {
+                val assignee = statement.assignee ?: continue
+
+                definedNames(assignee).forEach { (name, selfRef) ->
+                    symbols.getOrPut(name, { mutableListOf() }).add(SymbolDefinition(childIndex, statement, assignee, selfRef))
+                }
             }
+        }
+    }
+
+
+    fun resolve(element: PsiElement, elementName: String, forwardRefs: Boolean, findAll: Boolean): MutableList<ResolveResult> {
+        val results = emptyResults()
+        val definitions = symbols[elementName] ?: return results
 
-            override fun visitIfStatement(ifStatement: RIfStatement) {
-                ifStatement.acceptChildren(this)
-                super.visitIfStatement(ifStatement)
+        // note: when searching forward refs we include the barrier expression containing the symbol to be resolved
+        val barrier = findBarrier(element)
+
+        // definitions are sorted by child, so the first one of the barrier splits backward and forward candidates
+        val split = firstDefinitionOf(definitions, barrier)
+
+        if (forwardRefs) {
+            var groupStart = split
+            while (groupStart < definitions.size && (findAll || results.isEmpty())) {
+                var groupEnd = groupStart
+                while (groupEnd < definitions.size && definitions[groupEnd].childIndex == definitions[groupStart].childIndex) groupEnd++
+
+                addDefinitions(definitions.subList(groupStart, groupEnd), element, results)
+                groupStart = groupEnd
+            }
+        } else {
+            // start as local as possible
+            var groupEnd = split
+            while (groupEnd > 0 && (findAll || results.isEmpty())) {
+                var groupStart = groupEnd - 1
+                while (groupStart > 0 && definitions[groupStart - 1].childIndex == definitions[groupEnd - 1].childIndex) groupStart--
+
+                addDefinitions(definitions.subList(groupStart, groupEnd), element, results)
+                groupEnd = groupStart
             }
-        })
+        }
 
-        // local first thus reverse
-        return result.reversed()
+        return results
     }
-}
 
-private fun emptyResults() = emptyList<ResolveResult>().toMutableList()
 
+    /** Index of the child containing the element, or the number of children if no child contains it. */
+    private fun findBarrier(element: PsiElement): Int {
+        val offset = element.textRange.startOffset
 
-internal fun resolveFromAssignment(statement: RAssignmentStatement, element: PsiElement, elementName: String, result: MutableList<ResolveResult>) {
-    val assignee = statement.assignee
+        // last child which starts at or before the element
+        var index = Arrays.binarySearch(childOffsets, offset)
+        if (index < 0) {
+            index = -index - 2
+        } else {
+            while (index + 1 < childOffsets.size && childOffsets[index + 1] == offset) index++
+        }
 
-    // 2nd check necessary to disallow self-references
-    // --> disabled to allow for correct usage search
-    // --> see design considerations in devel_notes.md
-    if (assignee == null || assignee === element) return
+        while (index >= 0) {
+            val child = children[index]
+            if (child == element || PsiTreeUtil.isAncestor(child, element, true)) return index
 
+            // empty children may share their offset with the next one
+            if (index == 0 || childOffsets[index - 1] != childOffsets[index]) break
+            index--
+        }
 
-    if (assignee.text == elementName) {
-        val resolveResult = PsiElementResolveResult(statement)
-        result.add(resolveResult)
+        return children.size
     }
 
-    // also resolve member expressions
-    if (assignee is RMemberExpression) {
-        val expr = assignee.expression
-        if (expr.text == elementName && expr !== element) {
-            // disallow self-references
-            result.add(PsiElementResolveResult(statement))
+
+    private fun firstDefinitionOf(definitions: List<SymbolDefinition>, childIndex: Int): Int {
+        var low = 0
+        var high = definitions.size
+
+        while (low < high) {
+            val mid = (low + high).ushr(1)
+            if (definitions[mid].childIndex < childIndex) low = mid + 1 else high = mid
+        }
+
+        return low
+    }
+
+
+    private fun addDefinitions(definitions: List<SymbolDefinition>, element: PsiElement, results: MutableList<ResolveResult>) {
+        // disallow self-references
+        definitions
+                .filterNot { it.assignee === element || it.selfRef === element }
+                .mapTo(results) { PsiElementResolveResult(it.statement) }
+    }
+
+
+    private class SymbolDefinition(val childIndex: Int,
+                                   val statement: RAssignmentStatement,
+                                   val assignee: PsiElement,
+                                   val selfRef: PsiElement?)
+
+
+    companion object {
+        fun getInstance(scope: PsiElement): ScopeSymbolTable = CachedValuesManager.getCachedValue(scope) {
+            CachedValueProvider.Result.create(ScopeSymbolTable(scope), scope.containingFile)
         }
     }
+}
 
 
+// also recurse into blocks, if and elses of the given context
+private fun collectNestedAssignments(context: PsiElement, assignments: MutableList<RAssignmentStatement>) {
+    context.acceptChildren(object : RVisitor() {
+        override fun visitBlockExpression(blockExpression: RBlockExpression) {
+            collectNestedAssignments(blockExpression, assignments)
+        }
+
+        override fun visitAssignmentStatement(statement: RAssignmentStatement) {
+            assignments.add(statement)
+            collectNestedAssignments(statement, assignments)
+        }
+
+        override fun visitIfStatement(ifStatement: RIfStatement) {
+            collectNestedAssignments(ifStatement, assignments)
+        }
+    })
+}
+
+
+/**
+ * The names under which an assignee can be resolved, along with the element which must not resolve to it.
+ */
+private fun definedNames(assignee: PsiElement): List<Pair<String, PsiElement?>> {
+    val names = mutableListOf<Pair<String, PsiElement?>>(assignee.text to null)
+
+    // also resolve member expressions
+    if (assignee is RMemberExpression) {
+        names.add(assignee.expression.text to assignee.expression)
+    }
+
     // if assignee is a reference expression it could be a backticked operator definition
     // same for assignees which are literal expression. R support those as well for defining operators
     if (assignee is RReferenceExpression || assignee is RStringLiteralExpression) {
         val charMatcher = CharMatcher.anyOf("`\"'")
 
         if (charMatcher.matches(assignee.text[0])) {
-            val operatorCandidate = charMatcher.trimFrom(assignee.text)
-
-            if (operatorCandidate == elementName) {
-                result.add(PsiElementResolveResult(statement))
-            }
+            names.add(charMatcher.trimFrom(assignee.text) to null)
         }
     }
+
+    return names
 }
+
+
+private fun emptyResults() = emptyList<ResolveResult>().toMutableList()
@@ -1,35 +1,36 @@
 package com.r4intellij.psi.references;
 
 import com.intellij.codeInsight.completion.util.ParenthesesInsertHandler;
-import com.intellij.codeInsight.lookup.LookupElement;
 import com.intellij.codeInsight.lookup.LookupElementBuilder;
 import com.intellij.lang.ASTNode;
 import com.intellij.lang.Language;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.*;
 import com.intellij.psi.impl.light.LightElement;
+import com.intellij.psi.impl.source.resolve.ResolveCache;
+import com.intellij.util.ArrayUtil;
 import com.intellij.util.IncorrectOperationException;
 import com.r4intellij.RElementGenerator;
 import com.r4intellij.RLanguage;
 import com.r4intellij.RPsiUtils;
-import com.r4intellij.packages.RIndexCache;
-import com.r4intellij.packages.RPackage;
 import com.r4intellij.parsing.RElementTypes;
 import com.r4intellij.psi.RElementFactory;
-import com.r4intellij.psi.api.RFile;
 import com.r4intellij.psi.api.RReferenceExpression;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
-import static com.r4intellij.editor.RCompletionContributor.isPackageContext;
 import static com.r4intellij.psi.references.RResolver.*;
 
 public class RReferenceImpl implements PsiPolyVariantReference {
+
+    private static final AtomicLong RESOLVE_REQUESTS = new AtomicLong();
+    private static final AtomicLong RESOLVE_MISSES = new AtomicLong();
+
     protected final RReferenceExpression myElement;
 
 
@@ -41,6 +42,18 @@ public class RReferenceImpl implements PsiPolyVariantReference {
     @NotNull
     @Override
     public ResolveResult[] multiResolve(boolean incompleteCode) {
+        RESOLVE_REQUESTS.incrementAndGet();
+
+        // results are cached until the next psi modification
+        return ResolveCache.getInstance(myElement.getProject())
+                .resolveWithCaching(this, Resolver.INSTANCE, false, incompleteCode);
+    }
+
+
+    @NotNull
+    private ResolveResult[] multiResolveInner() {
+        RESOLVE_MISSES.incrementAndGet();
+
         final List<ResolveResult> result = new ArrayList<ResolveResult>();
 
         if (RPsiUtils.isNamedArgument(myElement)) {
@@ -160,75 +173,65 @@ public class RReferenceImpl implements PsiPolyVariantReference {
     @NotNull
     @Override
     public Object[] getVariants() {
-        List<LookupElement> completionResults = new ArrayList<LookupElement>();
+        // package names and the symbols of the imported packages are provided by the RCompletionContributor since it
+        // knows the typed prefix and so just needs to visit the matching symbols
+        return ArrayUtil.EMPTY_OBJECT_ARRAY;
+    }
 
-        if (isPackageContext(myElement)) {         // .. auto-completion for require and libary
 
-//            List<RepoPackage> allPackages = LocalRUtil.getPckgNameVersionMap();
-            Set<RPackage> allPackages = RIndexCache.getInstance().getPackages();
+    /**
+     * Creates the lookup element of a symbol exported by a package, which resolves to its skeleton for documentation.
+     */
+    @NotNull
+    public static LookupElementBuilder createPackageSymbolLookup(@NotNull PsiManager manager, @NotNull String pckg,
+                                                                 @NotNull String symbol, boolean isFunction) {
+        RefLookupElement lookupObject = new RefLookupElement(manager, RLanguage.getInstance(), pckg + "::" + symbol);
 
-            // TODO add completion for not-yet-installed packages
+        LookupElementBuilder elementBuilder = LookupElementBuilder
+                .create(lookupObject, symbol)
+                .withTypeText(pckg);
 
-            for (RPackage p : allPackages) {
-                completionResults.add(LookupElementBuilder.create(p.getName()).
-                        withTypeText(p.getTitle()));
-            }
-        } else {
-
-            PsiFile containingFile = myElement.getContainingFile();
-            if (containingFile instanceof RFile) {
-                List<String> importedPackages = ((RFile) containingFile).getImportedPackages(myElement);
-
-                for (String pckg : importedPackages) {
-                    RPackage byName = RIndexCache.getInstance().getByName(pckg);
-                    if (byName == null) {
-                        continue;
-                    }
-
-                    byName.getFunctionNames()
-                            .stream().filter(it -> !it.contains(".__"))
-                            .filter(Objects::nonNull)
-                            .forEach(funName -> {
-                                RefLookupElement lookupObject = new RefLookupElement(myElement.getManager(),
-                                        RLanguage.getInstance(), pckg + "::" + funName);
-
-                                // see
-                                LookupElementBuilder elementBuilder = LookupElementBuilder
-                                        .create(lookupObject, funName)
-                                        .withTypeText(pckg);
-
-                                // is it a method --> jump into parenthesis (see https://intellij-support.jetbrains.com/hc/en-us/community/posts/115000185304-caret-position-and-round-brackets-for-function-call-completion-
-                                elementBuilder = elementBuilder.withInsertHandler(ParenthesesInsertHandler.WITH_PARAMETERS);
-
-                                completionResults.add(elementBuilder);
-//                                        .withLookupString("base::attach"))
-
-                            });
-
-                    // Also provide dedicated completion for data
-                    byName.getDataSetNames()
-                            .stream().filter(it -> !it.contains(".__"))
-                            .filter(Objects::nonNull)
-                            .forEach(funName -> {
-                                RefLookupElement lookupObject = new RefLookupElement(myElement.getManager(),
-                                        RLanguage.getInstance(), pckg + "::" + funName);
-
-                                LookupElementBuilder elementBuilder = LookupElementBuilder
-                                        .create(lookupObject, funName)
-                                        .withTypeText(pckg);
-                                completionResults.add(elementBuilder);
-                            });
-                }
+        // is it a method --> jump into parenthesis (see https://intellij-support.jetbrains.com/hc/en-us/community/posts/115000185304-caret-position-and-round-brackets-for-function-call-completion-
+        if (isFunction) {
+            elementBuilder = elementBuilder.withInsertHandler(ParenthesesInsertHandler.WITH_PARAMETERS);
+        }
 
-            }
-//            if(parameters.isExtendedCompletion()){
+        return elementBuilder;
+    }
 
-//            }
 
-//            RFile rFile = PsiTreeUtil.getContextOfType(insertedElement, RFile.class);
-        }
+    /**
+     * Returns the share of {@link #multiResolve(boolean)} calls which were served from the resolve cache.
+     */
+    public static double getResolveCacheHitRate() {
+        long requests = RESOLVE_REQUESTS.get();
+        return requests == 0 ? 0 : 1 - (double) RESOLVE_MISSES.get() / requests;
+    }
 
-        return completionResults.toArray();
+
+    public static String getResolveCacheStats() {
+        return String.format("resolve requests: %d, cache misses: %d, hit rate: %.1f%%",
+                RESOLVE_REQUESTS.get(), RESOLVE_MISSES.get(), 100 * getResolveCacheHitRate());
+    }
+
+
+    @TestOnly
+    public static void resetResolveCacheStats() {
+        RESOLVE_REQUESTS.set(0);
+        RESOLVE_MISSES.set(0);
+    }
+
+
+    private static class Resolver implements ResolveCache.PolyVariantResolver<RReferenceImpl> {
+
+        private static final Resolver INSTANCE = new Resolver();
+
+
+        @NotNull
+        @Override
+        public ResolveResult[] resolve(@NotNull RReferenceImpl reference, boolean incompleteCode) {
+            return reference.multiResolveInner();
+        }
     }
 
 
@@ -249,6 +252,14 @@ public class RReferenceImpl implements PsiPolyVariantReference {
         }
 
 
+        /**
+         * The namespaced symbol of the lookup element, e.g. <code>dplyr::filter</code>.
+         */
+        public String getRefText() {
+            return refExpression;
+        }
+
+
         @Override
         public String toString() {
             return null;
@@ -10,7 +10,6 @@ import com.intellij.openapi.roots.*;
 import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.roots.libraries.LibraryTable;
 import com.intellij.openapi.roots.libraries.LibraryTablesRegistrar;
-import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import com.intellij.psi.search.ProjectScopeImpl;
 import com.intellij.psi.util.PsiTreeUtil;
@@ -18,6 +17,7 @@ import com.r4intellij.RPsiUtils;
 import com.r4intellij.packages.RIndexCache;
 import com.r4intellij.psi.api.*;
 import com.r4intellij.psi.stubs.RAssignmentNameIndex;
+import com.r4intellij.psi.stubs.RNamespacedAssignmentIndex;
 import com.r4intellij.settings.LibraryUtil;
 import com.r4intellij.settings.RSettings;
 import com.r4intellij.typing.RTypeProvider;
@@ -29,7 +29,6 @@ import java.util.*;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-import static com.r4intellij.RFileType.DOT_R_EXTENSION;
 
 public class RResolver {
 
@@ -216,7 +215,6 @@ public class RResolver {
 
 
     //TODO: should we search in other libraries too?
-    //TODO: why don't we use the stub index here? should be faster and more elegant
     public static void resolveWithNamespace(@NotNull final Project project,
                                             String name,
                                             String namespace,
@@ -227,35 +225,12 @@ public class RResolver {
             return;
         }
 
-        VirtualFile file = Arrays.stream(library.getFiles(OrderRootType.CLASSES)).
-                map(d -> d.findFileByRelativePath(namespace + DOT_R_EXTENSION)).
-                filter(Objects::nonNull).findFirst().orElse(null);
-
-        // FIXME support unit-test library layout out here (bad design!)
-        if (file == null) {
-            file = Arrays.stream(library.getFiles(OrderRootType.CLASSES))
-                    .filter(f -> f.getName().equals(namespace + DOT_R_EXTENSION))
-                    .findFirst().orElse(null);
-        }
-
-        if (file == null) {
-            return;
-        }
-
-        // todo why don't we use the stub-index here, it should be much faster than parsing the file
-        final PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
-
-        final RAssignmentStatement[] statements =
-                PsiTreeUtil.getChildrenOfType(psiFile, RAssignmentStatement.class);
-
-        if (statements != null) {
-            for (RAssignmentStatement statement : statements) {
-                final PsiElement assignee = statement.getAssignee();
+        // skeletons are named by package, so a single lookup is sufficient and does not require to parse the file
+        Collection<RAssignmentStatement> statements =
+                RNamespacedAssignmentIndex.find(namespace, name, project, new LibraryScope(project, library));
 
-                if (assignee != null && assignee.getText().equals(name)) {
-                    result.add(new PsiElementResolveResult(assignee));
-                }
-            }
+        for (RAssignmentStatement statement : statements) {
+            result.add(new PsiElementResolveResult(statement));
         }
     }
 
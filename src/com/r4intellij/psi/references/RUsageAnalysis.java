@@ -0,0 +1,71 @@
+package com.r4intellij.psi.references;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiRecursiveElementWalkingVisitor;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Def-use information of a file. All references of the file are resolved in a single pass and are grouped by the
+ * definition they resolve to. This replaces a reference search per definition, which resolves all candidate
+ * references again, when flagging unused parameters or collecting usages for inlining. The analysis is cached until
+ * the next modification of the file.
+ * <p>
+ * Unused assignments are detected on the control flow instead (see
+ * {@link com.r4intellij.controlflow.RDefinitionUsages}), which also takes the order of assignments into account.
+ * <p>
+ * Just usages within the same file are recorded.
+ *
+ * @author Holger Brandl
+ */
+public class RUsageAnalysis {
+
+    private final Map<PsiElement, List<PsiReference>> usages = new HashMap<>();
+
+
+    private RUsageAnalysis(@NotNull PsiFile file) {
+        file.accept(new PsiRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitElement(PsiElement element) {
+                PsiReference reference = element.getReference();
+
+                if (reference != null) {
+                    // same as the isReferenceTo implementations of our references
+                    PsiElement resolvant = reference.resolve();
+
+                    if (resolvant != null && file.equals(resolvant.getContainingFile())) {
+                        usages.computeIfAbsent(resolvant, key -> new ArrayList<>()).add(reference);
+                    }
+                }
+
+                super.visitElement(element);
+            }
+        });
+    }
+
+
+    @NotNull
+    public static RUsageAnalysis getInstance(@NotNull PsiFile file) {
+        return CachedValuesManager.getCachedValue(file, () ->
+                CachedValueProvider.Result.create(new RUsageAnalysis(file), file));
+    }
+
+
+    /**
+     * Returns the references of the file which resolve to the given definition.
+     */
+    @NotNull
+    public List<PsiReference> getUsages(@NotNull PsiElement definition) {
+        return Collections.unmodifiableList(usages.getOrDefault(definition, Collections.emptyList()));
+    }
+
+
+    public boolean isUsed(@NotNull PsiElement definition) {
+        return usages.containsKey(definition);
+    }
+}
@@ -1,6 +1,7 @@
 package com.r4intellij.psi.stubs;
 
 import com.intellij.lang.ASTNode;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.stubs.*;
 import com.intellij.util.io.StringRef;
@@ -45,7 +46,11 @@ public class RAssignmentElementType extends RStubElementType<RAssignmentStub, RA
 
         boolean isTopLevelAssign = value.getParent() != null && value.getParent().getParent() != null && value.getParent().getParent() instanceof RFile;
 
-        return new RAssignmentStubImpl(name, parentStub, this, value instanceof RFunctionExpression, isTopLevelAssign);
+        // skeleton files are named after their package, which allows to index their symbols by namespace
+        String namespace = isTopLevelAssign ?
+                FileUtil.getNameWithoutExtension(psi.getContainingFile().getName()) : null;
+
+        return new RAssignmentStubImpl(name, parentStub, this, value instanceof RFunctionExpression, isTopLevelAssign, namespace);
     }
 
 
@@ -55,6 +60,7 @@ public class RAssignmentElementType extends RStubElementType<RAssignmentStub, RA
         dataStream.writeName(stub.getName());
         dataStream.writeBoolean(stub.isFunctionDeclaration());
         dataStream.writeBoolean(stub.isTopLevelAssignment());
+        dataStream.writeName(stub.getNamespace());
     }
 
 
@@ -64,7 +70,8 @@ public class RAssignmentElementType extends RStubElementType<RAssignmentStub, RA
         String name = StringRef.toString(dataStream.readName());
         final boolean isFunctionDefinition = dataStream.readBoolean();
         final boolean isTopLevel = dataStream.readBoolean();
-        return new RAssignmentStubImpl(name, parentStub, this, isFunctionDefinition, isTopLevel);
+        String namespace = StringRef.toString(dataStream.readName());
+        return new RAssignmentStubImpl(name, parentStub, this, isFunctionDefinition, isTopLevel, namespace);
     }
 
 
@@ -73,6 +80,10 @@ public class RAssignmentElementType extends RStubElementType<RAssignmentStub, RA
         final String name = stub.getName();
         if (name != null && stub.getParentStub() instanceof PsiFileStub && stub.isTopLevelAssignment()) {
             sink.occurrence(RAssignmentNameIndex.KEY, name);
+
+            if (stub.getNamespace() != null) {
+                sink.occurrence(RNamespacedAssignmentIndex.KEY, RNamespacedAssignmentIndex.createKey(stub.getNamespace(), name));
+            }
         }
     }
 }
@@ -2,10 +2,19 @@ package com.r4intellij.psi.stubs;
 
 import com.intellij.psi.stubs.NamedStub;
 import com.r4intellij.psi.api.RAssignmentStatement;
+import org.jetbrains.annotations.Nullable;
 
 public interface RAssignmentStub extends NamedStub<RAssignmentStatement> {
     boolean isFunctionDeclaration();
 
 
     boolean isTopLevelAssignment();
+
+
+    /**
+     * The package of top-level assignments as derived from the name of the containing file (which corresponds to
+     * the package in case of skeleton files), or <code>null</code> for nested assignments.
+     */
+    @Nullable
+    String getNamespace();
 }
@@ -11,16 +11,19 @@ public class RAssignmentStubImpl extends StubBase<RAssignmentStatement> implemen
     private final String myName;
     private final boolean isFunction;
     private final boolean isTopLevel;
+    private final String myNamespace;
 
 
     public RAssignmentStubImpl(@Nullable final String name,
                                @NotNull final StubElement parent,
                                @NotNull IStubElementType stubElementType,
-                               boolean isFunctionDefinition, boolean isTopLevel) {
+                               boolean isFunctionDefinition, boolean isTopLevel,
+                               @Nullable final String namespace) {
         super(parent, stubElementType);
         this.myName = name;
         this.isFunction = isFunctionDefinition;
         this.isTopLevel = isTopLevel;
+        this.myNamespace = namespace;
     }
 
 
@@ -46,4 +49,11 @@ public class RAssignmentStubImpl extends StubBase<RAssignmentStatement> implemen
     public boolean isTopLevelAssignment() {
         return isTopLevel;
     }
+
+
+    @Nullable
+    @Override
+    public String getNamespace() {
+        return myNamespace;
+    }
 }
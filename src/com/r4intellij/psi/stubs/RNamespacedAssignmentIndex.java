@@ -0,0 +1,38 @@
+package com.r4intellij.psi.stubs;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.stubs.StringStubIndexExtension;
+import com.intellij.psi.stubs.StubIndex;
+import com.intellij.psi.stubs.StubIndexKey;
+import com.r4intellij.psi.api.RAssignmentStatement;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+
+/**
+ * Indexes top-level assignments by <code>package::symbol</code>, where the package is given by the name of the
+ * containing file. This allows to resolve namespaced references like <code>dplyr::mutate</code> without loading the
+ * skeleton of the package.
+ */
+public class RNamespacedAssignmentIndex extends StringStubIndexExtension<RAssignmentStatement> {
+    public static final StubIndexKey<String, RAssignmentStatement> KEY = StubIndexKey.createIndexKey("R.namespaced.symbol");
+
+
+    @Override
+    @NotNull
+    public StubIndexKey<String, RAssignmentStatement> getKey() {
+        return KEY;
+    }
+
+
+    public static Collection<RAssignmentStatement> find(String namespace, String name, Project project, GlobalSearchScope scope) {
+        return StubIndex.getElements(KEY, createKey(namespace, name), project, scope, RAssignmentStatement.class);
+    }
+
+
+    @NotNull
+    static String createKey(@NotNull String namespace, @NotNull String name) {
+        return namespace + "::" + name;
+    }
+}
@@ -19,7 +19,10 @@ package com.r4intellij.refactoring;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiReference;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.SearchScope;
 import com.intellij.psi.search.searches.ReferencesSearch;
 import com.intellij.refactoring.BaseRefactoringProcessor;
 import com.intellij.refactoring.ui.UsageViewDescriptorAdapter;
@@ -32,6 +35,7 @@ import com.r4intellij.psi.RElementFactory;
 import com.r4intellij.psi.RReferenceExpressionImpl;
 import com.r4intellij.psi.api.RAssignmentStatement;
 import com.r4intellij.psi.api.RPsiElement;
+import com.r4intellij.psi.references.RUsageAnalysis;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
@@ -89,9 +93,22 @@ public class InlineAssignmentProcessor extends BaseRefactoringProcessor {
         if (myInlineThisOnly) return new UsageInfo[]{new UsageInfo(myReference.getElement())};
 
         List<UsageInfo> result = ContainerUtil.newArrayList();
-        for (PsiReference reference : ReferencesSearch.search(myExpression, myExpression.getUseScope(), false)) {
-            PsiElement element = reference.getElement();
-            result.add(new UsageInfo(element));
+
+        // usages within the file are already known from its usage analysis
+        PsiFile file = myExpression.getContainingFile();
+        for (PsiReference reference : RUsageAnalysis.getInstance(file).getUsages(myExpression)) {
+            result.add(new UsageInfo(reference.getElement()));
+        }
+
+        // so we just need to search for usages in other files
+        SearchScope useScope = myExpression.getUseScope();
+        if (useScope instanceof GlobalSearchScope) {
+            SearchScope otherFiles = ((GlobalSearchScope) useScope).intersectWith(
+                    GlobalSearchScope.notScope(GlobalSearchScope.fileScope(file)));
+
+            for (PsiReference reference : ReferencesSearch.search(myExpression, otherFiles, false)) {
+                result.add(new UsageInfo(reference.getElement()));
+            }
         }
         return result.toArray(new UsageInfo[result.size()]);
     }
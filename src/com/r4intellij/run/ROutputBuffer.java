@@ -0,0 +1,109 @@
+package com.r4intellij.run;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Buffer for the output of a command which stores the text in fixed-size chunks instead of one growing array, so
+ * appending never copies the text received so far. The chunks are recycled by {@link #clear()}, and the text is
+ * copied once when a range of it is taken out by {@link #subSequence(int, int)}.
+ */
+public class ROutputBuffer implements CharSequence {
+
+    private static final int CHUNK_SHIFT = 13;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // chunks kept by clear, larger outputs release the rest of their chunks afterwards
+    private static final int MAX_RECYCLED_CHUNKS = 16;
+
+    @NotNull
+    private final List<char[]> myChunks;
+
+    private int myLength;
+
+
+    public ROutputBuffer() {
+        myChunks = new ArrayList<char[]>();
+        myLength = 0;
+    }
+
+
+    public void append(@NotNull final String text) {
+        int offset = 0;
+
+        while (offset < text.length()) {
+            final int chunkIndex = myLength >> CHUNK_SHIFT;
+            final int chunkOffset = myLength & CHUNK_MASK;
+
+            if (chunkIndex == myChunks.size()) {
+                myChunks.add(new char[CHUNK_SIZE]);
+            }
+
+            final int count = Math.min(text.length() - offset, CHUNK_SIZE - chunkOffset);
+
+            text.getChars(offset, offset + count, myChunks.get(chunkIndex), chunkOffset);
+
+            offset += count;
+            myLength += count;
+        }
+    }
+
+
+    public void clear() {
+        myLength = 0;
+
+        if (myChunks.size() > MAX_RECYCLED_CHUNKS) {
+            myChunks.subList(MAX_RECYCLED_CHUNKS, myChunks.size()).clear();
+        }
+    }
+
+
+    @Override
+    public int length() {
+        return myLength;
+    }
+
+
+    @Override
+    public char charAt(final int index) {
+        if (index < 0 || index >= myLength) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", length: " + myLength);
+        }
+
+        return myChunks.get(index >> CHUNK_SHIFT)[index & CHUNK_MASK];
+    }
+
+
+    @NotNull
+    @Override
+    public String subSequence(final int start, final int end) {
+        if (start < 0 || end > myLength || start > end) {
+            throw new IndexOutOfBoundsException("Range: [" + start + ", " + end + "), length: " + myLength);
+        }
+
+        final char[] result = new char[end - start];
+
+        int index = start;
+
+        while (index < end) {
+            final int chunkOffset = index & CHUNK_MASK;
+            final int count = Math.min(end - index, CHUNK_SIZE - chunkOffset);
+
+            System.arraycopy(myChunks.get(index >> CHUNK_SHIFT), chunkOffset, result, index - start, count);
+
+            index += count;
+        }
+
+        return new String(result);
+    }
+
+
+    @NotNull
+    @Override
+    public String toString() {
+        return subSequence(0, myLength);
+    }
+}
@@ -41,10 +41,10 @@ public class RXProcessHandler extends ColoredProcessHandler implements RExecutor
     private final boolean myPrintIO;
 
     @NotNull
-    private final StringBuilder myOutputBuffer;
+    private final ROutputBuffer myOutputBuffer;
 
     @NotNull
-    private final StringBuilder myErrorBuffer;
+    private final ROutputBuffer myErrorBuffer;
 
     @NotNull
     private final OutputStreamWriter myWriter;
@@ -70,8 +70,8 @@ public class RXProcessHandler extends ColoredProcessHandler implements RExecutor
         myResultCalculator = resultCalculator;
         myPrintIO = printIO;
 
-        myOutputBuffer = new StringBuilder();
-        myErrorBuffer = new StringBuilder();
+        myOutputBuffer = new ROutputBuffer();
+        myErrorBuffer = new ROutputBuffer();
 
         myWriter = new OutputStreamWriter(getProcess().getOutputStream());
 
@@ -103,8 +103,8 @@ public class RXProcessHandler extends ColoredProcessHandler implements RExecutor
 
                     printIO(command, result);
 
-                    myOutputBuffer.setLength(0);
-                    myErrorBuffer.setLength(0);
+                    myOutputBuffer.clear();
+                    myErrorBuffer.clear();
 
                     return result;
                 }
@@ -187,6 +187,7 @@ public class RXProcessHandler extends ColoredProcessHandler implements RExecutor
         assert myOutputReader != null;
 
         synchronized (myOutputBuffer) {
+            // completion is checked on the tail of the buffer only, so large outputs don't make each check slower
             while (myOutputReader.ready() || !myResultCalculator.isComplete(myOutputBuffer)) {
                 myOutputBuffer.wait();
             }
@@ -266,12 +267,12 @@ public class RXProcessHandler extends ColoredProcessHandler implements RExecutor
     private class RXBaseOutputReader extends BaseOutputReader {
 
         @NotNull
-        private final StringBuilder myBuffer;
+        private final ROutputBuffer myBuffer;
 
 
         public RXBaseOutputReader(@NotNull final Reader reader,
                                   @NotNull final SleepingPolicy sleepingPolicy,
-                                  @NotNull final StringBuilder buffer,
+                                  @NotNull final ROutputBuffer buffer,
                                   @NotNull final String presentableName) {
             super(reader, sleepingPolicy);
 
@@ -32,6 +32,7 @@ import com.r4intellij.run.RXProcessHandler;
 import com.r4intellij.run.configuration.RRunConfiguration;
 import com.r4intellij.run.debug.resolve.RResolvingSession;
 import com.r4intellij.run.debug.resolve.RResolvingSessionImpl;
+import com.r4intellij.settings.RSettings;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -138,7 +139,7 @@ public class RDebugRunner extends GenericProgramRunner {
             return new RDebugger(
                     processHandler,
                     new RFunctionDebuggerFactoryImpl(),
-                    new RVarsLoaderFactoryImpl(processHandler, outputReceiver),
+                    new RVarsLoaderFactoryImpl(processHandler, outputReceiver, RSettings.getInstance().getDebuggerValueBudget()),
                     new RDebuggerEvaluatorFactoryImpl(),
                     new BufferedReader(new FileReader(scriptPath)),
                     outputReceiver,
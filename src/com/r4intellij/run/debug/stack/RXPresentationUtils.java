@@ -5,20 +5,36 @@ import com.intellij.xdebugger.frame.XFullValueEvaluator;
 import com.intellij.xdebugger.frame.XValueNode;
 import com.intellij.xdebugger.frame.presentation.XValuePresentation;
 import com.r4intellij.debugger.RDebuggerStringUtils;
+import com.r4intellij.debugger.exception.RDebuggerException;
 import com.r4intellij.debugger.frame.RVar;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.concurrent.ExecutorService;
+
 final class RXPresentationUtils {
 
     public static void computePresentation(@NotNull final RVar var, @NotNull final XValueNode node) {
         if (isOneLine(var.getValue())) {
-            setVarPresentation(node, var.getType(), var.getValue());
+            setVarPresentation(node, var.getType(), var.getValue(), hasChildren(var));
         } else {
             computeMultilineVarPresentation(var, node);
         }
     }
 
 
+    public static void computePresentation(@NotNull final RVar var,
+                                           @NotNull final XValueNode node,
+                                           @NotNull final ExecutorService executor) {
+        if (var.isTruncated()) {
+            // just the preview has been loaded so far
+            setVarPresentation(node, var.getType(), calculatePreview(var.getValue()), hasChildren(var));
+            setLazyFullValueEvaluator(node, var, executor);
+        } else {
+            computePresentation(var, node);
+        }
+    }
+
+
     public static void computePresentation(@NotNull final String value, @NotNull final XValueNode node) {
         if (isOneLine(value)) {
             setPresentation(node, value);
@@ -28,17 +44,25 @@ final class RXPresentationUtils {
     }
 
 
+    private static boolean hasChildren(@NotNull final RVar var) {
+        return var.getChildren() != null;
+    }
+
+
     private static boolean isOneLine(@NotNull final String value) {
         return RDebuggerStringUtils.findNextLineBegin(value, 0) == value.length();
     }
 
 
-    private static void setVarPresentation(@NotNull final XValueNode node, @NotNull final String type, @NotNull final String presentation) {
+    private static void setVarPresentation(@NotNull final XValueNode node,
+                                           @NotNull final String type,
+                                           @NotNull final String presentation,
+                                           final boolean hasChildren) {
         node.setPresentation(
                 AllIcons.Debugger.Value,
                 type,
                 presentation,
-                false
+                hasChildren
         );
     }
 
@@ -46,7 +70,7 @@ final class RXPresentationUtils {
     private static void computeMultilineVarPresentation(@NotNull final RVar var, @NotNull final XValueNode node) {
         final String value = var.getValue();
 
-        setVarPresentation(node, var.getType(), calculatePreview(value));
+        setVarPresentation(node, var.getType(), calculatePreview(value), hasChildren(var));
         setFullValueEvaluator(node, value);
     }
 
@@ -92,4 +116,29 @@ final class RXPresentationUtils {
 
         node.setFullValueEvaluator(evaluator);
     }
+
+
+    private static void setLazyFullValueEvaluator(@NotNull final XValueNode node,
+                                                  @NotNull final RVar var,
+                                                  @NotNull final ExecutorService executor) {
+        final XFullValueEvaluator evaluator = new XFullValueEvaluator() {
+            @Override
+            public void startEvaluation(@NotNull final XFullValueEvaluationCallback callback) {
+                executor.execute(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    callback.evaluated(var.loadFullValue());
+                                } catch (final RDebuggerException e) {
+                                    callback.errorOccurred(e.getMessage());
+                                }
+                            }
+                        }
+                );
+            }
+        };
+
+        node.setFullValueEvaluator(evaluator);
+    }
 }
@@ -95,13 +95,7 @@ class RXStackFrame extends XStackFrame {
 
     @NotNull
     private XValueChildrenList transform(@NotNull final List<RVar> vars) {
-        final XValueChildrenList result = new XValueChildrenList();
-
-        for (final RVar var : vars) {
-            result.add(new RXVar(var, myExecutor));
-        }
-
-        return result;
+        return RXVar.transform(vars, myExecutor);
     }
 
 
@@ -115,12 +109,18 @@ class RXStackFrame extends XStackFrame {
 
     private static class RXVar extends XNamedValue {
 
+        // rows or elements loaded per expansion, the next ones are loaded by "more" in the variables view
+        private static final int CHILDREN_PAGE_SIZE = 100;
+
         @NotNull
         private final RVar myVar;
 
         @NotNull
         private final ExecutorService myExecutor;
 
+        // advanced on the executor thread, but read again by each expansion
+        private volatile int myNextChild = 0;
+
 
         public RXVar(@NotNull final RVar var, @NotNull final ExecutorService executor) {
             super(var.getName());
@@ -130,9 +130,56 @@ class RXStackFrame extends XStackFrame {
         }
 
 
+        @NotNull
+        public static XValueChildrenList transform(@NotNull final List<RVar> vars, @NotNull final ExecutorService executor) {
+            final XValueChildrenList result = new XValueChildrenList();
+
+            for (final RVar var : vars) {
+                result.add(new RXVar(var, executor));
+            }
+
+            return result;
+        }
+
+
         @Override
         public void computePresentation(@NotNull final XValueNode node, @NotNull final XValuePlace place) {
-            RXPresentationUtils.computePresentation(myVar, node);
+            RXPresentationUtils.computePresentation(myVar, node, myExecutor);
+        }
+
+
+        @Override
+        public void computeChildren(@NotNull final XCompositeNode node) {
+            final RVar.Children children = myVar.getChildren();
+
+            if (children == null) {
+                node.addChildren(XValueChildrenList.EMPTY, true);
+                return;
+            }
+
+            myExecutor.execute(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                final int offset = myNextChild;
+                                final List<RVar> page = children.load(offset, Math.min(CHILDREN_PAGE_SIZE, children.getCount() - offset));
+
+                                myNextChild = offset + page.size();
+
+                                final int remaining = page.isEmpty() ? 0 : children.getCount() - myNextChild;
+
+                                node.addChildren(transform(page, myExecutor), remaining <= 0);
+
+                                if (remaining > 0) {
+                                    node.tooManyChildren(remaining);
+                                }
+                            } catch (final RDebuggerException e) {
+                                node.setErrorMessage(e.getMessage());
+                            }
+                        }
+                    }
+            );
         }
 
 
@@ -8,7 +8,9 @@ import com.intellij.util.xmlb.XmlSerializerUtil;
 import com.r4intellij.inspections.UnquotedArgsRule;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
@@ -24,6 +26,8 @@ public class RCodeInsightSettings implements PersistentStateComponent<RCodeInsig
 
     private List<UnquotedArgsRule> argRules = null;
 
+    private Map<String, List<UnquotedArgsRule>> argRulesIndex = null;
+
 
     public static RCodeInsightSettings getInstance() {
         return ServiceManager.getService(RCodeInsightSettings.class);
@@ -40,6 +44,7 @@ public class RCodeInsightSettings implements PersistentStateComponent<RCodeInsig
     @Override
     public void loadState(RCodeInsightSettings state) {
         XmlSerializerUtil.copyBean(state, this);
+        argRulesIndex = null;
     }
 
 
@@ -53,6 +58,18 @@ public class RCodeInsightSettings implements PersistentStateComponent<RCodeInsig
     }
 
 
+    /**
+     * Returns the white-list rules of a function given by its key (see {@link UnquotedArgsRule#createKey}).
+     */
+    public List<UnquotedArgsRule> getWhitelistRules(String functionKey) {
+        if (argRulesIndex == null) {
+            argRulesIndex = getWhitelistModel().stream().collect(Collectors.groupingBy(UnquotedArgsRule::getKey));
+        }
+
+        return argRulesIndex.getOrDefault(functionKey, Collections.emptyList());
+    }
+
+
     private static List<UnquotedArgsRule> parseArgRules() {
         List<String> whiteList = Arrays.asList(
                 "base::with.default[expr]",
@@ -19,6 +19,9 @@ public class RSettings implements PersistentStateComponent<RSettings> {
 
     public boolean resolveInModule = false;
 
+    // number of characters of value previews loaded per debugger stop, larger values are loaded on demand
+    public int debuggerValueBudget = 64 * 1024;
+
 
     public static RSettings getInstance() {
         return ServiceManager.getService(RSettings.class);
@@ -67,4 +70,14 @@ public class RSettings implements PersistentStateComponent<RSettings> {
     public void setResolveInModule(boolean resolveInModule) {
         this.resolveInModule = resolveInModule;
     }
+
+
+    public int getDebuggerValueBudget() {
+        return debuggerValueBudget;
+    }
+
+
+    public void setDebuggerValueBudget(int debuggerValueBudget) {
+        this.debuggerValueBudget = debuggerValueBudget;
+    }
 }
@@ -2,6 +2,9 @@ package com.r4intellij.typing;
 
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiReference;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.r4intellij.RPsiUtils;
 import com.r4intellij.psi.RPsiImplUtil;
@@ -97,6 +100,38 @@ public class ArgumentMatcher {
     }
 
 
+    /**
+     * Matches the arguments of a call against the formal arguments of the called function. Since this is needed for
+     * each argument of a call when checking for unquoted arguments, the result is cached on the call until the next
+     * psi modification.
+     */
+    public static ArgumentsMatchResult matchCall(@NotNull RCallExpression callExpression) throws MatchingException {
+        CallMatch callMatch = CachedValuesManager.getCachedValue(callExpression, () ->
+                CachedValueProvider.Result.create(CallMatch.compute(() ->
+                                new ArgumentMatcher(callExpression).matchArgs(callExpression.getArgumentList())),
+                        PsiModificationTracker.MODIFICATION_COUNT));
+
+        return callMatch.getResult();
+    }
+
+
+    /**
+     * Matches the operands of a binary operator against the formal arguments of the operator function. Like
+     * {@link #matchCall(RCallExpression)} the result is cached until the next psi modification.
+     */
+    public static ArgumentsMatchResult matchOperator(@NotNull ROperatorExpression operatorExpression) throws MatchingException {
+        CallMatch callMatch = CachedValuesManager.getCachedValue(operatorExpression, () ->
+                CachedValueProvider.Result.create(CallMatch.compute(() -> {
+                    ROperator operator = PsiTreeUtil.getChildOfType(operatorExpression, ROperator.class);
+                    if (operator == null) throw new UnknownTypeException("Could not detect operator");
+
+                    return new ArgumentMatcher(operator.getReference()).matchArgs(operatorExpression);
+                }), PsiModificationTracker.MODIFICATION_COUNT));
+
+        return callMatch.getResult();
+    }
+
+
     public ArgumentsMatchResult matchArgs(RArgumentList argumentList) throws MatchingException {
         return matchArgs(argumentList.getExpressionList());
     }
@@ -349,4 +384,47 @@ public class ArgumentMatcher {
     }
 
 
+
+
+    /**
+     * Cacheable outcome of a call argument matching, which includes failures to match the arguments.
+     */
+    private static class CallMatch {
+
+        private final ArgumentsMatchResult result;
+        private final String matchingError;
+        private final String typeError;
+
+
+        private CallMatch(ArgumentsMatchResult result, String matchingError, String typeError) {
+            this.result = result;
+            this.matchingError = matchingError;
+            this.typeError = typeError;
+        }
+
+
+        static CallMatch compute(Matching matching) {
+            try {
+                return new CallMatch(matching.match(), null, null);
+            } catch (MatchingException e) {
+                return new CallMatch(null, e.getMessage(), null);
+            } catch (UnknownTypeException e) {
+                return new CallMatch(null, null, e.getMessage());
+            }
+        }
+
+
+        ArgumentsMatchResult getResult() throws MatchingException {
+            if (matchingError != null) throw new MatchingException(matchingError);
+            if (typeError != null) throw new UnknownTypeException(typeError);
+
+            return result;
+        }
+    }
+
+
+    private interface Matching {
+
+        ArgumentsMatchResult match() throws MatchingException;
+    }
 }
@@ -21,9 +21,7 @@ public class RTypeProvider {
 
 
     public static RType getType(RPsiElement element) {
-        // disabled because cache implementation is buggy
-//        return RTypeContext.getTypeFromCache(element);
-        return RUnknownType.INSTANCE;
+        return RTypeContext.getTypeFromCache(element);
     }
 
 
@@ -141,8 +139,7 @@ public class RTypeProvider {
         if (!RFunctionType.class.isInstance(functionType)) {
             return RUnknownType.INSTANCE; // TODO: Error?
         }
-        List<RExpression> arguments = PsiTreeUtil.getChildrenOfTypeAsList(expression, RExpression.class);
-        return getFunctionCallReturnType((RFunctionType) functionType, arguments);
+        return getFunctionCallReturnType((RFunctionType) functionType, expression);
     }
 
 
@@ -170,7 +167,7 @@ public class RTypeProvider {
             functionType = (RFunctionType) type;
         }
 
-        return getFunctionCallReturnType(functionType, element.getArgumentList().getExpressionList());
+        return getFunctionCallReturnType(functionType, element);
     }
 
 
@@ -226,7 +223,10 @@ public class RTypeProvider {
     }
 
 
-    private static RType getFunctionCallReturnType(RFunctionType functionType, List<RExpression> arguments) {
+    /**
+     * @param call a call or binary operator expression of the function
+     */
+    private static RType getFunctionCallReturnType(RFunctionType functionType, RExpression call) {
         // step 1: check @return
         if (functionType.getReturnType() != null) {
             return functionType.getReturnType();
@@ -234,9 +234,12 @@ public class RTypeProvider {
 
         ArgumentsMatchResult matchResult;
 
+        // the matching is cached per call, since it is shared with the inspections
         try {
-            matchResult = new ArgumentMatcher(functionType).matchArgs(arguments);
-        } catch (MatchingException e) {
+            matchResult = call instanceof RCallExpression ?
+                    ArgumentMatcher.matchCall((RCallExpression) call) :
+                    ArgumentMatcher.matchOperator((ROperatorExpression) call);
+        } catch (MatchingException | UnknownTypeException e) {
             return RUnknownType.INSTANCE;
         }
 
@@ -10,12 +10,14 @@ import com.r4intellij.debugger.executor.RExecutionResultCalculatorImplTest;
 import com.r4intellij.debugger.executor.RExecutorUtilsTest;
 import com.r4intellij.debugger.frame.RValueModifierHandlerImplTest;
 import com.r4intellij.debugger.frame.RValueModifierImplTest;
+import com.r4intellij.debugger.frame.RBulkVarsLoaderImplTest;
 import com.r4intellij.debugger.frame.RVarsLoaderImplTest;
 import com.r4intellij.debugger.function.RBraceFunctionDebuggerTest;
 import com.r4intellij.debugger.function.RFunctionDebuggerFactoryImplTest;
 import com.r4intellij.debugger.function.RTraceAndDebugUtilsTest;
 import com.r4intellij.debugger.function.RUnbraceFunctionDebuggerTest;
 import com.r4intellij.run.RCommandLineCalculatorTest;
+import com.r4intellij.run.ROutputBufferTest;
 import com.r4intellij.run.ROutputReceiverImplTest;
 import com.r4intellij.run.configuration.RRunConfigurationEditorTest;
 import com.r4intellij.run.configuration.RRunConfigurationTest;
@@ -69,6 +71,7 @@ public class RTestSuite {
     addJUnit4Test(suite, RValueModifierHandlerImplTest.class);
     addJUnit4Test(suite, RValueModifierImplTest.class);
     addJUnit4Test(suite, RVarsLoaderImplTest.class);
+    addJUnit4Test(suite, RBulkVarsLoaderImplTest.class);
 
     // function package
     addJUnit4Test(suite, RFunctionDebuggerFactoryImplTest.class);
@@ -117,6 +120,7 @@ public class RTestSuite {
 
     // `main` package
     addJUnit4Test(suite, RCommandLineCalculatorTest.class);
+    addJUnit4Test(suite, ROutputBufferTest.class);
     addJUnit4Test(suite, ROutputReceiverImplTest.class);
   }
 
@@ -0,0 +1,176 @@
+package com.r4intellij.controlflow
+
+import com.intellij.psi.util.PsiTreeUtil
+import com.r4intellij.RPsiUtils
+import com.r4intellij.RStaticAnalyzerHelper
+import com.r4intellij.RTestCase
+import com.r4intellij.psi.api.RAssignmentStatement
+import com.r4intellij.psi.api.RFunctionExpression
+import com.r4intellij.psi.api.RReferenceExpression
+import junit.framework.TestCase
+
+/**
+ * Tests of the control flow graphs and the data-flow analyses which are solved on them.
+ *
+ * @author Holger Brandl
+ */
+class ControlFlowTest : RTestCase() {
+
+
+    fun testOptionalParameters() {
+        myFixture.configureByText("a.R", """
+        foo = function(a, b, c, d = 1){
+            if(missing(b)) b = 3
+            if(a > 0) return(a + b)
+            c
+        }
+        """.trimIndent())
+
+        val function = PsiTreeUtil.findChildOfType(myFixture.file, RFunctionExpression::class.java)!!
+
+        // c is not read when returning early
+        TestCase.assertEquals(setOf("b", "c"), RStaticAnalyzerHelper.optionalParameters(function))
+    }
+
+
+    fun testOptionalIfNotReadOnAllPaths() {
+        myFixture.configureByText("a.R", """
+        foo = function(a, b){
+            if(a > 0) return(a)
+            b
+        }
+        """.trimIndent())
+
+        val function = PsiTreeUtil.findChildOfType(myFixture.file, RFunctionExpression::class.java)!!
+
+        TestCase.assertEquals(setOf("b"), RStaticAnalyzerHelper.optionalParameters(function))
+    }
+
+
+    fun testReachingDefinitionsInLoops() {
+        myFixture.configureByText("a.R", """
+        x = 1
+        y = 2
+        repeat {
+            x
+            x = "foo"
+            if(y > 1) break
+            y = 3
+        }
+        x
+        """.trimIndent())
+
+        val refs = PsiTreeUtil.findChildrenOfType(myFixture.file, RReferenceExpression::class.java)
+                .filter { it.name == "x" && it.parent !is RAssignmentStatement }
+
+        val controlFlow = RControlFlow.getControlFlow(refs.first())
+        val reachingDefinitions = RReachingDefinitions.getInstance(controlFlow)
+
+        // both the initial definition and the one of the previous iteration reach the first read
+        TestCase.assertEquals(2, reachingDefinitions.getReachingDefinitions(controlFlow.getInstruction(refs[0])!!, "x").size)
+
+        // just the definition within the loop reaches the read after the loop
+        val afterLoop = reachingDefinitions.getReachingDefinitions(controlFlow.getInstruction(refs[1])!!, "x")
+        TestCase.assertEquals(1, afterLoop.size)
+        TestCase.assertEquals("x = \"foo\"", afterLoop.first().element!!.text)
+    }
+
+
+    fun testDefinitionUsages() {
+        myFixture.configureByText("a.R", """
+        x = 1
+        x = 2
+        y = 0
+        for(i in 1:3) {
+            print(y)
+            y = i
+        }
+        x
+        """.trimIndent())
+
+        val usedDefinitions = definitionUsages()
+
+        // the first x is overridden before being read, the second y is read in the next iteration
+        TestCase.assertEquals(mapOf("x = 1" to false, "x = 2" to true, "y = 0" to true, "y = i" to true), usedDefinitions)
+    }
+
+
+    fun testPartialUpdateUsesDefinition() {
+        myFixture.configureByText("a.R", """
+        foo = list()
+        foo${'$'}bar = 1
+        """.trimIndent())
+
+        TestCase.assertEquals(mapOf("foo = list()" to true, "foo${'$'}bar = 1" to false), definitionUsages())
+    }
+
+
+    fun testDefinitionsReadByNestedFunctionsAreUsed() {
+        myFixture.configureByText("a.R", """
+        x = 1
+        foo = function() x
+        x = 2
+        foo()
+        """.trimIndent())
+
+        TestCase.assertEquals(mapOf("x = 1" to true, "foo = function() x" to true, "x = 2" to true), definitionUsages())
+    }
+
+
+    fun testForwardReferences() {
+        myFixture.configureByText("a.R", """
+        foo = { bar }
+        bar = 1
+        repeat {
+            if(bar > 2) break
+            bar = bar + 1
+        }
+        """.trimIndent())
+
+        val bars = PsiTreeUtil.findChildrenOfType(myFixture.file, RReferenceExpression::class.java)
+                .filter { it.name == "bar" && it.parent !is RAssignmentStatement }
+        val definition = PsiTreeUtil.findChildrenOfType(myFixture.file, RAssignmentStatement::class.java)
+                .first { it.text == "bar = 1" }
+
+        // just the read before any definition is a forward reference, the reads in the loop are reached by both
+        TestCase.assertEquals(listOf(true, false, false), bars.map { RPsiUtils.isForwardReference(definition, it) })
+    }
+
+
+    fun testUnreachableReadIsNoForwardReference() {
+        myFixture.configureByText("a.R", """
+        foo = function(){
+            return(1)
+            bar
+            bar = 2
+        }
+        """.trimIndent())
+
+        val bar = PsiTreeUtil.findChildrenOfType(myFixture.file, RReferenceExpression::class.java)
+                .first { it.name == "bar" && it.parent !is RAssignmentStatement }
+        val definition = PsiTreeUtil.findChildOfType(bar.parent, RAssignmentStatement::class.java)!!
+
+        TestCase.assertFalse(RPsiUtils.isForwardReference(definition, bar))
+    }
+
+
+    fun testLargeFunctionControlFlow() {
+        val body = (1..2000).joinToString("\n") { "    x$it = if(x${it - 1} > 0) x${it - 1} else $it" }
+        myFixture.configureByText("a.R", "foo = function(x0){\n$body\n}")
+
+        val function = PsiTreeUtil.findChildOfType(myFixture.file, RFunctionExpression::class.java)!!
+
+        TestCase.assertTrue(RStaticAnalyzerHelper.optionalParameters(function).isEmpty())
+
+        // the graph is linear in the size of the function
+        TestCase.assertTrue(RControlFlow.getInstance(function).size() < 2000 * 10)
+    }
+
+
+    private fun definitionUsages(): Map<String, Boolean> {
+        return PsiTreeUtil.findChildrenOfType(myFixture.file, RAssignmentStatement::class.java).associate {
+            val controlFlow = RControlFlow.getControlFlow(it)
+            it.text to RDefinitionUsages.getInstance(controlFlow).isUsed(controlFlow.getInstruction(it)!!)
+        }
+    }
+}
@@ -21,8 +21,13 @@ import org.junit.Test;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import static com.r4intellij.debugger.data.RFunctionConstants.MAIN_FUNCTION_NAME;
 import static com.r4intellij.debugger.mock.MockRExecutor.LS_FUNCTIONS_ERROR;
@@ -75,6 +80,57 @@ public class RDebuggerTest {
     }
 
 
+    @Test
+    public void longScript() throws RDebuggerException {
+        final int scriptLength = 2000;
+
+        final com.r4intellij.debugger.mock.MockRExecutor executor = new com.r4intellij.debugger.mock.MockRExecutor() {
+            @NotNull
+            @Override
+            protected RExecutionResult doExecute(@NotNull final String command) throws RDebuggerException {
+                if (getCounter() == 1) {
+                    final String prefix = "invisible(local({.l <- readLines(\"";
+                    assertTrue(command.startsWith(prefix));
+
+                    final List<String> lines = readLines(command.substring(prefix.length(), command.indexOf('"', prefix.length())));
+                    assertEquals(scriptLength + 2, lines.size());
+                    assertEquals(MAIN_FUNCTION_NAME + " <- function() {", lines.get(0));
+                    assertEquals("}", lines.get(lines.size() - 1));
+
+                    return new RExecutionResult("", RExecutionResultType.EMPTY, TextRange.EMPTY_RANGE, "error_complete");
+                } else if (getCounter() == 3) {
+                    return new RExecutionResult(" \n \n \n ", RExecutionResultType.RESPONSE, TextRange.allOf(" \n \n \n "), "error_body");
+                } else {
+                    throw new IllegalStateException("Unexpected command");
+                }
+            }
+        };
+
+        final MockRScriptReader scriptReader = new MockRScriptReader(scriptLength);
+        final MockROutputReceiver outputReceiver = new MockROutputReceiver();
+
+        final RDebugger debugger = new RDebugger(
+                executor,
+                new MockRFunctionDebuggerFactory(null),
+                new MockRVarsLoaderFactory(),
+                new MockRDebuggerEvaluatorFactory(),
+                scriptReader,
+                outputReceiver,
+                new IllegalRExpressionHandler(),
+                new MockRValueModifierFactory(),
+                new IllegalRValueModifierHandler()
+        );
+
+        assertFalse(debugger.advance());
+
+        // the whole script is submitted with a single command instead of a command per line
+        assertEquals(3, executor.getCounter());
+        assertTrue(scriptReader.isClosed());
+        assertEquals(scriptLength + 1, scriptReader.getCounter());
+        assertEquals(Arrays.asList("error_complete", LS_FUNCTIONS_ERROR, "error_body"), outputReceiver.getErrors());
+    }
+
+
     @Test
     public void stack1() throws RDebuggerException {
         // just `main`
@@ -1136,6 +1192,16 @@ public class RDebuggerTest {
     }
 
 
+    @NotNull
+    private static List<String> readLines(@NotNull final String path) {
+        try {
+            return Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
     private static class MockRExecutor extends com.r4intellij.debugger.mock.MockRExecutor {
 
         private final int myScriptLength;
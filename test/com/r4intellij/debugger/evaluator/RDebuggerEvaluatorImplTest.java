@@ -303,7 +303,7 @@ public class RDebuggerEvaluatorImplTest {
         protected RExecutionResult doExecute(@NotNull final String command) throws RDebuggerException {
             if (getCounter() == 1) {
                 return new RExecutionResult(
-                        DEBUG_AT_LINE_PREFIX + "2: " + RCommands.expressionOnFrameCommand(0, "abc"),
+                        DEBUG_AT_LINE_PREFIX + "2: " + RCommands.variableOnFrameCommand(0, "abc"),
                         DEBUG_AT,
                         TextRange.EMPTY_RANGE,
                         "abc"
@@ -0,0 +1,341 @@
+package com.r4intellij.debugger.frame;
+
+import com.intellij.openapi.util.TextRange;
+import com.r4intellij.debugger.exception.RDebuggerException;
+import com.r4intellij.debugger.executor.RExecutionResult;
+import com.r4intellij.debugger.mock.AlwaysSameResultRExecutor;
+import com.r4intellij.debugger.mock.IllegalRValueModifier;
+import com.r4intellij.debugger.mock.MockRExecutor;
+import com.r4intellij.debugger.mock.MockROutputReceiver;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.r4intellij.debugger.RDebuggerUtils.calculateValueCommand;
+import static com.r4intellij.debugger.data.RCommands.elementsCommand;
+import static com.r4intellij.debugger.data.RCommands.frameVarsCommand;
+import static com.r4intellij.debugger.data.RCommands.lsCommand;
+import static com.r4intellij.debugger.data.RCommands.variableOnFrameCommand;
+import static com.r4intellij.debugger.data.RFunctionConstants.SERVICE_FUNCTION_PREFIX;
+import static com.r4intellij.debugger.data.RLanguageConstants.FUNCTION_TYPE;
+import static com.r4intellij.debugger.data.RResponseConstants.ENVIRONMENT_PREFIX;
+import static com.r4intellij.debugger.data.RResponseConstants.FRAME_CACHED_VAR_TAG;
+import static com.r4intellij.debugger.data.RResponseConstants.FRAME_VAR_TAG;
+import static com.r4intellij.debugger.executor.RExecutionResultType.EMPTY;
+import static com.r4intellij.debugger.executor.RExecutionResultType.RESPONSE;
+import static com.r4intellij.debugger.frame.RBulkVarsLoaderImpl.DEFAULT_VALUE_BUDGET;
+import static com.r4intellij.debugger.frame.RBulkVarsLoaderImpl.MAX_PREVIEW_LINES;
+import static com.r4intellij.debugger.frame.RBulkVarsLoaderImpl.MAX_PREVIEW_LINE_LENGTH;
+import static org.junit.Assert.*;
+
+public class RBulkVarsLoaderImplTest {
+
+    @Test
+    public void empty() throws RDebuggerException {
+        final AlwaysSameResultRExecutor executor = new AlwaysSameResultRExecutor("", RESPONSE, TextRange.EMPTY_RANGE, "error");
+        final MockROutputReceiver receiver = new MockROutputReceiver();
+
+        assertEquals(0, new RBulkVarsLoaderImpl(executor, receiver, new IllegalRValueModifier(), 0).load().size());
+
+        assertEquals(1, executor.getCounter());
+        assertEquals(Collections.singletonList("error"), receiver.getErrors());
+    }
+
+
+    @Test
+    public void failedBulkCommandFallsBackToSingleVars() throws RDebuggerException {
+        final MockRExecutor executor = new MockRExecutor() {
+            @NotNull
+            @Override
+            protected RExecutionResult doExecute(@NotNull final String command) throws RDebuggerException {
+                if (command.equals(frameVarsCommand(0, MAX_PREVIEW_LINES, MAX_PREVIEW_LINE_LENGTH, DEFAULT_VALUE_BUDGET))) {
+                    return new RExecutionResult("", EMPTY, TextRange.EMPTY_RANGE, "Error in print(.v)");
+                }
+
+                if (command.equals(lsCommand(0))) {
+                    return new RExecutionResult("character(0)", RESPONSE, TextRange.allOf("character(0)"), "");
+                }
+
+                throw new IllegalStateException("Unexpected command");
+            }
+        };
+
+        assertEquals(0, new RBulkVarsLoaderImpl(executor, new MockROutputReceiver(), new IllegalRValueModifier(), 0).load().size());
+        assertEquals(2, executor.getCounter());
+    }
+
+
+    @Test
+    public void singleRoundTripPerFrame() throws RDebuggerException {
+        final StringBuilder output = new StringBuilder();
+
+        for (int i = 0; i < 200; i++) {
+            output.append(header("v" + i, "integer", "integer", 1, "", 1, false)).append("[1] ").append(i).append("\n");
+        }
+
+        final BulkRExecutor executor = new BulkRExecutor(3, output.toString());
+
+        final List<RVar> actual = new RBulkVarsLoaderImpl(executor, new MockROutputReceiver(), new IllegalRValueModifier(), 3).load();
+
+        assertEquals(1, executor.getCounter());
+        assertEquals(200, actual.size());
+
+        assertEquals("v42", actual.get(42).getName());
+        assertEquals("[1] \"integer\"", actual.get(42).getType());
+        assertEquals("[1] 42", actual.get(42).getValue());
+        assertFalse(actual.get(42).isTruncated());
+    }
+
+
+    @Test
+    public void functions() throws RDebuggerException {
+        final String output = header("b", "closure", "function", 1, "", 4, false) +
+                "function(x) {\n" +
+                "    x ^ 2\n" +
+                "}\n" +
+                ENVIRONMENT_PREFIX + "0xfffffff>\n" +
+                header(SERVICE_FUNCTION_PREFIX + "d", "closure", "function", 1, "", 1, false) +
+                "function() NULL\n" +
+                header("e", "character", "character", 0, "", 0, false);
+
+        final BulkRExecutor executor = new BulkRExecutor(0, output);
+
+        final List<RVar> actual = new RBulkVarsLoaderImpl(executor, new MockROutputReceiver(), new IllegalRValueModifier(), 0).load();
+
+        assertEquals(1, executor.getCounter());
+        assertEquals(2, actual.size());
+
+        assertEquals("b", actual.get(0).getName());
+        assertEquals(FUNCTION_TYPE, actual.get(0).getType());
+        assertEquals(
+                "function(x) {\n" +
+                        "    x ^ 2\n" +
+                        "}",
+                actual.get(0).getValue()
+        );
+
+        assertEquals("e", actual.get(1).getName());
+        assertEquals("", actual.get(1).getValue());
+    }
+
+
+    @Test
+    public void fullValueIsLoadedLazily() throws RDebuggerException {
+        final String output = header("a", "integer", "integer", 1000, "elements", 2, true) +
+                "  [1]  1  2  3\n" +
+                "  [4]  4  5  6\n";
+
+        final BulkRExecutor executor = new BulkRExecutor(0, output) {
+            @NotNull
+            @Override
+            protected RExecutionResult doExecute(@NotNull final String command) throws RDebuggerException {
+                if (command.equals(calculateValueCommand(0, "a"))) {
+                    return new RExecutionResult("[1] 1 2 3 4 5 6 7", RESPONSE, TextRange.allOf("[1] 1 2 3 4 5 6 7"), "");
+                }
+
+                return super.doExecute(command);
+            }
+        };
+
+        final List<RVar> actual = new RBulkVarsLoaderImpl(executor, new MockROutputReceiver(), new IllegalRValueModifier(), 0).load();
+
+        assertEquals(1, executor.getCounter());
+        assertTrue(actual.get(0).isTruncated());
+        assertEquals("  [1]  1  2  3\n  [4]  4  5  6", actual.get(0).getValue());
+
+        assertEquals("[1] 1 2 3 4 5 6 7", actual.get(0).loadFullValue());
+        assertEquals(2, executor.getCounter());
+    }
+
+
+    @Test
+    public void rowsArePagedOnDemand() throws RDebuggerException {
+        final String frameOutput = header("df", "list", "data.frame", 1000000, "rows", 3, true) +
+                "data.frame 1000000 x 2\n" +
+                "  x y\n" +
+                "1 1 a\n";
+
+        final String df = variableOnFrameCommand(0, "df");
+        final String pageOutput = header("[101,]", "list", "data.frame", 1, "", 2, false) +
+                "    x y\n" +
+                "101 101 b\n" +
+                header("[102,]", "list", "data.frame", 1, "", 2, false) +
+                "    x y\n" +
+                "102 102 c\n";
+
+        final BulkRExecutor executor = new BulkRExecutor(0, frameOutput) {
+            @NotNull
+            @Override
+            protected RExecutionResult doExecute(@NotNull final String command) throws RDebuggerException {
+                if (command.equals(elementsCommand(df, 100, 2, MAX_PREVIEW_LINES, MAX_PREVIEW_LINE_LENGTH, DEFAULT_VALUE_BUDGET))) {
+                    return new RExecutionResult(pageOutput, RESPONSE, TextRange.allOf(pageOutput), "");
+                }
+
+                return super.doExecute(command);
+            }
+        };
+
+        final List<RVar> actual = new RBulkVarsLoaderImpl(executor, new MockROutputReceiver(), new IllegalRValueModifier(), 0).load();
+
+        assertEquals(1, executor.getCounter());
+
+        final RVar.Children rows = actual.get(0).getChildren();
+        assertNotNull(rows);
+        assertEquals(1000000, rows.getCount());
+
+        final List<RVar> page = rows.load(100, 2);
+        assertEquals(2, executor.getCounter());
+
+        assertEquals("[102,]", page.get(1).getName());
+        assertEquals("    x y\n102 102 c", page.get(1).getValue());
+        assertNull(page.get(1).getChildren());
+        assertFalse(page.get(1).getModifier().isEnabled());
+    }
+
+
+    @Test
+    public void nonSyntacticNamesAreQuoted() throws RDebuggerException {
+        final String frameOutput = header("my `list`", "list", "list", 1, "elements", 0, true);
+
+        final String pageOutput = header("[[1]]", "integer", "integer", 1, "", 1, false) +
+                "[1] 1\n";
+
+        final BulkRExecutor executor = new BulkRExecutor(0, frameOutput) {
+            @NotNull
+            @Override
+            protected RExecutionResult doExecute(@NotNull final String command) throws RDebuggerException {
+                if (command.equals(elementsCommand("sys.frame(0)$`my \\`list\\``", 0, 1, MAX_PREVIEW_LINES, MAX_PREVIEW_LINE_LENGTH, DEFAULT_VALUE_BUDGET))) {
+                    return new RExecutionResult(pageOutput, RESPONSE, TextRange.allOf(pageOutput), "");
+                }
+
+                return super.doExecute(command);
+            }
+        };
+
+        final List<RVar> actual = new RBulkVarsLoaderImpl(executor, new MockROutputReceiver(), new IllegalRValueModifier(), 0).load();
+
+        final RVar.Children elements = actual.get(0).getChildren();
+        assertNotNull(elements);
+
+        final List<RVar> page = elements.load(0, 1);
+
+        assertEquals(2, executor.getCounter());
+        assertEquals("[1] 1", page.get(0).getValue());
+    }
+
+
+    @Test
+    public void budgetExceeded() throws RDebuggerException {
+        final String output = header("l", "list", "list", 3, "elements", 0, true);
+
+        final List<RVar> actual = new RBulkVarsLoaderImpl(new BulkRExecutor(0, output), new MockROutputReceiver(), new IllegalRValueModifier(), 0).load();
+
+        assertEquals("list of length 3", actual.get(0).getValue());
+        assertTrue(actual.get(0).isTruncated());
+        assertNotNull(actual.get(0).getChildren());
+    }
+
+
+    @Test
+    public void unchangedVarsAreServedFromCache() throws RDebuggerException {
+        final String firstOutput = header("a", "integer", "integer", 1, "", 1, false, "integer:integer:1::17") +
+                "[1] 1\n" +
+                header("b", "integer", "integer", 1, "", 1, false, "integer:integer:1::18") +
+                "[1] 2\n" +
+                header("c", "character", "character", 1, "", 1, false, "") +
+                "[1] \"c\"\n";
+
+        final Map<String, String> knownDigests = new HashMap<String, String>();
+        knownDigests.put("a", "integer:integer:1::17");
+        knownDigests.put("b", "integer:integer:1::18");
+
+        final String secondOutput = FRAME_CACHED_VAR_TAG + "\ta\n" +
+                header("b", "integer", "integer", 1, "", 1, false, "integer:integer:1::19") +
+                "[1] 3\n" +
+                header("c", "character", "character", 1, "", 1, false, "") +
+                "[1] \"c\"\n" +
+                header("d", "double", "numeric", 1, "", 1, false, "double:numeric:1::20") +
+                "[1] 4\n";
+
+        final BulkRExecutor executor = new BulkRExecutor(0, firstOutput) {
+            @NotNull
+            @Override
+            protected RExecutionResult doExecute(@NotNull final String command) throws RDebuggerException {
+                if (command.equals(frameVarsCommand(0, MAX_PREVIEW_LINES, MAX_PREVIEW_LINE_LENGTH, DEFAULT_VALUE_BUDGET, knownDigests))) {
+                    return new RExecutionResult(secondOutput, RESPONSE, TextRange.allOf(secondOutput), "");
+                }
+
+                return super.doExecute(command);
+            }
+        };
+
+        final RBulkVarsLoaderImpl loader = new RBulkVarsLoaderImpl(executor, new MockROutputReceiver(), new IllegalRValueModifier(), 0);
+
+        final List<RVar> first = loader.load();
+        final List<RVar> second = loader.load();
+
+        assertEquals(2, executor.getCounter());
+        assertEquals(4, second.size());
+
+        assertSame(first.get(0), second.get(0));
+        assertEquals("[1] 3", second.get(1).getValue());
+        assertNotSame(first.get(2), second.get(2));
+        assertEquals("d", second.get(3).getName());
+    }
+
+
+    @NotNull
+    private static String header(@NotNull final String name,
+                                 @NotNull final String type,
+                                 @NotNull final String rClass,
+                                 final int size,
+                                 @NotNull final String pager,
+                                 final int numLines,
+                                 final boolean isTruncated) {
+        return header(name, type, rClass, size, pager, numLines, isTruncated, "");
+    }
+
+
+    @NotNull
+    private static String header(@NotNull final String name,
+                                 @NotNull final String type,
+                                 @NotNull final String rClass,
+                                 final int size,
+                                 @NotNull final String pager,
+                                 final int numLines,
+                                 final boolean isTruncated,
+                                 @NotNull final String digest) {
+        return FRAME_VAR_TAG + "\t" + name + "\t" + type + "\t" + rClass + "\t" + size + "\t" + pager + "\t" +
+                numLines + "\t" + (isTruncated ? "TRUE" : "FALSE") + "\t" + digest + "\n";
+    }
+
+
+    private static class BulkRExecutor extends MockRExecutor {
+
+        private final int myFrameNumber;
+
+        @NotNull
+        private final String myOutput;
+
+
+        public BulkRExecutor(final int frameNumber, @NotNull final String output) {
+            myFrameNumber = frameNumber;
+            myOutput = output;
+        }
+
+
+        @NotNull
+        @Override
+        protected RExecutionResult doExecute(@NotNull final String command) throws RDebuggerException {
+            if (command.equals(frameVarsCommand(myFrameNumber, MAX_PREVIEW_LINES, MAX_PREVIEW_LINE_LENGTH, DEFAULT_VALUE_BUDGET))) {
+                return new RExecutionResult(myOutput, RESPONSE, TextRange.allOf(myOutput), "");
+            }
+
+            throw new IllegalStateException("Unexpected command");
+        }
+    }
+}
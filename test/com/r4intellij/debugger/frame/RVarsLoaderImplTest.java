@@ -14,7 +14,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
-import static com.r4intellij.debugger.data.RCommands.expressionOnFrameCommand;
+import static com.r4intellij.debugger.data.RCommands.variableOnFrameCommand;
 import static com.r4intellij.debugger.data.RFunctionConstants.SERVICE_FUNCTION_PREFIX;
 import static com.r4intellij.debugger.data.RLanguageConstants.FUNCTION_TYPE;
 import static com.r4intellij.debugger.data.RResponseConstants.DEBUG_AT_LINE_PREFIX;
@@ -223,7 +223,7 @@ public class RVarsLoaderImplTest {
             }
 
             if (getCounter() == 3) {
-                final String output = DEBUG_AT_LINE_PREFIX + "2: print(" + expressionOnFrameCommand(0, "a") + ")";
+                final String output = DEBUG_AT_LINE_PREFIX + "2: print(" + variableOnFrameCommand(0, "a") + ")";
 
                 return new RExecutionResult(
                         output,
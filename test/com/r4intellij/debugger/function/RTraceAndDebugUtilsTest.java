@@ -74,10 +74,8 @@ public class RTraceAndDebugUtilsTest {
 
         final List<String> errors = Arrays.asList(
                 LS_FUNCTIONS_ERROR,
-                "error_" + xFunctionName + "_e",
-                "error_" + xFunctionName + "_d",
-                "error_" + mainFunctionName + "_e",
-                "error_" + mainFunctionName + "_d"
+                "error_" + xFunctionName,
+                "error_" + mainFunctionName
         );
 
         final RExecutor executor = MockitoUtils.setupExecutor(commandsAndResults);
@@ -113,15 +111,19 @@ public class RTraceAndDebugUtilsTest {
                                      @NotNull final String mainEnterFunctionName) {
         return Arrays.asList(
                 LS_FUNCTIONS_COMMAND,
+                traceAndDebugCommand(xFunctionName, xEnterFunctionName),
+                traceAndDebugCommand(mainFunctionName, mainEnterFunctionName)
+        );
+    }
 
-                xEnterFunctionName + " <- function() { print(\"" + xFunctionName + "\") }",
-                traceCommand(xFunctionName, xEnterFunctionName),
-                debugCommand(xFunctionName),
 
-                mainEnterFunctionName + " <- function() { print(\"" + mainFunctionName + "\") }",
-                traceCommand(mainFunctionName, mainEnterFunctionName),
-                debugCommand(mainFunctionName)
-        );
+    @NotNull
+    private String traceAndDebugCommand(@NotNull final String functionName, @NotNull final String enterFunctionName) {
+        return "{ " +
+                enterFunctionName + " <- function() { print(\"" + functionName + "\") }; " +
+                "suppressMessages(" + traceCommand(functionName, enterFunctionName) + "); " +
+                debugCommand(functionName) +
+                " }";
     }
 
 
@@ -150,37 +152,13 @@ public class RTraceAndDebugUtilsTest {
                         "",
                         RExecutionResultType.EMPTY,
                         TextRange.EMPTY_RANGE,
-                        "error_" + xFunctionName + "_e"
-                ),
-                new RExecutionResult(
-                        "[1] \"" + xFunctionName + "\"",
-                        RExecutionResultType.RESPONSE,
-                        TextRange.allOf("[1] \"" + xFunctionName + "\""),
-                        "error_" + xFunctionName + "_t"
-                ),
-                new RExecutionResult(
-                        "",
-                        RExecutionResultType.EMPTY,
-                        TextRange.EMPTY_RANGE,
-                        "error_" + xFunctionName + "_d"
-                ),
-                new RExecutionResult(
-                        "",
-                        RExecutionResultType.EMPTY,
-                        TextRange.EMPTY_RANGE,
-                        "error_" + mainFunctionName + "_e"
-                ),
-                new RExecutionResult(
-                        "[1] \"" + mainFunctionName + "\"",
-                        RExecutionResultType.RESPONSE,
-                        TextRange.allOf("[1] \"" + mainFunctionName + "\""),
-                        "error_" + mainFunctionName + "_t"
+                        "error_" + xFunctionName
                 ),
                 new RExecutionResult(
                         "",
                         RExecutionResultType.EMPTY,
                         TextRange.EMPTY_RANGE,
-                        "error_" + mainFunctionName + "_d"
+                        "error_" + mainFunctionName
                 )
         );
     }
@@ -0,0 +1,63 @@
+package com.r4intellij.documentation;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class RHelpBundleTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+
+    @Test
+    public void lookupByAliasAndTopic() throws IOException {
+        File bundle = writeBundle();
+
+        assertEquals("<h2>Keep rows</h2>\n", RHelpBundle.findHelp(bundle, "help/filter"));
+        assertEquals("<h2>Keep rows</h2>\n", RHelpBundle.findHelp(bundle, "html/filter.html"));
+
+        // aliases are url-encoded in help requests
+        assertEquals("<h2>Pipe</h2>\n<p>forward</p>\n", RHelpBundle.findHelp(bundle, "help/" + RDocumentationProvider.encodeURL("%>%")));
+        assertEquals("<h2>Pipe</h2>\n<p>forward</p>\n", RHelpBundle.findHelp(bundle, "help/pipe"));
+
+        assertNull(RHelpBundle.findHelp(bundle, "help/not_documented"));
+        assertNull(RHelpBundle.findHelp(bundle, "html/00Index.html"));
+        assertNull(RHelpBundle.findHelp(new File(tmpFolder.getRoot(), "missing.help.gz"), "help/filter"));
+    }
+
+
+    @Test
+    public void rewriteLinks() {
+        String html = "<html><head><title>filter</title></head><body>\n" +
+                "<a href=\"../../base/html/print.html\">print</a> <a href=\"00Index.html\">Index</a>";
+
+        String rewritten = RDocumentationProvider.rewriteHelpHtml(html, "psi_element://library/dplyr/help/filter", "psi_element://");
+
+        assertEquals("<a href=\"psi_element://library/base/html/print.html\">print</a> " +
+                "<a href=\"psi_element://library/dplyr/html/00Index.html\">Index</a>", rewritten);
+    }
+
+
+    private File writeBundle() throws IOException {
+        File bundle = tmpFolder.newFile(".dplyr.help.gz");
+
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(bundle)), StandardCharsets.UTF_8)) {
+            writer.write(".help_alias\t%>%\tpipe\n" +
+                    ".help_alias\tfilter\tfilter\n" +
+                    ".help_topic\tpipe\t2\n" +
+                    "<h2>Pipe</h2>\n" +
+                    "<p>forward</p>\n" +
+                    ".help_topic\tfilter\t1\n" +
+                    "<h2>Keep rows</h2>\n");
+        }
+
+        return bundle;
+    }
+}
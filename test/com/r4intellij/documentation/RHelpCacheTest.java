@@ -0,0 +1,142 @@
+package com.r4intellij.documentation;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class RHelpCacheTest {
+
+    private File cacheDir;
+
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDir = FileUtil.createTempDirectory("r_help_cache", null);
+    }
+
+
+    @After
+    public void tearDown() {
+        FileUtil.delete(cacheDir);
+    }
+
+
+    @Test
+    public void pagesSurviveRestart() {
+        new RHelpCache(() -> cacheDir).put("dplyr", "0.7.0", "help/filter", "<h2>Return rows with matching conditions</h2>");
+
+        RHelpCache restarted = new RHelpCache(() -> cacheDir);
+
+        assertEquals("<h2>Return rows with matching conditions</h2>", restarted.get("dplyr", "0.7.0", "help/filter"));
+    }
+
+
+    @Test
+    public void keyedByVersion() {
+        RHelpCache helpCache = new RHelpCache(() -> cacheDir);
+        helpCache.put("dplyr", "0.7.0", "help/filter", "old");
+
+        assertNull(helpCache.get("dplyr", "0.7.1", "help/filter"));
+        assertNull(helpCache.get("dplyr", "0.7.0", "help/select"));
+    }
+
+
+    @Test
+    public void unversionedPagesAreNotPersisted() {
+        RHelpCache helpCache = new RHelpCache(() -> cacheDir);
+        helpCache.put("NULL", null, "help/filter", "some help");
+
+        assertEquals("some help", helpCache.get("NULL", null, "help/filter"));
+        assertNull(helpCache.getPageFile("NULL", null, "help/filter"));
+
+        helpCache.clearMemoryCache();
+        assertNull(helpCache.get("NULL", null, "help/filter"));
+    }
+
+
+    @Test
+    public void keyedByInterpreter() throws IOException {
+        File otherCacheDir = FileUtil.createTempDirectory("r_help_cache", null);
+        File[] currentCacheDir = {cacheDir};
+
+        try {
+            RHelpCache helpCache = new RHelpCache(() -> currentCacheDir[0]);
+            helpCache.put("dplyr", "0.7.0", "help/filter", "some help");
+            helpCache.put("NULL", null, "help/filter", "some help");
+
+            // switching the interpreter neither serves the pages from memory nor from the former directory
+            currentCacheDir[0] = otherCacheDir;
+            assertNull(helpCache.get("dplyr", "0.7.0", "help/filter"));
+            assertNull(helpCache.get("NULL", null, "help/filter"));
+
+            currentCacheDir[0] = cacheDir;
+            assertEquals("some help", helpCache.get("dplyr", "0.7.0", "help/filter"));
+        } finally {
+            FileUtil.delete(otherCacheDir);
+        }
+    }
+
+
+    @Test
+    public void topicsDifferingInCaseUseDifferentFiles() {
+        RHelpCache helpCache = new RHelpCache(() -> cacheDir);
+        helpCache.put("base", "3.4.0", "help/T", "TRUE");
+        helpCache.put("base", "3.4.0", "help/t", "transpose");
+
+        File upperFile = helpCache.getPageFile("base", "3.4.0", "help/T");
+        File lowerFile = helpCache.getPageFile("base", "3.4.0", "help/t");
+
+        assertNotNull(upperFile);
+        assertNotNull(lowerFile);
+        assertFalse(upperFile.getName().equalsIgnoreCase(lowerFile.getName()));
+
+        helpCache.clearMemoryCache();
+        assertEquals("TRUE", helpCache.get("base", "3.4.0", "help/T"));
+        assertEquals("transpose", helpCache.get("base", "3.4.0", "help/t"));
+    }
+
+
+    @Test
+    public void cleanUpPurgesUninstalledVersions() {
+        RHelpCache helpCache = new RHelpCache(() -> cacheDir);
+        helpCache.put("dplyr", "0.7.0", "help/filter", "old");
+        helpCache.put("dplyr", "0.7.1", "help/filter", "new");
+        helpCache.put("tidyr", "0.6.0", "help/gather", "removed");
+
+        helpCache.cleanUp(Collections.singletonMap("dplyr", "0.7.1"));
+
+        assertNull(helpCache.getPageFile("dplyr", "0.7.0", "help/filter"));
+        assertNotNull(helpCache.getPageFile("dplyr", "0.7.1", "help/filter"));
+        assertNull(helpCache.getPageFile("tidyr", "0.6.0", "help/gather"));
+
+        // just the directory of the installed package is left
+        assertEquals(1, cacheDir.listFiles().length);
+    }
+
+
+    @Test
+    public void cleanUpTrimsLeastRecentlyUsedPages() {
+        RHelpCache helpCache = new RHelpCache(() -> cacheDir);
+        helpCache.put("dplyr", "0.7.0", "help/filter", "filter");
+        helpCache.put("dplyr", "0.7.0", "help/select", "select");
+        helpCache.put("dplyr", "0.7.0", "help/mutate", "mutate");
+
+        helpCache.getPageFile("dplyr", "0.7.0", "help/filter").setLastModified(1000);
+        helpCache.getPageFile("dplyr", "0.7.0", "help/select").setLastModified(3000);
+        helpCache.getPageFile("dplyr", "0.7.0", "help/mutate").setLastModified(2000);
+
+        // room for two pages
+        helpCache.cleanUp(Collections.singletonMap("dplyr", "0.7.0"), 12);
+
+        assertNull(helpCache.getPageFile("dplyr", "0.7.0", "help/filter"));
+        assertNotNull(helpCache.getPageFile("dplyr", "0.7.0", "help/select"));
+        assertNotNull(helpCache.getPageFile("dplyr", "0.7.0", "help/mutate"));
+    }
+}
@@ -0,0 +1,119 @@
+package com.r4intellij.editor
+
+import com.intellij.codeInsight.lookup.LookupElementPresentation
+import com.intellij.codeInsight.lookup.LookupManager
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.psi.PsiDocumentManager
+import com.r4intellij.RTestCase
+import junit.framework.TestCase
+
+/**
+ * @author Holger Brandl
+ */
+class CompletionTest : RTestCase() {
+
+
+    fun testDocumentWords() {
+        myFixture.configureByText("a.R", """
+        foo_bar = 1
+        foo_baz = 2
+        foo_<caret>
+        """.trimIndent())
+
+        myFixture.completeBasic()
+
+        val lookups = myFixture.lookupElementStrings!!
+        TestCase.assertTrue(lookups.containsAll(listOf("foo_bar", "foo_baz")))
+        TestCase.assertFalse(lookups.contains("foo_"))
+    }
+
+
+    fun testDocumentWordsAreUpdatedIncrementally() {
+        myFixture.configureByText("a.R", """
+        foo_bar = 1
+        foo_baz = 2
+        foo_<caret>
+        """.trimIndent())
+
+        myFixture.completeBasic()
+        LookupManager.getInstance(myFixture.project).hideActiveLookup()
+
+        val document = myFixture.editor.document
+        WriteCommandAction.runWriteCommandAction(myFixture.project) {
+            // replace the first line and add a new one
+            document.replaceString(0, document.getLineEndOffset(0), "foo_qux = 1\nfoo_quux = 3")
+        }
+        PsiDocumentManager.getInstance(myFixture.project).commitAllDocuments()
+
+        myFixture.completeBasic()
+
+        val lookups = myFixture.lookupElementStrings!!
+        TestCase.assertTrue(lookups.containsAll(listOf("foo_qux", "foo_quux", "foo_baz")))
+        TestCase.assertFalse(lookups.contains("foo_bar"))
+    }
+
+
+    fun testSymbolsOfLaterImportsRankFirst() {
+        createBaseLibraryWith("dplyr")
+
+        myFixture.configureByText("a.R", """
+        require(dplyr)
+        filte<caret>
+        """.trimIndent())
+
+        myFixture.completeBasic()
+
+        // dplyr::filter masks stats::filter since it is attached later
+        val filterPackages = myFixture.lookupElements!!
+                .filter { it.lookupString == "filter" }
+                .map { LookupElementPresentation().apply { it.renderElement(this) }.typeText }
+
+        TestCase.assertEquals("dplyr", filterPackages.first())
+        TestCase.assertTrue(filterPackages.contains("stats"))
+    }
+
+
+    fun testPackageNamesInLibraryCall() {
+        createBaseLibraryWith("dplyr")
+
+        myFixture.configureByText("a.R", "library(dpl<caret>)")
+        myFixture.completeBasic()
+
+        // the only matching package is inserted right away
+        TestCase.assertEquals("library(dplyr)", myFixture.editor.document.text)
+
+        // the callee and arguments of nested calls are no package names
+        myFixture.configureByText("a.R", "library(head(dpl<caret>))")
+        myFixture.completeBasic()
+
+        TestCase.assertFalse(myFixture.lookupElementStrings.orEmpty().contains("dplyr"))
+    }
+
+
+    fun testProjectSymbols() {
+        myFixture.addFileToProject("other.R", """
+        project_symbol_one = 1
+        project_symbol_two = 2
+        """.trimIndent())
+
+        myFixture.configureByText("a.R", "project_sym<caret>")
+        myFixture.completeBasic()
+
+        TestCase.assertTrue(myFixture.lookupElementStrings!!.containsAll(listOf("project_symbol_one", "project_symbol_two")))
+    }
+
+
+    fun testNoSymbolsInCommentsStringsAndTags() {
+        createBaseLibraryWith("dplyr")
+
+        for (text in listOf("# filte<caret>", "\"filte<caret>\"", "x${'$'}filte<caret>")) {
+            myFixture.configureByText("a.R", "require(dplyr)\nfilter_words = 1\n$text")
+            myFixture.completeBasic()
+
+            // the words of the document are still completed, and since dplyr::filter isn't offered the only
+            // matching word is inserted right away
+            TestCase.assertNull(text, myFixture.lookupElementStrings)
+            TestCase.assertTrue(text, myFixture.editor.document.text.lines().last().contains("filter_words"))
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.r4intellij.inspections
+
+import com.intellij.openapi.progress.EmptyProgressIndicator
+import com.intellij.openapi.util.JDOMUtil
+import com.r4intellij.RTestCase
+import junit.framework.TestCase
+
+/**
+ * @author Holger Brandl
+ */
+class BatchInspectionTest : RTestCase() {
+
+
+    fun testInspectFilesInParallel() {
+        val files = (1..8).map { i ->
+            myFixture.addFileToProject("script$i.R", """
+            foo$i = function(x) x + 1
+            foo$i(${if (i % 2 == 0) "undefined_symbol" else "1"})
+            """.trimIndent()).virtualFile
+        }
+
+        val report = RBatchInspector(myFixture.project, listOf(UnresolvedReferenceInspection()), 4)
+                .inspect(files, EmptyProgressIndicator())
+
+        TestCase.assertEquals(8, report.files.size)
+        TestCase.assertEquals(4, report.problemCount)
+
+        val problems = report.files.first { it.path.endsWith("script2.R") }.problems
+        TestCase.assertEquals(1, problems.size)
+        TestCase.assertEquals(2, problems[0].line)
+        TestCase.assertEquals(UnresolvedReferenceInspection.UNRESOLVED_MSG, problems[0].message)
+
+        // problems are reported by the short name of the plugin.xml
+        TestCase.assertEquals("RUnresolvedReference", problems[0].inspection)
+
+        val xml = JDOMUtil.writeElement(report.toXml())
+        TestCase.assertTrue(xml.contains("problems=\"4\""))
+    }
+
+
+    fun testInspectionsOfProjectProfile() {
+        myFixture.enableInspections(UnresolvedReferenceInspection::class.java)
+
+        val file = myFixture.addFileToProject("script.R", "foo(undefined_symbol)").virtualFile
+        val report = RBatchInspector(myFixture.project).inspect(listOf(file), EmptyProgressIndicator())
+
+        val inspections = report.files.single().problems.map { it.inspection }.distinct()
+        TestCase.assertEquals(listOf("RUnresolvedReference"), inspections)
+    }
+}
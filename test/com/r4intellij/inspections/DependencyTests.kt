@@ -3,7 +3,10 @@ package com.r4intellij.inspections
 import com.intellij.psi.util.PsiTreeUtil
 import com.intellij.testFramework.fixtures.CodeInsightTestFixture
 import com.r4intellij.RTestCase
+import com.r4intellij.packages.RSkeletonGenerator.DEFAULT_PACKAGES
 import com.r4intellij.psi.api.RCallExpression
+import com.r4intellij.psi.api.RFile
+import com.r4intellij.psi.api.RReferenceExpression
 import junit.framework.TestCase
 import org.jetbrains.annotations.NotNull
 
@@ -91,6 +94,29 @@ class DependencyTests : RTestCase() {
         doExprTest("dplyr::group_by(iris)")
     }
 
+    fun testImportsVisibleAtOffset() {
+        myFixture.configureByText("a.R", """
+        library(dplyr)
+        foo
+        require(tidyr)
+        bar
+        """)
+
+        val file = myFixture.file as RFile
+        val refs = PsiTreeUtil.findChildrenOfType(file, RReferenceExpression::class.java).filter { it.text in listOf("foo", "bar") }
+
+        val fooImports = file.getImportedPackages(refs[0])
+        val barImports = file.getImportedPackages(refs[1])
+
+        assertEquals(DEFAULT_PACKAGES.size + 1, fooImports.size)
+        assertEquals(listOf("dplyr"), fooImports.drop(DEFAULT_PACKAGES.size))
+        assertEquals(listOf("dplyr", "tidyr"), barImports.drop(DEFAULT_PACKAGES.size))
+
+        assertEquals(1, file.getImportExpressions(refs[0]).size)
+        assertEquals(2, file.getImportExpressions(refs[1]).size)
+    }
+
+
     fun testMissingOperatorImport() {
         createBaseLibraryWith("dplyr") // we use the rexported version here to see if its picked up correctly
         //        createSkeletonLibrary("datasets", "base", "utils", "dplyr")
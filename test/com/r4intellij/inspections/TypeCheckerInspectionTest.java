@@ -146,6 +146,12 @@ public class TypeCheckerInspectionTest extends RInspectionTest {
     }
 
 
+    public void testCyclicDefinitions() {
+        // inferring the return types of mutually recursive functions must terminate
+        doExprTest("foo = function() bar(); bar = function() foo(); foo()");
+    }
+
+
     public void testOptional() {
         doTest("TestOptional.R");
     }
@@ -10,6 +10,11 @@ public class UnusedParameterInspectionTest extends RInspectionTest {
     assertUnused(readTestDataFile());
   }
 
+  public void testFlagParameterUsedJustAsArgumentName() {
+    // the name of a named argument refers to the parameter of the called function
+    doExprTest("function(<warning descr=\"Unused parameter x\">x</warning>) head(x = 1)");
+  }
+
   // False positive tests: Unused annotation might be present (or was by regression) but should not
 
   /**
@@ -25,6 +30,10 @@ public class UnusedParameterInspectionTest extends RInspectionTest {
     assertAllUsed("trainData <- iris; function(trainData){   trainData }");
   }
 
+  public void testDontFlagParameterUsedInNestedFunction() {
+    assertAllUsed("function(x) function(y) x + y");
+  }
+
   public void testDontFlagTripleArg(){
     // this test is especially important since the resolver order and the detection of locality matter here
     assertAllUsed("function(...) as.character('foo', ...)");
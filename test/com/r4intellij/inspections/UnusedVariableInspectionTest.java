@@ -45,6 +45,17 @@ public class UnusedVariableInspectionTest extends RInspectionTest {
     }
 
 
+    public void testFlagOverriddenAssignment() {
+        // just the last assignment is read
+        doExprTest(warnUnused("a") + " = 1; a = 2; print(a)");
+    }
+
+
+    public void testFlagAssignmentOverriddenInBothBranches() {
+        doExprTest(warnUnused("a") + " = 1; if(T) a = 2 else a = 3; print(a)");
+    }
+
+
     @NotNull
     private static String warnUnused(@NotNull String varName) {
         return "<warning descr=\"Variable '" + varName + "' is never used\">" + varName + "</warning>";
@@ -100,6 +111,16 @@ public class UnusedVariableInspectionTest extends RInspectionTest {
     }
 
 
+    public void testDontFlagAssignmentReadInNextIteration() {
+        doExprTest("x = 0; while(x < 3) x = x + 1");
+    }
+
+
+    public void testDontFlagVariableReadInFormula() {
+        doExprTest("x = 1:10; y <- x^2; lm(y ~ x)");
+    }
+
+
     public void testUsageOutsideIfElse() {
         // since (in contrary to java) is legal in R; scoping works different somehow
         doExprTest("if(T){ a = 3; }else{ b = 2; }; a ; b");
@@ -151,6 +172,11 @@ public class UnusedVariableInspectionTest extends RInspectionTest {
     }
 
 
+    public void testDontFlagVariableReadInFunction() {
+        assertAllUsed("a = 1; myfun = function() a; myfun()");
+    }
+
+
     public void testDontFlagFunctionArgUsedAsUnnamedArg() {
         assertAllUsed("function(usedArg) head(usedArg)");
     }
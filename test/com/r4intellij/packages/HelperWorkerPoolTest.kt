@@ -0,0 +1,69 @@
+package com.r4intellij.packages
+
+import com.r4intellij.RTestCase
+
+/**
+ * @author Holger Brandl
+ */
+
+class HelperWorkerPoolTest : RTestCase() {
+
+    private val pool: RHelperWorkerPool get() = RHelperWorkerPool.getInstance()!!
+
+
+    fun testResponseFraming() {
+        val output = pool.evaluate(listOf("cat('foo\\n\\nbar\\n')", "message('some message')", "warning('some warning')", "commandArgs(TRUE)"),
+                listOf("arg1", "arg 2"), 10000)!!
+
+        assertEquals(0, output.exitCode)
+        assertFalse(output.isTimeout)
+        // empty lines are part of the response and must not break the framing
+        assertEquals("foo\n\nbar\n[1] \"arg1\"  \"arg 2\"\n", output.stdout)
+        assertTrue(output.stderr.contains("some message"))
+        assertTrue(output.stderr.contains("some warning"))
+    }
+
+
+    fun testErrorKeepsWorkerUsable() {
+        val output = pool.evaluate(listOf("stop('boom')"), listOf(), 10000)!!
+
+        assertEquals(1, output.exitCode)
+        assertTrue(output.stderr.contains("Error: boom"))
+
+        assertEquals(listOf("[1] 2"), pool.evaluate(listOf("1 + 1"), listOf(), 10000)!!.stdoutLines)
+    }
+
+
+    fun testWorkerDyingMidRequest() {
+        val output = pool.evaluate(listOf("cat('partial\\n')", "quit(save = 'no', status = 3)"), listOf(), 10000)!!
+
+        assertEquals(-1, output.exitCode)
+        assertTrue(output.stderr.contains("terminated unexpectedly"))
+
+        // the died worker is replaced by a new one
+        assertEquals(listOf("[1] 2"), pool.evaluate(listOf("1 + 1"), listOf(), 10000)!!.stdoutLines)
+    }
+
+
+    fun testTimeout() {
+        val output = pool.evaluate(listOf("Sys.sleep(10)"), listOf(), 500)!!
+
+        assertTrue(output.isTimeout)
+    }
+
+
+    fun testIdleWorkersAreShutDown() {
+        pool.evaluate(listOf("1 + 1"), listOf(), 10000)
+        assertTrue(pool.numIdleWorkers > 0)
+
+        // recently used workers are kept
+        pool.shutdownIdleWorkers(60000)
+        assertTrue(pool.numIdleWorkers > 0)
+
+        pool.shutdownIdleWorkers(0)
+        assertEquals(0, pool.numIdleWorkers)
+
+        // and restarted on demand
+        assertEquals(listOf("[1] 2"), pool.evaluate(listOf("1 + 1"), listOf(), 10000)!!.stdoutLines)
+    }
+}
@@ -0,0 +1,142 @@
+package com.r4intellij.packages;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class RIndexCacheTest {
+
+    private static final int NUM_PACKAGES = 600;
+    private static final int NUM_FUNCTIONS = 200;
+
+
+    @Test
+    public void lookupByName() {
+        RIndexCache indexCache = new RIndexCache(buildPackages());
+
+        assertEquals("pckg42", indexCache.getByName("pckg42").getName());
+        assertNull(indexCache.getByName("not_installed"));
+        assertNull(indexCache.getByName(null));
+    }
+
+
+    @Test
+    public void lookupBySymbol() {
+        RIndexCache indexCache = new RIndexCache(buildPackages());
+
+        assertEquals(Collections.singleton(indexCache.getByName("pckg7")), indexCache.getPackagesWithFunction("pckg7_fun3"));
+        assertEquals(NUM_PACKAGES, indexCache.getPackagesWithFunction("print").size());
+        assertTrue(indexCache.getPackagesWithFunction("not_a_function").isEmpty());
+
+        assertEquals(Collections.singleton(indexCache.getByName("pckg7")), indexCache.getPackagesWithDataSet("pckg7_data"));
+    }
+
+
+    @Test
+    public void resolveDependencies() {
+        RIndexCache indexCache = new RIndexCache(buildPackages());
+
+        List<String> resolved = indexCache.resolveDependencies(Collections.singletonList("pckg3")).stream()
+                .map(RPackage::getName)
+                .collect(Collectors.toList());
+
+        assertEquals("pckg3", resolved.get(0));
+        assertTrue(resolved.contains("pckg2"));
+        assertTrue(resolved.contains("pckg0"));
+    }
+
+
+    @Test
+    public void cyclicDependencies() {
+        RPackage first = new RPackage("first", "1.0", "", Collections.singleton("second"), Collections.emptySet());
+        RPackage second = new RPackage("second", "1.0", "", Collections.singleton("first"), Collections.emptySet());
+
+        RIndexCache indexCache = new RIndexCache(Arrays.asList(first, second));
+
+        assertEquals(Arrays.asList(first, second), indexCache.resolveDependencies(Collections.singletonList("first")));
+        assertEquals(Arrays.asList(second, first), indexCache.resolveDependencies(Arrays.asList("second", "first")));
+    }
+
+
+    @Test
+    public void dictionaryWordsOfChangedPackages() {
+        List<RPackage> packages = buildPackages();
+
+        Set<String> words = RIndexCache.getDictionaryWords(packages.subList(0, 2));
+
+        // names, functions and data sets of both packages, with the shared function just once
+        assertEquals(2 * (NUM_FUNCTIONS + 2) + 1, words.size());
+        assertTrue(words.contains("pckg1_data"));
+        assertFalse(words.contains("pckg2"));
+
+        // symbol names are built once per package
+        assertSame(packages.get(0).getFunctionNames(), packages.get(0).getFunctionNames());
+    }
+
+
+    /**
+     * Micro-benchmark comparing the former linear package scan with the name-keyed lookup. Timings depend on the
+     * machine, so they are just reported.
+     */
+    @Test
+    public void resolveThroughput() {
+        RIndexCache indexCache = new RIndexCache(buildPackages());
+
+        int numLookups = 100000;
+
+        long linearStart = System.nanoTime();
+        for (int i = 0; i < numLookups; i++) {
+            String packageName = "pckg" + (i % NUM_PACKAGES);
+            RPackage found = null;
+            for (RPackage rPackage : indexCache.getPackages()) {
+                if (rPackage.getName().equals(packageName)) {
+                    found = rPackage;
+                    break;
+                }
+            }
+            assertNotNull(found);
+        }
+        long linearTime = System.nanoTime() - linearStart;
+
+        long indexedStart = System.nanoTime();
+        for (int i = 0; i < numLookups; i++) {
+            assertNotNull(indexCache.getByName("pckg" + (i % NUM_PACKAGES)));
+        }
+        long indexedTime = System.nanoTime() - indexedStart;
+
+        System.err.println(String.format("package lookups/ms: linear scan %.1f, name-keyed %.1f",
+                numLookups / (linearTime / 1E6), numLookups / (indexedTime / 1E6)));
+    }
+
+
+    private static List<RPackage> buildPackages() {
+        List<RPackage> packages = new ArrayList<>();
+
+        for (int i = 0; i < NUM_PACKAGES; i++) {
+            String name = "pckg" + i;
+            // every package depends on its predecessor
+            RPackage rPackage = new RPackage(name, "1.0", "Package " + i,
+                    i > 0 ? Collections.singleton("pckg" + (i - 1)) : Collections.emptySet(), Collections.emptySet());
+
+            List<PckgFunction> functions = IntStream.range(0, NUM_FUNCTIONS)
+                    .mapToObj(funIndex -> new PckgFunction(name + "_fun" + funIndex))
+                    .collect(Collectors.toList());
+            functions.add(new PckgFunction("print"));
+
+            rPackage.setFunctions(functions);
+            rPackage.setDatSets(Collections.singletonList(new PckgDataSet(name + "_data")));
+
+            packages.add(rPackage);
+        }
+
+        return packages;
+    }
+}
@@ -0,0 +1,184 @@
+package com.r4intellij.packages;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class RPackageIndexFileTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+
+    @Test
+    public void roundTrip() throws IOException {
+        RPackage rPackage = createPackage("dplyr", "0.5.0", 3);
+        rPackage.setRepoUrl("https://cran.r-project.org");
+
+        RPackageIndexFile indexFile = new RPackageIndexFile(tmpFolder.newFile());
+        indexFile.save(Collections.singletonList(rPackage));
+
+        List<RPackage> loaded = indexFile.load();
+
+        assertNotNull(loaded);
+        assertEquals(1, loaded.size());
+
+        RPackage loadedPackage = loaded.get(0);
+        assertEquals("dplyr", loadedPackage.getName());
+        assertEquals("0.5.0", loadedPackage.getVersion());
+        assertEquals("https://cran.r-project.org", loadedPackage.getRepoUrl());
+        assertEquals(rPackage.getDependencies(), loadedPackage.getDependencies());
+        assertEquals(rPackage.getFunctionNames(), loadedPackage.getFunctionNames());
+        assertEquals(rPackage.getDataSetNames(), loadedPackage.getDataSetNames());
+    }
+
+
+    @Test
+    public void incrementalUpdate() throws IOException {
+        List<RPackage> packages = IntStream.range(0, 10)
+                .mapToObj(i -> createPackage("pckg" + i, "1.0", 20))
+                .collect(Collectors.toList());
+
+        File file = tmpFolder.newFile();
+        RPackageIndexFile indexFile = new RPackageIndexFile(file);
+        indexFile.save(packages);
+
+        long initialSize = file.length();
+
+        RPackage updated = createPackage("pckg3", "2.0", 20);
+        packages.set(3, updated);
+        packages.remove(7);
+
+        indexFile.update(Collections.singletonList(updated), Collections.singletonList("pckg7"), packages);
+
+        // the updated package should have been appended without rewriting the file
+        assertTrue(file.length() > initialSize);
+
+        Map<String, RPackage> loaded = indexFile.load().stream()
+                .collect(Collectors.toMap(RPackage::getName, rPackage -> rPackage));
+
+        assertEquals(9, loaded.size());
+        assertEquals("2.0", loaded.get("pckg3").getVersion());
+        assertFalse(loaded.containsKey("pckg7"));
+    }
+
+
+    @Test
+    public void outdatedFormat() throws IOException {
+        File file = tmpFolder.newFile();
+
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
+            oos.writeObject(new HashSet<>(Collections.singletonList(createPackage("base", "3.3.2", 1))));
+        }
+
+        assertNull(new RPackageIndexFile(file).load());
+    }
+
+
+    @Test
+    public void saveAfterLoad() throws Exception {
+        RPackageIndexFile indexFile = new RPackageIndexFile(tmpFolder.newFile());
+        indexFile.save(Collections.singletonList(createPackage("first", "1.0", 10)));
+
+        assertEquals(1, indexFile.load().size());
+
+        // loading must not keep the file locked, otherwise replacing it fails on Windows
+        indexFile.save(Arrays.asList(createPackage("first", "1.0", 10), createPackage("second", "1.0", 10)));
+
+        assertEquals(2, indexFile.load().size());
+    }
+
+
+    /**
+     * A cold-start sized index must load the same packages as the former java-serialized index.
+     */
+    @Test
+    public void coldStartLoad() throws Exception {
+        List<RPackage> packages = IntStream.range(0, 1000)
+                .mapToObj(i -> createPackage("pckg" + i, "1.0", 300))
+                .collect(Collectors.toList());
+
+        File serializedFile = tmpFolder.newFile();
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(serializedFile))) {
+            oos.writeObject(new HashSet<>(packages));
+        }
+
+        RPackageIndexFile indexFile = new RPackageIndexFile(tmpFolder.newFile());
+        indexFile.save(packages);
+
+        Set<?> deserialized;
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(serializedFile))) {
+            deserialized = (Set<?>) ois.readObject();
+        }
+
+        List<RPackage> loaded = indexFile.load();
+
+        assertNotNull(loaded);
+        assertEquals(deserialized.size(), loaded.size());
+        assertEquals(new HashSet<>(packages), new HashSet<>(loaded));
+        assertEquals(300 * 1000, loaded.stream().mapToInt(rPackage -> rPackage.getFunctionNames().size()).sum());
+    }
+
+
+    @Test
+    public void truncatedFileIsDeletedOnLoad() throws IOException {
+        File file = tmpFolder.newFile();
+        RPackageIndexFile indexFile = new RPackageIndexFile(file);
+        indexFile.save(Arrays.asList(createPackage("first", "1.0", 10), createPackage("second", "1.0", 10)));
+
+        truncate(file, file.length() - 10);
+
+        assertNull(indexFile.load());
+        assertFalse(file.exists());
+    }
+
+
+    @Test
+    public void corruptFileIsRewrittenOnUpdate() throws IOException {
+        File file = tmpFolder.newFile();
+        RPackageIndexFile indexFile = new RPackageIndexFile(file);
+
+        List<RPackage> packages = new ArrayList<>(Arrays.asList(createPackage("first", "1.0", 10), createPackage("second", "1.0", 10)));
+        indexFile.save(packages);
+
+        // cut into the length of the last record
+        truncate(file, file.length() - 2);
+
+        RPackage updated = createPackage("first", "2.0", 10);
+        packages.set(0, updated);
+        indexFile.update(Collections.singletonList(updated), Collections.emptyList(), packages);
+
+        Map<String, RPackage> loaded = indexFile.load().stream()
+                .collect(Collectors.toMap(RPackage::getName, rPackage -> rPackage));
+
+        assertEquals(2, loaded.size());
+        assertEquals("2.0", loaded.get("first").getVersion());
+    }
+
+
+    private static void truncate(File file, long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+    }
+
+
+    private static RPackage createPackage(String name, String version, int numFunctions) {
+        RPackage rPackage = new RPackage(name, version, "Title of " + name,
+                new HashSet<>(Arrays.asList("methods", "stats")), Collections.singleton("utils"));
+
+        rPackage.setFunctions(IntStream.range(0, numFunctions)
+                .mapToObj(i -> new PckgFunction(name + "_fun" + i))
+                .collect(Collectors.toList()));
+        rPackage.setDatSets(Collections.singletonList(new PckgDataSet(name + "_data")));
+
+        return rPackage;
+    }
+}
@@ -0,0 +1,80 @@
+package com.r4intellij.packages;
+
+import com.google.common.base.Strings;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class RSkeletonManifestTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+
+    @Test
+    public void completeSkeleton() throws IOException {
+        File skeleton = writeSkeleton(Strings.repeat("foo <- function(x) x\n\n", 10000), true);
+
+        RSkeletonManifest.SkeletonInfo info = RSkeletonManifest.readSkeletonInfo(skeleton);
+
+        assertTrue(info.isComplete());
+        assertEquals(5, info.getSkeletonVersion());
+        assertEquals("0.5.0", info.getPackageVersion());
+        assertTrue(info.isUpToDate(skeleton));
+    }
+
+
+    @Test
+    public void incompleteSkeleton() throws IOException {
+        File skeleton = writeSkeleton("foo <- function(x) x\n\n", false);
+
+        assertFalse(RSkeletonManifest.readSkeletonInfo(skeleton).isComplete());
+    }
+
+
+    @Test
+    public void packageInfoExceedingTail() throws IOException {
+        // long dependency lists may push the title out of the tail
+        String longDepends = Strings.repeat("somepackage,", 2000);
+        File skeleton = tmpFolder.newFile("bigdeps.R");
+
+        Files.write(skeleton.toPath(), ("foo <- function(x) x\n\n" +
+                "## Package Info\n\n" +
+                ".skeleton_package_title = \"Some title\"\n\n" +
+                ".skeleton_package_version = \"1.2\"\n\n" +
+                ".skeleton_package_depends = \"" + longDepends + "\"\n\n" +
+                ".skeleton_package_imports = \"\"\n\n" +
+                ".skeleton_version = 5\n\n" +
+                "\n## EOF").getBytes(StandardCharsets.UTF_8));
+
+        RSkeletonManifest.SkeletonInfo info = RSkeletonManifest.readSkeletonInfo(skeleton);
+
+        assertTrue(info.isComplete());
+        assertEquals("1.2", info.getPackageVersion());
+    }
+
+
+    private File writeSkeleton(String symbols, boolean complete) throws IOException {
+        File skeleton = tmpFolder.newFile("dplyr.R");
+
+        String packageInfo = "\n\n\n## Package Info\n\n" +
+                ".skeleton_package_title = \"A Grammar of Data Manipulation\"\n\n" +
+                ".skeleton_package_version = \"0.5.0\"\n\n" +
+                ".skeleton_package_depends = \"\"\n\n" +
+                ".skeleton_package_imports = \"assertthat,utils\"\n\n" +
+                "\n## Internal\n\n" +
+                ".skeleton_version = 5\n\n" +
+                (complete ? "\n## EOF" : "");
+
+        Files.write(skeleton.toPath(), (symbols + packageInfo).getBytes(StandardCharsets.UTF_8));
+
+        return skeleton;
+    }
+}
@@ -0,0 +1,66 @@
+package com.r4intellij.packages;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class RSymbolTrieTest {
+
+    @Test
+    public void findByPrefix() {
+        RSymbolTrie trie = new RSymbolTrie(Arrays.asList("filter", "filter_", "Filter", "fill", "select", "f"));
+
+        assertEquals(new HashSet<>(Arrays.asList("filter", "filter_")), new HashSet<>(trie.findByPrefix("filt", false)));
+        assertEquals(new HashSet<>(Arrays.asList("filter", "filter_", "Filter")), new HashSet<>(trie.findByPrefix("filt", true)));
+        assertEquals(new HashSet<>(Arrays.asList("f", "filter", "filter_", "fill")), new HashSet<>(trie.findByPrefix("f", false)));
+        assertEquals(Collections.emptyList(), trie.findByPrefix("mutate", true));
+
+        assertEquals(6, trie.findByPrefix("", false).size());
+    }
+
+
+    @Test
+    public void countOccurrences() {
+        RSymbolTrie trie = new RSymbolTrie();
+        trie.add("foo");
+        trie.add("foo");
+        trie.add("foobar");
+
+        assertEquals(2, trie.size());
+        assertEquals(2, trie.count("foo"));
+
+        assertTrue(trie.remove("foo"));
+        assertEquals(Arrays.asList("foo", "foobar"), trie.findByPrefix("foo", false));
+
+        assertTrue(trie.remove("foo"));
+        assertFalse(trie.remove("foo"));
+        assertEquals(Collections.singletonList("foobar"), trie.findByPrefix("foo", false));
+        assertEquals(1, trie.size());
+    }
+
+
+    @Test
+    public void pruneRemovedSymbols() {
+        RSymbolTrie trie = new RSymbolTrie(Arrays.asList("foo", "foobar", "fob"));
+        assertEquals(8, trie.countNodes());
+
+        // the node of foo is still needed for foobar
+        assertTrue(trie.remove("foo"));
+        assertEquals(8, trie.countNodes());
+
+        // also prunes the node of the removed foo, but keeps the shared prefix of fob
+        assertTrue(trie.remove("foobar"));
+        assertEquals(4, trie.countNodes());
+
+        assertTrue(trie.remove("fob"));
+        assertEquals(1, trie.countNodes());
+        assertEquals(0, trie.size());
+
+        trie.add("foo");
+        assertEquals(Collections.singletonList("foo"), trie.findByPrefix("f", false));
+    }
+}
@@ -2,12 +2,15 @@ package com.r4intellij.parser
 
 import com.intellij.patterns.PlatformPatterns.psiElement
 import com.intellij.patterns.PsiElementPattern
+import com.intellij.psi.PsiDocumentManager
 import com.intellij.psi.SyntaxTraverser
 import com.intellij.psi.util.PsiTreeUtil
 import com.r4intellij.psi.api.RArgumentList
+import com.r4intellij.psi.api.RAssignmentStatement
 import com.r4intellij.psi.api.RExpression
 import com.r4intellij.psi.api.ROperatorExpression
 import com.r4intellij.psi.api.RReferenceExpression
+import com.r4intellij.psi.references.RReferenceImpl
 
 /**
  * @author Holger Brandl
@@ -71,6 +74,84 @@ class ResolverTest : AbstractResolverTest() {
         checkExpression("""dplyr::`%>%`""")
     }
 
+
+    fun testManyNamespacedCalls() {
+        createSkeletonLibrary("dplyr")
+
+        val functions = listOf("mutate", "filter", "select", "arrange", "summarise")
+        val calls = (0 until 500).map { "dplyr::${functions[it % functions.size]}(iris)" }
+
+        myFixture.configureByText("a.R", calls.joinToString("\n"))
+
+        val references = PsiTreeUtil.findChildrenOfType(myFixture.file, RReferenceExpression::class.java)
+                .filter { it.namespace != null }
+        assertEquals(500, references.size)
+
+        references.forEach { ref ->
+            val resolvant = ref.reference.resolve()
+
+            assertNotNull("could not resolve ${ref.text}", resolvant)
+            assertEquals("dplyr.R", resolvant!!.containingFile.name)
+        }
+    }
+
+
+    fun testLocalResolveInLargeScript() {
+        // each line redefines a variable based on the one defined in the previous line
+        val lines = (0 until 3000).map { if (it < 50) "v$it = $it" else "v${it % 50} = v${(it - 1) % 50} + 1" }
+
+        myFixture.configureByText("a.R", lines.joinToString("\n"))
+
+        val statements = PsiTreeUtil.getChildrenOfTypeAsList(myFixture.file, RAssignmentStatement::class.java)
+        assertEquals(3000, statements.size)
+
+        statements.drop(50).forEachIndexed { index, statement ->
+            val ref = PsiTreeUtil.findChildOfType(statement.assignedValue, RReferenceExpression::class.java)!!
+
+            assertEquals(statements[index + 49], ref.reference.resolve())
+        }
+    }
+
+
+    fun testResolveCacheHitRate() {
+        myFixture.configureByText("a.R", """
+        foo = function(x) x + 1
+        bar = foo(1)
+        foo(bar)
+        """)
+
+        val references = PsiTreeUtil.findChildrenOfType(myFixture.file, RReferenceExpression::class.java)
+
+        RReferenceImpl.resetResolveCacheStats()
+
+        // repeated resolves without intermediate psi changes must not resolve again
+        repeat(3) { references.forEach { it.reference?.multiResolve(false) } }
+
+        System.err.println(RReferenceImpl.getResolveCacheStats())
+        assertTrue(RReferenceImpl.getResolveCacheHitRate() > 0.6)
+    }
+
+
+    fun testReferenceIsKeptUntilPsiChange() {
+        myFixture.configureByText("a.R", """
+        foo = function(x) x + 1
+        bar = foo(1)
+        foo(b<caret>ar)
+        """)
+
+        val refExpr = PsiTreeUtil.getParentOfType(myFixture.file.findElementAt(myFixture.caretOffset), RReferenceExpression::class.java)!!
+
+        // the resolve cache keeps the results just as long as the reference is reachable
+        assertSame(refExpr.reference, refExpr.reference)
+
+        myFixture.type("x")
+        PsiDocumentManager.getInstance(myFixture.project).commitAllDocuments()
+
+        val changedRefExpr = PsiTreeUtil.getParentOfType(myFixture.file.findElementAt(myFixture.caretOffset - 1), RReferenceExpression::class.java)!!
+        assertEquals("bxar", changedRefExpr.text)
+        assertNull(changedRefExpr.reference!!.resolve())
+    }
+
     fun testOperatorQuoteModes() {
         // we should resolve both ops and also find their usage
         checkExpression("""
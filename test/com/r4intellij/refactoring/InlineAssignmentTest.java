@@ -19,6 +19,17 @@ public class InlineAssignmentTest extends LightPlatformCodeInsightFixtureTestCas
         doTest("inline = 8\ninline + inline", "8 + 8");
     }
 
+
+    public void testUsagesInNestedScopes() throws Exception {
+        doTest("inline = 4\nfoo = function() inline\n{ inline + 1 }", "foo = function() 4\n{ 4 + 1 }");
+    }
+
+
+    public void testJustUsagesOfInlinedAssignment() throws Exception {
+        // the usages after the reassignment refer to the new value
+        doTest("inline = 4\ninline + 1\ninline = 5\ninline", "4 + 1\ninline = 5\ninline");
+    }
+
     // todo add more tests here
 
 
@@ -0,0 +1,120 @@
+package com.r4intellij.run;
+
+import com.r4intellij.debugger.executor.RExecutionResult;
+import com.r4intellij.debugger.executor.RExecutionResultCalculatorImpl;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.r4intellij.debugger.data.RLanguageConstants.LINE_SEPARATOR;
+import static com.r4intellij.debugger.data.RResponseConstants.BROWSE_PREFIX;
+import static com.r4intellij.debugger.data.RResponseConstants.BROWSE_SUFFIX;
+import static com.r4intellij.debugger.executor.RExecutionResultType.RESPONSE;
+import static org.junit.Assert.*;
+
+public class ROutputBufferTest {
+
+    @Test
+    public void appendAcrossChunks() {
+        final ROutputBuffer buffer = new ROutputBuffer();
+        final StringBuilder expected = new StringBuilder();
+
+        for (int i = 0; i < 5000; i++) {
+            final String text = "line " + i + "\n";
+
+            buffer.append(text);
+            expected.append(text);
+        }
+
+        assertEquals(expected.length(), buffer.length());
+        assertEquals(expected.toString(), buffer.toString());
+        assertEquals(expected.substring(8000, 9000), buffer.subSequence(8000, 9000));
+        assertEquals(expected.charAt(8192), buffer.charAt(8192));
+    }
+
+
+    @Test
+    public void clear() {
+        final ROutputBuffer buffer = new ROutputBuffer();
+
+        buffer.append(repeat('x', 100000));
+        buffer.clear();
+
+        assertEquals(0, buffer.length());
+        assertEquals("", buffer.toString());
+
+        buffer.append("abc");
+
+        assertEquals("abc", buffer.toString());
+    }
+
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void charAtBeyondLength() {
+        final ROutputBuffer buffer = new ROutputBuffer();
+
+        buffer.append("abc");
+        buffer.clear();
+
+        buffer.charAt(0);
+    }
+
+
+    /**
+     * Benchmark of receiving and framing a 10 MB response in 4 KB pieces as the output reader does, compared to the
+     * former <code>StringBuilder</code> buffer and regex line splitting.
+     */
+    @Test
+    public void largeOutputThroughput() {
+        final String line = repeat('1', 79);
+        final int numLines = 10 * 1024 * 1024 / (line.length() + 1);
+
+        final StringBuilder text = new StringBuilder("print(x)\n");
+        for (int i = 0; i < numLines; i++) {
+            text.append(line).append('\n');
+        }
+        text.append(BROWSE_PREFIX).append(1).append(BROWSE_SUFFIX);
+
+        final String output = text.toString();
+        final RExecutionResultCalculatorImpl calculator = new RExecutionResultCalculatorImpl();
+
+        final long legacyStart = System.nanoTime();
+        final StringBuilder legacyBuffer = new StringBuilder();
+        for (int offset = 0; offset < output.length(); offset += 4096) {
+            legacyBuffer.append(output, offset, Math.min(output.length(), offset + 4096));
+            calculator.isComplete(legacyBuffer);
+        }
+        final String[] lines = legacyBuffer.toString().split("(\r|\n|\r\n)");
+        final StringBuilder legacyResult = new StringBuilder();
+        for (int i = 1; i < lines.length - 1; i++) {
+            legacyResult.append(lines[i]).append(LINE_SEPARATOR);
+        }
+        final long legacyTime = System.nanoTime() - legacyStart;
+
+        final long bufferStart = System.nanoTime();
+        final ROutputBuffer buffer = new ROutputBuffer();
+        for (int offset = 0; offset < output.length(); offset += 4096) {
+            buffer.append(output.substring(offset, Math.min(output.length(), offset + 4096)));
+            calculator.isComplete(buffer);
+        }
+        final RExecutionResult result = calculator.calculate(buffer, "");
+        final long bufferTime = System.nanoTime() - bufferStart;
+
+        assertTrue(calculator.isComplete(buffer));
+        assertEquals(RESPONSE, result.getType());
+        assertEquals(numLines * (line.length() + LINE_SEPARATOR.length()) - LINE_SEPARATOR.length(), result.getOutput().length());
+        assertEquals(legacyResult.length() - LINE_SEPARATOR.length(), result.getOutput().length());
+
+        // timings depend on the machine, so they are just reported
+        System.err.println(String.format("10 MB response: string builder and regex %.1fms, chunked buffer %.1fms",
+                legacyTime / 1E6, bufferTime / 1E6));
+    }
+
+
+    private static String repeat(final char c, final int count) {
+        final char[] chars = new char[count];
+        Arrays.fill(chars, c);
+
+        return new String(chars);
+    }
+}
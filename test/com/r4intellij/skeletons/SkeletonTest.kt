@@ -1,10 +1,11 @@
 package com.r4intellij.skeletons
 
 import com.r4intellij.RFileType.DOT_R_EXTENSION
+import com.r4intellij.RPsiUtils
 import com.r4intellij.RTestCase
 import com.r4intellij.packages.RHelperUtil
-import com.r4intellij.packages.RSkeletonGenerator.RHELPER_SKELETONIZE_PACKAGE
-import com.r4intellij.packages.RSkeletonGenerator.isValidSkeleton
+import com.r4intellij.packages.RSkeletonGenerator.*
+import com.r4intellij.packages.getInstalledPackageVersions
 import org.intellij.lang.annotations.Language
 import java.io.File
 
@@ -72,6 +73,43 @@ class SkeletonTest : RTestCase() {
 
     }
 
+    /**
+     * Skeletonizes the default and common packages using a single batched R process and compares the result to an R
+     * process per package.
+     */
+    fun testBatchedSkeletonization() {
+        val installedPackages = getInstalledPackageVersions().keys
+        val testPackages = (DEFAULT_PACKAGES + COMMON_PACKAGES).filter { installedPackages.contains(it) }
+
+        val batchDir = File(TEST_DIRECTORY, "batch_benchmark")
+        batchDir.mkdirs()
+
+        val skeletonFile = { pckg: String, mode: String -> File(batchDir, "${pckg}_$mode$DOT_R_EXTENSION") }
+
+        try {
+            testPackages.forEach { pckg ->
+                RHelperUtil.runHelperWithArgs(RHELPER_SKELETONIZE_PACKAGE, pckg, skeletonFile(pckg, "single").absolutePath)
+            }
+
+            val args = testPackages.flatMap { pckg -> listOf(pckg, skeletonFile(pckg, "batch").absolutePath) }
+            val batchResult = RHelperUtil.runHelperWithArgs(RHELPER_SKELETONIZE_PACKAGE, null, 60 * RPsiUtils.MINUTE, *args.toTypedArray())
+
+            // each package of the batch must be reported when done
+            val reportedPackages = batchResult!!.stdOut.lines()
+                    .map { it.trim().split("\t") }
+                    .filter { it.size == 3 && it[0] == ".skeleton_time" }
+                    .map { it[1] }
+            assertEquals(testPackages, reportedPackages)
+
+            // batching must not affect which packages can be skeletonized
+            testPackages.forEach { pckg ->
+                assertEquals(pckg, isValidSkeleton(skeletonFile(pckg, "single")), isValidSkeleton(skeletonFile(pckg, "batch")))
+            }
+        } finally {
+            batchDir.deleteRecursively()
+        }
+    }
+
     private fun assertContainsLine(packageName: String, @Language("R") line: String) {
         assertTrue(File(TEST_DIRECTORY, "$packageName.R").readLines().any { line ->
             line.contains(line)
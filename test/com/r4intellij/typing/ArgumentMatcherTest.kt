@@ -0,0 +1,73 @@
+package com.r4intellij.typing
+
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.psi.PsiDocumentManager
+import com.intellij.psi.util.PsiTreeUtil
+import com.r4intellij.RTestCase
+import com.r4intellij.psi.api.RCallExpression
+import com.r4intellij.psi.api.ROperatorExpression
+import junit.framework.TestCase
+
+/**
+ * Tests of the argument matching, which is cached per call until the next psi change.
+ *
+ * @author Holger Brandl
+ */
+class ArgumentMatcherTest : RTestCase() {
+
+
+    fun testCallMatchIsCached() {
+        myFixture.configureByText("a.R", """
+        foo = function(a, b) a + b
+        foo(1, b = 2)
+        """.trimIndent())
+
+        val call = PsiTreeUtil.findChildOfType(myFixture.file, RCallExpression::class.java)!!
+        val matchResult = ArgumentMatcher.matchCall(call)
+
+        TestCase.assertEquals(2, matchResult.matchedParams.size)
+        TestCase.assertSame(matchResult, ArgumentMatcher.matchCall(call))
+    }
+
+
+    fun testOperatorMatchIsCached() {
+        myFixture.configureByText("a.R", """
+        `%foo%` = function(a, b) a + b
+        1 %foo% 2
+        """.trimIndent())
+
+        val operatorExpression = PsiTreeUtil.findChildrenOfType(myFixture.file, ROperatorExpression::class.java).last()
+        val matchResult = ArgumentMatcher.matchOperator(operatorExpression)
+
+        TestCase.assertEquals(2, matchResult.matchedParams.size)
+        TestCase.assertSame(matchResult, ArgumentMatcher.matchOperator(operatorExpression))
+    }
+
+
+    fun testCallIsMatchedAgainAfterPsiChange() {
+        myFixture.configureByText("a.R", """
+        foo = function(a, b) a + b
+        foo(1, 2)
+        """.trimIndent())
+
+        val matchResult = ArgumentMatcher.matchCall(PsiTreeUtil.findChildOfType(myFixture.file, RCallExpression::class.java)!!)
+        TestCase.assertEquals(2, matchResult.matchedParams.size)
+
+        // drop the second argument
+        val document = myFixture.editor.document
+        WriteCommandAction.runWriteCommandAction(myFixture.project) {
+            val argStart = document.text.lastIndexOf(", 2")
+            document.deleteString(argStart, argStart + 3)
+        }
+        PsiDocumentManager.getInstance(myFixture.project).commitAllDocuments()
+
+        val changedCall = PsiTreeUtil.findChildOfType(myFixture.file, RCallExpression::class.java)!!
+
+        try {
+            ArgumentMatcher.matchCall(changedCall)
+            TestCase.fail("missing argument was not detected")
+        } catch (e: MatchingException) {
+            TestCase.assertEquals("argument 'b' is missing, with no default", e.message)
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.r4intellij.typing
+
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.psi.PsiDocumentManager
+import com.intellij.psi.util.PsiTreeUtil
+import com.r4intellij.RTestCase
+import com.r4intellij.psi.api.RExpression
+import com.r4intellij.typing.types.*
+import junit.framework.TestCase
+
+/**
+ * Tests of the inferred types of expressions, which are cached per project until the next psi change.
+ *
+ * @author Holger Brandl
+ */
+class TypeProviderTest : RTestCase() {
+
+
+    fun testLiteralTypes() {
+        val types = inferTypes("""
+        1
+        2L
+        "foo"
+        TRUE
+        NULL
+        """)
+
+        TestCase.assertEquals(listOf(RNumericType.INSTANCE, RIntegerType.INSTANCE, RCharacterType.INSTANCE,
+                RLogicalType.INSTANCE, RNullType.INSTANCE), types)
+    }
+
+
+    fun testReferenceTypedByReachingDefinition() {
+        val types = inferTypes("""
+        x = 1
+        x = "foo"
+        x
+        """)
+
+        TestCase.assertEquals(RCharacterType.INSTANCE, types.last())
+    }
+
+
+    fun testListMemberType() {
+        val types = inferTypes("""
+        l = list(a = 1, b = "foo")
+        l${'$'}b
+        """)
+
+        TestCase.assertEquals(RCharacterType.INSTANCE, types.last())
+    }
+
+
+    fun testFunctionType() {
+        val types = inferTypes("""
+        foo = function(x) x + 1
+        foo
+        """)
+
+        TestCase.assertTrue(types.last() is RFunctionType)
+    }
+
+
+    fun testTypesAreInferredAgainAfterPsiChange() {
+        TestCase.assertEquals(RNumericType.INSTANCE, inferTypes("x = 1\nx").last())
+
+        val document = myFixture.editor.document
+        WriteCommandAction.runWriteCommandAction(myFixture.project) {
+            document.replaceString(4, 5, "\"foo\"")
+        }
+        PsiDocumentManager.getInstance(myFixture.project).commitAllDocuments()
+
+        TestCase.assertEquals(RCharacterType.INSTANCE, RTypeProvider.getType(topLevelExpressions().last()))
+    }
+
+
+    private fun inferTypes(code: String): List<RType> {
+        myFixture.configureByText("a.R", code.trimIndent())
+
+        return topLevelExpressions().map { RTypeProvider.getType(it) }
+    }
+
+
+    private fun topLevelExpressions() = PsiTreeUtil.getChildrenOfTypeAsList(myFixture.file, RExpression::class.java)
+}